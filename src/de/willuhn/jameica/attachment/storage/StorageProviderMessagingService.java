@@ -14,9 +14,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Resource;
 
@@ -26,8 +30,10 @@ import de.willuhn.annotation.Lifecycle;
 import de.willuhn.annotation.Lifecycle.Type;
 import de.willuhn.jameica.attachment.Attachment;
 import de.willuhn.jameica.attachment.Context;
+import de.willuhn.jameica.messaging.MessagingQueue;
 import de.willuhn.jameica.messaging.QueryMessage;
 import de.willuhn.jameica.services.ArchiveService;
+import de.willuhn.jameica.services.inject.Provider;
 import de.willuhn.jameica.system.Application;
 import de.willuhn.logging.Logger;
 import de.willuhn.util.I18N;
@@ -40,7 +46,12 @@ public class StorageProviderMessagingService implements StorageProvider
 {
   private final static I18N i18n = Application.getI18n();
   
-  @Resource private ArchiveService archiveService = null;
+  /**
+   * Maximale Wartezeit in Millisekunden fuer das Abrufen der Meta-Daten.
+   */
+  private final static long TIMEOUT = 30 * 1000L;
+  
+  @Resource private Provider<ArchiveService> archiveService = null;
   
   /**
    * @see de.willuhn.jameica.attachment.storage.StorageProvider#getId()
@@ -57,7 +68,7 @@ public class StorageProviderMessagingService implements StorageProvider
   @Override
   public boolean isEnabled()
   {
-    return this.archiveService.isEnabled();
+    return this.archiveService.get().isEnabled();
   }
   
   /**
@@ -90,12 +101,33 @@ public class StorageProviderMessagingService implements StorageProvider
     if (uuids == null || uuids.isEmpty())
       return result;
     
-    // OK; wir haben Dateien. Dann die Meta-Daten abrufen, um die Attachments zu erzeugen
+    // OK; wir haben Dateien. Dann die Meta-Daten abrufen, um die Attachments zu erzeugen.
+    // Wir senden die Anfragen alle auf einmal, statt jede einzeln abzuwarten.
+    final MessagingQueue queue = Application.getMessagingFactory().getMessagingQueue("jameica.messaging.getmeta");
+    final Map<String,CompletableFuture<Object>> requests = new LinkedHashMap<>();
     for (String uuid:uuids)
     {
-      final QueryMessage mm = new QueryMessage(uuid,null);
-      Application.getMessagingFactory().getMessagingQueue("jameica.messaging.getmeta").sendSyncMessage(mm);
-      final Map<String,String> meta = (Map<String,String>) mm.getData();
+      requests.put(uuid,queue.request(new QueryMessage(uuid,null),TIMEOUT));
+    }
+    
+    for (Entry<String,CompletableFuture<Object>> e:requests.entrySet())
+    {
+      final String uuid = e.getKey();
+      Map<String,String> meta = null;
+      try
+      {
+        meta = (Map<String,String>) e.getValue().get();
+      }
+      catch (InterruptedException ie)
+      {
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while fetching meta-data",ie);
+      }
+      catch (ExecutionException ee)
+      {
+        Logger.error("unable to fetch meta-data for attachment uuid " + uuid,ee.getCause());
+        continue;
+      }
       
       if (meta == null || meta.isEmpty())
       {
@@ -25,6 +25,7 @@ import de.willuhn.jameica.gui.AbstractView;
 import de.willuhn.jameica.gui.GUI;
 import de.willuhn.jameica.messaging.QueryMessage;
 import de.willuhn.jameica.messaging.StatusBarMessage;
+import de.willuhn.jameica.services.inject.Provider;
 import de.willuhn.jameica.store.BeanContainer;
 import de.willuhn.jameica.store.BeanStore;
 import de.willuhn.jameica.system.Application;
@@ -47,8 +48,8 @@ public class BookmarkService
    */
   public final static String QUEUE_DELETED = "jameica.bookmark.deleted";
 
-  @Resource private BeanStore store;
-  @Resource private ContextSerializer serializer;
+  @Resource private Provider<BeanStore> store;
+  @Resource private Provider<ContextSerializer> serializer;
   
   private BeanContainer<Bookmark> beans = null;
   
@@ -79,7 +80,7 @@ public class BookmarkService
     AbstractView view = GUI.getCurrentView();
     
     b.setView(view.getClass().getName());
-    b.setContext(this.serializer.serialize(view.getCurrentObject()));
+    b.setContext(this.serializer.get().serialize(view.getCurrentObject()));
     
     this.getBookmarks().add(b); // hinzufuegen
     this.store(); // und speichern
@@ -109,7 +110,7 @@ public class BookmarkService
       
       // View passt. Aktuelles Objekt probehalber serialisieren und
       // schauen, ob wir es finden
-      Context context = this.serializer.serialize(view.getCurrentObject());
+      Context context = this.serializer.get().serialize(view.getCurrentObject());
       if (EqualsBuilder.reflectionEquals(context,b.getContext()))
         return b;
     }
@@ -171,7 +172,7 @@ public class BookmarkService
     {
       synchronized (mutex)
       {
-        this.beans = this.store.load(Bookmark.class,true);
+        this.beans = this.store.get().load(Bookmark.class,true);
       }
     }
     
@@ -184,7 +185,7 @@ public class BookmarkService
    */
   public void store() throws ApplicationException
   {
-    this.store.store(this.getBeanContainer());
+    this.store.get().store(this.getBeanContainer());
   }
 }
 
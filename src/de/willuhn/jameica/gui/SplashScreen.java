@@ -412,7 +412,7 @@ public class SplashScreen implements ProgressMonitor, Runnable
   /**
    * @see de.willuhn.util.ProgressMonitor#addPercentComplete(int)
    */
-  public void addPercentComplete(int percent)
+  public synchronized void addPercentComplete(int percent)
   {
     if (percent < 1)
       return;
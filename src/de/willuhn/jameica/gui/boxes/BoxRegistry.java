@@ -15,10 +15,10 @@ import java.util.LinkedList;
 import java.util.List;
 
 import de.willuhn.jameica.services.BeanService;
+import de.willuhn.jameica.services.ClassService;
 import de.willuhn.jameica.system.Application;
 import de.willuhn.jameica.system.Settings;
 import de.willuhn.logging.Logger;
-import de.willuhn.util.ClassFinder;
 
 /**
  * Diese Klasse uebernimmt die Verwaltung der Boxen.
@@ -40,10 +40,10 @@ public class BoxRegistry
     if (boxes == null)
     {
       // Klassen wurden noch nicht geladen. Das tun wir jetzt
-      ClassFinder finder = Application.getClassLoader().getClassFinder();
+      ClassService classService = Application.getBootLoader().getBootable(ClassService.class);
       try
       {
-        boxes = finder.findImplementors(Box.class);
+        boxes = classService.findImplementors(Application.getClassLoader(),Box.class);
         if (boxes == null || boxes.length == 0)
           throw new ClassNotFoundException();
       }
@@ -18,10 +18,11 @@ import java.util.Map;
 import de.willuhn.jameica.plugin.Plugin;
 import de.willuhn.jameica.plugin.PluginLoader;
 import de.willuhn.jameica.services.BeanService;
+import de.willuhn.jameica.services.ClassService;
 import de.willuhn.jameica.system.Application;
 import de.willuhn.jameica.system.Settings;
 import de.willuhn.logging.Logger;
-import de.willuhn.util.ClassFinder;
+import de.willuhn.util.MultipleClassLoader;
 
 /**
  * Registry, ueber die Appointment-Provider ermittelt werden koennen.
@@ -47,15 +48,16 @@ public class AppointmentProviderRegistry
       list = new LinkedList<Class<AppointmentProvider>>();
       cache.put(plugin,list);
 
-      ClassFinder finder  = Application.getClassLoader().getClassFinder();
-      PluginLoader loader = Application.getPluginLoader();
+      MultipleClassLoader cl = Application.getClassLoader();
+      PluginLoader loader    = Application.getPluginLoader();
       
       if (plugin != null)
-        finder = plugin.getManifest().getClassLoader().getClassFinder();
+        cl = plugin.getManifest().getClassLoader();
       
       try
       {
-        Class<AppointmentProvider>[] classes = finder.findImplementors(AppointmentProvider.class);
+        ClassService classService = Application.getBootLoader().getBootable(ClassService.class);
+        Class<AppointmentProvider>[] classes = classService.findImplementors(cl,AppointmentProvider.class);
         for (Class<AppointmentProvider> c:classes)
         {
           // Wenn ein Plugin angegeben ist, dann muss der Provider von diesem stammen.
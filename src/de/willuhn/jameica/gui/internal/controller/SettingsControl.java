@@ -29,6 +29,7 @@ import de.willuhn.jameica.gui.input.IntegerInput;
 import de.willuhn.jameica.gui.input.SelectInput;
 import de.willuhn.jameica.gui.input.TextInput;
 import de.willuhn.jameica.gui.internal.parts.CertificateList;
+import de.willuhn.jameica.gui.internal.parts.MessagingStatisticsList;
 import de.willuhn.jameica.gui.internal.parts.PluginDetailPart.Type;
 import de.willuhn.jameica.gui.internal.parts.PluginListPart;
 import de.willuhn.jameica.gui.parts.TablePart;
@@ -71,6 +72,9 @@ public class SettingsControl extends AbstractControl
   // Plugins
   private Part plugins;
 
+  // Messaging
+  private TablePart messaging;
+
   // Look & Feel
 	private Input colorError;
 	private Input colorSuccess;
@@ -262,6 +266,18 @@ public class SettingsControl extends AbstractControl
     return this.certs;
   }
   
+  /**
+   * Liefert eine Tabelle mit der Statistik der Message-Queues.
+   * @return Tabelle mit der Statistik der Message-Queues.
+   */
+  public Part getMessagingStatistics()
+  {
+    if (this.messaging != null)
+      return this.messaging;
+    this.messaging = new MessagingStatisticsList();
+    return this.messaging;
+  }
+  
   /**
    * Liefert eine Checkbox, mit der festgelegt werden kann, ob den CA-Zertifikaten von Java vertraut werden soll.
    * @return Checkbox.
@@ -0,0 +1,196 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.gui.internal.parts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.swt.widgets.TableItem;
+
+import de.willuhn.jameica.gui.formatter.CurrencyFormatter;
+import de.willuhn.jameica.gui.formatter.TableFormatter;
+import de.willuhn.jameica.gui.parts.Column;
+import de.willuhn.jameica.gui.parts.TablePart;
+import de.willuhn.jameica.gui.parts.table.FeatureSummary;
+import de.willuhn.jameica.gui.util.Color;
+import de.willuhn.jameica.messaging.ConsumerStatistics;
+import de.willuhn.jameica.messaging.QueueStatistics;
+import de.willuhn.jameica.system.Application;
+import de.willuhn.util.I18N;
+
+/**
+ * Tabelle mit der Statistik der Message-Queues und ihrer Consumer.
+ */
+public class MessagingStatisticsList extends TablePart
+{
+  private final static I18N i18n = Application.getI18n();
+
+  /**
+   * ct.
+   */
+  public MessagingStatisticsList()
+  {
+    super(init(),null);
+    CurrencyFormatter ms = new CurrencyFormatter("ms",null);
+    this.addColumn(i18n.tr("Queue / Consumer"),"name");
+    this.addColumn(i18n.tr("Gesendet"),"sent",null,false,Column.ALIGN_RIGHT);
+    this.addColumn(i18n.tr("Zwischengespeichert"),"queued",null,false,Column.ALIGN_RIGHT);
+    this.addColumn(i18n.tr("Verworfen"),"dropped",null,false,Column.ALIGN_RIGHT);
+    this.addColumn(i18n.tr("Zustellungen"),"count",null,false,Column.ALIGN_RIGHT);
+    this.addColumn(i18n.tr("Durchschnitt"),"average",ms,false,Column.ALIGN_RIGHT);
+    this.addColumn(i18n.tr("95%"),"percentile",ms,false,Column.ALIGN_RIGHT);
+    this.addColumn(i18n.tr("Maximum"),"max",ms,false,Column.ALIGN_RIGHT);
+    this.addColumn(i18n.tr("Fehler"),"errors",null,false,Column.ALIGN_RIGHT);
+    this.setMulti(false);
+    this.setRememberColWidths(true);
+    this.removeFeature(FeatureSummary.class);
+    
+    this.setFormatter(new TableFormatter()
+    {
+      public void format(TableItem item)
+      {
+        if (item == null || item.getData() == null)
+          return;
+        
+        StatisticsEntry e = (StatisticsEntry) item.getData();
+        item.setForeground(e.queue != null ? Color.FOREGROUND.getSWTColor() : Color.COMMENT.getSWTColor());
+      }
+    });
+  }
+  
+  /**
+   * Initialisiert die Liste der Statistiken.
+   * @return Liste der Statistiken.
+   */
+  private static List init()
+  {
+    List<StatisticsEntry> list = new ArrayList<StatisticsEntry>();
+    for (QueueStatistics q:Application.getMessagingFactory().getStatistics())
+    {
+      list.add(new StatisticsEntry(q,null));
+      for (ConsumerStatistics c:q.getConsumers())
+        list.add(new StatisticsEntry(null,c));
+    }
+    return list;
+  }
+  
+  /**
+   * Eine Zeile der Tabelle. Enthaelt entweder die Statistik einer Queue
+   * oder die eines Consumers der darueber stehenden Queue.
+   * Die Zeiten beziehen sich bei einer Queue auf die Wartezeit bis zur Zustellung,
+   * bei einem Consumer auf die Dauer der Verarbeitung.
+   */
+  public static class StatisticsEntry
+  {
+    private QueueStatistics queue       = null;
+    private ConsumerStatistics consumer = null;
+    
+    /**
+     * ct.
+     * @param queue die Statistik der Queue.
+     * @param consumer die Statistik des Consumers.
+     */
+    private StatisticsEntry(QueueStatistics queue, ConsumerStatistics consumer)
+    {
+      this.queue    = queue;
+      this.consumer = consumer;
+    }
+    
+    /**
+     * Liefert den Namen der Queue bzw. des Consumers.
+     * @return Name.
+     */
+    public String getName()
+    {
+      return this.queue != null ? this.queue.getName() : "    " + this.consumer.getName();
+    }
+    
+    /**
+     * Liefert die Anzahl der gesendeten Nachrichten.
+     * @return Anzahl der gesendeten Nachrichten oder NULL bei einem Consumer.
+     */
+    public Long getSent()
+    {
+      return this.queue != null ? Long.valueOf(this.queue.getSent()) : null;
+    }
+    
+    /**
+     * Liefert die Anzahl der zwischengespeicherten Nachrichten.
+     * @return Anzahl der zwischengespeicherten Nachrichten oder NULL bei einem Consumer.
+     */
+    public Long getQueued()
+    {
+      return this.queue != null ? Long.valueOf(this.queue.getQueued()) : null;
+    }
+    
+    /**
+     * Liefert die Anzahl der verworfenen Nachrichten.
+     * @return Anzahl der verworfenen Nachrichten oder NULL bei einem Consumer.
+     */
+    public Long getDropped()
+    {
+      return this.queue != null ? Long.valueOf(this.queue.getDropped()) : null;
+    }
+    
+    /**
+     * Liefert die Anzahl der zugestellten Nachrichten bzw. der Aufrufe des Consumers.
+     * @return Anzahl.
+     */
+    public Long getCount()
+    {
+      return Long.valueOf(this.queue != null ? this.queue.getDelivered() : this.consumer.getTime().getCount());
+    }
+    
+    /**
+     * Liefert die durchschnittliche Zeit in Millisekunden.
+     * @return durchschnittliche Zeit.
+     */
+    public Double getAverage()
+    {
+      return Double.valueOf(this.queue != null ? this.queue.getLatencyAverage() : this.consumer.getTime().getAverage());
+    }
+    
+    /**
+     * Liefert das 95%-Perzentil der Zeit in Millisekunden.
+     * @return 95%-Perzentil der Zeit.
+     */
+    public Double getPercentile()
+    {
+      return Double.valueOf(this.queue != null ? this.queue.getLatency95() : this.consumer.getTime().getPercentile(95d));
+    }
+    
+    /**
+     * Liefert die maximale Zeit in Millisekunden.
+     * @return maximale Zeit.
+     */
+    public Double getMax()
+    {
+      return Double.valueOf(this.queue != null ? this.queue.getLatencyMax() : this.consumer.getTime().getMax());
+    }
+    
+    /**
+     * Liefert die Anzahl der Fehler des Consumers.
+     * @return Anzahl der Fehler oder NULL bei einer Queue.
+     */
+    public Long getErrors()
+    {
+      return this.consumer != null ? Long.valueOf(this.consumer.getErrors()) : null;
+    }
+    
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString()
+    {
+      return this.queue != null ? this.queue.toString() : this.consumer.toString();
+    }
+  }
+}
@@ -113,6 +113,14 @@ public class Settings extends AbstractView implements Extendable
     //
     /////////////////////////////////////////////////////////////////
 
+    /////////////////////////////////////////////////////////////////
+    // Messaging-Statistik
+    TabGroup messaging = new TabGroup(getTabFolder(),i18n.tr("Messaging"),false,1);
+    control.getMessagingStatistics().paint(messaging.getComposite());
+
+    //
+    /////////////////////////////////////////////////////////////////
+
     /////////////////////////////////////////////////////////////////
 		// Farb-Einstellungen
 
@@ -11,6 +11,7 @@
 package de.willuhn.jameica.messaging;
 
 import de.willuhn.jameica.services.BeanService;
+import de.willuhn.jameica.services.ClassService;
 import de.willuhn.jameica.system.Application;
 import de.willuhn.logging.Logger;
 
@@ -55,7 +56,8 @@ public class AutoRegisterMessageConsumer implements MessageConsumer
     Class<MessageConsumer>[] c = new Class[0];
     try
     {
-      c = Application.getClassLoader().getClassFinder().findImplementors(MessageConsumer.class);
+      ClassService classService = Application.getBootLoader().getBootable(ClassService.class);
+      c = classService.findImplementors(Application.getClassLoader(),MessageConsumer.class);
     }
     catch (ClassNotFoundException e)
     {
@@ -0,0 +1,31 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.util.List;
+
+/**
+ * Erweiterung des Message-Consumers, der per {@link MessagingQueue#sendMessages(java.util.Collection)}
+ * gesammelt versendete Nachrichten in einem Aufruf erhalten kann.
+ * Einzeln versendete Nachrichten werden weiterhin per {@link MessageConsumer#handleMessage(Message)}
+ * zugestellt.
+ */
+public interface BatchMessageConsumer extends MessageConsumer
+{
+  /**
+   * Ueber diese Methode werden gesammelt versendete Nachrichten zugestellt.
+   * @param messages die Nachrichten in der Reihenfolge des Versands. Die Liste
+   * enthaelt nur die Nachrichten, die der Consumer laut {@link #getExpectedMessageTypes()}
+   * erwartet.
+   * @throws Exception
+   */
+  public void handleMessages(List<Message> messages) throws Exception;
+}
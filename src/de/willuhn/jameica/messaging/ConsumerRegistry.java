@@ -0,0 +1,195 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-sichere Liste der Consumer einer Queue.
+ * Arbeitet nach dem Copy-On-Write-Prinzip: Jede Aenderung erzeugt einen neuen
+ * unveraenderlichen Snapshot mit hoeherer Versionsnummer. Lesende Zugriffe
+ * (also die Zustellung der Nachrichten) kommen daher ohne Lock aus.
+ */
+final class ConsumerRegistry
+{
+  private volatile Snapshot snapshot = new Snapshot(new MessageConsumer[0],0);
+
+  /**
+   * Liefert den aktuellen Snapshot.
+   * @return der aktuelle Snapshot.
+   */
+  Snapshot snapshot()
+  {
+    return this.snapshot;
+  }
+
+  /**
+   * Liefert die Anzahl der registrierten Consumer.
+   * @return Anzahl der Consumer.
+   */
+  int size()
+  {
+    return this.snapshot.consumers.length;
+  }
+
+  /**
+   * Fuegt einen Consumer hinzu.
+   * @param consumer der Consumer.
+   */
+  synchronized void add(MessageConsumer consumer)
+  {
+    Snapshot current = this.snapshot;
+    MessageConsumer[] list = new MessageConsumer[current.consumers.length + 1];
+    System.arraycopy(current.consumers,0,list,0,current.consumers.length);
+    list[current.consumers.length] = consumer;
+    this.snapshot = new Snapshot(list,current.version + 1);
+  }
+
+  /**
+   * Entfernt einen Consumer.
+   * @param consumer der Consumer.
+   * @return true, wenn der Consumer registriert war und entfernt wurde.
+   */
+  synchronized boolean remove(MessageConsumer consumer)
+  {
+    Snapshot current = this.snapshot;
+    for (int i=0;i<current.consumers.length;++i)
+    {
+      if (!consumer.equals(current.consumers[i]))
+        continue;
+
+      MessageConsumer[] list = new MessageConsumer[current.consumers.length - 1];
+      System.arraycopy(current.consumers,0,list,0,i);
+      System.arraycopy(current.consumers,i+1,list,i,list.length - i);
+      this.snapshot = new Snapshot(list,current.version + 1);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Unveraenderlicher Stand der Consumer-Liste samt Dispatch-Index.
+   */
+  static final class Snapshot
+  {
+    private final MessageConsumer[] consumers;
+    private final long version;
+
+    // Consumer, deren Nachrichtenarten sich nach dem Registrieren noch aendern koennen
+    private final Set<MessageConsumer> dynamic = Collections.newSetFromMap(new IdentityHashMap<MessageConsumer,Boolean>());
+
+    // Dispatch-Index: Message-Klasse -> passende Consumer. Gehoert zum Snapshot
+    // und wird daher mit jeder Aenderung der Consumer-Liste automatisch verworfen.
+    // Consumer ohne feste Nachrichtenarten sind hier immer enthalten und werden
+    // bei der Zustellung nochmal geprueft.
+    private final Map<Class,MessageConsumer[]> dispatch = new ConcurrentHashMap<Class,MessageConsumer[]>();
+
+    /**
+     * ct.
+     * @param consumers die Consumer.
+     * @param version die Versionsnummer.
+     */
+    private Snapshot(MessageConsumer[] consumers, long version)
+    {
+      this.consumers = consumers;
+      this.version   = version;
+
+      for (MessageConsumer consumer:consumers)
+      {
+        if (!consumer.hasStaticMessageTypes())
+          this.dynamic.add(consumer);
+      }
+    }
+
+    /**
+     * Liefert die Versionsnummer des Snapshots.
+     * @return Versionsnummer.
+     */
+    long getVersion()
+    {
+      return this.version;
+    }
+
+    /**
+     * Liefert alle Consumer in Registrierungsreihenfolge.
+     * Das Array darf nicht veraendert werden.
+     * @return alle Consumer.
+     */
+    MessageConsumer[] getConsumers()
+    {
+      return this.consumers;
+    }
+
+    /**
+     * Liefert die Consumer, die Nachrichten der angegebenen Klasse erwarten.
+     * Fuer Consumer mit festen Nachrichtenarten wird das Ergebnis pro Klasse nur
+     * einmal ermittelt. Alle anderen Consumer werden bei jedem Aufruf neu geprueft.
+     * @param type die konkrete Klasse der Nachricht.
+     * @return Liste der passenden Consumer in Registrierungsreihenfolge.
+     */
+    MessageConsumer[] lookup(Class type)
+    {
+      MessageConsumer[] candidates = this.dispatch.get(type);
+      if (candidates == null)
+      {
+        // Falls zwei Threads gleichzeitig die selbe Klasse aufloesen, ermitteln
+        // beide das gleiche Ergebnis. Das ist guenstiger als ein Lock.
+        List<MessageConsumer> list = new ArrayList<MessageConsumer>();
+        for (MessageConsumer consumer:this.consumers)
+        {
+          // Consumer ohne feste Nachrichtenarten werden erst unten geprueft
+          if (this.dynamic.contains(consumer) || matches(consumer,type))
+            list.add(consumer);
+        }
+        candidates = list.toArray(new MessageConsumer[list.size()]);
+        this.dispatch.put(type,candidates);
+      }
+
+      if (this.dynamic.isEmpty())
+        return candidates;
+
+      // Consumer, deren Nachrichtenarten sich aendern koennen, bei jeder Nachricht neu pruefen
+      List<MessageConsumer> result = new ArrayList<MessageConsumer>(candidates.length);
+      for (MessageConsumer consumer:candidates)
+      {
+        if (!this.dynamic.contains(consumer) || matches(consumer,type))
+          result.add(consumer);
+      }
+      return result.toArray(new MessageConsumer[result.size()]);
+    }
+
+    /**
+     * Prueft, ob der Consumer Nachrichten der angegebenen Klasse erwartet.
+     * @param consumer der Consumer.
+     * @param type die konkrete Klasse der Nachricht.
+     * @return true, wenn der Consumer die Nachricht erwartet.
+     */
+    private static boolean matches(MessageConsumer consumer, Class type)
+    {
+      Class[] expected = consumer.getExpectedMessageTypes();
+      if (expected == null)
+        return true;
+
+      for (Class c:expected)
+      {
+        if (c != null && c.isAssignableFrom(type))
+          return true;
+      }
+      return false;
+    }
+  }
+}
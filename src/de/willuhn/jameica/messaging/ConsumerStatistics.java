@@ -0,0 +1,80 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistik zu einem Message-Consumer innerhalb einer Queue.
+ */
+public final class ConsumerStatistics
+{
+  private final String name;
+  private final Histogram time = new Histogram();
+  private final LongAdder errors = new LongAdder();
+
+  /**
+   * ct.
+   * @param name Name des Consumers.
+   */
+  ConsumerStatistics(String name)
+  {
+    this.name = name;
+  }
+
+  /**
+   * Liefert den Namen des Consumers.
+   * @return Name des Consumers.
+   */
+  public String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * Liefert die Verarbeitungszeiten des Consumers.
+   * Jeder Aufruf von handleMessage bzw. handleMessages zaehlt als ein Messwert.
+   * @return die Verarbeitungszeiten.
+   */
+  public Histogram getTime()
+  {
+    return this.time;
+  }
+
+  /**
+   * Liefert die Anzahl der Aufrufe, die mit einem Fehler endeten.
+   * @return Anzahl der Fehler.
+   */
+  public long getErrors()
+  {
+    return this.errors.sum();
+  }
+
+  /**
+   * Erfasst einen Aufruf des Consumers.
+   * @param nanos Dauer des Aufrufs in Nanosekunden.
+   * @param error true, wenn der Aufruf mit einem Fehler endete.
+   */
+  void record(long nanos, boolean error)
+  {
+    this.time.record(nanos);
+    if (error)
+      this.errors.increment();
+  }
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  public String toString()
+  {
+    return this.name + " [" + this.time + ", errors: " + this.getErrors() + "]";
+  }
+}
@@ -15,7 +15,7 @@ import java.io.File;
 /**
  * Wird gesendet, wenn sich im System eine Programm-Datei geaendert hat.
  */
-public class FileChangedMessage implements Message
+public class FileChangedMessage implements PrioritizedMessage
 {
   private File file = null;
   
@@ -36,6 +36,15 @@ public class FileChangedMessage implements Message
   {
     return this.file;
   }
+
+  /**
+   * Aenderungen an Dateien treten oft gehaeuft auf. Sie sollen andere Nachrichten nicht ausbremsen.
+   * @see de.willuhn.jameica.messaging.PrioritizedMessage#getPriority()
+   */
+  public int getPriority()
+  {
+    return PRIORITY_LOW;
+  }
 }
 
 
@@ -0,0 +1,106 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Einfaches, thread-sicheres Histogramm fuer Zeitmessungen.
+ * Die Werte werden in Buckets mit Zweierpotenzen von Mikrosekunden
+ * einsortiert. Perzentile sind daher nur Naeherungswerte.
+ */
+public final class Histogram
+{
+  private final static int BUCKETS = 40;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count        = new LongAdder();
+  private final LongAdder sum          = new LongAdder();
+  private final AtomicLong max          = new AtomicLong();
+
+  /**
+   * Erfasst einen Messwert.
+   * @param nanos der Messwert in Nanosekunden.
+   */
+  void record(long nanos)
+  {
+    long micros = Math.max(0L,nanos / 1000L);
+    int bucket = Math.min(BUCKETS - 1,64 - Long.numberOfLeadingZeros(micros));
+    this.buckets.incrementAndGet(bucket);
+    this.count.increment();
+    this.sum.add(micros);
+    
+    long current = this.max.get();
+    while (micros > current && !this.max.compareAndSet(current,micros))
+      current = this.max.get();
+  }
+  
+  /**
+   * Liefert die Anzahl der Messwerte.
+   * @return Anzahl der Messwerte.
+   */
+  public long getCount()
+  {
+    return this.count.sum();
+  }
+  
+  /**
+   * Liefert den Durchschnitt der Messwerte.
+   * @return Durchschnitt in Millisekunden.
+   */
+  public double getAverage()
+  {
+    long c = this.count.sum();
+    return c == 0 ? 0d : (this.sum.sum() / (double) c) / 1000d;
+  }
+  
+  /**
+   * Liefert den groessten Messwert.
+   * @return groesster Messwert in Millisekunden.
+   */
+  public double getMax()
+  {
+    return this.max.get() / 1000d;
+  }
+  
+  /**
+   * Liefert einen Naeherungswert fuer das angegebene Perzentil.
+   * @param percentile das Perzentil zwischen 0 und 100.
+   * @return Obergrenze des Buckets, in dem das Perzentil liegt, in Millisekunden.
+   */
+  public double getPercentile(double percentile)
+  {
+    long c = this.count.sum();
+    if (c == 0)
+      return 0d;
+    
+    long limit = (long) Math.ceil(c * Math.min(100d,Math.max(0d,percentile)) / 100d);
+    // Der letzte Bucket ist nach oben offen, dort zaehlt das Maximum
+    long seen = 0;
+    for (int i=0;i<BUCKETS - 1;++i)
+    {
+      seen += this.buckets.get(i);
+      if (seen >= limit)
+        return Math.min(this.getMax(),(1L << i) / 1000d);
+    }
+    return this.getMax();
+  }
+  
+  /**
+   * @see java.lang.Object#toString()
+   */
+  public String toString()
+  {
+    return String.format("count: %d, avg: %.2f ms, 95%%: %.2f ms, max: %.2f ms",this.getCount(),this.getAverage(),this.getPercentile(95d),this.getMax());
+  }
+}
@@ -10,8 +10,11 @@
 
 package de.willuhn.jameica.messaging;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -142,6 +145,9 @@ public class ManifestMessageConsumer implements MessageConsumer
     list.addAll(Application.getPluginLoader().getInstalledManifests()); // die Plugins
     list.add(Application.getManifest()); // Jameica selbst
     
+    // Wir sammeln die Messages pro Queue und senden sie gemeinsam
+    Map<String,List<Message>> outbox = new LinkedHashMap<String,List<Message>>();
+    
     int count = 0;
     for (Manifest mf:list)
     {
@@ -162,9 +168,21 @@ public class ManifestMessageConsumer implements MessageConsumer
           Logger.warn("skipping message in manifest from " + mf.getName() + ", contains no data");
           continue;
         }
-        factory.getMessagingQueue(queue).sendMessage(new QueryMessage(data));
+        List<Message> l = outbox.get(queue);
+        if (l == null)
+        {
+          l = new ArrayList<Message>();
+          outbox.put(queue,l);
+        }
+        l.add(new QueryMessage(data));
+        count++;
       }
     }
+    
+    for (Map.Entry<String,List<Message>> e:outbox.entrySet())
+    {
+      factory.getMessagingQueue(e.getKey()).sendMessages(e.getValue());
+    }
     Logger.info("messages from manifests: " + count);
   }
 
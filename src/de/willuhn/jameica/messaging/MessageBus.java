@@ -10,6 +10,11 @@
 
 package de.willuhn.jameica.messaging;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.apache.commons.lang.StringUtils;
 
 import de.willuhn.jameica.system.Application;
@@ -40,6 +45,19 @@ public class MessageBus
     getQueue(queue).sendSyncMessage(new QueryMessage(data));
   }
   
+  /**
+   * Sendet eine QueryMessage mit den angegebenen Nutzdaten als Anfrage asynchron an die Queue.
+   * @param queue die Queue.
+   * @param data die Nutzdaten.
+   * @param timeout maximale Wartezeit in Millisekunden. Bei 0 wird ohne Limit gewartet.
+   * @return Future mit der Antwort, also den Nutzdaten nach der Zustellung.
+   * @see MessagingQueue#request(Message, long)
+   */
+  public static CompletableFuture<Object> request(String queue, Object data, long timeout)
+  {
+    return getQueue(queue).request(new QueryMessage(data),timeout);
+  }
+  
   /**
    * Queued eine QueryMessage mit den angegebenen Nutzdaten asynchron an die Queue.
    * Die Message bleibt solange in der Queue, bis ein Consumer vorhanden ist.
@@ -51,6 +69,45 @@ public class MessageBus
     getQueue(queue).queueMessage(new QueryMessage(data));
   }
   
+  /**
+   * Sendet fuer jeden der angegebenen Nutzdaten eine QueryMessage. Die Nachrichten
+   * werden gemeinsam als ein Block asynchron an die Queue gesendet.
+   * @param queue die Queue.
+   * @param data Liste der Nutzdaten.
+   */
+  public static void sendMessages(String queue, Collection<?> data)
+  {
+    getQueue(queue).sendMessages(toMessages(data));
+  }
+  
+  /**
+   * Queued fuer jeden der angegebenen Nutzdaten eine QueryMessage. Die Nachrichten
+   * bleiben solange in der Queue, bis ein Consumer vorhanden ist und werden dann
+   * gemeinsam als ein Block zugestellt.
+   * @param queue die Queue.
+   * @param data Liste der Nutzdaten.
+   */
+  public static void queueMessages(String queue, Collection<?> data)
+  {
+    getQueue(queue).queueMessages(toMessages(data));
+  }
+  
+  /**
+   * Erzeugt die QueryMessages fuer die Nutzdaten.
+   * @param data Liste der Nutzdaten.
+   * @return Liste der Messages.
+   */
+  private static List<Message> toMessages(Collection<?> data)
+  {
+    List<Message> result = new ArrayList<Message>();
+    if (data != null)
+    {
+      for (Object o:data)
+        result.add(new QueryMessage(o));
+    }
+    return result;
+  }
+  
   /**
    * Liefert die passende Queue.
    * @param queue der Queue-Name.
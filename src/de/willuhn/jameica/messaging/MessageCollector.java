@@ -52,6 +52,15 @@ public class MessageCollector implements MessageConsumer
     return types.toArray(new Class[this.types.size()]);
   }
 
+  /**
+   * @see de.willuhn.jameica.messaging.MessageConsumer#hasStaticMessageTypes()
+   */
+  public boolean hasStaticMessageTypes()
+  {
+    // Die Liste kann per collect(Class) noch erweitert werden
+    return false;
+  }
+
   /**
    * @see de.willuhn.jameica.messaging.MessageConsumer#handleMessage(de.willuhn.jameica.messaging.Message)
    */
@@ -27,6 +27,20 @@ public interface MessageConsumer
    * @return Liste der gewuenschten Nachrichtenarten.
    */
   public Class[] getExpectedMessageTypes();
+
+  /**
+   * Legt fest, ob sich die Liste der gewuenschten Nachrichtenarten nach dem
+   * Registrieren des Consumers nicht mehr aendert.
+   * Nur dann darf sich die Queue das Ergebnis von {@link #getExpectedMessageTypes()}
+   * pro Nachrichtenart merken. Andernfalls wird die Liste bei jeder Nachricht neu abgefragt.
+   * Consumer, deren Liste sich zur Laufzeit aendert, muessen die Funktion
+   * ueberschreiben und false liefern.
+   * @return true, wenn sich die Liste nicht mehr aendert. Per Default true.
+   */
+  public default boolean hasStaticMessageTypes()
+  {
+    return true;
+  }
   
   /**
    * Ueber diese Methode wird die Nachricht an den Verbraucher
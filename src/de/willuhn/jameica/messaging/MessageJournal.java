@@ -0,0 +1,375 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import de.willuhn.jameica.system.Application;
+import de.willuhn.jameica.util.JournalFile;
+import de.willuhn.logging.Logger;
+
+/**
+ * Journal einer Message-Queue auf der Festplatte.
+ * Speichert serialisierbare Nachrichten, die per {@link MessagingQueue#queueMessage(Message)}
+ * gesendet wurden und nicht mehr in den Zwischenspeicher der Queue passen. Die Datei
+ * bleibt auch ueber einen Neustart hinweg erhalten.
+ * Das Dateiformat ist das von {@link JournalFile}. Jeder Datensatz enthaelt die
+ * serialisierte Liste der Nachrichten.
+ *
+ * <p>Beim Zustellen wird das Journal in eine nummerierte Datei umbenannt. Neue Nachrichten
+ * landen damit wieder in einem leeren Journal. Die nummerierte Datei wird erst geloescht,
+ * nachdem alle ihre Nachrichten zugestellt wurden. Ist sie beim naechsten Start noch
+ * vorhanden, werden ihre Nachrichten erneut zugestellt.
+ * Eintraege, die sich nicht lesen lassen (z.Bsp. weil das Plugin mit der Klasse der
+ * Nachricht gerade nicht installiert ist), werden in eine separate Datei verschoben
+ * und beim naechsten Start erneut versucht.
+ */
+final class MessageJournal
+{
+  /**
+   * Versionsnummer des Dateiformats.
+   */
+  private final static int VERSION = 1;
+
+  /**
+   * Endung der Datei mit den nicht lesbaren Eintraegen.
+   */
+  private final static String UNREADABLE = ".unreadable";
+
+  /**
+   * Callback zum Zustellen der Eintraege.
+   */
+  static interface Receiver
+  {
+    /**
+     * Uebernimmt einen Eintrag zur Zustellung.
+     * @param messages die Nachrichten des Eintrages.
+     * @param delivered muss aufgerufen werden, nachdem die Nachrichten zugestellt wurden.
+     */
+    public void receive(List<Message> messages, Runnable delivered);
+  }
+
+  private final JournalFile file;
+  private final JournalFile unreadable;
+
+  // Nummerierte Dateien, die gerade zugestellt werden
+  private final Set<File> delivering = new HashSet<File>();
+  private long sequence = 0L;
+  private int size = 0;
+
+  /**
+   * ct.
+   * @param file die Datei des Journals.
+   */
+  MessageJournal(File file)
+  {
+    this.file       = new JournalFile(file,VERSION);
+    this.unreadable = new JournalFile(new File(file.getPath() + UNREADABLE),VERSION);
+
+    for (File f:this.getPending().values())
+    {
+      this.size += count(new JournalFile(f,VERSION));
+    }
+
+    // Nicht lesbare Eintraege beim Start nochmal versuchen
+    if (this.unreadable.getFile().exists())
+    {
+      int unreadable = count(this.unreadable);
+      if (unreadable > 0 && this.unreadable.getFile().renameTo(this.next()))
+      {
+        Logger.info("retrying " + unreadable + " unreadable journal entries of " + file);
+        this.size += unreadable;
+      }
+    }
+
+    this.size += count(this.file);
+    if (this.size > 0)
+      Logger.info("found " + this.size + " journaled message(s) in " + file);
+  }
+
+  /**
+   * Haengt die Nachrichten an das Journal an.
+   * @param messages die Nachrichten.
+   * @return true, wenn die Nachrichten gespeichert wurden. False, wenn sie nicht serialisierbar sind
+   * oder nicht gespeichert werden konnten.
+   */
+  synchronized boolean append(List<Message> messages)
+  {
+    for (Message m:messages)
+    {
+      if (!(m instanceof Serializable))
+        return false;
+    }
+
+    byte[] data = null;
+    try
+    {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      ObjectOutputStream os = new ObjectOutputStream(bos);
+      os.writeObject(new ArrayList<Message>(messages));
+      os.close();
+      data = bos.toByteArray();
+    }
+    catch (IOException e)
+    {
+      // Z.Bsp. nicht serialisierbare Nutzdaten in einer QueryMessage
+      Logger.debug("message not serializable, unable to journal: " + e);
+      return false;
+    }
+
+    try
+    {
+      this.file.append(data);
+      this.size++;
+      return true;
+    }
+    catch (IOException e)
+    {
+      Logger.error("unable to write journal " + this.file.getFile(),e);
+      return false;
+    }
+  }
+
+  /**
+   * Uebergibt alle Eintraege des Journals in der Reihenfolge, in der sie gespeichert
+   * wurden, an den Receiver. Die Eintraege werden erst geloescht, nachdem der Receiver
+   * ihre Zustellung gemeldet hat.
+   * @param receiver der Receiver.
+   */
+  synchronized void drain(Receiver receiver)
+  {
+    if (this.file.getFile().exists() && !this.file.getFile().renameTo(this.next()))
+      Logger.error("unable to rename journal " + this.file.getFile() + ", skipping delivery");
+
+    for (File f:this.getPending().values())
+    {
+      if (this.delivering.contains(f))
+        continue;
+      this.drain(f,receiver);
+    }
+    this.size = this.count();
+  }
+
+  /**
+   * Uebergibt die Eintraege einer nummerierten Datei an den Receiver.
+   * @param f die Datei.
+   * @param receiver der Receiver.
+   */
+  private void drain(final File f, Receiver receiver)
+  {
+    final List<List<Message>> list = new ArrayList<List<Message>>();
+    try
+    {
+      new JournalFile(f,VERSION).read(new JournalFile.Reader() {
+        /**
+         * @see de.willuhn.jameica.util.JournalFile.Reader#read(byte[])
+         */
+        public void read(byte[] record) throws Exception
+        {
+          try
+          {
+            list.add(deserialize(record));
+          }
+          catch (Exception e)
+          {
+            Logger.warn("moving unreadable journal entry of " + f + " to " + unreadable.getFile() + ": " + e);
+            unreadable.append(record);
+          }
+        }
+      });
+    }
+    catch (Exception e)
+    {
+      // Die Datei bleibt erhalten und wird beim naechsten Start erneut gelesen
+      Logger.error("unable to read journal " + f,e);
+      return;
+    }
+
+    if (list.size() == 0)
+    {
+      delete(f);
+      return;
+    }
+
+    this.delivering.add(f);
+    final int[] open = new int[]{list.size()};
+    Runnable delivered = new Runnable() {
+      /**
+       * @see java.lang.Runnable#run()
+       */
+      public void run()
+      {
+        synchronized (MessageJournal.this)
+        {
+          if (--open[0] > 0)
+            return;
+          delivering.remove(f);
+          delete(f);
+        }
+      }
+    };
+    for (List<Message> messages:list)
+    {
+      receiver.receive(messages,delivered);
+    }
+  }
+
+  /**
+   * Liefert die Anzahl der noch nicht zugestellten Eintraege.
+   * @return Anzahl der Eintraege.
+   */
+  synchronized int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * Zaehlt die Eintraege, die noch nicht zur Zustellung uebergeben wurden.
+   * @return Anzahl der Eintraege.
+   */
+  private int count()
+  {
+    int count = count(this.file);
+    for (File f:this.getPending().values())
+    {
+      if (!this.delivering.contains(f))
+        count += count(new JournalFile(f,VERSION));
+    }
+    return count;
+  }
+
+  /**
+   * Liefert die nummerierten Dateien sortiert nach ihrer Nummer.
+   * @return die nummerierten Dateien.
+   */
+  private TreeMap<Long,File> getPending()
+  {
+    TreeMap<Long,File> result = new TreeMap<Long,File>();
+    File dir = this.file.getFile().getAbsoluteFile().getParentFile();
+    String prefix = this.file.getFile().getName() + ".";
+    File[] files = dir != null ? dir.listFiles() : null;
+    if (files == null)
+      return result;
+
+    for (File f:files)
+    {
+      String name = f.getName();
+      if (!name.startsWith(prefix))
+        continue;
+      try
+      {
+        long n = Long.parseLong(name.substring(prefix.length()));
+        result.put(n,f);
+        this.sequence = Math.max(this.sequence,n);
+      }
+      catch (NumberFormatException e)
+      {
+        // keine nummerierte Datei
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Liefert die naechste nummerierte Datei.
+   * @return die naechste nummerierte Datei.
+   */
+  private File next()
+  {
+    this.getPending();
+    return new File(this.file.getFile().getPath() + "." + (++this.sequence));
+  }
+
+  /**
+   * Zaehlt die Eintraege in einer Datei.
+   * @param file die Datei.
+   * @return Anzahl der Eintraege.
+   */
+  private static int count(JournalFile file)
+  {
+    try
+    {
+      return file.read(new JournalFile.Reader() {
+        /**
+         * @see de.willuhn.jameica.util.JournalFile.Reader#read(byte[])
+         */
+        public void read(byte[] record) throws Exception
+        {
+        }
+      });
+    }
+    catch (Exception e)
+    {
+      Logger.error("unable to read journal " + file.getFile(),e);
+      return 0;
+    }
+  }
+
+  /**
+   * Loescht die Datei.
+   * @param f die Datei.
+   */
+  private static void delete(File f)
+  {
+    if (f.exists() && !f.delete())
+      Logger.warn("unable to delete journal " + f);
+  }
+
+  /**
+   * Deserialisiert einen Eintrag.
+   * Die Klassen werden ueber den Classloader von Jameica geladen, damit
+   * auch Nachrichten aus Plugins gelesen werden koennen.
+   * @param data die Daten.
+   * @return die Nachrichten.
+   * @throws Exception
+   */
+  private static List<Message> deserialize(byte[] data) throws Exception
+  {
+    InputStream bis = new ByteArrayInputStream(data);
+    ObjectInputStream is = new ObjectInputStream(bis) {
+      /**
+       * @see java.io.ObjectInputStream#resolveClass(java.io.ObjectStreamClass)
+       */
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+      {
+        try
+        {
+          return Class.forName(desc.getName(),false,Application.getClassLoader());
+        }
+        catch (ClassNotFoundException e)
+        {
+          return super.resolveClass(desc);
+        }
+      }
+    };
+    try
+    {
+      return (List<Message>) is.readObject();
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+}
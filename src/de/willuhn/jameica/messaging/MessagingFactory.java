@@ -9,9 +9,20 @@
  **********************************************************************/
 package de.willuhn.jameica.messaging;
 
-import java.util.HashMap;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.willuhn.jameica.system.Application;
+import de.willuhn.jameica.system.Settings;
 import de.willuhn.logging.Logger;
 
 /**
@@ -25,7 +36,8 @@ public final class MessagingFactory implements MessagingQueue
 {
   private static MessagingFactory singleton        = null;
     private MessagingQueue defaultQueue            = null;
-    private HashMap<String, MessagingQueue> queues = null;
+    private Map<String, MessagingQueue> queues     = null;
+    private Settings settings                      = null;
 
   /**
    * Privater Konstruktor.
@@ -33,8 +45,52 @@ public final class MessagingFactory implements MessagingQueue
    */
   private MessagingFactory()
   {
-    this.defaultQueue = new NamedConcurrentQueue("[default]");
-    this.queues       = new HashMap<String, MessagingQueue>();
+    this.settings = new Settings(MessagingFactory.class);
+    this.settings.setStoreWhenRead(false);
+
+    this.defaultQueue = this.createQueue("[default]",null);
+    this.queues       = new ConcurrentHashMap<String, MessagingQueue>();
+  }
+  
+  /**
+   * Erzeugt eine neue Queue und registriert im Server-Mode deren Statistik per JMX.
+   * @param name Name der Queue.
+   * @param options die vom Aufrufer angegebenen Optionen. Optional.
+   * @return die neue Queue.
+   */
+  private NamedConcurrentQueue createQueue(String name, QueueOptions options)
+  {
+    NamedConcurrentQueue queue = new NamedConcurrentQueue(name,this.getOptions(name,options));
+    
+    try
+    {
+      if (Application.inServerMode())
+      {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName on = new ObjectName("de.willuhn.jameica:type=MessagingQueue,name=" + ObjectName.quote(name));
+        if (!server.isRegistered(on))
+          server.registerMBean(queue.getStatistics(),on);
+      }
+    }
+    catch (Exception e)
+    {
+      Logger.warn("unable to register statistics of queue " + name + " via jmx: " + e.getMessage());
+    }
+    return queue;
+  }
+  
+  /**
+   * Liefert die Optionen fuer die Queue inclusive der vom Benutzer
+   * in den Settings hinterlegten Werte.
+   * @param name Name der Queue.
+   * @param options die vom Aufrufer angegebenen Optionen. Optional.
+   * @return die Optionen fuer die Queue.
+   */
+  private QueueOptions getOptions(String name, QueueOptions options)
+  {
+    if (options == null)
+      options = new QueueOptions();
+    return options.merge(this.settings,name);
   }
   
   /**
@@ -66,14 +122,54 @@ public final class MessagingFactory implements MessagingQueue
    * @return die neue Queue.
    */
   public MessagingQueue getMessagingQueue(String name)
+  {
+    return this.getMessagingQueue(name,null);
+  }
+  
+  /**
+   * Liefert eine neue Message-Queue mit dem angegebenen Namen.
+   * Existiert sie noch nicht, wird sie mit den angegebenen Optionen erstellt.
+   * Existiert sie bereits, werden die Optionen ignoriert.
+   * Vom Benutzer in den Settings hinterlegte Optionen haben Vorrang.
+   * @param name Name der Queue.
+   * @param options Optionen fuer die Zustellung. Ohne Angabe nutzt die Queue
+   * den gemeinsamen Thread-Pool.
+   * @return die neue Queue.
+   */
+  public MessagingQueue getMessagingQueue(String name, QueueOptions options)
   {
     MessagingQueue queue = queues.get(name);
-    if (queue == null)
+    if (queue != null)
+      return queue;
+    
+    synchronized (this.queues)
     {
-      queue = new NamedConcurrentQueue(name);
-      queues.put(name,queue);
+      queue = queues.get(name);
+      if (queue == null)
+      {
+        queue = this.createQueue(name,options);
+        queues.put(name,queue);
+      }
+      return queue;
     }
-    return queue;
+  }
+  
+  /**
+   * Liefert die Statistiken aller Queues seit dem Start.
+   * Die Default-Queue steht an erster Stelle.
+   * @return Liste der Statistiken.
+   */
+  public List<QueueStatistics> getStatistics()
+  {
+    List<QueueStatistics> result = new ArrayList<QueueStatistics>();
+    if (this.defaultQueue instanceof NamedConcurrentQueue)
+      result.add(((NamedConcurrentQueue) this.defaultQueue).getStatistics());
+    for (MessagingQueue q:this.queues.values())
+    {
+      if (q instanceof NamedConcurrentQueue)
+        result.add(((NamedConcurrentQueue) q).getStatistics());
+    }
+    return result;
   }
   
   /**
@@ -122,6 +218,14 @@ public final class MessagingFactory implements MessagingQueue
     this.defaultQueue.sendMessage(message);
   }
   
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#sendMessages(java.util.Collection)
+   */
+  public void sendMessages(Collection<? extends Message> messages)
+  {
+    this.defaultQueue.sendMessages(messages);
+  }
+  
   /**
    * @see de.willuhn.jameica.messaging.MessagingQueue#sendSyncMessage(de.willuhn.jameica.messaging.Message)
    */
@@ -130,6 +234,30 @@ public final class MessagingFactory implements MessagingQueue
     this.defaultQueue.sendSyncMessage(message);
   }
   
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#request(de.willuhn.jameica.messaging.Message)
+   */
+  public CompletableFuture<Object> request(Message message)
+  {
+    return this.defaultQueue.request(message);
+  }
+  
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#request(de.willuhn.jameica.messaging.Message, long)
+   */
+  public CompletableFuture<Object> request(Message message, long timeout)
+  {
+    return this.defaultQueue.request(message,timeout);
+  }
+  
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#requestAll(de.willuhn.jameica.messaging.Message, long)
+   */
+  public CompletableFuture<List<Object>> requestAll(Message message, long timeout)
+  {
+    return this.defaultQueue.requestAll(message,timeout);
+  }
+  
   /**
    * @see de.willuhn.jameica.messaging.MessagingQueue#queueMessage(de.willuhn.jameica.messaging.Message)
    */
@@ -138,24 +266,57 @@ public final class MessagingFactory implements MessagingQueue
     this.defaultQueue.queueMessage(message);
   }
 
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#queueMessages(java.util.Collection)
+   */
+  public void queueMessages(Collection<? extends Message> messages)
+  {
+    this.defaultQueue.queueMessages(messages);
+  }
+
   /**
    * @see de.willuhn.jameica.messaging.MessagingQueue#flush()
    */
   public void flush()
   {
+    this.flush(0L);
+  }
+
+  /**
+   * Sendet die noch offenen Nachrichten aller Queues.
+   * Der Timeout gilt fuer alle Queues zusammen.
+   * @see de.willuhn.jameica.messaging.MessagingQueue#flush(long)
+   */
+  public boolean flush(long timeout)
+  {
+    long until = timeout > 0 ? System.currentTimeMillis() + timeout : 0L;
+    boolean result = true;
     try
     {
       Iterator<String> it = this.queues.keySet().iterator();
       while (it.hasNext())
       {
         MessagingQueue q = this.queues.get(it.next());
-        q.flush();
+        result &= q.flush(remaining(until));
       }
     }
     finally
     {
-      this.defaultQueue.flush();
+      result &= this.defaultQueue.flush(remaining(until));
     }
+    return result;
+  }
+  
+  /**
+   * Liefert die verbleibende Wartezeit bis zum angegebenen Zeitpunkt.
+   * @param until Zeitpunkt in Millisekunden oder 0, wenn ohne Limit gewartet wird.
+   * @return die verbleibende Wartezeit, mindestens jedoch 1 ms - oder 0, wenn ohne Limit gewartet wird.
+   */
+  private static long remaining(long until)
+  {
+    if (until == 0)
+      return 0L;
+    return Math.max(1L,until - System.currentTimeMillis());
   }
 }
 
@@ -10,6 +10,10 @@
 
 package de.willuhn.jameica.messaging;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -25,12 +29,114 @@ public interface MessagingQueue
    */
   public void sendMessage(Message message);
   
+  /**
+   * Sendet mehrere Nachrichten gemeinsam asynchron an alle Nachrichtenverbraucher der Queue.
+   * Die Nachrichten werden als ein Block zugestellt. Jeder Verbraucher erhaelt sie in der
+   * Reihenfolge der Collection. Verbraucher, die {@link BatchMessageConsumer} implementieren,
+   * erhalten sie in einem einzigen Aufruf.
+   * <p>Die Default-Implementierung sendet die Nachrichten einzeln per {@link #sendMessage(Message)}.
+   * @param messages die zu versendenden Nachrichten.
+   */
+  public default void sendMessages(Collection<? extends Message> messages)
+  {
+    if (messages == null)
+      return;
+    for (Message m:messages)
+    {
+      this.sendMessage(m);
+    }
+  }
+  
   /**
    * Sendet eine Nachricht <b>synchron</b> an alle Nachrichtenverbraucher der Queue.
    * @param message die zu versendende Nachricht.
    */
   public void sendSyncMessage(Message message);
   
+  /**
+   * Sendet eine Anfrage asynchron an alle Nachrichtenverbraucher der Queue.
+   * Die Verbraucher erhalten die Nachricht wie bei {@link #sendSyncMessage(Message)}
+   * nacheinander, jedoch nicht im Thread des Aufrufers.
+   * Das Future wird abgeschlossen, nachdem alle Verbraucher die Nachricht erhalten haben.
+   * Bei einer {@link QueryMessage} enthaelt es anschliessend deren Nutzdaten, also die
+   * Antwort der Verbraucher, bei anderen Nachrichten NULL. Wirft ein Verbraucher eine
+   * Exception, wird das Future mit dieser abgeschlossen.
+   * Auf das Ergebnis darf nicht innerhalb der Zustellung einer Nachricht der selben Queue
+   * gewartet werden, da die Anfrage sonst ggf. nie zugestellt wird.
+   * <p>Die Default-Implementierung stellt die Anfrage per {@link #sendSyncMessage(Message)}
+   * im Thread des Aufrufers zu. Das Future ist daher bereits abgeschlossen.
+   * @param message die Anfrage.
+   * @return Future mit der Antwort.
+   */
+  public default CompletableFuture<Object> request(Message message)
+  {
+    return this.request(message,0L);
+  }
+  
+  /**
+   * Sendet eine Anfrage wie {@link #request(Message)}, liefert jedoch hoechstens bis
+   * zum Ablauf des Timeouts eine Antwort. Danach wird das Future mit einer
+   * {@link java.util.concurrent.TimeoutException} abgeschlossen.
+   * <p>Die Default-Implementierung stellt die Anfrage synchron zu und ignoriert den Timeout.
+   * @param message die Anfrage.
+   * @param timeout maximale Wartezeit in Millisekunden. Bei 0 wird ohne Limit gewartet.
+   * @return Future mit der Antwort.
+   */
+  public default CompletableFuture<Object> request(Message message, long timeout)
+  {
+    try
+    {
+      this.sendSyncMessage(message);
+      return CompletableFuture.completedFuture((message instanceof QueryMessage) ? ((QueryMessage) message).getData() : null);
+    }
+    catch (RuntimeException e)
+    {
+      CompletableFuture<Object> result = new CompletableFuture<Object>();
+      result.completeExceptionally(e);
+      return result;
+    }
+  }
+  
+  /**
+   * Sendet eine Anfrage asynchron an alle Nachrichtenverbraucher der Queue und sammelt
+   * deren Antworten. Bei einer {@link QueryMessage} erhaelt jeder Verbraucher die
+   * urspruenglichen Nutzdaten. Hat er sie anschliessend durch eine Antwort ersetzt, wird
+   * diese in die Liste aufgenommen. Verbraucher, die nicht antworten oder eine Exception
+   * werfen, werden uebergangen. Bei anderen Nachrichten ist die Liste stets leer.
+   * <p>Die Default-Implementierung stellt die Anfrage synchron zu und ignoriert den Timeout.
+   * Da sie die einzelnen Verbraucher nicht kennt, enthaelt die Liste hoechstens die
+   * letzte Antwort. Wirft die Zustellung eine Exception, wird das Future wie bei
+   * {@link #request(Message, long)} mit dieser abgeschlossen.
+   * @param message die Anfrage.
+   * @param timeout maximale Wartezeit in Millisekunden. Bei 0 wird ohne Limit gewartet.
+   * Danach wird das Future mit einer {@link java.util.concurrent.TimeoutException} abgeschlossen.
+   * @return Future mit der Liste der Antworten in der Reihenfolge der Verbraucher.
+   */
+  public default CompletableFuture<List<Object>> requestAll(Message message, long timeout)
+  {
+    List<Object> result = new ArrayList<Object>();
+    QueryMessage q = (message instanceof QueryMessage) ? (QueryMessage) message : null;
+    Object request = q != null ? q.getData() : null;
+    try
+    {
+      this.sendSyncMessage(message);
+      if (q != null && q.getData() != request)
+        result.add(q.getData());
+      return CompletableFuture.completedFuture(result);
+    }
+    catch (RuntimeException e)
+    {
+      CompletableFuture<List<Object>> error = new CompletableFuture<List<Object>>();
+      error.completeExceptionally(e);
+      return error;
+    }
+    finally
+    {
+      if (q != null)
+        q.setData(request);
+    }
+  }
+  
   /**
    * Stellt eine Nachricht in die Queue. Dort bleibt sie solange, bis ein Consumer
    * dafuer vorhanden ist.
@@ -38,6 +144,23 @@ public interface MessagingQueue
    */
   public void queueMessage(Message message);
   
+  /**
+   * Stellt mehrere Nachrichten gemeinsam in die Queue. Dort bleiben sie solange, bis ein
+   * Consumer dafuer vorhanden ist. Anschliessend werden sie wie bei
+   * {@link #sendMessages(Collection)} als ein Block zugestellt.
+   * <p>Die Default-Implementierung stellt die Nachrichten einzeln per {@link #queueMessage(Message)} ein.
+   * @param messages die zu versendenden Nachrichten.
+   */
+  public default void queueMessages(Collection<? extends Message> messages)
+  {
+    if (messages == null)
+      return;
+    for (Message m:messages)
+    {
+      this.queueMessage(m);
+    }
+  }
+  
   /**
    * Liefert die aktuelle Anzahl noch zuzustellender Nachrichten.
    * @return aktuelle Queue-Groesse.
@@ -68,6 +191,21 @@ public interface MessagingQueue
    */
   public void flush();
 
+  /**
+   * Sendet alle noch offenen Nachrichten.
+   * Die Funktion kehrt zurueck, nachdem alle Nachrichten zugestellt
+   * wurden, spaetestens jedoch nach Ablauf des Timeouts.
+   * <p>Die Default-Implementierung ruft {@link #flush()} auf und ignoriert den Timeout.
+   * @param timeout maximale Wartezeit in Millisekunden. Bei 0 wird ohne Limit gewartet.
+   * @return true, wenn alle Nachrichten zugestellt wurden. false, wenn der Timeout
+   * abgelaufen ist, bevor alle Nachrichten zugestellt wurden.
+   */
+  public default boolean flush(long timeout)
+  {
+    this.flush();
+    return true;
+  }
+
 }
 
 
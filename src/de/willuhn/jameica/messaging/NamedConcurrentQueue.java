@@ -10,12 +10,34 @@
 
 package de.willuhn.jameica.messaging;
 
-import java.util.LinkedList;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+import de.willuhn.jameica.messaging.QueueOptions.OverflowPolicy;
 import de.willuhn.jameica.system.Application;
 import de.willuhn.jameica.system.OperationCanceledException;
 import de.willuhn.logging.Level;
@@ -24,50 +46,348 @@ import de.willuhn.util.ApplicationException;
 
 /**
  * Implementierung einer benamten Queue, die jedoch mittels ThreadPoolExecutor
- * multi-threaded arbeitet.
+ * multi-threaded arbeitet. Per {@link QueueOptions} kann die Queue einen eigenen
+ * Thread-Pool erhalten oder ihre Nachrichten strikt geordnet zustellen.
+ * Ohne geordnete Zustellung werden die Nachrichten nach ihrer Prioritaet
+ * zugestellt (siehe {@link PrioritizedMessage}).
  */
 public class NamedConcurrentQueue implements MessagingQueue
 {
-  private static LinkedBlockingQueue<Runnable> messages = null;
+  private static PriorityTaskQueue messages = null;
   private static ThreadPoolExecutor pool = null;
   
-  private LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>(500);
-  private List<MessageConsumer> consumers     = new LinkedList<MessageConsumer>();
+  // Zwischenspeicher fuer Nachrichten, die per queueMessage gesendet wurden, solange noch kein Consumer da ist
+  private LinkedBlockingQueue<List<Message>> queue = null;
+  private MessageJournal journal              = null;
+  private volatile boolean overflow           = false;
+  // Sperrt Zwischenspeicher und Journal gemeinsam, damit sich die Reihenfolge nicht aendert
+  private Object bufferLock                   = new Object();
+  private ConsumerRegistry consumers          = new ConsumerRegistry();
   private String name = null;
+  private QueueOptions options = null;
+  private QueueStatistics stats = null;
+
+  private ExecutorService dedicated    = null;
+  private Executor executor            = null;
+
+  // Anzahl der an den Executor uebergebenen, aber noch nicht abgeschlossenen Zustellungen
+  private AtomicInteger pending          = new AtomicInteger();
+  private volatile int flushing          = 0;
+  private Object flushLock               = new Object();
+  private ThreadLocal<Boolean> delivering = new ThreadLocal<Boolean>();
 
   /**
    * ct.
    * @param name der Name der Queue.
    */
   public NamedConcurrentQueue(String name)
+  {
+    this(name,null);
+  }
+  
+  /**
+   * ct.
+   * @param name der Name der Queue.
+   * @param options optionale Angaben zur Zustellung. Ohne Angabe verwendet
+   * die Queue den gemeinsamen Thread-Pool.
+   */
+  public NamedConcurrentQueue(String name, QueueOptions options)
   {
     this.name = name;
-    Logger.debug("creating message queue " + this.name);
+    this.options = options != null ? options.copy() : new QueueOptions();
+    this.stats = new QueueStatistics(name);
+    Logger.debug("creating message queue " + this.name + " [" + this.options + "]");
     this.init();
   }
   
   /**
-   * Initialisiert den Thread-Pool.
+   * Initialisiert den gemeinsamen Thread-Pool.
    */
-  private synchronized void init()
+  private static synchronized void initPool()
   {
     if (pool != null)
       return;
 
     Logger.info("creating thread pool");
-    messages = new LinkedBlockingQueue<Runnable>(2000);
+    messages = new PriorityTaskQueue(QueueOptions.DEFAULT_CAPACITY);
     
     // Der Thread-Pool ist so konfiguriert, dass die Messages im Main-Thread zugestellt
     // werden, wenn die Queue voll ist, damit dieser ausgebremst wird.
+    // Die Messages werden nach ihrer Prioritaet zugestellt, siehe PrioritizedMessage.
     pool = new ThreadPoolExecutor(1,5,10L,TimeUnit.SECONDS,messages,new ThreadPoolExecutor.CallerRunsPolicy());
   }
+  
+  /**
+   * Initialisiert den Executor der Queue.
+   */
+  private void init()
+  {
+    initPool();
+    
+    this.queue = new LinkedBlockingQueue<List<Message>>(this.options.getBufferSize());
+    if (this.options.getOverflowPolicy() == OverflowPolicy.JOURNAL)
+    {
+      try
+      {
+        String filename = this.name.replaceAll("[^A-Za-z0-9._-]","_") + ".journal";
+        this.journal = new MessageJournal(new File(Application.getConfig().getWorkDir() + File.separator + "messaging",filename));
+      }
+      catch (Exception e)
+      {
+        Logger.error("unable to create journal for queue " + this.name + ", falling back to " + OverflowPolicy.DROP_NEWEST,e);
+      }
+    }
+    
+    Executor target = pool;
+    
+    if (this.options.isVirtualThreads())
+    {
+      this.dedicated = createVirtualExecutor(this.name);
+      if (this.dedicated != null)
+      {
+        Logger.info("using virtual threads for queue " + this.name);
+        target = this.dedicated;
+      }
+      else
+      {
+        Logger.info("virtual threads not supported by java " + System.getProperty("java.version") + ", using platform threads for queue " + this.name);
+      }
+    }
+    
+    final int threads = this.options.getThreads();
+    if (this.dedicated == null && threads > 0)
+    {
+      Logger.info("creating thread pool with " + threads + " threads for queue " + this.name);
+      
+      // Bei geordneter Zustellung begrenzt bereits der SerialExecutor die Anzahl der Nachrichten
+      BlockingQueue<Runnable> q = this.options.isOrdered() ? new LinkedBlockingQueue<Runnable>() : new PriorityTaskQueue(this.options.getCapacity());
+      ThreadPoolExecutor tpe = new ThreadPoolExecutor(threads,threads,10L,TimeUnit.SECONDS,q,new ThreadFactory() {
+        private AtomicInteger count = new AtomicInteger();
+        
+        /**
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        public Thread newThread(Runnable r)
+        {
+          return new Thread(r,"Jameica Messaging Queue " + name + " #" + count.incrementAndGet());
+        }
+      },this.createRejectHandler());
+      tpe.allowCoreThreadTimeOut(true);
+      this.dedicated = tpe;
+      target = this.dedicated;
+    }
+    
+    this.executor = this.options.isOrdered() ? new SerialExecutor(target,this.name,this.options.getCapacity(),this.options.getRejectPolicy(),this.options.getPriority()) : target;
+  }
+  
+  /**
+   * Erzeugt einen Executor, der jeden Task in einem eigenen Virtual-Thread ausfuehrt.
+   * Da Jameica auch noch mit aelteren Java-Versionen laeuft, erfolgt der Zugriff per Reflection.
+   * @param name Name der Queue.
+   * @return der Executor oder NULL, wenn die Java-Version keine Virtual-Threads unterstuetzt.
+   */
+  private static ExecutorService createVirtualExecutor(String name)
+  {
+    try
+    {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class builderClass = Class.forName("java.lang.Thread$Builder");
+      builder = builderClass.getMethod("name",String.class,long.class).invoke(builder,"Jameica Messaging Queue " + name + " #",1L);
+      ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor",ThreadFactory.class).invoke(null,factory);
+    }
+    catch (Exception e)
+    {
+      Logger.debug("virtual threads not available: " + e);
+      return null;
+    }
+  }
+  
+  /**
+   * Erzeugt den Handler fuer volle Queues passend zu den Optionen.
+   * @return der Handler.
+   */
+  private RejectedExecutionHandler createRejectHandler()
+  {
+    switch (this.options.getRejectPolicy())
+    {
+      case DISCARD:
+        return new RejectedExecutionHandler() {
+          /**
+           * @see java.util.concurrent.RejectedExecutionHandler#rejectedExecution(java.lang.Runnable, java.util.concurrent.ThreadPoolExecutor)
+           */
+          public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+          {
+            if (!executor.isShutdown())
+              Logger.warn("queue " + name + " full, discarding message");
+            discard(r);
+          }
+        };
+        
+      case DISCARD_OLDEST:
+        return new RejectedExecutionHandler() {
+          /**
+           * @see java.util.concurrent.RejectedExecutionHandler#rejectedExecution(java.lang.Runnable, java.util.concurrent.ThreadPoolExecutor)
+           */
+          public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+          {
+            if (executor.isShutdown())
+            {
+              discard(r);
+              return;
+            }
+            Logger.warn("queue " + name + " full, discarding oldest message");
+            BlockingQueue<Runnable> q = executor.getQueue();
+            discard((q instanceof PriorityTaskQueue) ? ((PriorityTaskQueue) q).pollOldest() : q.poll());
+            executor.execute(r);
+          }
+        };
+        
+      default:
+        return new ThreadPoolExecutor.CallerRunsPolicy() {
+          /**
+           * @see java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy#rejectedExecution(java.lang.Runnable, java.util.concurrent.ThreadPoolExecutor)
+           */
+          public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+          {
+            if (executor.isShutdown())
+              discard(r);
+            else
+              super.rejectedExecution(r,executor);
+          }
+        };
+    }
+  }
+  
+  /**
+   * Markiert einen nicht ausgefuehrten Task als verworfen, damit
+   * {@link #flush()} nicht mehr auf ihn wartet.
+   * @param r der Task.
+   */
+  static void discard(Runnable r)
+  {
+    if (r instanceof Future)
+      ((Future) r).cancel(false);
+  }
+  
+  /**
+   * Prueft, ob der Thread-Pool der Queue bereits beendet wird.
+   * @return true, wenn der Thread-Pool beendet wird.
+   */
+  private boolean isShutdown()
+  {
+    ExecutorService p = this.dedicated != null ? this.dedicated : pool;
+    return p.isShutdown();
+  }
+  
+  /**
+   * Uebergibt die Zustellung an den Executor der Queue.
+   * @param message die zuzustellende Nachricht.
+   */
+  private void submit(Message message)
+  {
+    this.submit(Collections.singletonList(message));
+  }
+  
+  /**
+   * Uebergibt die Zustellung der Nachrichten als einen Task an den Executor der Queue.
+   * @param messages die zuzustellenden Nachrichten.
+   */
+  private void submit(List<Message> messages)
+  {
+    this.submit(messages,null);
+  }
 
+  /**
+   * Uebergibt die Nachrichten an den Executor der Queue.
+   * @param messages die Nachrichten.
+   * @param delivered optionaler Callback, der nach der Zustellung aufgerufen wird.
+   * Bei verworfenen Nachrichten wird er nicht aufgerufen.
+   */
+  private void submit(List<Message> messages, Runnable delivered)
+  {
+    Delivery d = new Delivery(messages,delivered);
+    try
+    {
+      this.executor.execute(d);
+    }
+    catch (RejectedExecutionException e)
+    {
+      Logger.warn("queue " + this.name + " rejected " + messages.size() + " message(s): " + e.getMessage());
+      discard(d);
+    }
+  }
+  
+  /**
+   * Uebergibt eine Anfrage an den Executor der Queue.
+   * @param message die Anfrage.
+   * @param task ermittelt die Antwort in der Zustellung.
+   * @return Future mit der Antwort.
+   */
+  private CompletableFuture<Object> submit(Message message, Callable<Object> task)
+  {
+    CompletableFuture<Object> result = new CompletableFuture<Object>();
+    if (message == null)
+    {
+      result.complete(null);
+      return result;
+    }
+    if (this.isShutdown())
+    {
+      result.cancel(false);
+      return result;
+    }
+    
+    this.stats.sent(1);
+    Delivery d = new Delivery(Collections.singletonList(message),task,result);
+    try
+    {
+      this.executor.execute(d);
+    }
+    catch (RejectedExecutionException e)
+    {
+      Logger.warn("queue " + this.name + " rejected request: " + e.getMessage());
+      discard(d);
+    }
+    return result;
+  }
+  
+  /**
+   * Begrenzt die Wartezeit auf das Future.
+   * @param future das Future.
+   * @param timeout maximale Wartezeit in Millisekunden. Bei 0 wird ohne Limit gewartet.
+   * @return das Future.
+   */
+  private static <T> CompletableFuture<T> timeout(CompletableFuture<T> future, long timeout)
+  {
+    return timeout > 0 ? future.orTimeout(timeout,TimeUnit.MILLISECONDS) : future;
+  }
+  
+  /**
+   * Kopiert die Nachrichten und entfernt dabei NULL-Werte.
+   * @param messages die Nachrichten.
+   * @return Liste der Nachrichten.
+   */
+  private static List<Message> copy(Collection<? extends Message> messages)
+  {
+    List<Message> result = new ArrayList<Message>(messages != null ? messages.size() : 0);
+    if (messages != null)
+    {
+      for (Message m:messages)
+      {
+        if (m != null)
+          result.add(m);
+      }
+    }
+    return result;
+  }
+  
   /**
    * @see de.willuhn.jameica.messaging.MessagingQueue#sendMessage(de.willuhn.jameica.messaging.Message)
    */
   public void sendMessage(final Message message)
   {
-    if (message == null || pool.isTerminating() || pool.isTerminated())
+    if (message == null || this.isShutdown())
       return;
 
     if (this.consumers.size() == 0)
@@ -77,13 +397,28 @@ public class NamedConcurrentQueue implements MessagingQueue
       return;
     }
 
-    pool.execute(new Runnable()
+    this.stats.sent(1);
+    this.submit(message);
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#sendMessages(java.util.Collection)
+   */
+  public void sendMessages(Collection<? extends Message> messages)
+  {
+    final List<Message> list = copy(messages);
+    if (list.size() == 0 || this.isShutdown())
+      return;
+
+    if (this.consumers.size() == 0)
     {
-      public void run()
-      {
-        deliver(message);
-      }
-    });
+      // Das ist bewusst Debug-Level weil das durchaus vorkommen kann.
+      Logger.debug("no message consumers found, ignoring messages");
+      return;
+    }
+
+    this.stats.sent(list.size());
+    this.submit(list);
   }
 
   /**
@@ -91,7 +426,7 @@ public class NamedConcurrentQueue implements MessagingQueue
    */
   public void sendSyncMessage(Message message)
   {
-    if (message == null || pool.isTerminating() || pool.isTerminated())
+    if (message == null || this.isShutdown())
       return;
 
     if (this.consumers.size() == 0)
@@ -101,15 +436,65 @@ public class NamedConcurrentQueue implements MessagingQueue
       return;
     }
     
+    this.stats.sent(1);
     deliver(message);
   }
 
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#request(de.willuhn.jameica.messaging.Message)
+   */
+  public CompletableFuture<Object> request(Message message)
+  {
+    return this.request(message,0L);
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#request(de.willuhn.jameica.messaging.Message, long)
+   */
+  public CompletableFuture<Object> request(final Message message, long timeout)
+  {
+    return timeout(this.submit(message,new Callable<Object>() {
+      /**
+       * @see java.util.concurrent.Callable#call()
+       */
+      public Object call() throws Exception
+      {
+        return answer(message);
+      }
+    }),timeout);
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#requestAll(de.willuhn.jameica.messaging.Message, long)
+   */
+  public CompletableFuture<List<Object>> requestAll(final Message message, long timeout)
+  {
+    CompletableFuture<Object> result = this.submit(message,new Callable<Object>() {
+      /**
+       * @see java.util.concurrent.Callable#call()
+       */
+      public Object call() throws Exception
+      {
+        return collect(message);
+      }
+    });
+    return timeout(result.thenApply(new Function<Object,List<Object>>() {
+      /**
+       * @see java.util.function.Function#apply(java.lang.Object)
+       */
+      public List<Object> apply(Object o)
+      {
+        return o != null ? (List<Object>) o : new ArrayList<Object>();
+      }
+    }),timeout);
+  }
+
   /**
    * @see de.willuhn.jameica.messaging.MessagingQueue#queueMessage(de.willuhn.jameica.messaging.Message)
    */
   public void queueMessage(final Message message)
   {
-    if (message == null || pool.isTerminating() || pool.isTerminated())
+    if (message == null || this.isShutdown())
       return;
     
     // wir koennen direkt zustellen
@@ -120,25 +505,181 @@ public class NamedConcurrentQueue implements MessagingQueue
     }
 
     // Ansonsten queuen
-    boolean added = this.queue.offer(new Runnable()
+    this.buffer(Collections.singletonList(message));
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#queueMessages(java.util.Collection)
+   */
+  public void queueMessages(Collection<? extends Message> messages)
+  {
+    final List<Message> list = copy(messages);
+    if (list.size() == 0 || this.isShutdown())
+      return;
+    
+    // wir koennen direkt zustellen
+    if (this.consumers.size() > 0)
+    {
+      this.stats.sent(list.size());
+      this.submit(list);
+      return;
+    }
+
+    // Ansonsten queuen - als Ganzes, damit die Nachrichten
+    // spaeter auch gemeinsam zugestellt werden.
+    this.buffer(list);
+  }
+  
+  /**
+   * Speichert die Nachrichten zwischen, bis ein Consumer registriert wird.
+   * @param messages die Nachrichten.
+   */
+  private void buffer(List<Message> messages)
+  {
+    if (this.offer(messages))
+      this.stats.queued(messages.size());
+    
+    // Wurde inzwischen ein Consumer registriert, wuerden die Nachrichten
+    // sonst bis zum naechsten Consumer liegen bleiben.
+    if (this.consumers.size() > 0)
+      this.drain();
+  }
+  
+  /**
+   * Uebernimmt die Nachrichten in den Zwischenspeicher. Ist dieser voll,
+   * wird gemaess {@link QueueOptions#getOverflowPolicy()} verfahren.
+   * @param messages die Nachrichten.
+   * @return true, wenn die Nachrichten uebernommen wurden.
+   */
+  private boolean offer(List<Message> messages)
+  {
+    switch (this.options.getOverflowPolicy())
+    {
+      case DROP_OLDEST:
+        while (!this.queue.offer(messages))
+        {
+          List<Message> oldest = this.queue.poll();
+          if (oldest != null)
+          {
+            this.overflow("discarding " + oldest.size() + " oldest message(s)");
+            this.stats.dropped(oldest.size());
+          }
+        }
+        return true;
+        
+      case BLOCK:
+        try
+        {
+          if (this.queue.offer(messages,QueueOptions.BLOCK_TIMEOUT,TimeUnit.MILLISECONDS))
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        break;
+        
+      case JOURNAL:
+        synchronized (this.bufferLock)
+        {
+          // Solange noch etwas im Journal steht, haengen wir dort an. Sonst wuerden
+          // neuere Nachrichten vor den aelteren aus dem Journal zugestellt.
+          if (this.journal != null && this.journal.size() > 0 && this.journal.append(messages))
+            return true;
+          if (this.queue.offer(messages))
+            return true;
+          if (this.journal != null && this.journal.append(messages))
+          {
+            this.overflow("writing " + messages.size() + " message(s) to journal");
+            return true;
+          }
+        }
+        break;
+        
+      default:
+        if (this.queue.offer(messages))
+          return true;
+    }
+    
+    this.overflow("discarding " + messages.size() + " new message(s)");
+    this.stats.dropped(messages.size());
+    return false;
+  }
+  
+  /**
+   * Protokolliert den Ueberlauf des Zwischenspeichers.
+   * Damit das Log nicht volllaeuft, nur einmal bis zur naechsten Leerung als Warnung.
+   * @param text Text der Meldung.
+   */
+  private void overflow(String text)
+  {
+    String msg = "queue " + this.name + " full (" + this.options.getBufferSize() + " entries), " + text;
+    if (this.overflow)
     {
-      public void run()
+      Logger.debug(msg);
+      return;
+    }
+    this.overflow = true;
+    Logger.warn(msg + " - further messages will be logged on debug level");
+  }
+  
+  /**
+   * Stellt die zwischengespeicherten Nachrichten zu.
+   */
+  private void drain()
+  {
+    synchronized (this.bufferLock)
+    {
+      // Erst der Zwischenspeicher, dann das Journal. Dort stehen die neueren Nachrichten
+      int size = this.queue.size();
+      if (size > 0)
       {
-        deliver(message);
+        Logger.info("delivering " + size + " queued messages to queue: " + this.name);
+        List<Message> messages = null;
+        while ((messages = this.queue.poll()) != null)
+        {
+          this.stats.sent(messages.size());
+          this.submit(messages);
+        }
       }
-    });
-    if (!added)
-      Logger.debug("queue " + this.name + " full");
+      
+      if (this.journal != null && this.journal.size() > 0)
+      {
+        Logger.info("delivering " + this.journal.size() + " journaled messages to queue: " + this.name);
+        this.journal.drain(new MessageJournal.Receiver() {
+          /**
+           * @see de.willuhn.jameica.messaging.MessageJournal.Receiver#receive(java.util.List, java.lang.Runnable)
+           */
+          public void receive(List<Message> messages, Runnable delivered)
+          {
+            stats.sent(messages.size());
+            submit(messages,delivered);
+          }
+        });
+      }
+      this.overflow = false;
+    }
   }
 
   /**
+   * Liefert die Anzahl der Nachrichten dieser Queue, die noch nicht zugestellt
+   * wurden. Enthalten sind auch die gerade in Zustellung befindlichen sowie die
+   * per {@link #queueMessage(Message)} zwischengespeicherten Nachrichten
+   * inclusive derer im Journal.
    * @see de.willuhn.jameica.messaging.MessagingQueue#getQueueSize()
    */
   public int getQueueSize()
   {
-    if (messages == null)
-      return 0;
-    return messages.size();
+    return this.pending.get() + this.queue.size() + (this.journal != null ? this.journal.size() : 0);
+  }
+
+  /**
+   * Liefert die Statistik der Queue.
+   * @return die Statistik der Queue.
+   */
+  public QueueStatistics getStatistics()
+  {
+    return this.stats;
   }
 
   /**
@@ -152,13 +693,8 @@ public class NamedConcurrentQueue implements MessagingQueue
     Logger.debug("queue " + this.name + ": registering message consumer " + consumer.getClass().getName());
     this.consumers.add(consumer);
 
-    // Wir haben mindestens eine zwischengespeicherte Message und wenigstens einen Consumer - wir koennen die Queue jetzt leeren
-    int size = this.queue.size();
-    if (size > 0)
-    {
-      Logger.info("delivering " + size + " queued messages to queue: " + this.name);
-      this.queue.drainTo(messages);
-    }
+    // Wir haben jetzt wenigstens einen Consumer - wir koennen die zwischengespeicherten Messages zustellen
+    this.drain();
   }
 
   /**
@@ -176,7 +712,8 @@ public class NamedConcurrentQueue implements MessagingQueue
     }
 
     Logger.debug("queue " + this.name + ": unregistering message consumer " + consumer.getClass().getName());
-    this.consumers.remove(consumer);
+    if (this.consumers.remove(consumer))
+      this.stats.remove(consumer);
   }
 
   /**
@@ -185,7 +722,10 @@ public class NamedConcurrentQueue implements MessagingQueue
   public synchronized void close()
   {
     Logger.debug("closing queue " + this.name);
-    pool.shutdown();
+    if (this.dedicated != null)
+      this.dedicated.shutdown();
+    else
+      pool.shutdown();
   }
 
   /**
@@ -193,28 +733,70 @@ public class NamedConcurrentQueue implements MessagingQueue
    */
   public void flush()
   {
-    if (pool.isTerminated())
-      return;
+    this.flush(0L);
+  }
 
-    try
+  /**
+   * Wartet, bis alle an den Executor uebergebenen Nachrichten dieser Queue
+   * zugestellt wurden. Nachrichten, die per {@link #queueMessage(Message)}
+   * noch auf einen Consumer warten, werden nicht beruecksichtigt.
+   * Wird die Funktion aus der Zustellung einer Nachricht dieser Queue heraus
+   * aufgerufen, kehrt sie sofort zurueck, da sie sonst auf sich selbst warten wuerde.
+   * @see de.willuhn.jameica.messaging.MessagingQueue#flush(long)
+   */
+  public boolean flush(long timeout)
+  {
+    if (this.isShutdown() || this.pending.get() == 0)
+      return true;
+
+    if (this.delivering.get() != null)
     {
-      while (messages != null && messages.size() > 0)
-        Thread.sleep(5);
+      Logger.debug("flush called while delivering a message of queue " + this.name + ", skipping");
+      return false;
     }
-    catch (Exception e)
+
+    long until = timeout > 0 ? System.currentTimeMillis() + timeout : 0L;
+    synchronized (this.flushLock)
     {
-      Logger.error("unable to flush queue",e);
+      this.flushing++;
+      try
+      {
+        while (this.pending.get() > 0 && !this.isShutdown())
+        {
+          long wait = 0L;
+          if (until > 0)
+          {
+            wait = until - System.currentTimeMillis();
+            if (wait <= 0)
+            {
+              Logger.debug("timeout while flushing queue " + this.name + ", still " + this.pending.get() + " messages pending");
+              return false;
+            }
+          }
+          this.flushLock.wait(wait);
+        }
+        return true;
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        Logger.warn("interrupted while flushing queue " + this.name);
+        return false;
+      }
+      finally
+      {
+        this.flushing--;
+      }
     }
   }
 
   /**
    * Stellt die Nachricht an alle Consumer zu.
-   * @param consumers die Message-Consumer.
-   * @param msg
+   * @param msg die Nachricht.
    */
   private void deliver(Message msg)
   {
-    if (pool.isTerminating() || pool.isTerminated())
+    if (this.isShutdown())
     {
       Logger.warn("shutdown in progress, no more messages accepted");
       return; // wir nehmen keine Nachrichten mehr entgegen.
@@ -225,45 +807,405 @@ public class NamedConcurrentQueue implements MessagingQueue
     // erhaelt die SYSTEM_STARTED-Message und registriert daraufhin neue Consumer. Unter anderem
     // den DeployMessageConsumer aus jameica.webadmin, der ebenfalls auf die SYSTEM_STARTED-Message
     // lauscht.
+    // Wir arbeiten zwar auf dem Dispatch-Index. Aendert sich jedoch waehrend der Zustellung
+    // die Consumer-Liste, ermitteln wir die passenden Consumer neu und stellen die Nachricht
+    // noch an die zu, die sie bisher nicht erhalten haben.
     Logger.debug("deliver message " + msg.toString());
-    MessageConsumer consumer = null;
-    for (int i=0;i<this.consumers.size();++i)
+    Class type = msg.getClass();
+    ConsumerRegistry.Snapshot current = this.consumers.snapshot();
+    MessageConsumer[] list = current.lookup(type);
+    Set<MessageConsumer> done = null;
+    int i = 0;
+    while (i < list.length)
     {
-      consumer = this.consumers.get(i);
-      Class[] expected = consumer.getExpectedMessageTypes();
-      boolean send = expected == null;
-      if (expected != null)
+      MessageConsumer consumer = list[i++];
+      if (done != null && !done.add(consumer))
+        continue; // hat die Nachricht schon erhalten
+      
+      this.deliver(consumer,msg);
+      
+      if (this.consumers.snapshot().getVersion() != current.getVersion())
       {
-        for (int j=0;j<expected.length;++j)
+        // Die Liste der Consumer hat sich geaendert. Wir merken uns die
+        // bisher bedienten und beginnen mit der neuen Liste von vorn
+        if (done == null)
         {
-          if (expected[j].isInstance(msg))
+          done = Collections.newSetFromMap(new IdentityHashMap<MessageConsumer,Boolean>());
+          for (int k=0;k<i;++k)
+            done.add(list[k]);
+        }
+        current = this.consumers.snapshot();
+        list = current.lookup(type);
+        i = 0;
+      }
+    }
+  }
+  
+  /**
+   * Stellt mehrere Nachrichten an alle Consumer zu.
+   * Jeder Consumer erhaelt die fuer ihn bestimmten Nachrichten am Stueck und
+   * in der Reihenfolge des Versands. Implementiert er {@link BatchMessageConsumer},
+   * erhaelt er sie in einem einzigen Aufruf.
+   * @param messages die Nachrichten.
+   */
+  private void deliver(List<Message> messages)
+  {
+    if (this.isShutdown())
+    {
+      Logger.warn("shutdown in progress, no more messages accepted");
+      return; // wir nehmen keine Nachrichten mehr entgegen.
+    }
+
+    Logger.debug("deliver " + messages.size() + " messages");
+    
+    // BUGZILLA 1413 - siehe deliver(Message)
+    Set<MessageConsumer> done = Collections.newSetFromMap(new IdentityHashMap<MessageConsumer,Boolean>());
+    boolean changed = true;
+    while (changed)
+    {
+      changed = false;
+      ConsumerRegistry.Snapshot current = this.consumers.snapshot();
+      for (Map.Entry<MessageConsumer,List<Message>> e:this.plan(current,messages).entrySet())
+      {
+        MessageConsumer consumer = e.getKey();
+        if (!done.add(consumer))
+          continue; // hat die Nachrichten schon erhalten
+
+        List<Message> list = e.getValue();
+        if (consumer instanceof BatchMessageConsumer)
+        {
+          long start = System.nanoTime();
+          boolean error = false;
+          try
+          {
+            ((BatchMessageConsumer) consumer).handleMessages(Collections.unmodifiableList(list));
+          }
+          catch (Throwable t)
           {
-            send = true;
-            break;
+            error = this.handleError(consumer,list.size() + " messages",t);
           }
+          finally
+          {
+            this.stats.consumed(consumer,System.nanoTime() - start,error);
+          }
+        }
+        else
+        {
+          for (Message msg:list)
+            this.deliver(consumer,msg);
+        }
+        
+        if (this.consumers.snapshot().getVersion() != current.getVersion())
+        {
+          changed = true;
+          break;
         }
       }
+    }
+  }
+  
+  /**
+   * Stellt eine Anfrage an alle Consumer zu.
+   * Im Gegensatz zu {@link #deliver(Message)} wird ein Fehler nicht nur protokolliert,
+   * sondern an den Aufrufer weitergereicht. Die restlichen Consumer erhalten die
+   * Anfrage dann nicht mehr.
+   * @param msg die Anfrage.
+   * @return die Antwort.
+   * @throws Exception
+   */
+  private Object answer(Message msg) throws Exception
+  {
+    Logger.debug("deliver request " + msg.toString());
+    for (MessageConsumer consumer:this.consumers.snapshot().lookup(msg.getClass()))
+    {
+      long start = System.nanoTime();
+      boolean error = false;
       try
       {
-        if (send)
-          consumer.handleMessage(msg);
+        consumer.handleMessage(msg);
       }
-      catch (ApplicationException ae)
+      catch (Throwable t)
       {
-        Application.getMessagingFactory().sendSyncMessage(new StatusBarMessage(ae.getMessage(),StatusBarMessage.TYPE_ERROR));
+        error = !(t instanceof OperationCanceledException);
+        throw t;
       }
-      catch (OperationCanceledException oce)
+      finally
       {
-        Logger.debug("consumer " + consumer.getClass().getName() + " cancelled message " + msg);
+        this.stats.consumed(consumer,System.nanoTime() - start,error);
       }
-      catch (Throwable t)
+    }
+    return (msg instanceof QueryMessage) ? ((QueryMessage) msg).getData() : null;
+  }
+  
+  /**
+   * Stellt eine Anfrage an alle Consumer zu und sammelt deren Antworten.
+   * @param msg die Anfrage.
+   * @return Liste der Antworten.
+   */
+  private List<Object> collect(Message msg)
+  {
+    Logger.debug("deliver request " + msg.toString());
+    List<Object> result = new ArrayList<Object>();
+    QueryMessage q = (msg instanceof QueryMessage) ? (QueryMessage) msg : null;
+    Object request = q != null ? q.getData() : null;
+    try
+    {
+      for (MessageConsumer consumer:this.consumers.snapshot().lookup(msg.getClass()))
+      {
+        // Jeder Consumer erhaelt die urspruengliche Anfrage
+        if (q != null)
+          q.setData(request);
+        
+        if (this.deliver(consumer,msg) && q != null && q.getData() != request)
+          result.add(q.getData());
+      }
+    }
+    finally
+    {
+      if (q != null)
+        q.setData(request);
+    }
+    return result;
+  }
+  
+  /**
+   * Ermittelt, welcher Consumer welche Nachrichten erhaelt.
+   * @param snapshot der aktuelle Stand der Consumer.
+   * @param messages die Nachrichten.
+   * @return Map mit den Consumern in Registrierungsreihenfolge und ihren Nachrichten.
+   */
+  private Map<MessageConsumer,List<Message>> plan(ConsumerRegistry.Snapshot snapshot, List<Message> messages)
+  {
+    Map<MessageConsumer,List<Message>> matches = new IdentityHashMap<MessageConsumer,List<Message>>();
+    for (Message msg:messages)
+    {
+      for (MessageConsumer consumer:snapshot.lookup(msg.getClass()))
       {
-        Logger.error("consumer " + consumer.getClass().getName() + " produced an error (" + t.getClass().getName() + ": " + t + ") while consuming message " + msg);
-        Logger.write(Level.INFO,"error while processing message",t);
+        List<Message> list = matches.get(consumer);
+        if (list == null)
+        {
+          list = new ArrayList<Message>();
+          matches.put(consumer,list);
+        }
+        list.add(msg);
       }
     }
+    
+    // In Registrierungsreihenfolge bringen
+    Map<MessageConsumer,List<Message>> result = new LinkedHashMap<MessageConsumer,List<Message>>();
+    for (MessageConsumer consumer:snapshot.getConsumers())
+    {
+      List<Message> list = matches.get(consumer);
+      if (list != null)
+        result.put(consumer,list);
+    }
+    return result;
+  }
+  
+  /**
+   * Stellt die Nachricht an den Consumer zu.
+   * @param consumer der Consumer.
+   * @param msg die Nachricht.
+   * @return true, wenn der Consumer die Nachricht ohne Fehler verarbeitet hat.
+   */
+  private boolean deliver(MessageConsumer consumer, Message msg)
+  {
+    long start = System.nanoTime();
+    boolean error = false;
+    try
+    {
+      consumer.handleMessage(msg);
+      return true;
+    }
+    catch (Throwable t)
+    {
+      error = this.handleError(consumer,msg,t);
+      return false;
+    }
+    finally
+    {
+      this.stats.consumed(consumer,System.nanoTime() - start,error);
+    }
+  }
+  
+  /**
+   * Behandelt den Fehler eines Consumers bei der Zustellung.
+   * @param consumer der Consumer.
+   * @param msg die Nachricht(en).
+   * @param t der Fehler.
+   * @return true, wenn es sich um einen Fehler handelt. False, wenn der Consumer die Verarbeitung lediglich abgebrochen hat.
+   */
+  private boolean handleError(MessageConsumer consumer, Object msg, Throwable t)
+  {
+    if (t instanceof ApplicationException)
+    {
+      Application.getMessagingFactory().sendSyncMessage(new StatusBarMessage(t.getMessage(),StatusBarMessage.TYPE_ERROR));
+    }
+    else if (t instanceof OperationCanceledException)
+    {
+      Logger.debug("consumer " + consumer.getClass().getName() + " cancelled message " + msg);
+      return false;
+    }
+    else
+    {
+      Logger.error("consumer " + consumer.getClass().getName() + " produced an error (" + t.getClass().getName() + ": " + t + ") while consuming message " + msg);
+      Logger.write(Level.INFO,"error while processing message",t);
+    }
+    return true;
   }
 
-}
+  /**
+   * Ermittelt die Prioritaet fuer die Zustellung der Nachrichten.
+   * Bei mehreren Nachrichten gilt die hoechste.
+   * @param messages die Nachrichten.
+   * @return die Prioritaet.
+   */
+  private int getPriority(List<Message> messages)
+  {
+    int result = Integer.MIN_VALUE;
+    for (Message m:messages)
+    {
+      int p = (m instanceof PrioritizedMessage) ? ((PrioritizedMessage) m).getPriority() : this.options.getPriority();
+      result = Math.max(result,p);
+    }
+    return result;
+  }
+
+  /**
+   * Die asynchrone Zustellung einer oder mehrerer Nachrichten bzw. einer Anfrage.
+   * Zaehlt die noch offenen Nachrichten der Queue, damit {@link #flush()}
+   * genau so lange wartet, bis alle abgeschlossen sind - unabhaengig davon, ob
+   * die Zustellung ausgefuehrt, verworfen oder abgebrochen wurde.
+   */
+  private class Delivery extends FutureTask<Object> implements PriorityTaskQueue.Task
+  {
+    private int size = 0;
+    private long created = System.nanoTime();
+    private long sequence = 0L;
+    private long order = 0L;
+    private CompletableFuture<Object> result = null;
+    private Runnable delivered = null;
+    
+    /**
+     * ct.
+     * @param messages die zuzustellenden Nachrichten.
+     * @param delivered optionaler Callback, der nach der Zustellung aufgerufen wird.
+     */
+    private Delivery(final List<Message> messages, Runnable delivered)
+    {
+      this(messages,new Callable<Object>()
+      {
+        public Object call() throws Exception
+        {
+          if (messages.size() == 1)
+            deliver(messages.get(0));
+          else
+            deliver(messages);
+          return null;
+        }
+      },null);
+      this.delivered = delivered;
+    }
+    
+    /**
+     * ct.
+     * @param messages die zuzustellenden Nachrichten.
+     * @param task die eigentliche Zustellung.
+     * @param result optionales Future, das mit dem Ergebnis der Zustellung abgeschlossen wird.
+     */
+    private Delivery(List<Message> messages, final Callable<Object> task, CompletableFuture<Object> result)
+    {
+      super(new Callable<Object>()
+      {
+        public Object call() throws Exception
+        {
+          // Wir merken uns, dass dieser Thread gerade eine Nachricht
+          // der Queue zustellt. Siehe flush().
+          Boolean before = delivering.get();
+          delivering.set(Boolean.TRUE);
+          try
+          {
+            return task.call();
+          }
+          finally
+          {
+            delivering.set(before);
+          }
+        }
+      });
+      this.result = result;
+      this.size = messages.size();
+      this.sequence = PriorityTaskQueue.sequence();
+      this.order = PriorityTaskQueue.order(this.sequence,getPriority(messages));
+      pending.addAndGet(this.size);
+    }
 
+    /**
+     * @see de.willuhn.jameica.messaging.PriorityTaskQueue.Task#getOrder()
+     */
+    public long getOrder()
+    {
+      return this.order;
+    }
 
+    /**
+     * @see de.willuhn.jameica.messaging.PriorityTaskQueue.Task#getSequence()
+     */
+    public long getSequence()
+    {
+      return this.sequence;
+    }
+
+    /**
+     * @see java.util.concurrent.FutureTask#run()
+     */
+    public void run()
+    {
+      // Verworfene Zustellungen zaehlen wir in done()
+      if (!this.isDone())
+        stats.delivered(this.size,System.nanoTime() - this.created);
+      super.run();
+    }
+
+    /**
+     * @see java.util.concurrent.FutureTask#done()
+     */
+    protected void done()
+    {
+      if (this.isCancelled())
+        stats.dropped(this.size);
+      else if (this.delivered != null)
+        this.delivered.run();
+      pending.addAndGet(-this.size);
+      if (flushing > 0)
+      {
+        synchronized (flushLock)
+        {
+          flushLock.notifyAll();
+        }
+      }
+      
+      if (this.result == null)
+        return;
+      
+      if (this.isCancelled())
+      {
+        this.result.cancel(false);
+        return;
+      }
+      try
+      {
+        this.result.complete(this.get());
+      }
+      catch (ExecutionException e)
+      {
+        this.result.completeExceptionally(e.getCause());
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        this.result.completeExceptionally(e);
+      }
+    }
+  }
+}
@@ -9,8 +9,12 @@
  **********************************************************************/
 package de.willuhn.jameica.messaging;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import de.willuhn.jameica.system.Application;
 import de.willuhn.jameica.system.OperationCanceledException;
@@ -108,6 +112,15 @@ public final class NamedQueue implements MessagingQueue
     this.sendMessage(message);
   }
 
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#queueMessages(java.util.Collection)
+   */
+  public void queueMessages(Collection<? extends Message> messages)
+  {
+    Logger.warn("queueing not supported - delivering without queueing");
+    this.sendMessages(messages);
+  }
+
   /**
    * @see de.willuhn.jameica.messaging.MessagingQueue#close()
    */
@@ -124,16 +137,30 @@ public final class NamedQueue implements MessagingQueue
    */
   public void flush()
   {
+    this.flush(0L);
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.MessagingQueue#flush(long)
+   */
+  public boolean flush(long timeout)
+  {
+    long until = timeout > 0 ? System.currentTimeMillis() + timeout : 0L;
     try
     {
       worker.wakeup();
       while (this.messages != null && this.messages.size() > 0)
+      {
+        if (until > 0 && System.currentTimeMillis() >= until)
+          return false;
         Thread.sleep(5);
+      }
     }
     catch (Exception e)
     {
       Logger.error("unable to flush queue",e);
     }
+    return true;
   }
 
   /**
@@ -180,6 +207,38 @@ public final class NamedQueue implements MessagingQueue
     worker.send(this.consumers,message);
   }
 
+  /**
+   * Die Anfrage wird synchron zugestellt, der Timeout daher ignoriert.
+   * @see de.willuhn.jameica.messaging.MessagingQueue#requestAll(de.willuhn.jameica.messaging.Message, long)
+   */
+  public CompletableFuture<List<Object>> requestAll(Message message, long timeout)
+  {
+    List<Object> result = new ArrayList<Object>();
+    if (message == null || !(message instanceof QueryMessage))
+    {
+      this.sendSyncMessage(message);
+      return CompletableFuture.completedFuture(result);
+    }
+
+    List<MessageConsumer> list = null;
+    synchronized (this.consumers)
+    {
+      list = new ArrayList<MessageConsumer>(this.consumers);
+    }
+
+    QueryMessage q = (QueryMessage) message;
+    Object request = q.getData();
+    for (MessageConsumer consumer:list)
+    {
+      q.setData(request);
+      worker.send(Collections.singletonList(consumer),q);
+      if (q.getData() != request)
+        result.add(q.getData());
+    }
+    q.setData(request);
+    return CompletableFuture.completedFuture(result);
+  }
+
   /**
    * Der Worker-Thread.
    * @author willuhn
@@ -0,0 +1,54 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+/**
+ * Nachrichten, die dieses Interface implementieren, werden abhaengig von ihrer
+ * Prioritaet zugestellt. Nachrichten mit hoeherer Prioritaet ueberholen solche
+ * mit niedrigerer Prioritaet, die noch auf ihre Zustellung warten. Damit letztere
+ * nicht verhungern, ist der Vorsprung jedoch begrenzt: Eine Nachricht kann von
+ * hoechstens (Prioritaetsdifferenz * {@link #AGING}) spaeter gesendeten Nachrichten
+ * ueberholt werden.
+ * Nachrichten ohne dieses Interface erhalten die Default-Prioritaet ihrer Queue
+ * (siehe {@link QueueOptions#getPriority()}).
+ * In Queues mit geordneter Zustellung werden die Prioritaeten nicht beruecksichtigt.
+ */
+public interface PrioritizedMessage extends Message
+{
+  /**
+   * Hohe Prioritaet. Fuer Nachrichten, auf die der Benutzer wartet.
+   */
+  public final static int PRIORITY_HIGH   = 10;
+
+  /**
+   * Normale Prioritaet.
+   */
+  public final static int PRIORITY_NORMAL = 0;
+
+  /**
+   * Niedrige Prioritaet. Fuer Massen-Nachrichten.
+   */
+  public final static int PRIORITY_LOW    = -10;
+
+  /**
+   * Anzahl der Nachrichten, die eine Nachricht pro Prioritaetsstufe ueberholen kann.
+   */
+  public final static int AGING = 100;
+
+  /**
+   * Liefert die Prioritaet der Nachricht.
+   * @return die Prioritaet.
+   * @see #PRIORITY_HIGH
+   * @see #PRIORITY_NORMAL
+   * @see #PRIORITY_LOW
+   */
+  public int getPriority();
+}
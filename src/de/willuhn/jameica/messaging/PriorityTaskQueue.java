@@ -0,0 +1,152 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.util.Comparator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Begrenzte Warteschlange fuer die Thread-Pools der Queues, die die Tasks nach Prioritaet sortiert.
+ * Jeder Task erhaelt eine fortlaufende Nummer, von der seine Prioritaet (gewichtet mit
+ * {@link PrioritizedMessage#AGING}) abgezogen wird. Ausgefuehrt wird immer der Task mit der
+ * kleinsten Nummer. Bei gleicher Prioritaet bleibt so die Reihenfolge erhalten, und Tasks mit
+ * niedriger Prioritaet kommen spaetestens dann an die Reihe, wenn alle vor ihnen einsortierten
+ * Tasks erledigt sind.
+ */
+final class PriorityTaskQueue extends PriorityBlockingQueue<Runnable>
+{
+  private final static AtomicLong sequence = new AtomicLong();
+
+  private final static Comparator<Runnable> COMPARATOR = new Comparator<Runnable>() {
+    /**
+     * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+     */
+    public int compare(Runnable r1, Runnable r2)
+    {
+      return Long.compare(order(r1),order(r2));
+    }
+  };
+
+  private final int capacity;
+
+  /**
+   * Ein Task mit Reihenfolge.
+   */
+  static interface Task extends Runnable
+  {
+    /**
+     * Liefert die Position des Tasks in der Warteschlange.
+     * Der Wert darf sich nicht aendern, solange der Task in der Warteschlange ist.
+     * @return Position des Tasks.
+     */
+    public long getOrder();
+
+    /**
+     * Liefert die fortlaufende Nummer, mit der der Task eingereiht wurde.
+     * Der Wert darf sich nicht aendern, solange der Task in der Warteschlange ist.
+     * @return die fortlaufende Nummer.
+     * @see PriorityTaskQueue#sequence()
+     */
+    public long getSequence();
+  }
+
+  /**
+   * ct.
+   * @param capacity maximale Anzahl der Tasks.
+   */
+  PriorityTaskQueue(int capacity)
+  {
+    super(11,COMPARATOR);
+    this.capacity = capacity;
+  }
+
+  /**
+   * Liefert die naechste fortlaufende Nummer fuer einen neuen Task.
+   * @return die fortlaufende Nummer.
+   */
+  static long sequence()
+  {
+    return sequence.incrementAndGet();
+  }
+
+  /**
+   * Ermittelt die Position fuer einen Task mit der angegebenen Prioritaet.
+   * @param sequence die fortlaufende Nummer des Tasks.
+   * @param priority die Prioritaet.
+   * @return die Position.
+   */
+  static long order(long sequence, int priority)
+  {
+    return sequence - ((long) priority * PrioritizedMessage.AGING);
+  }
+
+  /**
+   * Liefert die Position des Tasks.
+   * @param r der Task.
+   * @return die Position. Tasks ohne Angabe werden sofort ausgefuehrt.
+   */
+  private static long order(Runnable r)
+  {
+    return (r instanceof Task) ? ((Task) r).getOrder() : Long.MIN_VALUE;
+  }
+
+  /**
+   * Lehnt den Task ab, wenn die Kapazitaet erreicht ist. Der Thread-Pool
+   * verfaehrt dann gemaess seinem RejectedExecutionHandler.
+   * @see java.util.concurrent.PriorityBlockingQueue#offer(java.lang.Object)
+   */
+  public synchronized boolean offer(Runnable r)
+  {
+    if (this.size() >= this.capacity)
+      return false;
+    return super.offer(r);
+  }
+
+  /**
+   * Entfernt den Task, der als erster eingereiht wurde - unabhaengig von seiner Prioritaet.
+   * Suche und Entfernen erfolgen unter dem selben Lock wie {@link #offer(Runnable)}.
+   * Holt sich ein Worker-Thread den gefundenen Task zwischenzeitlich ab, wird erneut gesucht.
+   * @return der Task oder NULL, wenn die Warteschlange leer ist.
+   */
+  synchronized Runnable pollOldest()
+  {
+    while (true)
+    {
+      Runnable oldest = null;
+      for (Runnable r:this)
+      {
+        if (oldest == null || sequence(r) < sequence(oldest))
+          oldest = r;
+      }
+      if (oldest == null || this.remove(oldest))
+        return oldest;
+    }
+  }
+
+  /**
+   * Liefert die fortlaufende Nummer des Tasks.
+   * @param r der Task.
+   * @return die fortlaufende Nummer. Tasks ohne Angabe gelten als die aeltesten.
+   */
+  private static long sequence(Runnable r)
+  {
+    return (r instanceof Task) ? ((Task) r).getSequence() : Long.MIN_VALUE;
+  }
+
+  /**
+   * @see java.util.concurrent.PriorityBlockingQueue#remainingCapacity()
+   */
+  public int remainingCapacity()
+  {
+    return Math.max(0,this.capacity - this.size());
+  }
+}
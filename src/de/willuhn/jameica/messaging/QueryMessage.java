@@ -10,6 +10,7 @@
 
 package de.willuhn.jameica.messaging;
 
+import java.io.Serializable;
 
 /**
  * Generische Nachricht, die verschickt werden kann, wenn man
@@ -20,9 +21,13 @@ package de.willuhn.jameica.messaging;
  * ueber die globale Queue abonniert werden sondern nur ueber
  * konkret benannte Queues - da man sonst ggf. auch Nachrichten
  * erhaelt, die man gar nicht wollte.
+ * Die Nachricht ist serialisierbar, sofern es auch die Nutzdaten sind. Sie kann
+ * daher z.Bsp. im Journal einer Queue gespeichert werden.
  */
-public class QueryMessage implements Message
+public class QueryMessage implements Message, Serializable
 {
+  private static final long serialVersionUID = 1L;
+
   private String name = null;
   private Object data = null;
 
@@ -0,0 +1,353 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import de.willuhn.jameica.system.Settings;
+import de.willuhn.logging.Logger;
+
+/**
+ * Legt fest, wie eine Message-Queue ihre Nachrichten zustellt.
+ * Queues ohne eigene Optionen teilen sich einen gemeinsamen Thread-Pool.
+ * Die Optionen koennen per {@link MessagingFactory#getMessagingQueue(String, QueueOptions)}
+ * uebergeben werden. Zusaetzlich kann der Benutzer sie in
+ * <i>cfg/de.willuhn.jameica.messaging.MessagingFactory.properties</i> ueberschreiben.
+ * Beispiel:
+ * <pre>
+ * queue.jameica.reminder.threads = 2
+ * queue.jameica.reminder.capacity = 5000
+ * queue.jameica.reminder.reject = DISCARD
+ * queue.jameica.reminder.ordered = true
+ * queue.jameica.reminder.virtual = true
+ * queue.jameica.reminder.buffer = 1000
+ * queue.jameica.reminder.overflow = JOURNAL
+ * queue.jameica.reminder.priority = -10
+ * </pre>
+ * Mit <code>virtualthreads = true</code> stellen alle Queues, fuer die nichts
+ * anderes konfiguriert ist, ihre Nachrichten per Virtual-Threads zu. Analog
+ * legt <code>overflow = ...</code> das Verhalten aller Queues bei vollem
+ * Zwischenspeicher fest.
+ */
+public class QueueOptions implements Cloneable
+{
+  /**
+   * Default-Kapazitaet fuer noch nicht zugestellte Nachrichten.
+   */
+  public final static int DEFAULT_CAPACITY = 2000;
+
+  /**
+   * Default-Groesse des Zwischenspeichers fuer Nachrichten, die per
+   * {@link MessagingQueue#queueMessage(Message)} gesendet wurden, solange
+   * noch kein Consumer registriert ist.
+   */
+  public final static int DEFAULT_BUFFER_SIZE = 500;
+
+  /**
+   * Legt fest, was passiert, wenn die Queue voll ist.
+   */
+  public static enum RejectPolicy
+  {
+    /**
+     * Die Nachricht wird im Thread des Senders zugestellt.
+     * Dieser wird dadurch automatisch ausgebremst. Bei geordneten
+     * Queues wartet der Sender stattdessen, bis wieder Platz ist,
+     * damit die Reihenfolge erhalten bleibt.
+     */
+    CALLER_RUNS,
+
+    /**
+     * Die neue Nachricht wird verworfen.
+     */
+    DISCARD,
+
+    /**
+     * Die aelteste noch nicht zugestellte Nachricht wird verworfen.
+     * Die Prioritaet der Nachrichten spielt hierbei keine Rolle.
+     */
+    DISCARD_OLDEST,
+  }
+
+  /**
+   * Legt fest, was passiert, wenn der Zwischenspeicher fuer Nachrichten
+   * voll ist, die per {@link MessagingQueue#queueMessage(Message)} gesendet
+   * wurden, solange noch kein Consumer registriert ist.
+   */
+  public static enum OverflowPolicy
+  {
+    /**
+     * Die neue Nachricht wird verworfen.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Die aelteste zwischengespeicherte Nachricht wird verworfen.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Der Sender wartet, bis wieder Platz ist - jedoch hoechstens
+     * {@link QueueOptions#BLOCK_TIMEOUT} Millisekunden. Danach wird
+     * die neue Nachricht verworfen.
+     */
+    BLOCK,
+
+    /**
+     * Serialisierbare Nachrichten, die nicht mehr in den Zwischenspeicher passen,
+     * werden in einem Journal im Arbeitsverzeichnis gespeichert, bis sich ein
+     * Consumer registriert - auch ueber einen Neustart hinweg. Fuer alle anderen
+     * Nachrichten gilt {@link #DROP_NEWEST}.
+     */
+    JOURNAL,
+  }
+
+  /**
+   * Maximale Wartezeit in Millisekunden bei {@link OverflowPolicy#BLOCK}.
+   */
+  public final static long BLOCK_TIMEOUT = 30 * 1000L;
+
+  private int threads         = 0;
+  private int capacity        = DEFAULT_CAPACITY;
+  private RejectPolicy reject = RejectPolicy.CALLER_RUNS;
+  private boolean ordered     = false;
+  private boolean virtual     = false;
+  private int bufferSize      = DEFAULT_BUFFER_SIZE;
+  private OverflowPolicy overflow = OverflowPolicy.DROP_NEWEST;
+  private int priority        = PrioritizedMessage.PRIORITY_NORMAL;
+
+  /**
+   * Liefert die Anzahl der Threads im eigenen Thread-Pool der Queue.
+   * @return Anzahl der Threads. Bei 0 verwendet die Queue den gemeinsamen Thread-Pool.
+   */
+  public int getThreads()
+  {
+    return this.threads;
+  }
+
+  /**
+   * Speichert die Anzahl der Threads im eigenen Thread-Pool der Queue.
+   * @param threads Anzahl der Threads. Bei 0 verwendet die Queue den gemeinsamen Thread-Pool.
+   */
+  public void setThreads(int threads)
+  {
+    this.threads = Math.max(0,threads);
+  }
+
+  /**
+   * Liefert die maximale Anzahl noch nicht zugestellter Nachrichten.
+   * Gilt nur fuer Queues mit eigenem Thread-Pool oder geordneter Zustellung.
+   * @return maximale Anzahl noch nicht zugestellter Nachrichten.
+   */
+  public int getCapacity()
+  {
+    return this.capacity;
+  }
+
+  /**
+   * Speichert die maximale Anzahl noch nicht zugestellter Nachrichten.
+   * @param capacity maximale Anzahl noch nicht zugestellter Nachrichten.
+   */
+  public void setCapacity(int capacity)
+  {
+    this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+  }
+
+  /**
+   * Liefert das Verhalten bei voller Queue.
+   * Gilt nur fuer Queues mit eigenem Thread-Pool oder geordneter Zustellung.
+   * @return das Verhalten bei voller Queue.
+   */
+  public RejectPolicy getRejectPolicy()
+  {
+    return this.reject;
+  }
+
+  /**
+   * Speichert das Verhalten bei voller Queue.
+   * @param reject das Verhalten bei voller Queue.
+   */
+  public void setRejectPolicy(RejectPolicy reject)
+  {
+    this.reject = reject != null ? reject : RejectPolicy.CALLER_RUNS;
+  }
+
+  /**
+   * Liefert true, wenn die Nachrichten der Queue strikt nacheinander in
+   * der Reihenfolge des Versands zugestellt werden sollen. Andere Queues
+   * werden davon nicht ausgebremst.
+   * @return true, wenn die Nachrichten geordnet zugestellt werden.
+   */
+  public boolean isOrdered()
+  {
+    return this.ordered;
+  }
+
+  /**
+   * Legt fest, ob die Nachrichten der Queue strikt nacheinander in
+   * der Reihenfolge des Versands zugestellt werden sollen.
+   * @param ordered true, wenn die Nachrichten geordnet zugestellt werden.
+   */
+  public void setOrdered(boolean ordered)
+  {
+    this.ordered = ordered;
+  }
+
+  /**
+   * Liefert true, wenn die Queue jede Nachricht in einem eigenen Virtual-Thread
+   * zustellen soll. Das ist sinnvoll, wenn die Consumer blockierende I/O-Operationen
+   * ausfuehren. Die Anzahl der Threads ist dann nicht begrenzt, {@link #getThreads()},
+   * {@link #getCapacity()} und {@link #getRejectPolicy()} werden ignoriert.
+   * Unterstuetzt die Java-Version keine Virtual-Threads (erst ab Java 21), verwendet
+   * die Queue stattdessen einen normalen Thread-Pool.
+   * @return true, wenn die Nachrichten per Virtual-Threads zugestellt werden.
+   */
+  public boolean isVirtualThreads()
+  {
+    return this.virtual;
+  }
+
+  /**
+   * Legt fest, ob die Queue jede Nachricht in einem eigenen Virtual-Thread zustellen soll.
+   * @param virtual true, wenn die Nachrichten per Virtual-Threads zugestellt werden.
+   */
+  public void setVirtualThreads(boolean virtual)
+  {
+    this.virtual = virtual;
+  }
+
+  /**
+   * Liefert die maximale Anzahl zwischengespeicherter Nachrichten, solange
+   * noch kein Consumer registriert ist.
+   * @return maximale Anzahl zwischengespeicherter Nachrichten.
+   */
+  public int getBufferSize()
+  {
+    return this.bufferSize;
+  }
+
+  /**
+   * Speichert die maximale Anzahl zwischengespeicherter Nachrichten, solange
+   * noch kein Consumer registriert ist.
+   * @param bufferSize maximale Anzahl zwischengespeicherter Nachrichten.
+   */
+  public void setBufferSize(int bufferSize)
+  {
+    this.bufferSize = bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE;
+  }
+
+  /**
+   * Liefert das Verhalten bei vollem Zwischenspeicher.
+   * @return das Verhalten bei vollem Zwischenspeicher.
+   */
+  public OverflowPolicy getOverflowPolicy()
+  {
+    return this.overflow;
+  }
+
+  /**
+   * Speichert das Verhalten bei vollem Zwischenspeicher.
+   * @param overflow das Verhalten bei vollem Zwischenspeicher.
+   */
+  public void setOverflowPolicy(OverflowPolicy overflow)
+  {
+    this.overflow = overflow != null ? overflow : OverflowPolicy.DROP_NEWEST;
+  }
+
+  /**
+   * Liefert die Default-Prioritaet fuer Nachrichten der Queue, die nicht
+   * {@link PrioritizedMessage} implementieren. Die Prioritaet wirkt sich auch
+   * gegenueber anderen Queues aus, die den selben Thread-Pool verwenden.
+   * @return die Default-Prioritaet.
+   * @see PrioritizedMessage
+   */
+  public int getPriority()
+  {
+    return this.priority;
+  }
+
+  /**
+   * Speichert die Default-Prioritaet fuer Nachrichten der Queue.
+   * @param priority die Default-Prioritaet.
+   * @see PrioritizedMessage
+   */
+  public void setPriority(int priority)
+  {
+    this.priority = priority;
+  }
+
+  /**
+   * Uebernimmt die vom Benutzer in den Settings hinterlegten Werte fuer die Queue.
+   * @param settings die Settings.
+   * @param name der Name der Queue.
+   * @return Kopie der Optionen mit den Werten aus den Settings.
+   */
+  QueueOptions merge(Settings settings, String name)
+  {
+    QueueOptions result = this.copy();
+    String prefix = "queue." + name + ".";
+    result.setThreads(settings.getInt(prefix + "threads",result.getThreads()));
+    result.setCapacity(settings.getInt(prefix + "capacity",result.getCapacity()));
+    result.setOrdered(settings.getBoolean(prefix + "ordered",result.isOrdered()));
+    result.setVirtualThreads(settings.getBoolean(prefix + "virtual",settings.getBoolean("virtualthreads",result.isVirtualThreads())));
+    result.setBufferSize(settings.getInt(prefix + "buffer",result.getBufferSize()));
+    result.setPriority(settings.getInt(prefix + "priority",result.getPriority()));
+
+    String reject = settings.getString(prefix + "reject",null);
+    if (reject != null)
+    {
+      try
+      {
+        result.setRejectPolicy(RejectPolicy.valueOf(reject.trim().toUpperCase()));
+      }
+      catch (IllegalArgumentException e)
+      {
+        Logger.warn("invalid reject policy " + reject + " for queue " + name + ", ignoring");
+      }
+    }
+
+    String overflow = settings.getString(prefix + "overflow",settings.getString("overflow",null));
+    if (overflow != null)
+    {
+      try
+      {
+        result.setOverflowPolicy(OverflowPolicy.valueOf(overflow.trim().toUpperCase()));
+      }
+      catch (IllegalArgumentException e)
+      {
+        Logger.warn("invalid overflow policy " + overflow + " for queue " + name + ", ignoring");
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Erzeugt eine Kopie der Optionen.
+   * @return Kopie der Optionen.
+   */
+  QueueOptions copy()
+  {
+    try
+    {
+      return (QueueOptions) this.clone();
+    }
+    catch (CloneNotSupportedException e)
+    {
+      // Kann nicht passieren
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  public String toString()
+  {
+    return "threads: " + this.threads + ", capacity: " + this.capacity + ", reject: " + this.reject + ", ordered: " + this.ordered + ", virtual: " + this.virtual + ", buffer: " + this.bufferSize + ", overflow: " + this.overflow + ", priority: " + this.priority;
+  }
+}
@@ -0,0 +1,284 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistik zu einer Message-Queue.
+ * Die Werte werden seit dem Start von Jameica erfasst.
+ */
+public final class QueueStatistics implements QueueStatisticsMBean
+{
+  private final String name;
+  private final LongAdder sent      = new LongAdder();
+  private final LongAdder queued    = new LongAdder();
+  private final LongAdder dropped   = new LongAdder();
+  private final LongAdder delivered = new LongAdder();
+  private final Histogram latency   = new Histogram();
+
+  // Pro Consumer-Instanz. Wird bei jeder Zustellung gelesen, daher ohne Lock.
+  // Abgemeldete Consumer werden per remove(MessageConsumer) entfernt.
+  private final Map<Key,ConsumerStatistics> consumers = new ConcurrentHashMap<Key,ConsumerStatistics>();
+
+  /**
+   * ct.
+   * @param name Name der Queue.
+   */
+  QueueStatistics(String name)
+  {
+    this.name = name;
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.QueueStatisticsMBean#getName()
+   */
+  public String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.QueueStatisticsMBean#getSent()
+   */
+  public long getSent()
+  {
+    return this.sent.sum();
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.QueueStatisticsMBean#getQueued()
+   */
+  public long getQueued()
+  {
+    return this.queued.sum();
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.QueueStatisticsMBean#getDropped()
+   */
+  public long getDropped()
+  {
+    return this.dropped.sum();
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.QueueStatisticsMBean#getDelivered()
+   */
+  public long getDelivered()
+  {
+    return this.delivered.sum();
+  }
+
+  /**
+   * Liefert die Wartezeiten vom Einstellen einer Nachricht bis zu ihrer Zustellung.
+   * @return die Wartezeiten.
+   */
+  public Histogram getLatency()
+  {
+    return this.latency;
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.QueueStatisticsMBean#getLatencyAverage()
+   */
+  public double getLatencyAverage()
+  {
+    return this.latency.getAverage();
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.QueueStatisticsMBean#getLatency95()
+   */
+  public double getLatency95()
+  {
+    return this.latency.getPercentile(95d);
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.QueueStatisticsMBean#getLatencyMax()
+   */
+  public double getLatencyMax()
+  {
+    return this.latency.getMax();
+  }
+
+  /**
+   * Liefert die Statistik der Consumer, sortiert nach der gesamten Verarbeitungszeit absteigend.
+   * @return Statistik der Consumer.
+   */
+  public List<ConsumerStatistics> getConsumers()
+  {
+    List<ConsumerStatistics> result = new ArrayList<ConsumerStatistics>(this.consumers.values());
+    Collections.sort(result,new Comparator<ConsumerStatistics>() {
+      /**
+       * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+       */
+      public int compare(ConsumerStatistics o1, ConsumerStatistics o2)
+      {
+        double t1 = o1.getTime().getAverage() * o1.getTime().getCount();
+        double t2 = o2.getTime().getAverage() * o2.getTime().getCount();
+        return Double.compare(t2,t1);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @see de.willuhn.jameica.messaging.QueueStatisticsMBean#getConsumerStatistics()
+   */
+  public String[] getConsumerStatistics()
+  {
+    List<ConsumerStatistics> list = this.getConsumers();
+    String[] result = new String[list.size()];
+    for (int i=0;i<result.length;++i)
+      result[i] = list.get(i).toString();
+    return result;
+  }
+
+  /**
+   * Erfasst gesendete Nachrichten.
+   * @param count Anzahl der Nachrichten.
+   */
+  void sent(int count)
+  {
+    this.sent.add(count);
+  }
+
+  /**
+   * Erfasst zwischengespeicherte Nachrichten.
+   * @param count Anzahl der Nachrichten.
+   */
+  void queued(int count)
+  {
+    this.queued.add(count);
+  }
+
+  /**
+   * Erfasst verworfene Nachrichten.
+   * @param count Anzahl der Nachrichten.
+   */
+  void dropped(int count)
+  {
+    this.dropped.add(count);
+  }
+
+  /**
+   * Erfasst den Beginn einer asynchronen Zustellung.
+   * @param count Anzahl der Nachrichten.
+   * @param nanos Wartezeit seit dem Einstellen in Nanosekunden.
+   */
+  void delivered(int count, long nanos)
+  {
+    this.delivered.add(count);
+    this.latency.record(nanos);
+  }
+
+  /**
+   * Erfasst den Aufruf eines Consumers.
+   * @param consumer der Consumer.
+   * @param nanos Dauer des Aufrufs in Nanosekunden.
+   * @param error true, wenn der Aufruf mit einem Fehler endete.
+   */
+  void consumed(MessageConsumer consumer, long nanos, boolean error)
+  {
+    Key key = new Key(consumer);
+    ConsumerStatistics s = this.consumers.get(key);
+    if (s == null)
+    {
+      s = new ConsumerStatistics(getLabel(consumer));
+      ConsumerStatistics existing = this.consumers.putIfAbsent(key,s);
+      if (existing != null)
+        s = existing;
+    }
+    s.record(nanos,error);
+  }
+
+  /**
+   * Entfernt die Statistik eines abgemeldeten Consumers.
+   * @param consumer der Consumer.
+   */
+  void remove(MessageConsumer consumer)
+  {
+    this.consumers.remove(new Key(consumer));
+  }
+
+  /**
+   * Liefert die Bezeichnung des Consumers fuer die Statistik.
+   * Ueberschreibt der Consumer toString(), wird dessen Ergebnis verwendet. Damit
+   * koennen generische Consumer (z.Bsp. fuer die Receive-Annotation) ihr Ziel angeben.
+   * Andernfalls ist es der Klassenname.
+   * @param consumer der Consumer.
+   * @return die Bezeichnung.
+   */
+  private static String getLabel(MessageConsumer consumer)
+  {
+    try
+    {
+      if (consumer.getClass().getMethod("toString").getDeclaringClass() != Object.class)
+        return consumer.toString();
+    }
+    catch (Exception e)
+    {
+      // dann eben der Klassenname
+    }
+    return consumer.getClass().getName();
+  }
+
+  /**
+   * Schluessel fuer die Statistik eines Consumers.
+   * Vergleicht die Instanz und nicht equals/hashCode des Consumers, damit
+   * jede Instanz ihre eigene Zeile erhaelt.
+   */
+  private static final class Key
+  {
+    private final MessageConsumer consumer;
+
+    /**
+     * ct.
+     * @param consumer der Consumer.
+     */
+    private Key(MessageConsumer consumer)
+    {
+      this.consumer = consumer;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode()
+    {
+      return System.identityHashCode(this.consumer);
+    }
+
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object o)
+    {
+      return (o instanceof Key) && ((Key) o).consumer == this.consumer;
+    }
+  }
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  public String toString()
+  {
+    return this.name + " [sent: " + this.getSent() + ", queued: " + this.getQueued() + ", dropped: " + this.getDropped() + ", delivered: " + this.getDelivered() + ", latency: " + this.latency + "]";
+  }
+}
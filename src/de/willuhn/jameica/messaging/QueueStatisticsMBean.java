@@ -0,0 +1,73 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+/**
+ * JMX-Schnittstelle fuer die Statistik einer Message-Queue.
+ * Wird im Server-Mode unter <i>de.willuhn.jameica:type=MessagingQueue,name=&lt;Queue&gt;</i> registriert.
+ */
+public interface QueueStatisticsMBean
+{
+  /**
+   * Liefert den Namen der Queue.
+   * @return Name der Queue.
+   */
+  public String getName();
+
+  /**
+   * Liefert die Anzahl der an die Queue gesendeten Nachrichten.
+   * @return Anzahl der gesendeten Nachrichten.
+   */
+  public long getSent();
+
+  /**
+   * Liefert die Anzahl der Nachrichten, die zwischengespeichert wurden,
+   * weil noch kein Consumer vorhanden war.
+   * @return Anzahl der zwischengespeicherten Nachrichten.
+   */
+  public long getQueued();
+
+  /**
+   * Liefert die Anzahl der verworfenen Nachrichten.
+   * @return Anzahl der verworfenen Nachrichten.
+   */
+  public long getDropped();
+
+  /**
+   * Liefert die Anzahl der asynchron zugestellten Nachrichten.
+   * @return Anzahl der zugestellten Nachrichten.
+   */
+  public long getDelivered();
+
+  /**
+   * Liefert die durchschnittliche Wartezeit vom Einstellen einer Nachricht bis zu ihrer Zustellung.
+   * @return durchschnittliche Wartezeit in Millisekunden.
+   */
+  public double getLatencyAverage();
+
+  /**
+   * Liefert das 95%-Perzentil der Wartezeit vom Einstellen einer Nachricht bis zu ihrer Zustellung.
+   * @return Naeherungswert fuer das 95%-Perzentil in Millisekunden.
+   */
+  public double getLatency95();
+
+  /**
+   * Liefert die maximale Wartezeit vom Einstellen einer Nachricht bis zu ihrer Zustellung.
+   * @return maximale Wartezeit in Millisekunden.
+   */
+  public double getLatencyMax();
+
+  /**
+   * Liefert die Statistik der einzelnen Consumer in Textform.
+   * @return Statistik der Consumer.
+   */
+  public String[] getConsumerStatistics();
+}
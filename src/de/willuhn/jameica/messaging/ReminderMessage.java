@@ -26,6 +26,8 @@ import java.util.Map;
  */
 public class ReminderMessage extends QueryMessage
 {
+  private static final long serialVersionUID = 1L;
+
   private Date date   = null;
   private String uuid = null;
   
@@ -0,0 +1,187 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import de.willuhn.jameica.messaging.QueueOptions.RejectPolicy;
+import de.willuhn.logging.Logger;
+
+/**
+ * Executor, der die Tasks strikt nacheinander in der Reihenfolge ihres
+ * Eintreffens ausfuehrt. Die eigentliche Ausfuehrung erfolgt in einem
+ * darunterliegenden Executor, der von mehreren dieser Instanzen gemeinsam
+ * genutzt werden kann. Es belegt jedoch jede Instanz hoechstens einen Thread.
+ */
+final class SerialExecutor implements Executor
+{
+  // Nach so vielen Tasks gibt der Worker seinen Thread frei und reiht
+  // sich neu ein, damit andere Queues auch zum Zug kommen.
+  private final static int BATCH_SIZE = 100;
+
+  private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+  private final Executor target;
+  private final String name;
+  private final int capacity;
+  private final RejectPolicy policy;
+  private final int priority;
+
+  private boolean running = false;
+  private volatile Thread worker = null;
+  private volatile long sequence = 0L;
+  private volatile long order    = 0L;
+
+  private final Runnable drain = new PriorityTaskQueue.Task()
+  {
+    /**
+     * @see de.willuhn.jameica.messaging.PriorityTaskQueue.Task#getOrder()
+     */
+    public long getOrder()
+    {
+      return order;
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.PriorityTaskQueue.Task#getSequence()
+     */
+    public long getSequence()
+    {
+      return sequence;
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    public void run()
+    {
+      worker = Thread.currentThread();
+      try
+      {
+        for (int i=0;i<BATCH_SIZE;++i)
+        {
+          Runnable task = null;
+          synchronized (SerialExecutor.this)
+          {
+            task = tasks.poll();
+            if (task == null)
+            {
+              running = false;
+              return;
+            }
+            SerialExecutor.this.notifyAll(); // es ist wieder Platz
+          }
+          try
+          {
+            task.run();
+          }
+          catch (Throwable t)
+          {
+            Logger.error("error while executing task in queue " + name,t);
+          }
+        }
+      }
+      finally
+      {
+        worker = null;
+      }
+
+      // Es sind noch Tasks da. Wir reihen uns hinten wieder ein.
+      schedule();
+    }
+  };
+
+  /**
+   * ct.
+   * @param target der Executor, in dem die Tasks ausgefuehrt werden.
+   * @param name Name der Queue fuer das Logging.
+   * @param capacity maximale Anzahl wartender Tasks.
+   * @param policy Verhalten bei voller Queue.
+   * @param priority Prioritaet, mit der sich die Queue im darunterliegenden Executor einreiht.
+   */
+  SerialExecutor(Executor target, String name, int capacity, RejectPolicy policy, int priority)
+  {
+    this.target   = target;
+    this.name     = name;
+    this.capacity = capacity;
+    this.policy   = policy;
+    this.priority = priority;
+  }
+
+  /**
+   * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+   */
+  public void execute(Runnable command)
+  {
+    synchronized (this)
+    {
+      // Wenn wir selbst aus der Zustellung heraus senden, duerfen
+      // wir nicht warten - sonst warten wir auf uns selbst.
+      while (this.tasks.size() >= this.capacity && Thread.currentThread() != this.worker)
+      {
+        if (this.policy == RejectPolicy.DISCARD)
+        {
+          Logger.warn("queue " + this.name + " full, discarding message");
+          NamedConcurrentQueue.discard(command);
+          return;
+        }
+        if (this.policy == RejectPolicy.DISCARD_OLDEST)
+        {
+          Logger.warn("queue " + this.name + " full, discarding oldest message");
+          NamedConcurrentQueue.discard(this.tasks.poll());
+          break;
+        }
+
+        try
+        {
+          this.wait();
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          throw new RejectedExecutionException("interrupted while waiting for queue " + this.name);
+        }
+      }
+      this.tasks.offer(command);
+      if (this.running)
+        return;
+      this.running = true;
+    }
+    this.schedule();
+  }
+
+  /**
+   * Uebergibt den Worker an den darunterliegenden Executor.
+   */
+  private void schedule()
+  {
+    try
+    {
+      // Die Position darf erst geaendert werden, wenn der Worker nicht mehr in der Warteschlange ist
+      this.sequence = PriorityTaskQueue.sequence();
+      this.order    = PriorityTaskQueue.order(this.sequence,this.priority);
+      this.target.execute(this.drain);
+    }
+    catch (RejectedExecutionException e)
+    {
+      synchronized (this)
+      {
+        Logger.warn("queue " + this.name + " rejected, " + this.tasks.size() + " messages not delivered");
+        for (Runnable r:this.tasks)
+          NamedConcurrentQueue.discard(r);
+        this.tasks.clear();
+        this.running = false;
+        this.notifyAll();
+      }
+    }
+  }
+}
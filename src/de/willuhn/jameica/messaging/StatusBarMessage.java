@@ -16,7 +16,7 @@ package de.willuhn.jameica.messaging;
  * die MessagingFactory.
  * @author willuhn
  */
-public class StatusBarMessage extends TextMessage
+public class StatusBarMessage extends TextMessage implements PrioritizedMessage
 {
 
   /**
@@ -57,4 +57,14 @@ public class StatusBarMessage extends TextMessage
   {
     return this.type;
   }
+
+  /**
+   * Statusbar-Nachrichten werden bevorzugt zugestellt, damit der Benutzer
+   * nicht auf die Rueckmeldung warten muss.
+   * @see de.willuhn.jameica.messaging.PrioritizedMessage#getPriority()
+   */
+  public int getPriority()
+  {
+    return PRIORITY_HIGH;
+  }
 }
@@ -17,7 +17,7 @@ import de.willuhn.jameica.system.Application;
  * etwas geaendert hat. Z.Bsp. wenn das System gebootet wurde oder wenn
  * es heruntergefahren wird.
  */
-public class SystemMessage extends TextMessage
+public class SystemMessage extends TextMessage implements PrioritizedMessage
 {
   /**
    * Dieser Code wird verwendet, wenn das System vollstaendig gestartet wurde.
@@ -64,6 +64,15 @@ public class SystemMessage extends TextMessage
   {
     return this.code;
   }
+
+  /**
+   * Aenderungen am System-Status werden bevorzugt zugestellt.
+   * @see de.willuhn.jameica.messaging.PrioritizedMessage#getPriority()
+   */
+  public int getPriority()
+  {
+    return PRIORITY_HIGH;
+  }
 }
 
 
@@ -13,9 +13,15 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 import java.util.jar.JarFile;
 
@@ -56,6 +62,18 @@ public class Manifest implements Comparable
   
   private String buildnumber            = "";
   private String builtdate              = "";
+  
+  // Die folgenden Werte ermitteln wir einmalig beim Einlesen des Manifests.
+  // Die Getter liefern Kopien der Arrays, damit der Aufrufer sie nicht aendern kann.
+  private String name                   = null;
+  private ServiceDescriptor[] services  = null;
+  private ExtensionDescriptor[] ext     = null;
+  private ConsumerDescriptor[] consumer = null;
+  private MessageDescriptor[] messages  = null;
+  private Dependency[] deps             = null;
+  
+  // Wird erst beim ersten Aufruf von getDependencies() ermittelt
+  private volatile Dependency[] allDeps = null;
 
   /**
    * ct.
@@ -63,6 +81,17 @@ public class Manifest implements Comparable
    * @throws Exception
    */
   public Manifest(File manifest) throws Exception
+  {
+    this(manifest,null);
+  }
+
+  /**
+   * ct.
+   * @param manifest die Datei mit dem Manifest.
+   * @param cache optionaler Cache, aus dem das Manifest gelesen werden soll.
+   * @throws Exception
+   */
+  Manifest(File manifest, ManifestCache cache) throws Exception
   {
     if (manifest == null)
     throw new IOException("no manifest (plugin.xml) given");
@@ -71,7 +100,10 @@ public class Manifest implements Comparable
       throw new IOException("manifest " + manifest.getAbsolutePath() + " not readable");
 
     this.manifest = manifest;
-    read(new FileInputStream(manifest));
+    if (cache != null)
+      this.init(cache.read(manifest));
+    else
+      read(new FileInputStream(manifest));
 
     Logger.info(getName() + " " + this.getVersion());
     Logger.info("  Directory  : " + this.getPluginDir());
@@ -126,10 +158,93 @@ public class Manifest implements Comparable
    * @throws Exception
    */
   private void read(InputStream is) throws Exception
+  {
+    this.init(parse(is));
+  }
+  
+  /**
+   * Parst das XML des Manifests.
+   * @param is InputStream mit dem Manifest.
+   * @return die XML-Struktur.
+   * @throws Exception
+   */
+  static IXMLElement parse(InputStream is) throws Exception
   {
     IXMLParser parser = XMLParserFactory.createDefaultXMLParser();
     parser.setReader(new StdXMLReader(is));
-    root = (IXMLElement) parser.parse();
+    return (IXMLElement) parser.parse();
+  }
+  
+  /**
+   * Uebernimmt die XML-Struktur und ermittelt die daraus abgeleiteten Werte.
+   * @param root die XML-Struktur.
+   */
+  private void init(IXMLElement root)
+  {
+    this.root = root;
+    this.name = root.getAttribute("name",null);
+    
+    IXMLElement e = root.getFirstChildNamed("services");
+    if (e == null || !e.hasChildren())
+    {
+      this.services = new ServiceDescriptor[0]; // BUGZILLA 531
+    }
+    else
+    {
+      Vector v = e.getChildrenNamed("service");
+      this.services = new ServiceDescriptor[v.size()];
+      for (int i=0;i<v.size();++i)
+      {
+        this.services[i] = new ServiceDescriptor((IXMLElement)v.get(i));
+      }
+    }
+
+    e = root.getFirstChildNamed("extensions");
+    if (e != null && e.hasChildren())
+    {
+      Vector v = e.getChildrenNamed("extension");
+      this.ext = new ExtensionDescriptor[v.size()];
+      for (int i=0;i<v.size();++i)
+      {
+        this.ext[i] = new ExtensionDescriptor((IXMLElement)v.get(i));
+      }
+    }
+
+    e = root.getFirstChildNamed("messaging");
+    if (e != null && e.hasChildren())
+    {
+      Vector v = e.getChildrenNamed("consumer");
+      this.consumer = new ConsumerDescriptor[v.size()];
+      for (int i=0;i<v.size();++i)
+      {
+        this.consumer[i] = new ConsumerDescriptor((IXMLElement)v.get(i));
+      }
+
+      v = e.getChildrenNamed("message");
+      this.messages = new MessageDescriptor[v.size()];
+      for (int i=0;i<v.size();++i)
+      {
+        this.messages[i] = new MessageDescriptor(this,(IXMLElement)v.get(i));
+      }
+    }
+    
+    List<Dependency> found = new ArrayList<Dependency>();
+    e = root.getFirstChildNamed("requires");
+    if (e != null && e.hasChildren())
+    {
+      Vector v = e.getChildrenNamed("import");
+      for (int i=0;i<v.size();++i)
+      {
+        IXMLElement plugin = (IXMLElement) v.get(i);
+        String name = plugin.getAttribute("plugin",null);
+        if (name == null || name.length() == 0)
+          continue;
+
+        boolean required = Boolean.valueOf(plugin.getAttribute("required","true")).booleanValue();
+        found.add(new Dependency(name,plugin.getAttribute("version",null),required));
+      }
+    }
+    this.deps = found.toArray(new Dependency[found.size()]);
   }
 
   /**
@@ -210,7 +325,7 @@ public class Manifest implements Comparable
    */
   public String getName()
 	{
-    return root.getAttribute("name",null);
+    return this.name;
 	}
 	
   /**
@@ -420,17 +535,7 @@ public class Manifest implements Comparable
    */
   public ServiceDescriptor[] getServices()
 	{
-		IXMLElement services = root.getFirstChildNamed("services");
-		if (services == null || !services.hasChildren())
-			return new ServiceDescriptor[0]; // BUGZILLA 531
-
-		Vector v = services.getChildrenNamed("service");
-		ServiceDescriptor[] s = new ServiceDescriptor[v.size()];
-		for (int i=0;i<v.size();++i)
-		{
-			s[i] = new ServiceDescriptor((IXMLElement)v.get(i));
-		}
-		return s;
+    return this.services.clone();
 	}
 
   /**
@@ -462,17 +567,7 @@ public class Manifest implements Comparable
    */
   public ExtensionDescriptor[] getExtensions()
   {
-    IXMLElement extensions = root.getFirstChildNamed("extensions");
-    if (extensions == null || !extensions.hasChildren())
-      return null;
-
-    Vector v = extensions.getChildrenNamed("extension");
-    List<ExtensionDescriptor> list = new LinkedList<ExtensionDescriptor>();
-    for (Object e:v)
-    {
-      list.add(new ExtensionDescriptor((IXMLElement)e));
-    }
-    return list.toArray(new ExtensionDescriptor[list.size()]);
+    return this.ext != null ? this.ext.clone() : null;
   }
   
   /**
@@ -482,17 +577,7 @@ public class Manifest implements Comparable
    */
   public ConsumerDescriptor[] getMessageConsumers()
   {
-    IXMLElement messaging = root.getFirstChildNamed("messaging");
-    if (messaging == null || !messaging.hasChildren())
-      return null;
-
-    Vector v = messaging.getChildrenNamed("consumer");
-    ConsumerDescriptor[] s = new ConsumerDescriptor[v.size()];
-    for (int i=0;i<v.size();++i)
-    {
-      s[i] = new ConsumerDescriptor((IXMLElement)v.get(i));
-    }
-    return s;
+    return this.consumer != null ? this.consumer.clone() : null;
   }
 
   /**
@@ -501,17 +586,7 @@ public class Manifest implements Comparable
    */
   public MessageDescriptor[] getMessages()
   {
-    IXMLElement messaging = root.getFirstChildNamed("messaging");
-    if (messaging == null || !messaging.hasChildren())
-      return null;
-
-    Vector v = messaging.getChildrenNamed("message");
-    MessageDescriptor[] s = new MessageDescriptor[v.size()];
-    for (int i=0;i<v.size();++i)
-    {
-      s[i] = new MessageDescriptor(this,(IXMLElement)v.get(i));
-    }
-    return s;
+    return this.messages != null ? this.messages.clone() : null;
   }
 
   /**
@@ -537,26 +612,7 @@ public class Manifest implements Comparable
    */
   public Dependency[] getDirectDependencies()
   {
-    IXMLElement deps = root.getFirstChildNamed("requires");
-
-    if (deps == null || !deps.hasChildren())
-      return new Dependency[0];
-
-    List<Dependency> found = new ArrayList<Dependency>();
-    
-    Vector v = deps.getChildrenNamed("import");
-    for (int i=0;i<v.size();++i)
-    {
-      IXMLElement plugin = (IXMLElement) v.get(i);
-      String name = plugin.getAttribute("plugin",null);
-      if (name == null || name.length() == 0)
-        continue;
-
-      boolean required = Boolean.valueOf(plugin.getAttribute("required","true")).booleanValue();
-      Dependency dep = new Dependency(name,plugin.getAttribute("version",null),required);
-      found.add(dep);
-    }
-    return found.toArray(new Dependency[found.size()]);
+    return this.deps.clone();
   }
   
   /**
@@ -566,51 +622,50 @@ public class Manifest implements Comparable
    * Plugins, die von diesen wiederum benoetigt werden.
    * Wenn nur die einfache Liste der Abhaengigkeiten ermittelt werden soll (also ohne
    * indirekte Abhaengigkeiten), dann muss {@link #getDirectDependencies()} verwendet werden.
+   * Die Liste wird beim ersten Aufruf ermittelt und danach wiederverwendet.
    *
    * @return Liste von Abhaengigkeiten fuer dieses Plugin.
    *         Die Funktion liefert nie {@code null} sondern hoechstens ein leeres Array.
    */
   public Dependency[] getDependencies()
   {
-    Dependency[] direct = this.getDirectDependencies();
-    if (direct.length == 0)
-      return direct; // Keine direkten Abhaengigkeiten. Also auch keine indirekten
+    if (this.allDeps != null)
+      return this.allDeps.clone();
     
-    List<Dependency> found = new ArrayList<Dependency>();
-    List<String> toCheck = new ArrayList<String>();
+    Dependency[] direct = this.deps;
+    if (direct.length == 0)
+      return new Dependency[0]; // Keine direkten Abhaengigkeiten. Also auch keine indirekten
     
-    for (Dependency d:direct)
+    Map<String,Manifest> all = new HashMap<String,Manifest>();
+    for (Manifest mf:Application.getPluginLoader().getManifests())
     {
-      found.add(d);
-      toCheck.add(d.getName());
+      all.put(mf.getName(),mf);
     }
     
-    List<Manifest> all = Application.getPluginLoader().getManifests();
-    for (int i=0;i<all.size();++i)
+    // Wir laufen ueber die direkten Abhaengigkeiten der Plugins. Jedes Plugin
+    // wird hierbei nur einmal besucht. Damit enden auch zyklische Abhaengigkeiten.
+    List<Dependency> found = new ArrayList<Dependency>();
+    Set<String> visited    = new HashSet<String>();
+    Deque<Dependency> toCheck = new ArrayDeque<Dependency>(Arrays.asList(direct));
+    visited.add(this.getName());
+
+    while (!toCheck.isEmpty())
     {
-      Manifest mf = all.get(i);
-      String name = mf.getName();
-      
-      // Plugin ist installiert, aber nicht Teil der aktuell gesuchten Abhaengigkeiten
-      if (!toCheck.contains(name))
-        continue;
+      Dependency d = toCheck.poll();
+      if (!found.contains(d))
+        found.add(d);
+
+      if (!visited.add(d.getName()))
+        continue; // haben wir schon
       
-      // Jepp, das Plugin ist in unserer Pruef-Liste enthalten.
-      // Also brauchen wir auch dessen Abhaengigkeiten
-      Dependency[] secondDeps = mf.getDependencies();
-      if (secondDeps == null || secondDeps.length == 0)
-        continue; // Plugin hat keine Abhaengikeiten
-
-      // Checken, ob wir die Abhaengigkeit schon haben
-      // Nur bei Bedarf hinzufuegen
-      for (int k=0;k<secondDeps.length;++k)
-      {
-        if (found.contains(secondDeps[k]))
-          continue; // haben wir schon
-        found.add(secondDeps[k]);
-      }
+      Manifest mf = all.get(d.getName());
+      if (mf == null)
+        continue; // Plugin nicht installiert. Faellt beim Laden auf
+
+      toCheck.addAll(Arrays.asList(mf.deps));
     }
-    return found.toArray(new Dependency[found.size()]);
+    this.allDeps = found.toArray(new Dependency[found.size()]);
+    return this.allDeps.clone();
   }
 
   /**
@@ -0,0 +1,299 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.willuhn.io.IOUtil;
+import de.willuhn.logging.Logger;
+import net.n3.nanoxml.IXMLElement;
+import net.n3.nanoxml.XMLElement;
+
+/**
+ * Cache fuer die geparsten Manifeste.
+ * Die XML-Struktur der plugin.xml wird in einem kompakten Binaer-Format gespeichert.
+ * Solange sich Aenderungsdatum und Groesse der Datei nicht aendern, wird das Manifest
+ * beim naechsten Start aus dem Cache gelesen, ohne das XML erneut zu parsen.
+ */
+final class ManifestCache
+{
+  /**
+   * Versionsnummer des Dateiformats.
+   */
+  private final static int VERSION = 1;
+
+  private File file                   = null;
+  private Map<String,Entry> entries   = new HashMap<String,Entry>();
+  private Map<String,Entry> used      = new LinkedHashMap<String,Entry>();
+  private boolean changed             = false;
+
+  /**
+   * ct.
+   * @param file die Cache-Datei.
+   */
+  ManifestCache(File file)
+  {
+    this.file = file;
+    this.load();
+  }
+
+  /**
+   * Liefert die XML-Struktur der plugin.xml.
+   * Ist die Datei seit dem letzten Start unveraendert, stammt sie aus dem Cache.
+   * @param manifest die plugin.xml.
+   * @return die XML-Struktur.
+   * @throws Exception
+   */
+  synchronized IXMLElement read(File manifest) throws Exception
+  {
+    String key    = manifest.getAbsolutePath();
+    long modified = manifest.lastModified();
+    long size     = manifest.length();
+
+    Entry e = this.entries.get(key);
+    if (e == null || e.modified != modified || e.size != size)
+    {
+      InputStream is = null;
+      try
+      {
+        is = new FileInputStream(manifest);
+        e = new Entry(modified,size,Manifest.parse(is));
+      }
+      finally
+      {
+        IOUtil.close(is);
+      }
+      this.entries.put(key,e);
+      this.changed = true;
+    }
+    this.used.put(key,e);
+    return e.root;
+  }
+
+  /**
+   * Speichert den Cache, falls er sich geaendert hat.
+   * Manifeste, die seit dem Laden nicht mehr abgerufen wurden, werden hierbei entfernt.
+   */
+  synchronized void write()
+  {
+    if (!this.changed && this.used.size() == this.entries.size())
+      return;
+
+    File dir = this.file.getParentFile();
+    if (!dir.exists() && !dir.mkdirs())
+    {
+      Logger.warn("unable to create dir " + dir);
+      return;
+    }
+
+    // Erst in eine temporaere Datei schreiben. Dann bleibt bei einem Abbruch keine halbe Datei liegen
+    File temp = new File(dir,this.file.getName() + ".tmp");
+    DataOutputStream os = null;
+    try
+    {
+      os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      os.writeInt(VERSION);
+      os.writeInt(this.used.size());
+      for (Map.Entry<String,Entry> e:this.used.entrySet())
+      {
+        Entry entry = e.getValue();
+        os.writeUTF(e.getKey());
+        os.writeLong(entry.modified);
+        os.writeLong(entry.size);
+        write(os,entry.root);
+      }
+      os.close();
+      os = null;
+
+      if (this.file.exists() && !this.file.delete())
+      {
+        Logger.warn("unable to replace manifest cache " + this.file);
+        return;
+      }
+      if (!temp.renameTo(this.file))
+        Logger.warn("unable to rename " + temp + " to " + this.file);
+
+      this.entries.clear();
+      this.entries.putAll(this.used);
+      this.changed = false;
+    }
+    catch (Exception e)
+    {
+      Logger.error("unable to write manifest cache " + this.file,e);
+    }
+    finally
+    {
+      IOUtil.close(os);
+      if (temp.exists())
+        temp.delete();
+    }
+  }
+
+  /**
+   * Laedt den Cache aus der Datei.
+   */
+  private void load()
+  {
+    if (!this.file.isFile())
+      return;
+
+    DataInputStream is = null;
+    try
+    {
+      is = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+      if (is.readInt() != VERSION)
+      {
+        Logger.info("manifest cache " + this.file + " outdated");
+        return;
+      }
+
+      Map<String,Entry> result = new HashMap<String,Entry>();
+      int count = is.readInt();
+      for (int i=0;i<count;++i)
+      {
+        String key    = is.readUTF();
+        long modified = is.readLong();
+        long size     = is.readLong();
+        result.put(key,new Entry(modified,size,read(is)));
+      }
+      this.entries = result;
+    }
+    catch (Exception e)
+    {
+      Logger.error("unable to read manifest cache " + this.file + ", rebuilding",e);
+    }
+    finally
+    {
+      IOUtil.close(is);
+    }
+  }
+
+  /**
+   * Schreibt das Element samt Kind-Elementen in den Stream.
+   * @param os der Stream.
+   * @param e das Element.
+   * @throws IOException
+   */
+  private static void write(DataOutputStream os, IXMLElement e) throws IOException
+  {
+    writeString(os,e.getFullName());
+
+    List<String> names = new ArrayList<String>();
+    Enumeration en = e.enumerateAttributeNames();
+    while (en.hasMoreElements())
+    {
+      names.add((String) en.nextElement());
+    }
+    os.writeInt(names.size());
+    for (String name:names)
+    {
+      os.writeUTF(name);
+      writeString(os,e.getAttribute(name,null));
+    }
+
+    writeString(os,e.getContent());
+
+    int count = e.getChildrenCount();
+    os.writeInt(count);
+    for (int i=0;i<count;++i)
+    {
+      write(os,e.getChildAtIndex(i));
+    }
+  }
+
+  /**
+   * Liest das Element samt Kind-Elementen aus dem Stream.
+   * @param is der Stream.
+   * @return das Element.
+   * @throws IOException
+   */
+  private static IXMLElement read(DataInputStream is) throws IOException
+  {
+    XMLElement e = new XMLElement(readString(is));
+
+    int count = is.readInt();
+    for (int i=0;i<count;++i)
+    {
+      String name = is.readUTF();
+      e.setAttribute(name,readString(is));
+    }
+
+    e.setContent(readString(is));
+
+    count = is.readInt();
+    for (int i=0;i<count;++i)
+    {
+      e.addChild(read(is));
+    }
+    return e;
+  }
+
+  /**
+   * Schreibt einen String, der auch NULL sein darf.
+   * @param os der Stream.
+   * @param s der String.
+   * @throws IOException
+   */
+  private static void writeString(DataOutputStream os, String s) throws IOException
+  {
+    os.writeBoolean(s != null);
+    if (s != null)
+      os.writeUTF(s);
+  }
+
+  /**
+   * Liest einen String, der auch NULL sein darf.
+   * @param is der Stream.
+   * @return der String.
+   * @throws IOException
+   */
+  private static String readString(DataInputStream is) throws IOException
+  {
+    return is.readBoolean() ? is.readUTF() : null;
+  }
+
+  /**
+   * Ein Manifest im Cache.
+   */
+  private static class Entry
+  {
+    private final long modified;
+    private final long size;
+    private final IXMLElement root;
+
+    /**
+     * ct.
+     * @param modified Aenderungsdatum der Datei.
+     * @param size Groesse der Datei.
+     * @param root die XML-Struktur.
+     */
+    private Entry(long modified, long size, IXMLElement root)
+    {
+      this.modified = modified;
+      this.size     = size;
+      this.root     = root;
+    }
+  }
+}
@@ -13,12 +13,25 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.security.CodeSource;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.willuhn.io.FileFinder;
 import de.willuhn.io.FileUtil;
@@ -36,6 +49,8 @@ import de.willuhn.jameica.messaging.StatusBarMessage;
 import de.willuhn.jameica.services.BeanService;
 import de.willuhn.jameica.services.ClassService;
 import de.willuhn.jameica.services.PluginSourceService;
+import de.willuhn.jameica.services.inject.InjectionPlan;
+import de.willuhn.jameica.store.codec.JAXBCodec;
 import de.willuhn.jameica.system.Application;
 import de.willuhn.jameica.system.OperationCanceledException;
 import de.willuhn.jameica.system.Settings;
@@ -63,8 +78,8 @@ public final class PluginLoader
   // Die Reihenfolge aus de.willuhn.jameica.system.Config.properties bleibt
   private List<Manifest> plugins = new ArrayList<Manifest>();
 
-  /** Initialisierungsmeldungen von Plugins. */
-  private Map<Manifest,Throwable> initErrors = new HashMap<Manifest,Throwable>();
+  /** Initialisierungsmeldungen von Plugins. In der Reihenfolge der sortierten Plugins. */
+  private Map<Manifest,Throwable> initErrors = new LinkedHashMap<Manifest,Throwable>();
 
   /** Den brauchen wir, damit wir Updates an Plugins triggern und deren Update-Methode aufrufen koennen. */
   private Settings updateChecker = null;
@@ -90,6 +105,9 @@ public final class PluginLoader
     List<PluginSource> sources = service.getSources();
     
     Map<String,Manifest> cache = new HashMap<String,Manifest>();
+    
+    // Unveraenderte Manifeste muessen nicht erneut geparst werden
+    ManifestCache manifests = new ManifestCache(new File(Application.getConfig().getWorkDir() + File.separator + "cache","manifests.index"));
 
     for (PluginSource source:sources)
     {
@@ -108,7 +126,7 @@ public final class PluginLoader
             Logger.error("no manifest found in " + f.getAbsolutePath() + ", skipping directory");
             continue;
           }
-          Manifest m = new Manifest(mf);
+          Manifest m = new Manifest(mf,manifests);
           m.setPluginSource(source.getType());
           
           if (isObsolete(m.getName()))
@@ -182,6 +200,8 @@ public final class PluginLoader
       
     }
     
+    manifests.write();
+    
     if (cache.size() == 0)
     {
       Logger.info("*** no plugins installed ***");
@@ -193,40 +213,67 @@ public final class PluginLoader
     ////////////////////////////////////////////////////////////////////////////
     // Sortieren nach Abhaengigkeiten
     Logger.info("sort plugins by dependency");
-    QuickSort.quickSort(this.plugins);
+    TopologicalSort sort = new TopologicalSort(this.plugins);
+    this.plugins.clear();
+    this.plugins.addAll(sort.getSorted());
     for (int i = 0; i < this.plugins.size(); ++i)
     {
       Manifest mf = this.plugins.get(i);
       Logger.info("  " + mf.getName());
     }
+    
+    // Plugins mit zyklischen Abhaengigkeiten koennen wir nicht laden
+    for (Map.Entry<Manifest,List<String>> e:sort.getCycles().entrySet())
+    {
+      Manifest mf = e.getKey();
+      String deps = String.join(", ",e.getValue());
+      Logger.error("unable to load plugin " + mf.getName() + ": cyclic dependency to " + deps);
+      this.initErrors.put(mf,new ApplicationException(Application.getI18n().tr("Plugin {0} besitzt eine zyklische Abhngigkeit zu {1}",mf.getName(),deps)));
+    }
     //
     ////////////////////////////////////////////////////////////////////////////
 
     ////////////////////////////////////////////////////////////////////////////
     // Plugins laden
-    for (Manifest mf:this.plugins)
+    // Ein Plugin wird erst dann geladen, wenn alle Plugins, von denen es abhaengig
+    // ist, fertig sind. Die Klassen voneinander unabhaengiger Plugins werden ggf. parallel
+    // eingelesen. Die Fehler werten wir anschliessend in der Reihenfolge der Sortierung aus.
+    boolean parallel = this.isParallel();
+    Logger.info("loading plugin classes " + (parallel ? "in parallel" : "sequentially"));
+    Map<Manifest,Throwable> errors = schedule(this.plugins,parallel,new Step()
     {
-      String name = mf.getName();
-
-      try
+      /**
+       * @see de.willuhn.jameica.plugin.PluginLoader.Step#run(de.willuhn.jameica.plugin.Manifest)
+       */
+      public void run(Manifest mf) throws Exception
       {
-        this.loadPlugin(mf);
-      }
-      catch (Throwable t)
-      {
-        if (t instanceof ApplicationException)
-          Logger.error("unable to load plugin " + name + ": " + t.getMessage()); // hier brauchen wir keinen Stacktrace
-        else
-          Logger.error("unable to load plugin  " + name, t);
-        
-        this.initErrors.put(mf,t);
+        if (initErrors.containsKey(mf))
+          return; // Zyklische Abhaengigkeit
+        loadPlugin(mf);
       }
+    });
+    
+    for (Manifest mf:this.plugins)
+    {
+      Throwable t = errors.get(mf);
+      if (t == null)
+        continue;
+
+      String name = mf.getName();
+      if (t instanceof ApplicationException)
+        Logger.error("unable to load plugin " + name + ": " + t.getMessage()); // hier brauchen wir keinen Stacktrace
+      else
+        Logger.error("unable to load plugin  " + name, t);
+      
+      this.initErrors.put(mf,t);
     }
     //
     ////////////////////////////////////////////////////////////////////////////
 
     ////////////////////////////////////////////////////////////////////////////
     // Plugins initialisieren
+    // Das geschieht der Reihe nach in der sortierten Reihenfolge. install(), update() und
+    // init() der Plugins sowie das Starten der Services laufen nie parallel.
     for (Manifest mf:this.plugins)
     {
       if (!mf.isLoaded())
@@ -276,6 +323,184 @@ public final class PluginLoader
       
   }
 
+  /**
+   * Prueft, ob die Klassen der Plugins parallel geladen werden sollen.
+   * Kann mit dem Parameter {@code init.parallel=true} aktiviert werden.
+   * Per Default werden die Plugins wie bisher der Reihe nach geladen.
+   * <p>Die Initialisierung der Plugins erfolgt immer der Reihe nach. install(), update()
+   * und init() der Plugins sowie ServiceFactory.init() sind nicht thread-sicher: Sie
+   * schreiben in die gemeinsamen Einstellungen, registrieren Extensions und Services in
+   * globalen Registries und greifen teilweise auf die GUI zu. Zudem verlassen sich viele
+   * Plugins darauf, dass die Services der Plugins, von denen sie abhaengen, bereits laufen
+   * und dass nichts anderes parallel initialisiert wird.
+   * @return true, wenn die Klassen der Plugins parallel geladen werden sollen.
+   */
+  private boolean isParallel()
+  {
+    return updateChecker.getBoolean("init.parallel",false);
+  }
+
+  /**
+   * Fuehrt den Schritt fuer alle Plugins aus.
+   * Ein Plugin ist erst dann an der Reihe, wenn alle Plugins, von denen es direkt abhaengig
+   * ist, fertig sind - egal ob erfolgreich oder nicht. Voneinander unabhaengige Plugins werden
+   * im parallelen Modus gleichzeitig bearbeitet. Ansonsten der Reihe nach in der sortierten Reihenfolge.
+   * Ein Fehler in einem Schritt haelt die anderen Plugins nicht auf. Die Map mit den Fehlern
+   * ist daher unabhaengig vom Modus immer die selbe.
+   * @param plugins die Plugins in sortierter Reihenfolge.
+   * @param parallel true, wenn die Plugins parallel bearbeitet werden sollen.
+   * @param step der auszufuehrende Schritt.
+   * @return Map mit den Fehlern der Plugins. Niemals NULL.
+   */
+  static Map<Manifest,Throwable> schedule(List<Manifest> plugins, boolean parallel, Step step)
+  {
+    Map<Manifest,Throwable> errors = new ConcurrentHashMap<Manifest,Throwable>();
+    
+    if (!parallel || plugins.size() < 2)
+    {
+      for (Manifest mf:plugins)
+      {
+        try
+        {
+          step.run(mf);
+        }
+        catch (Throwable t)
+        {
+          errors.put(mf,t);
+        }
+      }
+      return errors;
+    }
+    
+    // Direkte Abhaengigkeiten der Plugins untereinander ermitteln. Abhaengigkeiten
+    // zu nicht vorhandenen Plugins ignorieren wir hier. Die fallen beim Laden ohnehin auf.
+    Map<String,Manifest> names = new HashMap<String,Manifest>();
+    for (Manifest mf:plugins)
+    {
+      names.put(mf.getName(),mf);
+    }
+    Map<Manifest,List<Manifest>> deps = new HashMap<Manifest,List<Manifest>>();
+    for (Manifest mf:plugins)
+    {
+      List<Manifest> list = new ArrayList<Manifest>();
+      for (Dependency d:mf.getDirectDependencies())
+      {
+        Manifest m = names.get(d.getName());
+        if (m != null && m != mf)
+          list.add(m);
+      }
+      deps.put(mf,list);
+    }
+
+    List<Manifest> open = new ArrayList<Manifest>(plugins);
+    Set<Manifest> done  = new HashSet<Manifest>();
+    int running = 0;
+    
+    ExecutorService pool = createPool(plugins.size());
+    CompletionService<Manifest> jobs = new ExecutorCompletionService<Manifest>(pool);
+    try
+    {
+      while (open.size() > 0 || running > 0)
+      {
+        // Alle Plugins starten, deren Abhaengigkeiten erledigt sind
+        Iterator<Manifest> it = open.iterator();
+        while (it.hasNext())
+        {
+          Manifest mf = it.next();
+          if (!done.containsAll(deps.get(mf)))
+            continue;
+          it.remove();
+          submit(jobs,mf,step,errors);
+          running++;
+        }
+        
+        // Es laeuft nichts mehr und es ist trotzdem nichts startbar. Dann
+        // haben wir eine zyklische Abhaengigkeit. Wir nehmen einfach das
+        // naechste Plugin in der Reihenfolge der Sortierung.
+        if (running == 0)
+        {
+          Manifest mf = open.remove(0);
+          Logger.warn("cyclic dependency found for plugin " + mf.getName());
+          submit(jobs,mf,step,errors);
+          running++;
+        }
+        
+        done.add(jobs.take().get());
+        running--;
+      }
+    }
+    catch (Exception e)
+    {
+      Logger.error("error while waiting for plugins",e);
+      if (e instanceof InterruptedException)
+        Thread.currentThread().interrupt();
+      
+      for (Manifest mf:plugins)
+      {
+        if (!done.contains(mf) && !errors.containsKey(mf))
+          errors.put(mf,e);
+      }
+    }
+    finally
+    {
+      pool.shutdownNow();
+    }
+    return errors;
+  }
+  
+  /**
+   * Uebergibt den Schritt fuer das Plugin an den Thread-Pool.
+   * @param jobs der Thread-Pool.
+   * @param mf das Manifest des Plugins.
+   * @param step der auszufuehrende Schritt.
+   * @param errors Map, in der ggf. aufgetretene Fehler gesammelt werden.
+   */
+  private static void submit(CompletionService<Manifest> jobs, final Manifest mf, final Step step, final Map<Manifest,Throwable> errors)
+  {
+    jobs.submit(new Callable<Manifest>()
+    {
+      /**
+       * @see java.util.concurrent.Callable#call()
+       */
+      public Manifest call() throws Exception
+      {
+        try
+        {
+          step.run(mf);
+        }
+        catch (Throwable t)
+        {
+          errors.put(mf,t);
+        }
+        return mf;
+      }
+    });
+  }
+  
+  /**
+   * Erzeugt den Thread-Pool fuer das parallele Laden der Plugins.
+   * @param plugins Anzahl der Plugins.
+   * @return der Thread-Pool.
+   */
+  private static ExecutorService createPool(int plugins)
+  {
+    int size = Math.max(1,Math.min(plugins,Runtime.getRuntime().availableProcessors()));
+    return Executors.newFixedThreadPool(size,new ThreadFactory()
+    {
+      private AtomicInteger count = new AtomicInteger();
+      
+      /**
+       * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+       */
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r,"Jameica Plugin Loader " + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
   /**
    * Laedt das Plugin.
    * @param manifest
@@ -786,6 +1011,8 @@ public final class PluginLoader
       if (plugin != null)
       {
         Application.getServiceFactory().shutDown(plugin);
+        InjectionPlan.invalidate(mf.getClassLoader());
+        JAXBCodec.invalidate(mf.getClassLoader());
         monitor.addPercentComplete(10);
       }
       //
@@ -978,44 +1205,169 @@ public final class PluginLoader
   }
 
   /**
-   * Hilfsklasse fuer das Quicksort
+   * Ein einzelner Schritt beim Laden eines Plugins.
    */
-  private static class QuickSort
+  static interface Step
   {
+    /**
+     * Fuehrt den Schritt fuer das Plugin aus.
+     * @param mf das Manifest des Plugins.
+     * @throws Exception
+     */
+    public void run(Manifest mf) throws Exception;
+  }
 
-    private static void swap(List list, int i, int j)
+  /**
+   * Hilfsklasse fuer die Sortierung der Plugins nach ihren Abhaengigkeiten.
+   * Topologische Sortierung nach Kahn ueber die direkten Abhaengigkeiten. Jedes
+   * Plugin steht hinter allen Plugins, von denen es abhaengig ist. Die Laufzeit ist
+   * linear zur Anzahl der Plugins und Abhaengigkeiten.
+   */
+  static class TopologicalSort
+  {
+    private List<Manifest> sorted            = new ArrayList<Manifest>();
+    private Map<Manifest,List<String>> cycles = new LinkedHashMap<Manifest,List<String>>();
+
+    /**
+     * ct.
+     * @param list die zu sortierenden Plugins.
+     */
+    TopologicalSort(List<Manifest> list)
     {
-      Object tmp = list.get(i);
-      list.set(i, list.get(j));
-      list.set(j, tmp);
-    }
+      int size = list.size();
+      Map<String,Integer> names = new HashMap<String,Integer>();
+      for (int i=0;i<size;++i)
+      {
+        names.put(list.get(i).getName(),i);
+      }
 
-    private static void quickSort(List list)
-    {
-      if (list == null || list.size() < 2)
+      ////////////////////////////////////////////////////////////////////////////
+      // Graph einmalig aufbauen. Abhaengigkeiten zu nicht vorhandenen Plugins
+      // ignorieren wir hier. Die fallen beim Laden ohnehin auf.
+      List<List<Integer>> requires   = new ArrayList<List<Integer>>(size);
+      List<List<Integer>> dependents = new ArrayList<List<Integer>>(size);
+      int[] pending = new int[size];
+      for (int i=0;i<size;++i)
+      {
+        requires.add(new ArrayList<Integer>());
+        dependents.add(new ArrayList<Integer>());
+      }
+      for (int i=0;i<size;++i)
+      {
+        for (Dependency d:list.get(i).getDirectDependencies())
+        {
+          Integer k = names.get(d.getName());
+          if (k == null || k.intValue() == i || requires.get(i).contains(k))
+            continue;
+          requires.get(i).add(k);
+          dependents.get(k).add(i);
+          pending[i]++;
+        }
+      }
+      //
+      ////////////////////////////////////////////////////////////////////////////
+
+      ////////////////////////////////////////////////////////////////////////////
+      // Wir beginnen mit den Plugins ohne Abhaengigkeiten. Sobald alle Abhaengigkeiten
+      // eines Plugins einsortiert sind, ist es selbst an der Reihe.
+      boolean[] done = new boolean[size];
+      Deque<Integer> queue = new ArrayDeque<Integer>();
+      for (int i=0;i<size;++i)
+      {
+        if (pending[i] == 0)
+          queue.add(i);
+      }
+      while (!queue.isEmpty())
+      {
+        int i = queue.poll();
+        done[i] = true;
+        this.sorted.add(list.get(i));
+        for (int k:dependents.get(i))
+        {
+          if (--pending[k] == 0)
+            queue.add(k);
+        }
+      }
+      
+      if (this.sorted.size() == size)
         return;
-      _quickSort(list, 0, list.size() - 1);
-    }
-
-    private static void _quickSort(List list, int left, int right)
-    {
-      if (right > left)
+      //
+      ////////////////////////////////////////////////////////////////////////////
+
+      ////////////////////////////////////////////////////////////////////////////
+      // Die uebrigen Plugins sind Teil eines Zyklus oder von einem Zyklus abhaengig.
+      // Von hinten abbauen: Plugins, von denen kein uebriges Plugin mehr abhaengig
+      // ist, haengen nur vom Zyklus ab, sind aber nicht selbst Teil davon.
+      int[] used = new int[size];
+      for (int i=0;i<size;++i)
       {
-        int index = left + ((right - left) / 2);
-        Manifest pivot = (Manifest) list.get(index);
-
-        swap(list, index, right);
-        index = left;
-        for (int i = index; i < right; ++i)
+        if (done[i])
+          continue;
+        for (int k:requires.get(i))
         {
-          if (((Manifest) list.get(i)).compareTo(pivot) < 0)
-            swap(list, index++, i);
+          if (!done[k])
+            used[k]++;
         }
-        swap(list, index, right);
-
-        _quickSort(list, left, index);
-        _quickSort(list, index + 1, right);
       }
+      List<Manifest> behind = new ArrayList<Manifest>();
+      for (int i=0;i<size;++i)
+      {
+        if (!done[i] && used[i] == 0)
+          queue.add(i);
+      }
+      while (!queue.isEmpty())
+      {
+        int i = queue.poll();
+        done[i] = true;
+        behind.add(list.get(i));
+        for (int k:requires.get(i))
+        {
+          if (!done[k] && --used[k] == 0)
+            queue.add(k);
+        }
+      }
+      //
+      ////////////////////////////////////////////////////////////////////////////
+      
+      // Was jetzt noch uebrig ist, bildet den Zyklus
+      for (int i=0;i<size;++i)
+      {
+        if (done[i])
+          continue;
+        Manifest mf = list.get(i);
+        List<String> deps = new ArrayList<String>();
+        for (int k:requires.get(i))
+        {
+          if (!done[k])
+            deps.add(list.get(k).getName());
+        }
+        this.sorted.add(mf);
+        this.cycles.put(mf,deps);
+      }
+      
+      // Die von den Zyklen abhaengigen Plugins kommen ganz ans Ende.
+      // Sie wurden von hinten abgebaut, daher umdrehen.
+      Collections.reverse(behind);
+      this.sorted.addAll(behind);
+    }
+    
+    /**
+     * Liefert die sortierte Liste aller Plugins.
+     * Plugins mit zyklischen Abhaengigkeiten sind ebenfalls enthalten.
+     * @return die sortierte Liste.
+     */
+    List<Manifest> getSorted()
+    {
+      return this.sorted;
+    }
+    
+    /**
+     * Liefert die Plugins, die Teil einer zyklischen Abhaengigkeit sind.
+     * @return Map mit den Plugins und den Namen der Plugins, zu denen der Zyklus besteht.
+     */
+    Map<Manifest,List<String>> getCycles()
+    {
+      return this.cycles;
     }
   }
 }
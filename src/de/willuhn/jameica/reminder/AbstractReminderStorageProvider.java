@@ -31,6 +31,24 @@ public abstract class AbstractReminderStorageProvider implements ReminderStorage
   {
     return UUID.randomUUID().toString();
   }
+
+  /**
+   * Beginnt eine Folge von Aenderungen, die der Storage-Provider gemeinsam speichern kann.
+   * Die Default-Implementierung tut nichts.
+   * @throws Exception
+   */
+  public void begin() throws Exception
+  {
+  }
+
+  /**
+   * Beendet eine mit {@link #begin()} begonnene Folge von Aenderungen.
+   * Die Default-Implementierung tut nichts.
+   * @throws Exception
+   */
+  public void commit() throws Exception
+  {
+  }
   
   /**
    * @see de.willuhn.jameica.reminder.ReminderStorageProvider#find(java.lang.String, java.util.Date, java.util.Date)
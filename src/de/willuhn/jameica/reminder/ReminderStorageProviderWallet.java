@@ -41,6 +41,22 @@ public class ReminderStorageProviderWallet extends AbstractReminderStorageProvid
       this.wallet = new Wallet(ReminderService.class,new AESEngine());
     return this.wallet;
   }
+
+  /**
+   * @see de.willuhn.jameica.reminder.AbstractReminderStorageProvider#begin()
+   */
+  public void begin() throws Exception
+  {
+    this.getWallet().begin();
+  }
+
+  /**
+   * @see de.willuhn.jameica.reminder.AbstractReminderStorageProvider#commit()
+   */
+  public void commit() throws Exception
+  {
+    this.getWallet().commit();
+  }
   
   /**
    * @see de.willuhn.jameica.reminder.ReminderStorageProvider#get(java.lang.String)
@@ -97,10 +113,11 @@ public class ReminderStorageProviderWallet extends AbstractReminderStorageProvid
     if (reminder == null)
       throw new JameicaException("no reminder given");
 
-    if (this.getWallet().get(uuid) == null)
+    Wallet wallet = this.getWallet();
+    if (wallet.get(uuid) == null)
       throw new JameicaException("no reminder found for uuid: " + uuid);
     
-    this.getWallet().set(uuid,reminder);
+    wallet.set(uuid,reminder);
     
     // Per Messaging Bescheid geben
     Application.getMessagingFactory().getMessagingQueue("jameica.reminder.updated").sendMessage(new QueryMessage(reminder));
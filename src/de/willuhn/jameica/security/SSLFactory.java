@@ -838,8 +838,9 @@ public class SSLFactory
 	
   /**
    * Verschluesselt die Daten aus is und schreibt sie in os.
-   * Warnung: Die Daten werden direkt mit RSA verschluesselt. Die Funktion eignet
-   * sich daher nur fuer sehr kleine Datenmengen - z.Bsp. fuer Passwoerter.
+   * Die Daten werden mit einem zufaelligen AES-Schluessel verschluesselt, der
+   * seinerseits per RSA mit dem Public-Key verschluesselt wird.
+   * @see RSAEngine
    * @param is InputStream mit den unverschluesselten Daten.
    * @param os OutputStream fuer die verschluesselten Daten.
    * @throws Exception
@@ -9,8 +9,6 @@
  **********************************************************************/
 package de.willuhn.jameica.security;
 
-import java.beans.XMLDecoder;
-import java.beans.XMLEncoder;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
@@ -24,10 +22,19 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import de.willuhn.jameica.security.crypto.Engine;
 import de.willuhn.jameica.security.crypto.RSAEngine;
+import de.willuhn.jameica.store.codec.BinaryCodec;
+import de.willuhn.jameica.store.codec.Codec;
 import de.willuhn.jameica.system.Application;
 import de.willuhn.logging.Logger;
 
@@ -52,13 +59,46 @@ import de.willuhn.logging.Logger;
  *   // Auslesen des Passwortes "geheim".
  *   String password = wallet.getString("passwort");
  * }</pre>
+ *
+ * <p>Einzelne Aenderungen werden nicht sofort in die Wallet-Datei geschrieben sondern
+ * verschluesselt an ein Journal angehaengt. Erst wenn das Journal eine gewisse Groesse
+ * erreicht hat, wird das komplette Wallet neu gespeichert und das Journal geleert.
+ *
+ * <p>Sollen mehrere Aenderungen gemeinsam gespeichert werden, koennen sie in
+ * {@link #begin()} und {@link #commit()} geklammert werden. Sie werden dann erst
+ * beim Commit als ein einzelner Datensatz geschrieben. Alternativ kann per
+ * {@link #setWriteBehind(long)} festgelegt werden, dass Aenderungen gesammelt und
+ * hoechstens im angegebenen Intervall gespeichert werden.
  */
 public final class Wallet
 {
+  /**
+   * Anzahl der Datensaetze im Journal, ab der das komplette Wallet neu gespeichert wird.
+   */
+  private final static int COMPACT_SIZE = 100;
+
+  /**
+   * Timer fuer das verzoegerte Speichern.
+   */
+  private static Timer timer = null;
+
+  /**
+   * Wallets mit noch nicht gespeicherten Aenderungen.
+   */
+  private final static Set<Wallet> dirty = new HashSet<Wallet>();
 
 	private Class clazz 	       = null;
+	private File file            = null;
 	private Hashtable<String, Serializable>	serialized = new Hashtable<String, Serializable>();
 	private Engine engine        = new RSAEngine();
+	private Codec codec          = new BinaryCodec();
+	private WalletJournal journal = null;
+
+  private int batch            = 0;
+  private long writeBehind     = 0L;
+  private boolean rewrite      = false;
+  private TimerTask task       = null;
+  private Map<String,Serializable> pending = new LinkedHashMap<String,Serializable>();
   
   /**
 	 * ct.
@@ -77,8 +117,22 @@ public final class Wallet
    * @throws Exception
    */
   public Wallet(Class clazz, Engine engine) throws Exception
+  {
+    this(clazz,engine,new File(Application.getConfig().getConfigDir(),clazz.getName() + ".wallet2"));
+  }
+
+  /**
+   * ct.
+   * @param clazz Klasse, fuer die das Wallet gilt.
+   * @param engine die zu verwendende Crypto-Engine.
+   * @param file die Datei des Wallets.
+   * @throws Exception
+   */
+  Wallet(Class clazz, Engine engine, File file) throws Exception
   {
     this.clazz = clazz;
+    this.file  = file;
+    this.journal = new WalletJournal(new File(getFilename() + ".journal"));
     this.setEngine(engine);
     Logger.debug("creating wallet " + clazz.getName() + " via " + this.engine.getClass().getSimpleName());
     read();
@@ -94,6 +148,182 @@ public final class Wallet
       this.engine = engine;
   }
 
+  /**
+   * Legt fest, ob Aenderungen verzoegert gespeichert werden sollen.
+   * Die Aenderungen werden dann gesammelt und hoechstens einmal im angegebenen
+   * Intervall geschrieben. Spaetestens beim Beenden von Jameica werden sie gespeichert.
+   * @param millis Intervall in Millisekunden. Bei 0 werden die Aenderungen sofort gespeichert.
+   * @throws Exception
+   */
+  public synchronized void setWriteBehind(long millis) throws Exception
+  {
+    this.writeBehind = Math.max(0L,millis);
+    if (this.writeBehind == 0L)
+      this.flush();
+  }
+
+  /**
+   * Beginnt eine Folge von Aenderungen, die gemeinsam gespeichert werden.
+   * Die Aufrufe koennen geschachtelt werden. Gespeichert wird erst beim
+   * letzten {@link #commit()}.
+   */
+  public synchronized void begin()
+  {
+    this.batch++;
+  }
+
+  /**
+   * Beendet eine mit {@link #begin()} begonnene Folge von Aenderungen.
+   * Ist es der aeusserste Aufruf, werden die gesammelten Aenderungen gespeichert.
+   * @throws Exception
+   */
+  public synchronized void commit() throws Exception
+  {
+    if (this.batch == 0)
+    {
+      Logger.warn("commit without begin");
+      return;
+    }
+    if (--this.batch > 0)
+      return;
+    this.flush();
+  }
+
+  /**
+   * Speichert alle noch nicht gespeicherten Aenderungen.
+   * Sie werden als ein einzelner Datensatz an das Journal angehaengt.
+   * @throws Exception
+   */
+  public synchronized void flush() throws Exception
+  {
+    if (this.task != null)
+    {
+      this.task.cancel();
+      this.task = null;
+    }
+
+    if (!this.rewrite && this.pending.size() == 0)
+    {
+      this.clean();
+      return;
+    }
+
+    if (!this.rewrite)
+    {
+      try
+      {
+        this.journal.batch(this.engine,this.pending);
+        this.pending.clear();
+        this.clean();
+        compact();
+        return;
+      }
+      catch (Exception e)
+      {
+        Logger.error("unable to append to wallet journal, writing wallet",e);
+      }
+    }
+
+    // Komplett neu schreiben. Darin sind alle Aenderungen enthalten.
+    // Schlaegt auch das fehl, bleibt das Wallet als geaendert markiert
+    // und wird spaetestens von flushAll() erneut versucht.
+    this.rewrite = true;
+    write();
+    this.rewrite = false;
+    this.pending.clear();
+    this.clean();
+  }
+
+  /**
+   * Entfernt das Wallet aus der Liste der Wallets mit ungespeicherten Aenderungen.
+   */
+  private void clean()
+  {
+    synchronized (dirty)
+    {
+      dirty.remove(this);
+    }
+  }
+
+  /**
+   * Speichert die noch nicht gespeicherten Aenderungen aller Wallets.
+   * Wird beim Beenden von Jameica aufgerufen.
+   */
+  public static void flushAll()
+  {
+    List<Wallet> list = null;
+    synchronized (dirty)
+    {
+      list = new ArrayList<Wallet>(dirty);
+    }
+    for (Wallet w:list)
+    {
+      try
+      {
+        w.flush();
+      }
+      catch (Exception e)
+      {
+        Logger.error("unable to write wallet " + w.clazz.getName(),e);
+      }
+    }
+  }
+
+  /**
+   * Merkt die Aenderung zum spaeteren Speichern vor, falls gerade Aenderungen
+   * gesammelt werden.
+   * @param alias der Alias.
+   * @param data der Wert oder {@code null}, wenn der Alias geloescht wurde.
+   * @return true, wenn die Aenderung vorgemerkt wurde und nicht sofort gespeichert werden muss.
+   */
+  private boolean defer(String alias, Serializable data)
+  {
+    if (this.batch == 0 && this.writeBehind == 0L)
+      return false;
+
+    if (alias != null && !this.rewrite)
+      this.pending.put(alias,data);
+
+    // Das verzoegerte Speichern ausloesen
+    synchronized (dirty)
+    {
+      dirty.add(this);
+    }
+    if (this.batch > 0 || this.writeBehind == 0L || this.task != null)
+      return true;
+
+    this.task = new TimerTask()
+    {
+      /**
+       * @see java.util.TimerTask#run()
+       */
+      public void run()
+      {
+        try
+        {
+          flush();
+        }
+        catch (Exception e)
+        {
+          Logger.error("unable to write wallet " + clazz.getName(),e);
+        }
+      }
+    };
+    getTimer().schedule(this.task,this.writeBehind);
+    return true;
+  }
+
+  /**
+   * Liefert den Timer fuer das verzoegerte Speichern.
+   * @return der Timer.
+   */
+  private static synchronized Timer getTimer()
+  {
+    if (timer == null)
+      timer = new Timer("Jameica Wallet Writer",true);
+    return timer;
+  }
+
 	/**
 	 * Speichert einen Datensatz verschluesselt in dem Wallet.
    * @param alias Alias-Name.
@@ -101,7 +331,7 @@ public final class Wallet
    * oder {@code null} wenn der Wert geloescht werden soll.
    * @throws Exception
    */
-  public void set(String alias, Serializable data) throws Exception
+  public synchronized void set(String alias, Serializable data) throws Exception
 	{
 		if (alias == null)
 		{
@@ -118,7 +348,24 @@ public final class Wallet
 			Logger.debug("storing key " + alias);
 			this.serialized.put(alias,data);
 		}
-		write();
+		
+		if (this.defer(alias,data))
+		  return;
+
+		try
+		{
+		  if (data == null)
+		    this.journal.delete(this.engine,alias);
+		  else
+		    this.journal.set(this.engine,alias,data);
+		}
+		catch (Exception e)
+		{
+		  Logger.error("unable to append to wallet journal, writing wallet",e);
+		  write();
+		  return;
+		}
+		compact();
 	}
 	
   /**
@@ -127,7 +374,7 @@ public final class Wallet
    * @return der geloeschte Wert hinter dem Alias.
    * @throws Exception
    */
-  public Serializable delete(String alias) throws Exception
+  public synchronized Serializable delete(String alias) throws Exception
   {
     if (alias == null)
     {
@@ -135,8 +382,22 @@ public final class Wallet
       return null;
     }
     Logger.debug("removing key " + alias);
-    Serializable s = this.serialized.remove(alias);
-    write();
+    Serializable s = readable(this.serialized.remove(alias));
+    
+    if (this.defer(alias,null))
+      return s;
+
+    try
+    {
+      this.journal.delete(this.engine,alias);
+    }
+    catch (Exception e)
+    {
+      Logger.error("unable to append to wallet journal, writing wallet",e);
+      write();
+      return s;
+    }
+    compact();
     return s;
   }
 
@@ -152,9 +413,20 @@ public final class Wallet
 		if (aliasPrefix == null || aliasPrefix.length() == 0)
 		{
 			this.serialized.clear();
+			if (this.batch > 0 || this.writeBehind > 0L)
+			{
+			  // Wird beim Speichern komplett neu geschrieben
+			  this.pending.clear();
+			  this.rewrite = true;
+			  this.defer(null,null);
+			  return;
+			}
+			write(); // Das Wallet ist jetzt leer. Dann brauchen wir auch kein Journal
+			return;
 		}
 		else
 		{
+	    List<String> removed = new ArrayList<String>();
 	    Enumeration<String> e = this.serialized.keys();
 	    String s = null;
 	    while (e.hasMoreElements())
@@ -164,15 +436,36 @@ public final class Wallet
 	      {
 	        Logger.debug("removing key " + s);
 	        this.serialized.remove(s);
+	        removed.add(s);
 	      }
 	    }
+	    if (this.batch > 0 || this.writeBehind > 0L)
+	    {
+	      for (String alias:removed)
+	      {
+	        this.defer(alias,null);
+	      }
+	      return;
+	    }
+		}
+		
+		try
+		{
+		  this.journal.deleteAll(this.engine,aliasPrefix);
+		}
+		catch (Exception e)
+		{
+		  Logger.error("unable to append to wallet journal, writing wallet",e);
+		  write();
+		  return;
 		}
-		write();
+		compact();
 	}
   
   /**
    * Liefert alle Keys, deren Name mit dem Prefix beginnt.
    * Wird {@code null} uebergeben, werden alle Keys zurueckgeliefert.
+   * Keys, deren Wert sich beim Lesen nicht wiederherstellen liess, sind nicht enthalten.
    * @param aliasPrefix Alias-Prefix.
    * @return Liste der gefundenen Keys.
    * Die Funktion liefert nie {@code null} sondern hoechstens ein leeres Array.
@@ -187,7 +480,7 @@ public final class Wallet
     while (e.hasMoreElements())
     {
       s = e.nextElement();
-      if (s == null)
+      if (s == null || readable(this.serialized.get(s)) == null)
         continue;
       if (aliasPrefix == null || s.startsWith(aliasPrefix))
       {
@@ -220,9 +513,23 @@ public final class Wallet
 			return null;
 		}
 		Logger.debug("reading key " + alias);
-		return this.serialized.get(alias);
+		return readable(this.serialized.get(alias));
 	}
 
+  /**
+   * Blendet Werte aus, die sich beim Lesen nicht wiederherstellen liessen.
+   * Sie bleiben im Wallet erhalten und werden beim Speichern unveraendert
+   * wieder geschrieben.
+   * @param value der Wert.
+   * @return der Wert oder {@code null}, wenn er nicht lesbar war.
+   */
+  private static Serializable readable(Object value)
+  {
+    if (value instanceof BinaryCodec.Unreadable)
+      return null;
+    return (Serializable) value;
+  }
+
   /**
    * Liest die ggf gespeicherten Daten.
    * @throws Exception
@@ -232,6 +539,9 @@ public final class Wallet
     synchronized(serialized)
     {
       read(getFilename());
+      
+      // Aenderungen aus dem Journal uebernehmen
+      this.journal.replay(this.engine,this.serialized);
     }
   }
 
@@ -265,9 +575,7 @@ public final class Wallet
 
       Logger.debug("deserializing wallet");
       ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
-      XMLDecoder xml = new XMLDecoder(bis);
-      this.serialized = (Hashtable) xml.readObject();
-      xml.close();
+      this.serialized = (Hashtable) this.codec.decode(bis);
       Logger.debug("reading wallet done");
       return;
     }
@@ -291,11 +599,24 @@ public final class Wallet
    */
   private String getFilename()
 	{
-		return Application.getConfig().getConfigDir() + "/" + this.clazz.getName() + ".wallet2";
+		return this.file.getPath();
 	}
 
+  /**
+   * Speichert das komplette Wallet, wenn das Journal zu gross geworden ist.
+   * @throws Exception
+   */
+  private synchronized void compact() throws Exception
+  {
+    if (this.journal.size() < COMPACT_SIZE)
+      return;
+    
+    Logger.debug("compacting wallet journal");
+    write();
+  }
+
 	/**
-   * Speichert die Daten.
+   * Speichert die Daten und leert das Journal.
    * @throws Exception
    */
   private synchronized void write() throws Exception
@@ -303,11 +624,25 @@ public final class Wallet
     synchronized(serialized)
     {
       File file = new File(getFilename());
-      if (serialized.size() == 0 && file.exists())
+      if (serialized.size() == 0)
       {
-        Logger.info("deleting wallet file " + getFilename());
-        if (file.delete())
-          Logger.debug("wallet deleted");
+        // Erst das Loeschen im Journal vermerken. Stuerzt Jameica ab, bevor Datei und
+        // Journal geloescht sind, wird das Wallet beim naechsten Start trotzdem leer gelesen.
+        try
+        {
+          this.journal.deleteAll(this.engine,"");
+        }
+        catch (Exception e)
+        {
+          Logger.error("unable to append to wallet journal",e);
+        }
+        if (file.exists())
+        {
+          Logger.info("deleting wallet file " + getFilename());
+          if (file.delete())
+            Logger.debug("wallet deleted");
+        }
+        this.journal.clear();
         return;
       }
       
@@ -325,10 +660,9 @@ public final class Wallet
       Logger.debug("serializing wallet");
       
       // BUGZILLA 109 http://www.willuhn.de/bugzilla/show_bug.cgi?id=109
-      // Wir speichern nur noch im neuen XML-Format
-      XMLEncoder xml = new XMLEncoder(bos);
-      xml.writeObject(this.serialized);
-      xml.close();
+      // Wir speichern im Binaer-Format. Wallets im bisherigen XML-Format
+      // koennen weiterhin gelesen werden.
+      this.codec.encode(this.serialized,bos);
       
       ByteArrayInputStream bis    = new ByteArrayInputStream(bos.toByteArray());
       OutputStream os             = new BufferedOutputStream(new FileOutputStream(tempfile));
@@ -352,6 +686,9 @@ public final class Wallet
       // OK, Schreiben war erfolgreich. Jetzt kopieren wir die Temp-Datei rueber.
       file.delete();
       tempfile.renameTo(file);
+      
+      // Jetzt ist alles im Wallet gespeichert. Das Journal brauchen wir nicht mehr.
+      this.journal.clear();
       Logger.debug("writing wallet done");
     }
 	}
@@ -0,0 +1,242 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+
+import de.willuhn.jameica.security.crypto.Engine;
+import de.willuhn.jameica.store.codec.BinaryCodec;
+import de.willuhn.jameica.store.codec.Codec;
+import de.willuhn.jameica.util.JournalFile;
+import de.willuhn.logging.Logger;
+
+/**
+ * Journal fuer die Aenderungen an einem Wallet.
+ * Jede Aenderung wird als einzeln verschluesselter Datensatz an das Journal angehaengt,
+ * statt das komplette Wallet neu zu schreiben. Beim Oeffnen des Wallets werden die
+ * Datensaetze auf den zuletzt gespeicherten Stand angewendet. Ein bei einem Absturz
+ * nur teilweise geschriebener letzter Datensatz wird hierbei verworfen.
+ *
+ * <p>Das Dateiformat ist das von {@link JournalFile}. Jeder Datensatz enthaelt die
+ * verschluesselte Aenderung.
+ */
+final class WalletJournal
+{
+  /**
+   * Versionsnummer des Dateiformats.
+   */
+  private final static int VERSION = 1;
+
+  /**
+   * Die Art der Aenderung.
+   */
+  private static enum Op
+  {
+    /**
+     * Alias loeschen.
+     */
+    DELETE,
+
+    /**
+     * Alle Aliase mit dem Prefix loeschen.
+     */
+    DELETE_ALL,
+
+    /**
+     * Einen oder mehrere Aliase gemeinsam speichern bzw. loeschen.
+     */
+    BATCH,
+  }
+
+  private JournalFile file = null;
+  private int count        = 0;
+  private Codec codec      = new BinaryCodec();
+
+  /**
+   * ct.
+   * @param file die Journal-Datei.
+   */
+  WalletJournal(File file)
+  {
+    this.file = new JournalFile(file,VERSION);
+  }
+
+  /**
+   * Liefert die Anzahl der Datensaetze im Journal.
+   * @return Anzahl der Datensaetze.
+   */
+  int size()
+  {
+    return this.count;
+  }
+
+  /**
+   * Wendet die Datensaetze des Journals auf die Daten an.
+   * Ein unvollstaendiger oder beschaedigter Datensatz am Ende wird abgeschnitten.
+   * Das gilt auch fuer einen Datensatz, der sich nicht entschluesseln oder
+   * deserialisieren laesst. Die Datensaetze dahinter werden nicht mehr angewendet.
+   * @param engine die Crypto-Engine.
+   * @param data die Daten, auf die das Journal angewendet wird.
+   * @throws Exception
+   */
+  void replay(final Engine engine, final Hashtable<String,Serializable> data) throws Exception
+  {
+    this.count = this.file.read(new JournalFile.Reader() {
+      /**
+       * @see de.willuhn.jameica.util.JournalFile.Reader#read(byte[])
+       */
+      public void read(byte[] record) throws Exception
+      {
+        apply(engine,record,data);
+      }
+    });
+    Logger.debug("replayed " + this.count + " records from wallet journal");
+  }
+
+  /**
+   * Haengt das Speichern des Alias an das Journal an.
+   * @param engine die Crypto-Engine.
+   * @param alias der Alias.
+   * @param value der Wert.
+   * @throws Exception
+   */
+  void set(Engine engine, String alias, Serializable value) throws Exception
+  {
+    Map<String,Serializable> changes = new HashMap<String,Serializable>();
+    changes.put(alias,value);
+    this.batch(engine,changes);
+  }
+
+  /**
+   * Haengt das Loeschen des Alias an das Journal an.
+   * @param engine die Crypto-Engine.
+   * @param alias der Alias.
+   * @throws Exception
+   */
+  void delete(Engine engine, String alias) throws Exception
+  {
+    this.append(engine,Op.DELETE,alias,null);
+  }
+
+  /**
+   * Haengt das Loeschen aller Aliase mit dem Prefix an das Journal an.
+   * @param engine die Crypto-Engine.
+   * @param prefix der Prefix.
+   * @throws Exception
+   */
+  void deleteAll(Engine engine, String prefix) throws Exception
+  {
+    this.append(engine,Op.DELETE_ALL,prefix,null);
+  }
+
+  /**
+   * Haengt mehrere Aenderungen als gemeinsamen Datensatz an das Journal an.
+   * Die Aenderungen werden als Map gespeichert. Laesst sich beim Einlesen ein
+   * einzelner Wert nicht lesen, fehlt nur dieser.
+   * @param engine die Crypto-Engine.
+   * @param changes Map mit den Aenderungen. Key ist der Alias, Value der Wert
+   * oder {@code null}, wenn der Alias geloescht wurde.
+   * @throws Exception
+   */
+  void batch(Engine engine, Map<String,Serializable> changes) throws Exception
+  {
+    this.append(engine,Op.BATCH,null,new HashMap<String,Serializable>(changes));
+  }
+
+  /**
+   * Loescht das Journal.
+   * Wird aufgerufen, nachdem das komplette Wallet gespeichert wurde.
+   */
+  void clear()
+  {
+    this.count = 0;
+    this.file.delete();
+  }
+
+  /**
+   * Haengt einen Datensatz an das Journal an.
+   * @param engine die Crypto-Engine.
+   * @param op die Art der Aenderung.
+   * @param alias der Alias bzw. Prefix.
+   * @param value der Wert.
+   * @throws Exception
+   */
+  private void append(Engine engine, Op op, String alias, Serializable value) throws Exception
+  {
+    // Datensatz serialisieren
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    this.codec.encode(new Object[]{op.name(),alias,value},bos);
+
+    // und verschluesseln
+    ByteArrayOutputStream enc = new ByteArrayOutputStream();
+    engine.encrypt(new ByteArrayInputStream(bos.toByteArray()),enc);
+    this.file.append(enc.toByteArray());
+    this.count++;
+  }
+
+  /**
+   * Entschluesselt den Datensatz und wendet ihn auf die Daten an.
+   * @param engine die Crypto-Engine.
+   * @param record der verschluesselte Datensatz.
+   * @param data die Daten.
+   * @throws Exception
+   */
+  private void apply(Engine engine, byte[] record, Hashtable<String,Serializable> data) throws Exception
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    engine.decrypt(new ByteArrayInputStream(record),bos);
+
+    Object[] values = (Object[]) this.codec.decode(new ByteArrayInputStream(bos.toByteArray()));
+
+    Op op        = Op.valueOf((String) values[0]);
+    String alias = (String) values[1];
+
+    switch (op)
+    {
+      case DELETE:
+        data.remove(alias);
+        break;
+
+      case DELETE_ALL:
+        if (alias == null || alias.length() == 0)
+        {
+          data.clear();
+          break;
+        }
+        Iterator<String> keys = data.keySet().iterator();
+        while (keys.hasNext())
+        {
+          String s = keys.next();
+          if (s != null && s.startsWith(alias))
+            keys.remove();
+        }
+        break;
+
+      case BATCH:
+        Map<String,Serializable> changes = (Map<String,Serializable>) values[2];
+        for (Map.Entry<String,Serializable> e:changes.entrySet())
+        {
+          if (e.getValue() == null)
+            data.remove(e.getKey());
+          else
+            data.put(e.getKey(),e.getValue());
+        }
+        break;
+    }
+  }
+}
@@ -10,12 +10,23 @@
 
 package de.willuhn.jameica.security.crypto;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Arrays;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
@@ -23,59 +34,208 @@ import de.willuhn.jameica.system.Application;
 import de.willuhn.logging.Logger;
 
 /**
- * Verwendet direkt RSA zum Verschluesseln sowie den Public- und Private-Key.
- * Diese Implementierung ist daher nur fuer sehr kleine Datenmengen geeignet.
- * Also zum Beispiel fuer Passwoerter.
+ * Verschluesselt die Daten mit dem Public-Key und entschluesselt sie mit dem Private-Key.
+ *
+ * <p>Die Daten selbst werden mit einem zufaelligen AES-Schluessel (GCM) verschluesselt.
+ * Nur dieser Schluessel wird einmalig per RSA mit dem Public-Key verschluesselt und
+ * den Daten vorangestellt. Daten im alten Format, bei dem jeder Block einzeln per
+ * RSA verschluesselt wurde, koennen weiterhin gelesen werden. Sie werden beim
+ * naechsten Speichern im neuen Format geschrieben.
  */
 public class RSAEngine implements Engine
 {
+  /**
+   * Kennung des Formats am Anfang der verschluesselten Daten.
+   */
+  private final static byte[] MAGIC = new byte[]{'J','R','S','A','E','N','V','1'};
+  
+  private final static String KEY_ALGORITHM  = "RSA/NONE/OAEPWithSHA256AndMGF1Padding";
+  private final static String DATA_ALGORITHM = "AES/GCM/NoPadding";
+  private final static int KEY_SIZE          = 256;
+  private final static int IV_SIZE           = 12;
+  private final static int TAG_SIZE          = 128;
+  private final static int BUFFER_SIZE       = 8192;
+
+  private final static SecureRandom RANDOM = new SecureRandom();
+  
   /**
    * @see de.willuhn.jameica.security.crypto.Engine#encrypt(java.io.InputStream, java.io.OutputStream)
    */
   public void encrypt(InputStream is, OutputStream os) throws Exception
   {
-    Logger.debug("creating cipher");
-    Cipher cipher = Cipher.getInstance("RSA",BouncyCastleProvider.PROVIDER_NAME);
-    cipher.init(Cipher.ENCRYPT_MODE,Application.getSSLFactory().getPublicKey());
+    Cipher cipher = this.writeHeader(os);
 
     Logger.debug("encrypting data");
-    int size = cipher.getBlockSize();
-    Logger.debug("using block size (in bytes): " + size);
-    byte[] buf = new byte[size];
+    byte[] buf = new byte[BUFFER_SIZE];
     int read = 0;
-    do
+    while ((read = is.read(buf)) != -1)
     {
-      read = is.read(buf);
-      if (read > 0)
-        os.write(cipher.doFinal(buf,0,read));
+      byte[] b = cipher.update(buf,0,read);
+      if (b != null)
+        os.write(b);
     }
-    while (read != -1);
+    os.write(cipher.doFinal());
   }
 
   /**
    * @see de.willuhn.jameica.security.crypto.Engine#decrypt(java.io.InputStream, java.io.OutputStream)
    */
   public void decrypt(InputStream is, OutputStream os) throws Exception
+  {
+    PushbackInputStream pis = new PushbackInputStream(is,MAGIC.length);
+    Cipher cipher = this.readHeader(pis);
+    if (cipher == null)
+    {
+      this.decryptLegacy(pis,os);
+      return;
+    }
+
+    Logger.debug("decrypting data");
+    byte[] buf = new byte[BUFFER_SIZE];
+    int read = 0;
+    while ((read = pis.read(buf)) != -1)
+    {
+      byte[] b = cipher.update(buf,0,read);
+      if (b != null)
+        os.write(b);
+    }
+    os.write(cipher.doFinal());
+  }
+  
+  /**
+   * Entschluesselt Daten im alten Format, bei dem jeder Block einzeln per RSA verschluesselt wurde.
+   * @param is Inputstream mit den verschluesselten Daten.
+   * @param os Outputstream mit den entschluesselten Daten.
+   * @throws Exception
+   */
+  private void decryptLegacy(InputStream is, OutputStream os) throws Exception
   {
     Logger.debug("creating cipher");
     Cipher cipher = Cipher.getInstance("RSA",BouncyCastleProvider.PROVIDER_NAME);
-    cipher.init(Cipher.DECRYPT_MODE,Application.getSSLFactory().getPrivateKey());
+    cipher.init(Cipher.DECRYPT_MODE,this.getPrivateKey());
 
     int size = cipher.getBlockSize();
     Logger.debug("using block size (in bytes): " + size);
 
-    Logger.debug("decrypting data");
+    Logger.debug("decrypting data in legacy format");
     byte[] buf = new byte[size];
     int read = 0;
     do
     {
-      read = is.read(buf);
+      read = read(is,buf);
       if (read > 0)
       {
         os.write(cipher.doFinal(buf,0,read));
       }
     }
-    while (read != -1);
+    while (read == size);
+  }
+  
+  /**
+   * Erzeugt einen zufaelligen Schluessel fuer die Daten und schreibt ihn - per RSA
+   * verschluesselt - zusammen mit dem Initialisierungsvektor in den Stream.
+   * @param os der Stream.
+   * @return der Cipher zum Verschluesseln der Daten.
+   * @throws Exception
+   */
+  private Cipher writeHeader(OutputStream os) throws Exception
+  {
+    Logger.debug("creating cipher");
+    KeyGenerator gen = KeyGenerator.getInstance("AES");
+    gen.init(KEY_SIZE,RANDOM);
+    SecretKey key = gen.generateKey();
+    
+    byte[] iv = new byte[IV_SIZE];
+    RANDOM.nextBytes(iv);
+
+    Cipher rsa = Cipher.getInstance(KEY_ALGORITHM,BouncyCastleProvider.PROVIDER_NAME);
+    rsa.init(Cipher.WRAP_MODE,this.getPublicKey());
+    byte[] wrapped = rsa.wrap(key);
+    
+    DataOutputStream dos = new DataOutputStream(os);
+    dos.write(MAGIC);
+    dos.writeShort(wrapped.length);
+    dos.write(wrapped);
+    dos.write(iv);
+    dos.flush();
+    
+    Cipher cipher = Cipher.getInstance(DATA_ALGORITHM);
+    cipher.init(Cipher.ENCRYPT_MODE,key,new GCMParameterSpec(TAG_SIZE,iv));
+    return cipher;
+  }
+  
+  /**
+   * Liest den Schluessel fuer die Daten aus dem Stream und entschluesselt ihn per RSA.
+   * @param is der Stream.
+   * @return der Cipher zum Entschluesseln der Daten oder NULL, wenn die Daten im alten Format vorliegen.
+   * Der Stream steht dann wieder am Anfang.
+   * @throws Exception
+   */
+  private Cipher readHeader(PushbackInputStream is) throws Exception
+  {
+    byte[] magic = new byte[MAGIC.length];
+    int read = read(is,magic);
+    if (read < MAGIC.length || !Arrays.equals(magic,MAGIC))
+    {
+      if (read > 0)
+        is.unread(magic,0,read);
+      return null;
+    }
+    
+    Logger.debug("creating cipher");
+    DataInputStream dis = new DataInputStream(is);
+    byte[] wrapped = new byte[dis.readUnsignedShort()];
+    dis.readFully(wrapped);
+    byte[] iv = new byte[IV_SIZE];
+    dis.readFully(iv);
+
+    Cipher rsa = Cipher.getInstance(KEY_ALGORITHM,BouncyCastleProvider.PROVIDER_NAME);
+    rsa.init(Cipher.UNWRAP_MODE,this.getPrivateKey());
+    Key key = rsa.unwrap(wrapped,"AES",Cipher.SECRET_KEY);
+
+    Cipher cipher = Cipher.getInstance(DATA_ALGORITHM);
+    cipher.init(Cipher.DECRYPT_MODE,key,new GCMParameterSpec(TAG_SIZE,iv));
+    return cipher;
+  }
+  
+  /**
+   * Liefert den Public-Key zum Verschluesseln.
+   * @return der Public-Key.
+   * @throws Exception
+   */
+  PublicKey getPublicKey() throws Exception
+  {
+    return Application.getSSLFactory().getPublicKey();
+  }
+  
+  /**
+   * Liefert den Private-Key zum Entschluesseln.
+   * @return der Private-Key.
+   * @throws Exception
+   */
+  PrivateKey getPrivateKey() throws Exception
+  {
+    return Application.getSSLFactory().getPrivateKey();
+  }
+  
+  /**
+   * Liest so viele Bytes, bis der Puffer voll oder das Ende des Streams erreicht ist.
+   * @param is der Stream.
+   * @param buf der Puffer.
+   * @return Anzahl der gelesenen Bytes.
+   * @throws Exception
+   */
+  private static int read(InputStream is, byte[] buf) throws Exception
+  {
+    int pos = 0;
+    while (pos < buf.length)
+    {
+      int read = is.read(buf,pos,buf.length - pos);
+      if (read == -1)
+        break;
+      pos += read;
+    }
+    return pos;
   }
   
   /**
@@ -83,11 +243,16 @@ public class RSAEngine implements Engine
    */
   public InputStream decrypt(InputStream is) throws Exception
   {
+    PushbackInputStream pis = new PushbackInputStream(is,MAGIC.length);
+    Cipher cipher = this.readHeader(pis);
+    if (cipher != null)
+      return new CipherInputStream(pis,cipher);
+    
     Logger.debug("creating cipher");
-    Cipher cipher = Cipher.getInstance("RSA",BouncyCastleProvider.PROVIDER_NAME);
-    cipher.init(Cipher.ENCRYPT_MODE,Application.getSSLFactory().getPublicKey());
+    cipher = Cipher.getInstance("RSA",BouncyCastleProvider.PROVIDER_NAME);
+    cipher.init(Cipher.ENCRYPT_MODE,this.getPublicKey());
     
-    return new CipherInputStream(is,cipher);
+    return new CipherInputStream(pis,cipher);
   }
   
   /**
@@ -95,11 +260,7 @@ public class RSAEngine implements Engine
    */
   public OutputStream encrypt(OutputStream os) throws Exception
   {
-    Logger.debug("creating cipher");
-    Cipher cipher = Cipher.getInstance("RSA",BouncyCastleProvider.PROVIDER_NAME);
-    cipher.init(Cipher.DECRYPT_MODE,Application.getSSLFactory().getPrivateKey());
-    
-    return new CipherOutputStream(os,cipher);
+    return new CipherOutputStream(os,this.writeHeader(os));
   }
 
 }
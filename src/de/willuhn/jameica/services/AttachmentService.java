@@ -79,10 +79,11 @@ public class AttachmentService implements Bootable
   {
     Logger.info("init attachment service");
     final BeanService bs = loader.getBootable(BeanService.class);
+    final ClassService cs = loader.getBootable(ClassService.class);
     Logger.info("searching available storage providers");
     try
     {
-      for (Class<StorageProvider> c:Application.getClassLoader().getClassFinder().findImplementors(StorageProvider.class))
+      for (Class<StorageProvider> c:cs.findImplementors(Application.getClassLoader(),StorageProvider.class))
       {
         try
         {
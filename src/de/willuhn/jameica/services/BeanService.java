@@ -13,17 +13,19 @@ package de.willuhn.jameica.services;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
-import de.willuhn.annotation.Inject;
 import de.willuhn.annotation.Injector;
 import de.willuhn.annotation.Lifecycle;
 import de.willuhn.annotation.Lifecycle.Type;
@@ -34,6 +36,7 @@ import de.willuhn.jameica.services.inject.InjectHandler;
 import de.willuhn.jameica.services.inject.InjectHandlerPostConstruct;
 import de.willuhn.jameica.services.inject.InjectHandlerReceive;
 import de.willuhn.jameica.services.inject.InjectHandlerResource;
+import de.willuhn.jameica.services.inject.InjectionPlan;
 import de.willuhn.jameica.system.Application;
 import de.willuhn.jameica.system.JameicaException;
 import de.willuhn.logging.Logger;
@@ -54,6 +57,8 @@ import de.willuhn.util.Session;
  *   
  * Ist eine Member-Variable oder Methode mit der Annotation {@link Resource} versehen,
  * wird sie ueber den BeanService bei der Instanziierung der Bean aufgeloest.
+ * Ist sie vom Typ {@link de.willuhn.jameica.services.inject.Provider}, erfolgt
+ * das erst beim ersten Zugriff auf die Resource.
  * 
  * Enthaelt die Bean die Annotation {@link PostConstruct}, wird die zugehoerige
  * Methode bei der Instanziierung aufgerufen.
@@ -64,11 +69,15 @@ import de.willuhn.util.Session;
  */
 public class BeanService implements Bootable
 {
-  private List<InjectHandler> injectHandlers = new LinkedList<InjectHandler>();
-  private Map<Class,Object> contextScope     = new HashMap<Class,Object>();
-  private Stack contextOrder                 = new Stack();
+  private List<InjectHandler> injectHandlers = new CopyOnWriteArrayList<InjectHandler>();
+  private Map<Class,Object> contextScope     = new ConcurrentHashMap<Class,Object>();
+  private Deque<Object> contextOrder         = new ConcurrentLinkedDeque<Object>();
   private Session sessionScope               = new Session();
 
+  // Laufende Erzeugungen pro Typ und die Threads, die gerade darauf warten
+  private Map<Class,Creation> creations      = new ConcurrentHashMap<Class,Creation>();
+  private Map<Thread,Creation> waiting       = new ConcurrentHashMap<Thread,Creation>();
+
   /**
    * @see de.willuhn.boot.Bootable#depends()
    */
@@ -115,33 +124,86 @@ public class BeanService implements Bootable
     String name = type.getSimpleName();
     Logger.trace("searching for bean " + name);
     
-    T bean = null;
-    
-    // 1. Checken, ob wir sie im Context-Scope haben
-    bean = (T) contextScope.get(type);
+    // 1. + 2. Checken, ob wir sie im Context- oder Session-Scope haben
+    T bean = this.lookup(type);
+    if (bean != null)
+      return bean;
+
+    // Lifecycle ermitteln
+    Lifecycle lc = type.getAnnotation(Lifecycle.class);
+    Lifecycle.Type lct = lc != null ? lc.value() : null;
+
+    // Beans ohne Scope werden bei jedem Aufruf neu erzeugt. Da brauchen wir nichts zu synchronisieren
+    if (lct != Type.CONTEXT && lct != Type.SESSION)
+      return this.create(type,lct,null);
+
+    // Eine Bean mit Scope darf nur einmal erzeugt werden. Erzeugt gerade ein
+    // anderer Thread die Bean, warten wir auf dessen Ergebnis. Gelockt wird
+    // nur pro Typ, nicht der ganze Service.
+    Creation creation = new Creation();
+    Creation running = this.creations.putIfAbsent(type,creation);
+    if (running != null)
+      return (T) this.await(type,running);
+
+    try
+    {
+      // Nochmal checken. Kann sein, dass ein anderer Thread sie inzwischen erzeugt hat
+      bean = this.lookup(type);
+      if (bean == null)
+        bean = this.create(type,lct,creation);
+      creation.complete(bean);
+      return bean;
+    }
+    catch (RuntimeException | Error e)
+    {
+      creation.completeExceptionally(e);
+      throw e;
+    }
+    finally
+    {
+      this.creations.remove(type,creation);
+    }
+  }
+  
+  /**
+   * Sucht die Bean im Context- und im Session-Scope.
+   * @param <T> Typ der Bean.
+   * @param type Typ der Bean.
+   * @return die Bean oder NULL, wenn sie in keinem Scope existiert.
+   */
+  private <T> T lookup(Class<T> type)
+  {
+    T bean = (T) contextScope.get(type);
     if (bean != null)
     {
       Logger.trace("  found in context scope");
       return bean;
     }
     
-    // 2. Checken, ob wir sie im Session-Scope haben
     bean = (T) sessionScope.get(type);
     if (bean != null)
     {
       Logger.trace("  found in session scope");
       return bean;
     }
-
+    return null;
+  }
+  
+  /**
+   * Erzeugt eine neue Instanz der Bean, registriert sie im Scope und injiziert die Abhaengigkeiten.
+   * @param <T> Typ der Bean.
+   * @param type Typ der Bean.
+   * @param lct der Lifecycle der Bean. Kann NULL sein.
+   * @param creation optionale Erzeugung, die nach dem Registrieren abgeschlossen wird.
+   * @return die Instanz der Bean.
+   */
+  private <T> T create(Class<T> type, Lifecycle.Type lct, Creation creation)
+  {
     try
     {
       // 3. Bean erzeugen
       Logger.debug("  creating new " + type);
-      bean = type.newInstance();
-
-      // Lifecycle ermitteln
-      Lifecycle lc = type.getAnnotation(Lifecycle.class);
-      Lifecycle.Type lct = lc != null ? lc.value() : null;
+      T bean = type.newInstance();
 
       if (lct == null)
       {
@@ -155,7 +217,7 @@ public class BeanService implements Bootable
       {
         Logger.trace("  context scope");
         contextScope.put(type,bean);
-        contextOrder.add(bean);
+        contextOrder.push(bean);
       }
       else if (lct == Type.SESSION)
       {
@@ -167,6 +229,13 @@ public class BeanService implements Bootable
         Logger.trace("  unknown scope");
       }
       
+      // Wartende Threads duerfen die Bean ab jetzt verwenden - genauso wie alle
+      // anderen, die sie im Scope finden. Wuerden wir sie erst nach der Injection
+      // freigeben, koennten sich zwei Threads mit gegenseitigen Abhaengigkeiten
+      // blockieren.
+      if (creation != null)
+        creation.complete(bean);
+
       // Abhaengigkeiten aufloesen
       // Das duerfen wir erst machen, NACHDEM wir sie registriert haben
       // Andernfalls koennte man durch zirkulaere Abhaengigkeit eine Endlosschleife ausloesen
@@ -187,6 +256,50 @@ public class BeanService implements Bootable
     }
   }
   
+  /**
+   * Wartet, bis ein anderer Thread die Bean erzeugt hat.
+   * @param type Typ der Bean.
+   * @param creation die laufende Erzeugung.
+   * @return die Bean.
+   */
+  private Object await(Class type, Creation creation)
+  {
+    Thread current = Thread.currentThread();
+    this.waiting.put(current,creation);
+    try
+    {
+      // Checken, ob wir - direkt oder ueber andere wartende Threads - auf uns selbst
+      // warten wuerden. Das passiert, wenn sich die Konstruktoren der Beans gegenseitig
+      // per BeanService laden.
+      Creation c = creation;
+      for (int i=0;c != null && i<=this.waiting.size();++i)
+      {
+        if (c.owner == current)
+        {
+          Logger.error("circular dependency while creating instance of " + type);
+          throw new JameicaException(Application.getI18n().tr("{0} kann nicht erstellt werden: {1}",type.getSimpleName(),Application.getI18n().tr("Zirkulre Abhngigkeit")));
+        }
+        c = this.waiting.get(c.owner);
+      }
+      
+      Logger.trace("  waiting for creation in thread " + creation.owner.getName());
+      return creation.join();
+    }
+    catch (CompletionException e)
+    {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new JameicaException(Application.getI18n().tr("{0} kann nicht erstellt werden: {1}",type.getSimpleName(),cause.getMessage()));
+    }
+    finally
+    {
+      this.waiting.remove(current);
+    }
+  }
+  
   /**
    * Injiziert die Abhaengigkeiten in die Bean.
    * @param bean die Bean.
@@ -229,7 +342,7 @@ public class BeanService implements Bootable
         Object bean = this.contextOrder.pop();
         try
         {
-          Inject.inject(bean,new Injector()
+          InjectionPlan.inject(bean,new Injector()
           {
             /**
              * @see de.willuhn.annotation.Injector#inject(java.lang.Object, java.lang.reflect.AccessibleObject, java.lang.annotation.Annotation)
@@ -238,7 +351,6 @@ public class BeanService implements Bootable
             {
               Method m = (Method) field;
               Logger.trace("  " + bean.getClass().getSimpleName() + "." + m.getName());
-              m.setAccessible(true);
               m.invoke(bean,(Object[]) null);
             }
           },PreDestroy.class);
@@ -257,5 +369,14 @@ public class BeanService implements Bootable
       injectHandlers.clear();
     }
   }
+  
+  /**
+   * Eine laufende Erzeugung einer Bean mit Scope.
+   */
+  private static class Creation extends CompletableFuture<Object>
+  {
+    // Der Thread, der die Bean erzeugt
+    private final Thread owner = Thread.currentThread();
+  }
 
 }
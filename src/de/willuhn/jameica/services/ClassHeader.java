@@ -0,0 +1,192 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.services;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Die Kopfdaten einer Klasse, gelesen direkt aus dem Bytecode.
+ * Enthaelt Name, Modifier, Basisklasse und Interfaces. Die Klasse selbst
+ * wird hierbei nicht geladen und belegt daher auch keinen Platz im Classloader.
+ */
+final class ClassHeader
+{
+  // Modifier fuer "module-info.class". Siehe JVM-Spezifikation, Kapitel 4.1
+  private final static int ACC_MODULE = 0x8000;
+
+  private final String name;
+  private final int access;
+  private final String superName;
+  private final String[] interfaces;
+
+  /**
+   * ct.
+   * @param name Name der Klasse.
+   * @param access die Modifier.
+   * @param superName Name der Basisklasse. NULL bei java.lang.Object und Interfaces ohne Basisklasse.
+   * @param interfaces Namen der direkt implementierten Interfaces.
+   */
+  private ClassHeader(String name, int access, String superName, String[] interfaces)
+  {
+    this.name       = name;
+    this.access     = access;
+    this.superName  = superName;
+    this.interfaces = interfaces;
+  }
+
+  /**
+   * Liefert den Namen der Klasse.
+   * @return Name der Klasse.
+   */
+  String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * Liefert die Modifier der Klasse.
+   * Die Werte entsprechen denen aus {@link java.lang.reflect.Modifier}.
+   * @return die Modifier.
+   */
+  int getModifiers()
+  {
+    return this.access;
+  }
+
+  /**
+   * Liefert den Namen der Basisklasse.
+   * @return Name der Basisklasse oder NULL.
+   */
+  String getSuperName()
+  {
+    return this.superName;
+  }
+
+  /**
+   * Liefert die Namen der direkt implementierten Interfaces.
+   * @return Namen der Interfaces.
+   */
+  String[] getInterfaces()
+  {
+    return this.interfaces;
+  }
+
+  /**
+   * Prueft, ob es sich um eine Modul-Beschreibung (module-info.class) handelt.
+   * @return true, wenn es eine Modul-Beschreibung ist.
+   */
+  boolean isModule()
+  {
+    return (this.access & ACC_MODULE) != 0;
+  }
+
+  /**
+   * Liest die Kopfdaten aus dem Bytecode.
+   * Der Stream wird nur soweit gelesen, wie noetig, jedoch nicht geschlossen.
+   * @param is Stream mit dem Bytecode.
+   * @return die Kopfdaten.
+   * @throws IOException wenn der Bytecode nicht gelesen werden konnte.
+   */
+  static ClassHeader read(InputStream is) throws IOException
+  {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+    if (in.readInt() != 0xCAFEBABE)
+      throw new IOException("no class file");
+    
+    in.readUnsignedShort(); // Minor-Version
+    in.readUnsignedShort(); // Major-Version
+    
+    // Aus dem Constant-Pool brauchen wir nur die Strings und die Klassen-Referenzen.
+    int count = in.readUnsignedShort();
+    String[] utf8 = new String[count];
+    int[] classes = new int[count];
+    for (int i=1;i<count;++i)
+    {
+      int tag = in.readUnsignedByte();
+      switch (tag)
+      {
+        case 1: // Utf8
+          utf8[i] = in.readUTF();
+          break;
+        case 7: // Class
+          classes[i] = in.readUnsignedShort();
+          break;
+        case 8:  // String
+        case 16: // MethodType
+        case 19: // Module
+        case 20: // Package
+          in.skipBytes(2);
+          break;
+        case 15: // MethodHandle
+          in.skipBytes(3);
+          break;
+        case 3:  // Integer
+        case 4:  // Float
+        case 9:  // Fieldref
+        case 10: // Methodref
+        case 11: // InterfaceMethodref
+        case 12: // NameAndType
+        case 17: // Dynamic
+        case 18: // InvokeDynamic
+          in.skipBytes(4);
+          break;
+        case 5: // Long
+        case 6: // Double
+          in.skipBytes(8);
+          ++i; // belegt zwei Eintraege
+          break;
+        default:
+          throw new IOException("unknown constant pool tag " + tag);
+      }
+    }
+    
+    int access = in.readUnsignedShort();
+    String name = className(utf8,classes,in.readUnsignedShort());
+    String superName = className(utf8,classes,in.readUnsignedShort());
+    String[] interfaces = new String[in.readUnsignedShort()];
+    for (int i=0;i<interfaces.length;++i)
+    {
+      interfaces[i] = className(utf8,classes,in.readUnsignedShort());
+    }
+    
+    if (name == null)
+      throw new IOException("class file contains no class name");
+    return new ClassHeader(name,access,superName,interfaces);
+  }
+
+  /**
+   * Loest eine Klassen-Referenz aus dem Constant-Pool auf.
+   * @param utf8 die Strings aus dem Constant-Pool.
+   * @param classes die Klassen-Referenzen aus dem Constant-Pool.
+   * @param index Index der Klassen-Referenz.
+   * @return der Klassenname mit Punkt als Trenner oder NULL, wenn der Index 0 ist.
+   * @throws IOException bei einem ungueltigen Index.
+   */
+  private static String className(String[] utf8, int[] classes, int index) throws IOException
+  {
+    if (index == 0)
+      return null;
+    if (index >= classes.length || classes[index] == 0 || utf8[classes[index]] == null)
+      throw new IOException("invalid class reference " + index);
+    return utf8[classes[index]].replace('/','.');
+  }
+  
+  /**
+   * @see java.lang.Object#toString()
+   */
+  public String toString()
+  {
+    return this.name;
+  }
+}
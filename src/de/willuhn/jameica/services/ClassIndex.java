@@ -0,0 +1,543 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.willuhn.io.IOUtil;
+import de.willuhn.logging.Logger;
+import de.willuhn.util.MultipleClassLoader;
+
+/**
+ * Index der Klassen eines Classloaders.
+ * Enthaelt fuer jedes Interface und jede Basisklasse die Namen der Klassen,
+ * die sie implementieren. Er kann aus bereits geladenen Klassen oder direkt
+ * aus deren Bytecode erzeugt werden. Damit kann {@link #findImplementors(Class)} ohne
+ * Durchsuchen aller Klassen beantwortet werden. Geladen werden nur die
+ * tatsaechlich gefundenen Klassen.
+ * Der Index besteht aus einem Segment pro Manifest, welches in einer
+ * Cache-Datei gespeichert wird und beim naechsten Start wiederverwendet
+ * werden kann, solange sich weder die Dateien des Plugins noch Jameica oder
+ * die Plugins, von denen es abhaengt, geaendert haben. Denn die Segmente
+ * enthalten auch Basisklassen und Interfaces aus diesen.
+ */
+final class ClassIndex
+{
+  // Wird bei jeder Aenderung an einem Index hochgezaehlt. Da die Ergebnisse
+  // auch die der Eltern-Indizes enthalten, verwerfen dann alle ihren Cache.
+  private final static AtomicLong generation = new AtomicLong();
+
+  private final MultipleClassLoader loader;
+  private final List<ClassIndex> parents                = new CopyOnWriteArrayList<ClassIndex>();
+  private final Map<String,List<String>> implementors   = new ConcurrentHashMap<String,List<String>>();
+  private final Map<Class,Class[]> cache                = new ConcurrentHashMap<Class,Class[]>();
+  private volatile long cacheGeneration                 = -1L;
+
+  /**
+   * ct.
+   * @param loader der Classloader, ueber den die Klassen geladen werden.
+   */
+  ClassIndex(MultipleClassLoader loader)
+  {
+    this.loader = loader;
+  }
+
+  /**
+   * Fuegt einen Eltern-Index hinzu. Dessen Klassen werden bei der Suche mit beruecksichtigt.
+   * Entspricht dem Hinzufuegen eines Classloaders per {@link MultipleClassLoader#addClassloader(ClassLoader)}.
+   * @param parent der Eltern-Index.
+   */
+  void addParent(ClassIndex parent)
+  {
+    if (parent == null || parent == this || this.parents.contains(parent))
+      return;
+    this.parents.add(parent);
+    generation.incrementAndGet();
+  }
+
+  /**
+   * Uebernimmt die Klassen des Segments in den Index.
+   * @param segment das Segment.
+   */
+  synchronized void add(Segment segment)
+  {
+    for (Entry e:segment.entries)
+    {
+      if (!e.impl)
+        continue;
+      for (String type:e.types)
+      {
+        List<String> list = this.implementors.get(type);
+        if (list == null)
+        {
+          list = new CopyOnWriteArrayList<String>();
+          this.implementors.put(type,list);
+        }
+        if (!list.contains(e.name))
+          list.add(e.name);
+      }
+    }
+    generation.incrementAndGet();
+  }
+
+  /**
+   * Sucht nach allen Implementierungen des angegebenen Interfaces bzw. der Basisklasse.
+   * Verhaelt sich wie {@link de.willuhn.util.ClassFinder#findImplementors(Class)}.
+   * @param <T> der Typ.
+   * @param type das Interface oder die Basisklasse.
+   * @return Liste der gefundenen Klassen. Niemals NULL oder leer.
+   * @throws ClassNotFoundException wenn keine Implementierung gefunden wurde.
+   */
+  <T> Class<T>[] findImplementors(Class<T> type) throws ClassNotFoundException
+  {
+    long current = generation.get();
+    if (this.cacheGeneration != current)
+    {
+      this.cache.clear();
+      this.cacheGeneration = current;
+    }
+
+    Class[] result = this.cache.get(type);
+    if (result != null)
+      return result;
+    
+    // Ist die Klasse selbst eine Implementierung, liefern wir sie direkt. Wie im ClassFinder.
+    if (isImpl(type.getName(),type.getModifiers()))
+      return new Class[]{type};
+
+    Set<Class> found = new LinkedHashSet<Class>();
+    this.collect(type,found);
+    if (found.size() == 0)
+    {
+      Logger.debug("no implementor found for " + type.getName());
+      throw new ClassNotFoundException("no implementor found for " + type.getName());
+    }
+    
+    result = found.toArray(new Class[found.size()]);
+    this.cache.put(type,result);
+    return result;
+  }
+
+  /**
+   * Sammelt die Implementierungen aus den Eltern-Indizes und diesem Index.
+   * @param type der gesuchte Typ.
+   * @param found Set, in dem die gefundenen Klassen gesammelt werden.
+   */
+  private void collect(Class type, Set<Class> found)
+  {
+    for (ClassIndex parent:this.parents)
+    {
+      parent.collect(type,found);
+    }
+
+    List<String> names = this.implementors.get(type.getName());
+    if (names == null)
+      return;
+    
+    for (String name:names)
+    {
+      try
+      {
+        Class c = this.loader.load(name);
+        
+        // Eine gleichnamige Klasse aus einem anderen Classloader waere nicht zuweisbar
+        if (type.isAssignableFrom(c))
+          found.add(c);
+      }
+      catch (Throwable t)
+      {
+        Logger.error("error while loading class " + name,t);
+      }
+    }
+  }
+
+  /**
+   * Prueft, ob eine Klasse als Implementierung in Frage kommt.
+   * Die Kriterien entsprechen denen des ClassFinders: Keine Interfaces,
+   * keine abstrakten Klassen, keine inneren Klassen und keine RMI-Stubs.
+   * @param name Name der Klasse.
+   * @param modifiers die Modifier der Klasse.
+   * @return true, wenn sie als Implementierung in Frage kommt.
+   */
+  static boolean isImpl(String name, int modifiers)
+  {
+    if (Modifier.isInterface(modifiers) || Modifier.isAbstract(modifiers))
+      return false;
+    return name.indexOf('$') == -1 && !name.endsWith("_Stub") && !name.endsWith("_Skel");
+  }
+
+  /**
+   * Erzeugt einen Fingerprint ueber die Dateien anhand von Pfad, Aenderungsdatum und Groesse.
+   * @param files die Dateien.
+   * @param extra weitere Angaben, die in den Fingerprint einfliessen.
+   * @return der Fingerprint.
+   * @throws Exception
+   */
+  static String fingerprint(File[] files, String... extra) throws Exception
+  {
+    MessageDigest md = MessageDigest.getInstance("SHA-1");
+    for (File f:files)
+    {
+      md.update((f.getAbsolutePath() + "|" + f.lastModified() + "|" + f.length() + "\n").getBytes("UTF-8"));
+    }
+    for (String e:extra)
+    {
+      md.update((e + "\n").getBytes("UTF-8"));
+    }
+    StringBuilder sb = new StringBuilder();
+    for (byte b:md.digest())
+    {
+      sb.append(String.format("%02x",b));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Die Klassen eines Manifests.
+   */
+  static class Segment
+  {
+    // Version des Dateiformats
+    private final static int VERSION = 1;
+
+    private final String fingerprint;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    
+    // Noch nicht aufgeloeste Kopfdaten. Siehe resolve(ClassLoader)
+    private final Map<String,ClassHeader> headers = new LinkedHashMap<String,ClassHeader>();
+
+    /**
+     * ct.
+     * @param fingerprint der Fingerprint der Dateien, aus denen das Segment erzeugt wurde.
+     */
+    Segment(String fingerprint)
+    {
+      this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Nimmt die geladene Klasse in das Segment auf.
+     * @param c die Klasse.
+     */
+    void add(Class c)
+    {
+      Set<String> types = new LinkedHashSet<String>();
+      for (Class current = c;current != null && current != Object.class;current = current.getSuperclass())
+      {
+        types.add(current.getName());
+        addInterfaces(current,types);
+      }
+      this.entries.add(new Entry(c.getName(),isImpl(c.getName(),c.getModifiers()),types.toArray(new String[types.size()])));
+    }
+
+    /**
+     * Nimmt die Klasse anhand ihrer Kopfdaten in das Segment auf, ohne sie zu laden.
+     * Die Basisklassen und Interfaces werden erst beim Aufruf von {@link #resolve(ClassLoader)} ermittelt.
+     * @param header die Kopfdaten der Klasse.
+     */
+    void add(ClassHeader header)
+    {
+      this.headers.put(header.getName(),header);
+    }
+    
+    /**
+     * Ermittelt fuer alle per {@link #add(ClassHeader)} hinzugefuegten Klassen die
+     * Basisklassen und Interfaces. Liegen diese nicht im Segment selbst, werden
+     * deren Kopfdaten ueber den Classloader als Ressource gelesen - auch hierbei
+     * wird keine Klasse geladen.
+     * @param loader der Classloader.
+     */
+    void resolve(ClassLoader loader)
+    {
+      Map<String,String[]> resolved = new HashMap<String,String[]>();
+      for (ClassHeader h:this.headers.values())
+      {
+        this.entries.add(new Entry(h.getName(),isImpl(h.getName(),h.getModifiers()),this.resolve(h,loader,resolved)));
+      }
+      this.headers.clear();
+    }
+    
+    /**
+     * Ermittelt rekursiv den Namen der Klasse, ihrer Basisklassen und Interfaces.
+     * @param h die Kopfdaten der Klasse.
+     * @param loader der Classloader fuer Klassen ausserhalb des Segments.
+     * @param resolved die bereits ermittelten Typen.
+     * @return die Typen.
+     */
+    private String[] resolve(ClassHeader h, ClassLoader loader, Map<String,String[]> resolved)
+    {
+      String[] result = resolved.get(h.getName());
+      if (result != null)
+        return result;
+      
+      Set<String> types = new LinkedHashSet<String>();
+      types.add(h.getName());
+      
+      List<String> parents = new ArrayList<String>();
+      if (h.getSuperName() != null && !h.getSuperName().equals(Object.class.getName()))
+        parents.add(h.getSuperName());
+      parents.addAll(Arrays.asList(h.getInterfaces()));
+      
+      for (String name:parents)
+      {
+        String[] known = resolved.get(name);
+        if (known != null)
+        {
+          types.addAll(Arrays.asList(known));
+          continue;
+        }
+        
+        ClassHeader parent = this.headers.get(name);
+        if (parent == null)
+          parent = readHeader(loader,name);
+        
+        if (parent != null)
+        {
+          types.addAll(Arrays.asList(this.resolve(parent,loader,resolved)));
+        }
+        else
+        {
+          // Nicht lesbar - dann wenigstens der direkte Typ
+          resolved.put(name,new String[]{name});
+          types.add(name);
+        }
+      }
+      
+      result = types.toArray(new String[types.size()]);
+      resolved.put(h.getName(),result);
+      return result;
+    }
+    
+    /**
+     * Liest die Kopfdaten einer Klasse ueber den Classloader.
+     * @param loader der Classloader.
+     * @param name Name der Klasse.
+     * @return die Kopfdaten oder NULL, wenn die Klasse nicht gefunden wurde.
+     */
+    private static ClassHeader readHeader(ClassLoader loader, String name)
+    {
+      InputStream is = loader.getResourceAsStream(name.replace('.','/') + ".class");
+      if (is == null)
+        return null;
+      try
+      {
+        return ClassHeader.read(is);
+      }
+      catch (Exception e)
+      {
+        Logger.debug("unable to read class header of " + name + ": " + e);
+        return null;
+      }
+      finally
+      {
+        IOUtil.close(is);
+      }
+    }
+
+    /**
+     * Fuegt rekursiv alle Interfaces der Klasse hinzu.
+     * @param c die Klasse.
+     * @param types Set mit den Typen.
+     */
+    private static void addInterfaces(Class c, Set<String> types)
+    {
+      for (Class i:c.getInterfaces())
+      {
+        if (types.add(i.getName()))
+          addInterfaces(i,types);
+      }
+    }
+
+    /**
+     * Liefert die Anzahl der Klassen im Segment.
+     * @return Anzahl der Klassen.
+     */
+    int size()
+    {
+      return this.entries.size();
+    }
+
+    /**
+     * Liefert die Namen aller Klassen des Segments.
+     * @return Liste der Klassennamen.
+     */
+    List<String> getClasses()
+    {
+      List<String> result = new ArrayList<String>();
+      for (Entry e:this.entries)
+      {
+        result.add(e.name);
+      }
+      return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Liefert die Namen der Klassen, die als Implementierung in Frage kommen.
+     * @return Liste der Klassennamen.
+     */
+    List<String> getImplementations()
+    {
+      List<String> result = new ArrayList<String>();
+      for (Entry e:this.entries)
+      {
+        if (e.impl)
+          result.add(e.name);
+      }
+      return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Laedt das Segment aus der Cache-Datei.
+     * @param file die Cache-Datei.
+     * @param fingerprint der erwartete Fingerprint.
+     * @return das Segment oder NULL, wenn die Datei nicht existiert, veraltet oder nicht lesbar ist.
+     */
+    static Segment read(File file, String fingerprint)
+    {
+      if (!file.isFile())
+        return null;
+      
+      DataInputStream is = null;
+      try
+      {
+        is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        if (is.readInt() != VERSION || !fingerprint.equals(is.readUTF()))
+        {
+          Logger.info("class index " + file + " outdated");
+          return null;
+        }
+        
+        Segment s = new Segment(fingerprint);
+        int count = is.readInt();
+        for (int i=0;i<count;++i)
+        {
+          String name = is.readUTF();
+          boolean impl = is.readBoolean();
+          String[] types = new String[is.readInt()];
+          for (int k=0;k<types.length;++k)
+          {
+            types[k] = is.readUTF();
+          }
+          s.entries.add(new Entry(name,impl,types));
+        }
+        return s;
+      }
+      catch (Exception e)
+      {
+        Logger.error("unable to read class index " + file + ", rebuilding",e);
+        return null;
+      }
+      finally
+      {
+        IOUtil.close(is);
+      }
+    }
+
+    /**
+     * Speichert das Segment in der Cache-Datei.
+     * @param file die Cache-Datei.
+     */
+    void write(File file)
+    {
+      File dir = file.getParentFile();
+      if (!dir.exists() && !dir.mkdirs())
+      {
+        Logger.warn("unable to create dir " + dir);
+        return;
+      }
+      
+      // Erst in eine temporaere Datei schreiben. Dann bleibt bei einem Abbruch keine halbe Datei liegen
+      File temp = new File(dir,file.getName() + ".tmp");
+      DataOutputStream os = null;
+      try
+      {
+        os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        os.writeInt(VERSION);
+        os.writeUTF(this.fingerprint);
+        os.writeInt(this.entries.size());
+        for (Entry e:this.entries)
+        {
+          os.writeUTF(e.name);
+          os.writeBoolean(e.impl);
+          os.writeInt(e.types.length);
+          for (String t:e.types)
+          {
+            os.writeUTF(t);
+          }
+        }
+        os.close();
+        os = null;
+        
+        if (file.exists() && !file.delete())
+        {
+          Logger.warn("unable to replace class index " + file);
+          return;
+        }
+        if (!temp.renameTo(file))
+          Logger.warn("unable to rename " + temp + " to " + file);
+      }
+      catch (Exception e)
+      {
+        Logger.error("unable to write class index " + file,e);
+      }
+      finally
+      {
+        IOUtil.close(os);
+        if (temp.exists())
+          temp.delete();
+      }
+    }
+  }
+
+  /**
+   * Eine Klasse des Index.
+   */
+  private static class Entry
+  {
+    private final String name;
+    private final boolean impl;
+    private final String[] types;
+
+    /**
+     * ct.
+     * @param name Name der Klasse.
+     * @param impl true, wenn sie als Implementierung in Frage kommt.
+     * @param types die Namen der Klasse selbst, ihrer Basisklassen und aller Interfaces.
+     */
+    private Entry(String name, boolean impl, String[] types)
+    {
+      this.name  = name;
+      this.impl  = impl;
+      this.types = types;
+    }
+  }
+}
@@ -11,10 +11,25 @@
 package de.willuhn.jameica.services;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
@@ -23,9 +38,11 @@ import de.willuhn.boot.BootLoader;
 import de.willuhn.boot.Bootable;
 import de.willuhn.boot.SkipServiceException;
 import de.willuhn.io.FileFinder;
+import de.willuhn.io.IOUtil;
 import de.willuhn.jameica.plugin.Dependency;
 import de.willuhn.jameica.plugin.Manifest;
 import de.willuhn.jameica.system.Application;
+import de.willuhn.jameica.system.Settings;
 import de.willuhn.logging.Logger;
 import de.willuhn.util.MultipleClassLoader;
 
@@ -35,6 +52,38 @@ import de.willuhn.util.MultipleClassLoader;
  */
 public class ClassService implements Bootable
 {
+  private Settings settings                   = new Settings(ClassService.class);
+  private Map<ClassLoader,ClassIndex> indexes = new ConcurrentHashMap<ClassLoader,ClassIndex>();
+  private Map<String,String> fingerprints     = new ConcurrentHashMap<String,String>();
+
+  // Ein gemeinsamer Pool fuer alle Plugins. Werden mehrere Plugins parallel erfasst,
+  // teilen sie sich die Threads, statt pro Plugin einen eigenen Pool zu starten.
+  private ExecutorService pool                = null;
+  
+  /**
+   * Legt fest, wie die Klassen beim Start erfasst werden.
+   */
+  public static enum ScanMode
+  {
+    /**
+     * Alle Klassen werden geladen und per Reflection erfasst. Das alte Verhalten.
+     */
+    LOAD,
+    
+    /**
+     * Die Klassen werden anhand ihres Bytecodes erfasst. Geladen werden nur noch die
+     * Klassen, die der Classfinder aufnehmen wuerde. Innere Klassen, Interfaces und
+     * abstrakte Klassen werden erst bei Bedarf geladen.
+     */
+    HEADER,
+    
+    /**
+     * Die Klassen werden anhand ihres Bytecodes erfasst und erst bei Bedarf geladen.
+     * Sie sind dann nur ueber {@link ClassService#findImplementors(MultipleClassLoader, Class)}
+     * auffindbar. Der Classfinder kennt nur die bereits geladenen Klassen.
+     */
+    LAZY
+  }
 
   /**
    * @see de.willuhn.boot.Bootable#depends()
@@ -75,19 +124,88 @@ public class ClassService implements Bootable
   /**
    * @see de.willuhn.boot.Bootable#shutdown()
    */
-  public void shutdown()
+  public synchronized void shutdown()
+  {
+    if (this.pool != null)
+      this.pool.shutdownNow();
+    this.pool = null;
+  }
+  
+  /**
+   * Sucht im angegebenen Classloader nach allen Implementierungen des Interfaces bzw. der Basisklasse.
+   * Verhaelt sich wie {@link de.willuhn.util.ClassFinder#findImplementors(Class)}, verwendet jedoch
+   * den beim Laden der Klassen erzeugten Index. Die Klassen muessen hierzu nicht durchsucht werden.
+   * Existiert fuer den Classloader kein Index, wird der ClassFinder verwendet.
+   * @param <T> der Typ.
+   * @param loader der Classloader.
+   * @param type das Interface oder die Basisklasse.
+   * @return Liste der gefundenen Klassen. Niemals NULL oder leer.
+   * @throws ClassNotFoundException wenn keine Implementierung gefunden wurde.
+   */
+  public <T> Class<T>[] findImplementors(MultipleClassLoader loader, Class<T> type) throws ClassNotFoundException
+  {
+    ClassIndex index = this.indexes.get(loader);
+    if (index == null)
+      return loader.getClassFinder().findImplementors(type);
+    return index.findImplementors(type);
+  }
+  
+  /**
+   * Liefert den konfigurierten Modus fuer das Erfassen der Klassen.
+   * @return der Modus.
+   */
+  public ScanMode getScanMode()
+  {
+    String s = this.settings.getString("scan.mode",ScanMode.HEADER.name());
+    try
+    {
+      return ScanMode.valueOf(s.trim().toUpperCase());
+    }
+    catch (Exception e)
+    {
+      Logger.warn("invalid scan mode " + s + ", using " + ScanMode.HEADER);
+      return ScanMode.HEADER;
+    }
+  }
+  
+  /**
+   * Liefert den Index des Classloaders und erzeugt ihn bei Bedarf.
+   * @param loader der Classloader.
+   * @return der Index.
+   */
+  private synchronized ClassIndex getIndex(MultipleClassLoader loader)
   {
+    ClassIndex index = this.indexes.get(loader);
+    if (index == null)
+    {
+      index = new ClassIndex(loader);
+      this.indexes.put(loader,index);
+    }
+    return index;
+  }
+  
+  /**
+   * Liefert die Cache-Datei fuer den Klassen-Index des Manifests.
+   * @param manifest das Manifest.
+   * @return die Cache-Datei.
+   */
+  private File getCacheFile(Manifest manifest)
+  {
+    String name = manifest.getName().replaceAll("[^a-zA-Z0-9\\.\\-_]","_");
+    return new File(Application.getConfig().getWorkDir() + File.separator + "cache" + File.separator + "classes",name + ".index");
   }
 
   /**
    * Durchsucht das Verzeichnis, in dem sich das Manifest befindet nach Klassen und Jars,
    * laedt diese in den Classpath und registriert die alle Klassen im Classfinder,
    * deren Name zu den Suchfiltern in der Sektion &lt;classfinder&gt; passen. 
+   * Die Methode kann fuer verschiedene Plugins parallel aufgerufen werden. Plugins,
+   * die sich den globalen Classloader teilen, werden jedoch nacheinander erfasst.
    * @param manifest das Manifest.
    * @return ein Classloader, der genau dieses Plugin enthaelt.
    * @throws Exception
    */
-  public synchronized MultipleClassLoader prepareClasses(Manifest manifest) throws Exception
+  public MultipleClassLoader prepareClasses(Manifest manifest) throws Exception
   {
     if (manifest == null)
       throw new Exception("no manifest given");
@@ -116,6 +234,7 @@ public class ClassService implements Bootable
       mycl.setName("loader." + manifest.getName());
       Logger.info("  adding system classloader");
       mycl.addClassloader(Application.getClassLoader());
+      getIndex(mycl).addParent(getIndex(Application.getClassLoader()));
       
       // Jetzt muessen wir uns noch die Classloader der Dependency-Plugins holen
       // und dem aktuellen Plugin hinzufuegen. Damit kennt das Plugin dann:
@@ -140,6 +259,7 @@ public class ClassService implements Bootable
             {
               Logger.info("    " + mf.getName());
               mycl.addClassloader(mf.getClassLoader());
+              getIndex(mycl).addParent(getIndex(mf.getClassLoader()));
               break;
             }
           }
@@ -148,44 +268,51 @@ public class ClassService implements Bootable
       
     }
 
-    // Wir fuegen das Verzeichnis zum ClassLoader hinzu. (auch fuer die Ressourcen)
-    mycl.add(dir);
-    
-    // Kompilat-Ordner aus den Quellcode-Projekten, um die Plugins auch in der IDE im Debugger laufen lassen zu koennen
-    for (File bin:Arrays.asList(new File(dir,"bin"),new File(dir,"target/classes")))
+    // Der Classloader darf nicht von mehreren Plugins gleichzeitig befuellt werden
+    synchronized (mycl)
     {
-      if (bin.exists())
+      // Wir fuegen das Verzeichnis zum ClassLoader hinzu. (auch fuer die Ressourcen)
+      mycl.add(dir);
+    
+      // Kompilat-Ordner aus den Quellcode-Projekten, um die Plugins auch in der IDE im Debugger laufen lassen zu koennen
+      for (File bin:Arrays.asList(new File(dir,"bin"),new File(dir,"target/classes")))
       {
-        Logger.info(mycl.getName() + ": added dir " + bin);
-        mycl.add(bin); // Fuer den Start in Eclipse bzw. entpackte Classen
+        if (bin.exists())
+        {
+          Logger.info(mycl.getName() + ": added dir " + bin);
+          mycl.add(bin); // Fuer den Start in Eclipse bzw. entpackte Classen
+        }
+        Application.getCallback().getStartupMonitor().addPercentComplete(2);
       }
-      Application.getCallback().getStartupMonitor().addPercentComplete(2);
-    }
 
-    // Und jetzt noch alle darin befindlichen Jars
-    File[] jars = mycl.addJars(dir);
-    if (jars != null)
-    {
-      Arrays.sort(jars); // Das machen wir nur der Optik wegen. Dann kann man das im Log besser lesen
-      for (int i=0;i<jars.length;++i)
+      // Und jetzt noch alle darin befindlichen Jars
+      File[] jars = mycl.addJars(dir);
+      if (jars != null)
       {
-        Logger.info(mycl.getName() + ": loaded jar " + jars[i].getAbsolutePath());
-      }
+        Arrays.sort(jars); // Das machen wir nur der Optik wegen. Dann kann man das im Log besser lesen
+        for (int i=0;i<jars.length;++i)
+        {
+          Logger.info(mycl.getName() + ": loaded jar " + jars[i].getAbsolutePath());
+        }
       
-    }
+      }
 
-    Application.getCallback().getStartupMonitor().addPercentComplete(1);
-    ////////////////////////////////////////////////////////////////////////////
-    prepareClasses(manifest, mycl);
+      Application.getCallback().getStartupMonitor().addPercentComplete(1);
+      ////////////////////////////////////////////////////////////////////////////
+      prepareClasses(manifest, mycl);
+    }
     return mycl;
   }
 
   /**
+   * Erfasst die Klassen des Manifests, registriert sie im Classfinder und erzeugt den Klassen-Index.
+   * Welche Klassen hierbei geladen werden, haengt vom {@link ScanMode} ab. Existiert ein aktueller
+   * Index aus einem vorherigen Start, werden die Dateien nicht erneut durchsucht.
    * @param manifest
    * @param mycl
-   * @throws IOException
+   * @throws Exception
    */
-  private void prepareClasses(Manifest manifest, MultipleClassLoader mycl) throws IOException
+  private void prepareClasses(Manifest manifest, MultipleClassLoader mycl) throws Exception
   {
     ////////////////////////////////////////////////////////////////////////////
     // Classfinder befuellen
@@ -210,6 +337,27 @@ public class ClassService implements Bootable
 
     File[] child = ff.findRecursive();
     
+    ScanMode mode = this.getScanMode();
+    ClassIndex index = getIndex(mycl);
+    File cache = getCacheFile(manifest);
+    String fingerprint = this.fingerprint(manifest,child);
+    ClassIndex.Segment segment = ClassIndex.Segment.read(cache,fingerprint);
+    if (segment != null)
+    {
+      this.fingerprints.put(manifest.getName(),fingerprint);
+      Logger.info("using cached class index for " + manifest.getName() + " (" + segment.size() + " classes)");
+      List<String> names = mode == ScanMode.LOAD ? segment.getClasses() : mode == ScanMode.HEADER ? segment.getImplementations() : Collections.<String>emptyList();
+      for (String name:names)
+      {
+        if (++count % 75 == 0)
+          Application.getCallback().getStartupMonitor().addPercentComplete(1);
+        load(mycl,name);
+      }
+      index.add(segment);
+      return;
+    }
+    segment = new ClassIndex.Segment(fingerprint);
+    
     String path = dir.getCanonicalPath();
     path = path.replaceAll("\\\\","/"); // Windows-Backslash gegen Linux-Slash ersetzen
 
@@ -217,99 +365,379 @@ public class ClassService implements Bootable
     final Pattern binDir1 = Pattern.compile(path + "/bin/.*\\.class");
     final Pattern binDir2 = Pattern.compile(path + "/target/classes.*\\.class");
     
-    // Wir iterieren ueber alle Dateien in dem Verzeichnis.
-    for (int i=0;i<child.length;++i)
+    // Die Dateien werden parallel untersucht. Nur das Registrieren der Klassen
+    // im Classloader und im Index erfolgt danach der Reihe nach in diesem Thread.
+    List<Future<List<Item>>> jobs = new ArrayList<Future<List<Item>>>();
+    AtomicInteger skipped = new AtomicInteger();
+    ExecutorService pool = this.getPool();
+    try
     {
-      if (++count % 75 == 0)
-        Application.getCallback().getStartupMonitor().addPercentComplete(1);
-
-      String name = child[i].getCanonicalPath();
-      name = name.replaceAll("\\\\","/"); // Windows-Backslash gegen Linux-Slash ersetzen
-      
-      // Class-Files nur, wenn sie sich im bin-Verzeichnis befinden
-      boolean binDir = binDir1.matcher(name).matches();
-      if (binDir || binDir2.matcher(name).matches())
+      // Wir iterieren ueber alle Dateien in dem Verzeichnis.
+      for (int i=0;i<child.length;++i)
       {
-        // Jetzt muessen wir vorn noch den Verzeichnisnamen abschneiden
-        name = name.substring(path.length() + (binDir ? 5 : 16)); // fuehrenden Pfad abschneiden ("/bin" bzw. "/target/classes" beachten)
-        name = name.substring(0, name.indexOf(".class")).replace('/', '.'); // .class weg Trenner ersetzen
-        if (name.startsWith("."))
-          name = name.substring(1); // ggf. fuehrenden Punkt abschneiden
-    
-        // In ClassFinder uebernehmen
-        load(mycl,name);
-      }
+        String name = child[i].getCanonicalPath();
+        name = name.replaceAll("\\\\","/"); // Windows-Backslash gegen Linux-Slash ersetzen
         
-      if (name.endsWith(".jar") || name.endsWith(".zip"))
+        // Class-Files nur, wenn sie sich im bin-Verzeichnis befinden
+        boolean binDir = binDir1.matcher(name).matches();
+        if (binDir || binDir2.matcher(name).matches())
+        {
+          // Jetzt muessen wir vorn noch den Verzeichnisnamen abschneiden
+          name = name.substring(path.length() + (binDir ? 5 : 16)); // fuehrenden Pfad abschneiden ("/bin" bzw. "/target/classes" beachten)
+          name = name.substring(0, name.indexOf(".class")).replace('/', '.'); // .class weg Trenner ersetzen
+          if (name.startsWith("."))
+            name = name.substring(1); // ggf. fuehrenden Punkt abschneiden
+      
+          jobs.add(pool.submit(new ClassInspector(child[i],name,mode,skipped)));
+        }
+          
+        if (name.endsWith(".jar") || name.endsWith(".zip"))
+        {
+          Logger.info("inspecting " + name);
+          jobs.add(pool.submit(new JarInspector(child[i],mode,skipped)));
+        }
+      }
+      
+      // Ergebnisse in der urspruenglichen Reihenfolge uebernehmen
+      for (Future<List<Item>> job:jobs)
       {
-        Logger.info("inspecting " + name);
-
-        JarFile jar = null;
+        List<Item> items = null;
         try
         {
-          try {
-            jar = new JarFile(child[i]);
-          }
-          catch (IOException ioe) {
-            Logger.error("unable to load " + name + ", skipping",ioe);
-            continue; // skip
-          }
+          items = job.get();
+        }
+        catch (ExecutionException e)
+        {
+          Logger.error("error while inspecting classes of " + manifest.getName() + ", skipping",e.getCause());
+          skipped.incrementAndGet();
+          continue;
+        }
+        
+        for (Item item:items)
+        {
+          if (++count % 75 == 0)
+            Application.getCallback().getStartupMonitor().addPercentComplete(1);
+          
+          // In ClassFinder und Index uebernehmen
+          add(mode,mycl,segment,item);
+        }
+      }
+    }
+    finally
+    {
+      // Noch offene Jobs (z.Bsp. nach einem Abbruch) nicht weiter ausfuehren
+      for (Future<List<Item>> job:jobs)
+        job.cancel(true);
+    }
 
-          // So, jetzt iterieren wir ueber alle Files in dem Jar
-          Enumeration<JarEntry> jarEntries = jar.entries();
-          JarEntry entry = null;
+    segment.resolve(mycl);
+    index.add(segment);
     
-          while (jarEntries.hasMoreElements())
-          {
-            if (++count % 75 == 0)
-              Application.getCallback().getStartupMonitor().addPercentComplete(1);
-            
-            entry = jarEntries.nextElement();
-            String entryName = entry.getName();
+    // Ein unvollstaendiges Segment cachen wir nicht. Sonst fehlen die Klassen auch beim naechsten Start
+    if (skipped.get() > 0)
+      Logger.warn(skipped.get() + " file(s) of " + manifest.getName() + " not readable, class index not cached");
+    else
+      segment.write(cache);
+    this.fingerprints.put(manifest.getName(),fingerprint);
+    Logger.info("created class index for " + manifest.getName() + " (" + segment.size() + " classes)");
+  }
+  
+  /**
+   * Erzeugt den Fingerprint fuer den Klassen-Index des Manifests.
+   * Ausser den Dateien des Plugins fliessen die Version von Jameica sowie die Fingerprints
+   * von Jameica und den Plugins ein, von denen es abhaengt. Deren Fingerprints enthalten
+   * wiederum ihre Abhaengigkeiten. Das Segment enthaelt auch Basisklassen und Interfaces,
+   * die ueber deren Classloader ermittelt wurden und muss daher bei jeder Aenderung
+   * an ihnen neu erzeugt werden.
+   * @param manifest das Manifest.
+   * @param files die Dateien des Plugins.
+   * @return der Fingerprint.
+   * @throws Exception
+   */
+  private String fingerprint(Manifest manifest, File[] files) throws Exception
+  {
+    List<String> extra = new ArrayList<String>();
+    Manifest jameica = Application.getManifest();
+    extra.add(jameica.getName() + "|" + jameica.getVersion());
+    if (manifest != jameica)
+    {
+      extra.add(jameica.getName() + "|" + this.fingerprints.get(jameica.getName()));
+      Dependency[] deps = manifest.getDirectDependencies();
+      if (deps != null)
+      {
+        for (Dependency d:deps)
+        {
+          extra.add(d.getName() + "|" + this.fingerprints.get(d.getName()));
+        }
+      }
+    }
+    return ClassIndex.fingerprint(files,extra.toArray(new String[extra.size()]));
+  }
 
-            int idxClass = entryName.indexOf(".class");
+  /**
+   * Laedt die Klasse und fuegt sie in den Classfinder.
+   * @param classname zu ladende Klasse.
+   * @return die Klasse oder NULL, wenn sie nicht geladen werden konnte.
+   */
+  private static Class load(MultipleClassLoader cl, String classname)
+  {
+    try {
+      return cl.load(classname);
+    }
+    catch (Throwable t)
+    {
+      Logger.error("error while loading class " + classname,t);
+      return null;
+    }
+  }
+  
+  /**
+   * Nimmt die Klasse je nach Modus in Classfinder und Index auf.
+   * @param mode der Modus.
+   * @param cl der Classloader.
+   * @param segment das Segment des Index.
+   * @param item die untersuchte Klasse.
+   */
+  private static void add(ScanMode mode, MultipleClassLoader cl, ClassIndex.Segment segment, Item item)
+  {
+    ClassHeader h = item.header;
+    if (h != null)
+    {
+      if (h.isModule())
+        return;
+      
+      segment.add(h);
+      if (mode == ScanMode.HEADER && ClassIndex.isImpl(h.getName(),h.getModifiers()))
+        load(cl,h.getName());
+      return;
+    }
 
-            // alles, was nicht mit ".class" aufhoert, koennen wir jetzt ignorieren
-            if (idxClass == -1)
-              continue;
-    
-            // wir machen einen Klassen-Namen draus
-            entryName = entryName.substring(0, idxClass).replace('/', '.').replace('\\', '.');
+    Class c = load(cl,item.classname);
+    if (c != null)
+      segment.add(c);
+  }
+  
+  /**
+   * Liefert den Thread-Pool fuer das Untersuchen der Dateien.
+   * Er hat hoechstens so viele Threads wie Prozessoren. Nicht benutzte Threads
+   * beenden sich nach kurzer Zeit wieder, so dass der Pool nach dem Start keine
+   * Ressourcen mehr belegt.
+   * @return der Thread-Pool.
+   */
+  private synchronized ExecutorService getPool()
+  {
+    if (this.pool != null)
+      return this.pool;
 
-            // In ClassFinder uebernehmen
-            load(mycl,entryName);
-          }
+    int size = Math.max(1,Runtime.getRuntime().availableProcessors());
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(size,size,10L,TimeUnit.SECONDS,new LinkedBlockingQueue<Runnable>(),new ThreadFactory()
+    {
+      private AtomicInteger count = new AtomicInteger();
+      
+      /**
+       * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+       */
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r,"Jameica Class Inspector " + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    executor.allowCoreThreadTimeOut(true);
+    this.pool = executor;
+    return this.pool;
+  }
+  
+  /**
+   * Liest die Kopfdaten der Klasse.
+   * @param classname Name der Klasse.
+   * @param is Stream mit dem Bytecode der Klasse.
+   * @return die Kopfdaten oder NULL, wenn sie nicht lesbar sind. Die Klasse wird dann geladen.
+   */
+  private static ClassHeader readHeader(String classname, InputStream is)
+  {
+    try
+    {
+      return ClassHeader.read(is);
+    }
+    catch (Exception e)
+    {
+      Logger.warn("unable to read class header of " + classname + ", loading class: " + e);
+      return null;
+    }
+  }
+  
+  /**
+   * Eine untersuchte Klasse.
+   */
+  private static class Item
+  {
+    private final String classname;
+    private final ClassHeader header;
+
+    /**
+     * ct.
+     * @param classname Name der Klasse.
+     * @param header die Kopfdaten der Klasse. NULL, wenn die Klasse geladen werden soll.
+     */
+    private Item(String classname, ClassHeader header)
+    {
+      this.classname = classname;
+      this.header    = header;
+    }
+  }
+  
+  /**
+   * Untersucht ein einzelnes Class-File.
+   */
+  private static class ClassInspector implements Callable<List<Item>>
+  {
+    private final File file;
+    private final String classname;
+    private final ScanMode mode;
+    private final AtomicInteger skipped;
+
+    /**
+     * ct.
+     * @param file die Datei.
+     * @param classname Name der Klasse.
+     * @param mode der Modus.
+     * @param skipped Zaehler fuer nicht lesbare Dateien.
+     */
+    private ClassInspector(File file, String classname, ScanMode mode, AtomicInteger skipped)
+    {
+      this.file      = file;
+      this.classname = classname;
+      this.mode      = mode;
+      this.skipped   = skipped;
+    }
+
+    /**
+     * @see java.util.concurrent.Callable#call()
+     */
+    public List<Item> call() throws Exception
+    {
+      ClassHeader h = null;
+      if (this.mode != ScanMode.LOAD)
+      {
+        InputStream is = null;
+        try
+        {
+          is = new FileInputStream(this.file);
+          h = readHeader(this.classname,is);
+        }
+        catch (IOException e)
+        {
+          Logger.error("unable to read " + this.file + ", skipping",e);
+          this.skipped.incrementAndGet();
+          return Collections.emptyList();
         }
         finally
         {
-          if (jar != null)
+          IOUtil.close(is);
+        }
+      }
+      return Collections.singletonList(new Item(this.classname,h));
+    }
+  }
+
+  /**
+   * Untersucht alle Klassen eines Jars.
+   */
+  private static class JarInspector implements Callable<List<Item>>
+  {
+    private final File file;
+    private final ScanMode mode;
+    private final AtomicInteger skipped;
+
+    /**
+     * ct.
+     * @param file das Jar.
+     * @param mode der Modus.
+     * @param skipped Zaehler fuer nicht lesbare Eintraege.
+     */
+    private JarInspector(File file, ScanMode mode, AtomicInteger skipped)
+    {
+      this.file    = file;
+      this.mode    = mode;
+      this.skipped = skipped;
+    }
+
+    /**
+     * @see java.util.concurrent.Callable#call()
+     */
+    public List<Item> call() throws Exception
+    {
+      List<Item> result = new ArrayList<Item>();
+      JarFile jar = null;
+      try
+      {
+        try {
+          jar = new JarFile(this.file);
+        }
+        catch (IOException ioe) {
+          Logger.error("unable to load " + this.file + ", skipping",ioe);
+          return result; // skip
+        }
+
+        // So, jetzt iterieren wir ueber alle Files in dem Jar
+        Enumeration<JarEntry> jarEntries = jar.entries();
+        JarEntry entry = null;
+  
+        while (jarEntries.hasMoreElements())
+        {
+          entry = jarEntries.nextElement();
+          String entryName = entry.getName();
+
+          int idxClass = entryName.indexOf(".class");
+
+          // alles, was nicht mit ".class" aufhoert, koennen wir jetzt ignorieren
+          if (idxClass == -1)
+            continue;
+  
+          // wir machen einen Klassen-Namen draus
+          entryName = entryName.substring(0, idxClass).replace('/', '.').replace('\\', '.');
+
+          ClassHeader h = null;
+          if (this.mode != ScanMode.LOAD)
           {
+            InputStream is = null;
             try
             {
-              jar.close();
+              is = jar.getInputStream(entry);
+              h = readHeader(entryName,is);
             }
             catch (Exception e)
             {
-              Logger.error("unable to close jar file",e);
+              // Nur diesen Eintrag ueberspringen, nicht das ganze Jar
+              Logger.error("unable to read " + entry.getName() + " in " + this.file + ", skipping",e);
+              this.skipped.incrementAndGet();
+              continue;
+            }
+            finally
+            {
+              IOUtil.close(is);
             }
           }
+          result.add(new Item(entryName,h));
         }
       }
-    }
-  }
-  
-  /**
-   * Laedt die Klasse und fuegt sie in den Classfinder.
-   * @param classname zu ladende Klasse.
-   */
-  private static void load(MultipleClassLoader cl, String classname)
-  {
-    try {
-      cl.load(classname);
-    }
-    catch (Throwable t)
-    {
-      Logger.error("error while loading class " + classname,t);
+      finally
+      {
+        if (jar != null)
+        {
+          try
+          {
+            jar.close();
+          }
+          catch (Exception e)
+          {
+            Logger.error("unable to close jar file",e);
+          }
+        }
+      }
+      return result;
     }
   }
 
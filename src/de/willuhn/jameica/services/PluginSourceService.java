@@ -117,7 +117,8 @@ public class PluginSourceService implements Bootable
     {
       MultipleClassLoader loader = Application.getClassLoader();
       BeanService beanService = Application.getBootLoader().getBootable(BeanService.class);
-      Class<PluginSource>[] classes = loader.getClassFinder().findImplementors(PluginSource.class);
+      ClassService classService = Application.getBootLoader().getBootable(ClassService.class);
+      Class<PluginSource>[] classes = classService.findImplementors(loader,PluginSource.class);
       for (Class<PluginSource> c:classes)
       {
         try
@@ -13,6 +13,7 @@ package de.willuhn.jameica.services;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
@@ -24,7 +25,9 @@ import de.willuhn.boot.BootLoader;
 import de.willuhn.boot.Bootable;
 import de.willuhn.boot.SkipServiceException;
 import de.willuhn.datasource.rmi.ObjectNotFoundException;
+import de.willuhn.jameica.messaging.Message;
 import de.willuhn.jameica.messaging.ReminderMessage;
+import de.willuhn.jameica.reminder.AbstractReminderStorageProvider;
 import de.willuhn.jameica.reminder.Reminder;
 import de.willuhn.jameica.reminder.ReminderInterval;
 import de.willuhn.jameica.reminder.ReminderStorageProvider;
@@ -79,7 +82,8 @@ public class ReminderService extends TimerTask implements Bootable
       
       // 2. Die restlichen Storage-Provider laden
       MultipleClassLoader cl = Application.getClassLoader();
-      Class<ReminderStorageProvider>[] classes = cl.getClassFinder().findImplementors(ReminderStorageProvider.class);
+      ClassService classService = Application.getBootLoader().getBootable(ClassService.class);
+      Class<ReminderStorageProvider>[] classes = classService.findImplementors(cl,ReminderStorageProvider.class);
       for (Class<ReminderStorageProvider> c:classes)
       {
         try
@@ -132,11 +136,45 @@ public class ReminderService extends TimerTask implements Bootable
   {
     Date now = new Date();
     long timeout = now.getTime() - (14 * 24 * 60 * 60 * 1000L); // 14 Tage
-      
+    
+    // Die faelligen Messages sammeln wir pro Queue und senden sie am Ende gemeinsam
+    Map<String,List<Message>> outbox = new LinkedHashMap<String,List<Message>>();
+    try
+    {
+      this.collect(now,timeout,outbox);
+    }
+    finally
+    {
+      // Queuen statt senden: Der Reminder ist jetzt als ausgefuehrt markiert. Ist der Consumer
+      // (noch) nicht registriert, wuerde die Nachricht sonst verloren gehen.
+      for (Map.Entry<String,List<Message>> e:outbox.entrySet())
+      {
+        Application.getMessagingFactory().getMessagingQueue(e.getKey()).queueMessages(e.getValue());
+      }
+    }
+  }
+  
+  /**
+   * Ermittelt die faelligen Reminder aller Storage-Provider.
+   * @param now das aktuelle Datum.
+   * @param timeout Zeitpunkt, vor dem ausgefuehrte einmalige Reminder geloescht werden.
+   * @param outbox Map, in der die zu sendenden Messages pro Queue gesammelt werden.
+   */
+  private void collect(Date now, long timeout, Map<String,List<Message>> outbox)
+  {
     for (ReminderStorageProvider provider:this.providers)
     {
+      // Die Aenderungen eines Durchlaufs gemeinsam speichern. Committed wird
+      // nur, wenn begin() geklappt hat.
+      AbstractReminderStorageProvider batch = null;
       try
       {
+        if (provider instanceof AbstractReminderStorageProvider)
+        {
+          ((AbstractReminderStorageProvider) provider).begin();
+          batch = (AbstractReminderStorageProvider) provider;
+        }
+
         // Alle Termine holen, die bis jetzt faellig sind
         Map<String,Reminder> reminders = provider.find(null,null,now);
         Iterator<String> uuids = reminders.keySet().iterator();
@@ -194,13 +232,20 @@ public class ReminderService extends TimerTask implements Bootable
             String queue = StringUtils.trimToNull(r.getQueue());
             if (queue == null)
               queue = Reminder.QUEUE_DEFAULT;
+            
+            List<Message> messages = outbox.get(queue);
+            if (messages == null)
+            {
+              messages = new ArrayList<Message>();
+              outbox.put(queue,messages);
+            }
             //////////////////////////////////////////////////////////////////////
 
 
             if (ri == null) // Einmalige Reminder
             {
               Logger.info("sending reminder message for " + uuid + " to " + queue + " - due to: " + date);
-              Application.getMessagingFactory().getMessagingQueue(queue).sendMessage(new ReminderMessage(date, uuid, r.getData()));
+              messages.add(new ReminderMessage(date, uuid, r.getData()));
             }
             else // Wiederholender Reminder. Checken, ob seit der letzten Ausfuehrung ein neues Intervall faellig ist
             {
@@ -210,7 +255,7 @@ public class ReminderService extends TimerTask implements Bootable
                 if (end != null && end.before(d)) // bereits abgelaufen
                   continue;
                 Logger.info("sending reminder message for " + uuid + " to " + queue + " - due to: " + d);
-                Application.getMessagingFactory().getMessagingQueue(queue).sendMessage(new ReminderMessage(d, uuid, r.getData()));
+                messages.add(new ReminderMessage(d, uuid, r.getData()));
               }
             }
             
@@ -232,6 +277,18 @@ public class ReminderService extends TimerTask implements Bootable
       {
         Logger.error("unable to send reminder messages for provider " + provider.getClass().getName(),t);
       }
+      finally
+      {
+        try
+        {
+          if (batch != null)
+            batch.commit();
+        }
+        catch (Exception e)
+        {
+          Logger.error("unable to save reminders of provider " + provider.getClass().getName(),e);
+        }
+      }
     }
   }
 }
@@ -47,7 +47,8 @@ public class SearchService implements Bootable
     try
     {
       Logger.info("looking for search providers");
-      Class[] providers = Application.getClassLoader().getClassFinder().findImplementors(SearchProvider.class);
+      ClassService classService = Application.getBootLoader().getBootable(ClassService.class);
+      Class[] providers = classService.findImplementors(Application.getClassLoader(),SearchProvider.class);
       BeanService beanService = Application.getBootLoader().getBootable(BeanService.class);
       int count = 0;
       for (int i=0;i<providers.length;++i)
@@ -22,7 +22,6 @@ import de.willuhn.jameica.system.Application;
 import de.willuhn.jameica.transport.Transport;
 import de.willuhn.logging.Logger;
 import de.willuhn.util.ApplicationException;
-import de.willuhn.util.ClassFinder;
 import de.willuhn.util.I18N;
 
 /**
@@ -54,8 +53,8 @@ public class TransportService implements Bootable
     
     try
     {
-      ClassFinder finder = Application.getClassLoader().getClassFinder();
-      Class[] classes = finder.findImplementors(Transport.class);
+      ClassService classService = Application.getBootLoader().getBootable(ClassService.class);
+      Class[] classes = classService.findImplementors(Application.getClassLoader(),Transport.class);
       for (Class c:classes)
       {
         try
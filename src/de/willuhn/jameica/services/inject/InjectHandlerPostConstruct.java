@@ -16,7 +16,6 @@ import java.lang.reflect.Method;
 
 import javax.annotation.PostConstruct;
 
-import de.willuhn.annotation.Inject;
 import de.willuhn.annotation.Injector;
 import de.willuhn.logging.Logger;
 
@@ -34,7 +33,7 @@ public class InjectHandlerPostConstruct implements InjectHandler
   {
     final String name = o.getClass().getSimpleName();
     
-    Inject.inject(o,new Injector()
+    InjectionPlan.inject(o,new Injector()
     {
       /**
        * @see de.willuhn.annotation.Injector#inject(java.lang.Object, java.lang.reflect.AccessibleObject, java.lang.annotation.Annotation)
@@ -43,7 +42,6 @@ public class InjectHandlerPostConstruct implements InjectHandler
       {
         Method m = (Method) field;
         Logger.trace("  executing post-construct " + name + "." + m.getName());
-        m.setAccessible(true);
         m.invoke(bean,(Object[]) null);
       }
     },PostConstruct.class);
@@ -11,13 +11,17 @@
 package de.willuhn.jameica.services.inject;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
 import org.apache.commons.lang.StringUtils;
 
-import de.willuhn.annotation.Inject;
 import de.willuhn.annotation.Injector;
 import de.willuhn.jameica.messaging.Message;
 import de.willuhn.jameica.messaging.MessageConsumer;
@@ -31,9 +35,19 @@ import de.willuhn.logging.Logger;
 /**
  * Durchsucht die Funktionen in der Klasse nach der "Receive" Annotation
  * und registriert passende MessageConsumer.
+ * Die Methoden werden bereits beim Registrieren per MethodHandle gebunden,
+ * damit beim Zustellen der Nachrichten kein Reflection-Aufruf mehr noetig ist.
+ * Die Beans werden nur schwach referenziert. Wurde eine Bean vom Garbage-Collector
+ * entfernt, meldet ein Hintergrund-Thread ihre Consumer sofort ab.
  */
 public class InjectHandlerReceive implements InjectHandler
 {
+  // Typ, auf den alle Methoden gebracht werden: (Bean, Nutzdaten) -> void
+  private final static MethodType TYPE = MethodType.methodType(void.class,Object.class,Object.class);
+  
+  private final static ReferenceQueue<Object> references = new ReferenceQueue<Object>();
+  private static Thread cleaner = null;
+  
   /**
    * @see de.willuhn.jameica.services.inject.InjectHandler#inject(java.lang.Object)
    */
@@ -41,7 +55,7 @@ public class InjectHandlerReceive implements InjectHandler
   {
     final String name = o.getClass().getSimpleName();
 
-    Inject.inject(o,new Injector()
+    InjectionPlan.inject(o,new Injector()
     {
       /**
        * @see de.willuhn.annotation.Injector#inject(java.lang.Object, java.lang.reflect.AccessibleObject, java.lang.annotation.Annotation)
@@ -53,49 +67,181 @@ public class InjectHandlerReceive implements InjectHandler
         String s       = StringUtils.trimToNull(r.queue());
         Logger.trace("  applying message receiver for queue " + (s != null ? s : "[default]") + " to " + name + "." + m.getName());
         
-        final MessagingQueue queue = (s != null ? Application.getMessagingFactory().getMessagingQueue(s) : Application.getMessagingFactory());
+        if (m.getParameterTypes().length != 1)
+        {
+          Logger.warn("method " + name + "." + m.getName() + " must have exactly one parameter to receive messages, skipping");
+          return;
+        }
         
-        MessageConsumer consumer = new MessageConsumer()
+        final MessagingQueue queue = (s != null ? Application.getMessagingFactory().getMessagingQueue(s) : Application.getMessagingFactory());
+        queue.registerMessageConsumer(new Receiver(bean,m,bind(m),queue));
+      }
+    },Receive.class);
+  }
+  
+  /**
+   * Bindet die Methode an ein MethodHandle vom Typ {@link #TYPE}.
+   * @param m die Methode.
+   * @return das MethodHandle.
+   * @throws Exception
+   */
+  private static MethodHandle bind(Method m) throws Exception
+  {
+    if (!m.isAccessible())
+      m.setAccessible(true);
+    
+    MethodHandle h = MethodHandles.lookup().unreflect(m);
+    
+    // Bei statischen Methoden ignorieren wir die Bean
+    if (Modifier.isStatic(m.getModifiers()))
+      h = MethodHandles.dropArguments(h,0,Object.class);
+    return h.asType(TYPE);
+  }
+  
+  /**
+   * Startet bei Bedarf den Thread, der die Consumer entfernter Beans abmeldet.
+   */
+  private static synchronized void startCleaner()
+  {
+    if (cleaner != null)
+      return;
+    
+    cleaner = new Thread("Jameica Message Receiver Cleanup")
+    {
+      /**
+       * @see java.lang.Thread#run()
+       */
+      public void run()
+      {
+        while (true)
         {
-          private WeakReference ref = new WeakReference(bean);
-          
-          public void handleMessage(Message message) throws Exception
+          try
           {
-            Object o = ref.get();
-            if (o == null)
-            {
-              // auto-unregister
-              queue.unRegisterMessageConsumer(this);
-              return;
-            }
-            
-            QueryMessage msg = (QueryMessage) message;
-            if (!m.isAccessible())
-              m.setAccessible(true);
-            m.invoke(o,msg.getData());
+            ((BeanReference) references.remove()).unregister();
           }
-          
-          /**
-           * @see de.willuhn.jameica.messaging.MessageConsumer#getExpectedMessageTypes()
-           */
-          public Class[] getExpectedMessageTypes()
+          catch (InterruptedException e)
           {
-            return new Class[]{QueryMessage.class};
+            Logger.debug("message receiver cleanup interrupted");
+            return;
           }
-          
-          /**
-           * @see de.willuhn.jameica.messaging.MessageConsumer#autoRegister()
-           */
-          public boolean autoRegister()
+          catch (Exception e)
           {
-            return false;
+            Logger.error("error while unregistering message receiver",e);
           }
-        };
-        
-        queue.registerMessageConsumer(consumer);
+        }
       }
-    },Receive.class);
+    };
+    cleaner.setDaemon(true);
+    cleaner.start();
   }
-}
+  
+  /**
+   * Schwache Referenz auf die Bean, die sich nach dem Entfernen der Bean
+   * ueber die Reference-Queue meldet und dann den Consumer abmeldet.
+   */
+  private static class BeanReference extends WeakReference<Object>
+  {
+    private MessagingQueue queue = null;
+    private MessageConsumer consumer = null;
+    
+    /**
+     * ct.
+     * @param bean die Bean.
+     * @param queue die Queue.
+     * @param consumer der Consumer.
+     */
+    private BeanReference(Object bean, MessagingQueue queue, MessageConsumer consumer)
+    {
+      super(bean,references);
+      this.queue = queue;
+      this.consumer = consumer;
+    }
+    
+    /**
+     * Meldet den Consumer ab.
+     */
+    private void unregister()
+    {
+      this.queue.unRegisterMessageConsumer(this.consumer);
+    }
+  }
+  
+  /**
+   * Der Consumer, der die Nachrichten an die Methode der Bean weiterreicht.
+   */
+  private static class Receiver implements MessageConsumer
+  {
+    private final BeanReference ref;
+    private final MethodHandle handle;
+    private final String label;
+    
+    /**
+     * ct.
+     * @param bean die Bean.
+     * @param m die Methode.
+     * @param handle das MethodHandle der Methode.
+     * @param queue die Queue, in der der Consumer registriert wird.
+     */
+    private Receiver(Object bean, Method m, MethodHandle handle, MessagingQueue queue)
+    {
+      this.handle = handle;
+      this.label  = bean.getClass().getName() + "." + m.getName();
+      this.ref    = new BeanReference(bean,queue,this);
+      startCleaner();
+    }
+    
+    /**
+     * @see de.willuhn.jameica.messaging.MessageConsumer#handleMessage(de.willuhn.jameica.messaging.Message)
+     */
+    public void handleMessage(Message message) throws Exception
+    {
+      Object o = this.ref.get();
+      if (o == null)
+      {
+        // auto-unregister. Falls der Cleanup-Thread noch nicht dazu kam
+        this.ref.unregister();
+        return;
+      }
+      
+      try
+      {
+        this.handle.invokeExact(o,((QueryMessage) message).getData());
+      }
+      catch (Exception | Error e)
+      {
+        throw e;
+      }
+      catch (Throwable t)
+      {
+        throw new Exception(t);
+      }
+    }
+    
+    /**
+     * @see de.willuhn.jameica.messaging.MessageConsumer#getExpectedMessageTypes()
+     */
+    public Class[] getExpectedMessageTypes()
+    {
+      return new Class[]{QueryMessage.class};
+    }
 
+    /**
+     * @see de.willuhn.jameica.messaging.MessageConsumer#autoRegister()
+     */
+    public boolean autoRegister()
+    {
+      return false;
+    }
+    
+    /**
+     * Liefert Bean und Methode, an die die Nachrichten gehen.
+     * Wird in der Statistik der Queue angezeigt.
+     * @see java.lang.Object#toString()
+     */
+    public String toString()
+    {
+      return this.label;
+    }
+  }
+}
 
@@ -14,21 +14,24 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 
 import javax.annotation.Resource;
 
-import de.willuhn.annotation.Inject;
 import de.willuhn.annotation.Injector;
 import de.willuhn.boot.Bootable;
 import de.willuhn.jameica.plugin.Plugin;
 import de.willuhn.jameica.services.BeanService;
 import de.willuhn.jameica.system.Application;
+import de.willuhn.jameica.system.JameicaException;
 import de.willuhn.logging.Logger;
 
 
 
 /**
  * InjectHandler fuer die "Resource" Annotation.
+ * Ist das Feld vom Typ {@link Provider}, wird die Resource erst beim ersten Zugriff aufgeloest.
  */
 public class InjectHandlerResource implements InjectHandler
 {
@@ -40,7 +43,7 @@ public class InjectHandlerResource implements InjectHandler
     final String name = o.getClass().getSimpleName();
 
     // Resource-Annotations anwenden
-    Inject.inject(o,new Injector()
+    InjectionPlan.inject(o,new Injector()
     {
       /**
        * @see de.willuhn.annotation.Injector#inject(java.lang.Object, java.lang.reflect.AccessibleObject, java.lang.annotation.Annotation)
@@ -60,20 +63,31 @@ public class InjectHandlerResource implements InjectHandler
         // Auto-Discovery
         
         // Type discovery
-        if (c == null)
+        Class target = null;
+        Type generic = null;
+        if (field instanceof Field)
         {
-          if (field instanceof Field)
-          {
-            c = ((Field)field).getType();
-          }
-          else if (field instanceof Method)
+          target  = ((Field)field).getType();
+          generic = ((Field)field).getGenericType();
+        }
+        else if (field instanceof Method)
+        {
+          Class[] params = ((Method)field).getParameterTypes();
+          if (params != null && params.length == 1) // lassen wir nur zu, wenn es nur einen Parameter gibt
           {
-            Class[] params = ((Method)field).getParameterTypes();
-            if (params != null && params.length == 1) // lassen wir nur zu, wenn es nur einen Parameter gibt
-              c = params[0];
+            target  = params[0];
+            generic = ((Method)field).getGenericParameterTypes()[0];
           }
         }
         
+        // Bei einem Provider wird die Resource erst beim ersten Zugriff aufgeloest.
+        // Der Typ ergibt sich dann aus dessen Typ-Parameter.
+        boolean lazy = target == Provider.class;
+        if (lazy && c == null)
+          c = getTypeArgument(generic);
+        else if (c == null)
+          c = target;
+        
         // Name discovery
         // Machen wir derzeit noch nicht, weil wir sonst immer beides haetten,
         // Name rname UND c. Jameica wuerde dann immer nach einem Service suchen,
@@ -92,34 +106,14 @@ public class InjectHandlerResource implements InjectHandler
         //
         //////////////////////////////////////////////////////////////////////
         
-        // Anhand des Namens suchen.
-        if (rname != null && rname.length() > 0)
+        if (lazy)
         {
-          Logger.trace("  inject service " + rname + " into " + name);
-          
-          // Plugin ermitteln und Service von dort laden
-          // Wenn der Typ der Resource angegeben ist, suchen wir nach dessen Plugin, sonst nach dem Plugin der Bean
-          Plugin plugin = Application.getPluginLoader().findByClass(c != null ? c : bean.getClass());
-          if (plugin != null)
-            dep = Application.getServiceFactory().lookup(plugin.getClass(),rname);
-          else
-            Logger.trace("  no plugin found for service " + rname);
+          Logger.trace("  inject lazy resource [name: " + rname + ", type: " + c + "] into " + name);
+          dep = new LazyProvider(bean,rname,c);
         }
-
-        // Anhand des Typs suchen - aber nur, wenn wir die Abhaengigkeit nicht schon haben
-        if (dep == null && c != null)
+        else
         {
-          if (isBootable(c))
-          {
-            Logger.trace("  inject bootable " + c.getSimpleName() + " into " + name);
-            dep = Application.getBootLoader().getBootable(c); // direkt als Bootable laden
-          }
-          else
-          {
-            Logger.trace("  inject bean " + c.getSimpleName() + " into " + name);
-            BeanService service = Application.getBootLoader().getBootable(BeanService.class);
-            dep = service.get(c); // aufloesen per Beanservice
-          }
+          dep = resolve(bean,rname,c);
         }
         
         if (dep == null) // nichts gefunden
@@ -128,8 +122,6 @@ public class InjectHandlerResource implements InjectHandler
           return;
         }
         
-        field.setAccessible(true);
-        
         if (field instanceof Method)
         {
           ((Method)field).invoke(bean,dep);
@@ -142,6 +134,69 @@ public class InjectHandlerResource implements InjectHandler
     },Resource.class);
   }
   
+  /**
+   * Loest die Resource auf.
+   * @param bean die Bean, in die die Resource injiziert werden soll.
+   * @param rname optionaler Name des Services.
+   * @param c optionaler Typ der Resource.
+   * @return die Resource oder NULL, wenn sie nicht gefunden wurde.
+   * @throws Exception
+   */
+  private static Object resolve(Object bean, String rname, Class c) throws Exception
+  {
+    final String name = bean.getClass().getSimpleName();
+    Object dep = null;
+    
+    // Anhand des Namens suchen.
+    if (rname != null && rname.length() > 0)
+    {
+      Logger.trace("  inject service " + rname + " into " + name);
+      
+      // Plugin ermitteln und Service von dort laden
+      // Wenn der Typ der Resource angegeben ist, suchen wir nach dessen Plugin, sonst nach dem Plugin der Bean
+      Plugin plugin = Application.getPluginLoader().findByClass(c != null ? c : bean.getClass());
+      if (plugin != null)
+        dep = Application.getServiceFactory().lookup(plugin.getClass(),rname);
+      else
+        Logger.trace("  no plugin found for service " + rname);
+    }
+
+    // Anhand des Typs suchen - aber nur, wenn wir die Abhaengigkeit nicht schon haben
+    if (dep == null && c != null)
+    {
+      if (isBootable(c))
+      {
+        Logger.trace("  inject bootable " + c.getSimpleName() + " into " + name);
+        dep = Application.getBootLoader().getBootable(c); // direkt als Bootable laden
+      }
+      else
+      {
+        Logger.trace("  inject bean " + c.getSimpleName() + " into " + name);
+        BeanService service = Application.getBootLoader().getBootable(BeanService.class);
+        dep = service.get(c); // aufloesen per Beanservice
+      }
+    }
+    return dep;
+  }
+  
+  /**
+   * Liefert den Typ-Parameter eines Providers.
+   * @param type der generische Typ des Feldes bzw. Parameters.
+   * @return der Typ-Parameter oder NULL, wenn er nicht ermittelbar ist.
+   */
+  private static Class getTypeArgument(Type type)
+  {
+    if (!(type instanceof ParameterizedType))
+      return null;
+    
+    Type arg = ((ParameterizedType) type).getActualTypeArguments()[0];
+    if (arg instanceof Class)
+      return (Class) arg;
+    if (arg instanceof ParameterizedType) // z.Bsp. Provider<BeanContainer<Bookmark>>
+      return (Class) ((ParameterizedType) arg).getRawType();
+    return null;
+  }
+  
   /**
    * Prueft, ob die Klasse ein Bootable ist.
    * Die Funktion sucht nur direkt in der Klasse. Nicht in den Elternklassen.
@@ -162,6 +217,71 @@ public class InjectHandlerResource implements InjectHandler
     
     return false;
   }
+  
+  /**
+   * Provider, der die Resource erst beim ersten Zugriff aufloest.
+   */
+  private static class LazyProvider implements Provider
+  {
+    private final Object bean;
+    private final String rname;
+    private final Class type;
+    private volatile Object value = null;
+
+    /**
+     * ct.
+     * @param bean die Bean, in die die Resource injiziert wird.
+     * @param rname optionaler Name des Services.
+     * @param type optionaler Typ der Resource.
+     */
+    private LazyProvider(Object bean, String rname, Class type)
+    {
+      this.bean  = bean;
+      this.rname = rname;
+      this.type  = type;
+    }
+
+    /**
+     * @see de.willuhn.jameica.services.inject.Provider#get()
+     */
+    public Object get()
+    {
+      Object result = this.value;
+      if (result != null)
+        return result;
+      
+      synchronized (this)
+      {
+        if (this.value == null)
+        {
+          try
+          {
+            this.value = resolve(this.bean,this.rname,this.type);
+            if (this.value == null)
+              Logger.trace("  lazy resource [name: " + this.rname + ", type: " + this.type + "] not found");
+          }
+          catch (RuntimeException re)
+          {
+            throw re;
+          }
+          catch (Exception e)
+          {
+            throw new JameicaException(Application.getI18n().tr("{0} kann nicht erstellt werden: {1}",(this.type != null ? this.type.getSimpleName() : this.rname),e.getMessage()));
+          }
+        }
+        return this.value;
+      }
+    }
+    
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString()
+    {
+      return "Provider[name: " + this.rname + ", type: " + this.type + "]";
+    }
+  }
 }
 
 
+
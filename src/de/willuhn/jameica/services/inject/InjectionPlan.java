@@ -0,0 +1,179 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.services.inject;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.willuhn.annotation.Injector;
+import de.willuhn.jameica.util.ClassLoaderOwner;
+import de.willuhn.logging.Logger;
+
+/**
+ * Cache mit den annotierten Feldern und Methoden einer Klasse.
+ * Verhaelt sich wie {@link de.willuhn.annotation.Inject#inject(Object, Injector, Class...)},
+ * durchsucht die Klassen-Hierarchie jedoch nur beim ersten Aufruf pro Klasse und Annotation.
+ * Alle weiteren Injections sind dann nur noch eine Schleife ueber die bereits
+ * ermittelten (und zugreifbar gemachten) Member.
+ */
+public final class InjectionPlan
+{
+  // Maximale Tiefe der Klassen-Hierarchie. Wie in Inject.
+  private final static int MAX_DEPTH = 100;
+
+  private final static Map<Class,InjectionPlan> plans = new ConcurrentHashMap<Class,InjectionPlan>();
+
+  private final Class type;
+  private final Map<Class<? extends Annotation>,Target[]> targets = new ConcurrentHashMap<Class<? extends Annotation>,Target[]>();
+
+  /**
+   * ct.
+   * @param type die Klasse.
+   */
+  private InjectionPlan(Class type)
+  {
+    this.type = type;
+  }
+
+  /**
+   * Wendet den Injector auf alle Felder und Methoden der Bean an, die die angegebene Annotation besitzen.
+   * @param bean die Bean.
+   * @param injector der Injector.
+   * @param annotation die gesuchte Annotation.
+   * @throws Exception
+   */
+  public static void inject(Object bean, Injector injector, Class<? extends Annotation> annotation) throws Exception
+  {
+    for (Target t:get(bean.getClass()).getTargets(annotation))
+    {
+      injector.inject(bean,t.member,t.annotation);
+    }
+  }
+
+  /**
+   * Verwirft die Plaene aller Klassen, die vom angegebenen Classloader geladen wurden.
+   * Muss aufgerufen werden, wenn der Classloader eines Plugins entladen wird, damit
+   * dessen Klassen nicht weiter referenziert werden.
+   * @param loader der Classloader.
+   */
+  public static void invalidate(ClassLoader loader)
+  {
+    if (loader == null)
+      return;
+
+    ClassLoaderOwner owner = new ClassLoaderOwner(loader);
+    int count = 0;
+    Iterator<Class> it = plans.keySet().iterator();
+    while (it.hasNext())
+    {
+      if (owner.owns(it.next()))
+      {
+        it.remove();
+        count++;
+      }
+    }
+    if (count > 0)
+      Logger.debug("removed " + count + " injection plans");
+  }
+
+  /**
+   * Liefert den Plan fuer die Klasse.
+   * @param type die Klasse.
+   * @return der Plan.
+   */
+  private static InjectionPlan get(Class type)
+  {
+    InjectionPlan plan = plans.get(type);
+    if (plan != null)
+      return plan;
+
+    // Falls zwei Threads gleichzeitig die selbe Klasse aufloesen, gewinnt der erste.
+    plan = new InjectionPlan(type);
+    InjectionPlan prev = plans.putIfAbsent(type,plan);
+    return prev != null ? prev : plan;
+  }
+
+  /**
+   * Liefert die Member mit der angegebenen Annotation.
+   * @param annotation die Annotation.
+   * @return Liste der Member in der Reihenfolge, in der sie injiziert werden.
+   */
+  private Target[] getTargets(Class<? extends Annotation> annotation)
+  {
+    Target[] result = this.targets.get(annotation);
+    if (result != null)
+      return result;
+
+    result = this.scan(annotation);
+    this.targets.put(annotation,result);
+    return result;
+  }
+
+  /**
+   * Durchsucht die Klassen-Hierarchie nach der Annotation.
+   * Reihenfolge wie in Inject: Pro Klasse erst die Felder, dann die Methoden.
+   * Danach die Elternklasse.
+   * @param annotation die Annotation.
+   * @return Liste der Member.
+   */
+  private Target[] scan(Class<? extends Annotation> annotation)
+  {
+    List<Target> list = new ArrayList<Target>();
+    Class current = this.type;
+    for (int i=0;i<MAX_DEPTH && current != null;++i)
+    {
+      for (Field f:current.getDeclaredFields())
+      {
+        Annotation a = f.getAnnotation(annotation);
+        if (a != null)
+          list.add(new Target(f,a));
+      }
+      for (Method m:current.getDeclaredMethods())
+      {
+        Annotation a = m.getAnnotation(annotation);
+        if (a != null)
+          list.add(new Target(m,a));
+      }
+      current = current.getSuperclass();
+    }
+    return list.toArray(new Target[list.size()]);
+  }
+
+  /**
+   * Ein annotiertes Feld bzw. eine annotierte Methode.
+   */
+  private static class Target
+  {
+    private final AccessibleObject member;
+    private final Annotation annotation;
+
+    /**
+     * ct.
+     * @param member das Feld oder die Methode.
+     * @param annotation die Annotation.
+     */
+    private Target(AccessibleObject member, Annotation annotation)
+    {
+      this.member     = member;
+      this.annotation = annotation;
+
+      // Einmalig hier statt bei jeder Injection
+      this.member.setAccessible(true);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.services.inject;
+
+/**
+ * Ermoeglicht das verzoegerte Injizieren einer Resource.
+ * Ist ein mit {@link javax.annotation.Resource} annotiertes Feld (bzw. der Parameter
+ * einer annotierten Methode) von diesem Typ, wird die Abhaengigkeit nicht beim
+ * Erzeugen der Bean sondern erst beim ersten Aufruf von {@link #get()} aufgeloest.
+ * Beispiel:
+ * <pre>
+ *   &#64;Resource private Provider&lt;BeanStore&gt; store;
+ *   ...
+ *   this.store.get().load(...);
+ * </pre>
+ * @param <T> der Typ der Resource.
+ */
+public interface Provider<T>
+{
+  /**
+   * Liefert die Resource. Sie wird beim ersten Aufruf ermittelt, alle weiteren
+   * Aufrufe liefern die selbe Instanz. Die Funktion ist thread-safe.
+   * @return die Resource oder NULL, wenn sie nicht gefunden wurde.
+   */
+  public T get();
+}
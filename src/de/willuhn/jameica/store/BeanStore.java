@@ -19,8 +19,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 
 import de.willuhn.annotation.Lifecycle;
@@ -29,6 +27,7 @@ import de.willuhn.io.IOUtil;
 import de.willuhn.jameica.security.crypto.AESEngine;
 import de.willuhn.jameica.security.crypto.Engine;
 import de.willuhn.jameica.services.BeanService;
+import de.willuhn.jameica.store.codec.JAXBCodec;
 import de.willuhn.jameica.system.Application;
 import de.willuhn.logging.Logger;
 import de.willuhn.util.ApplicationException;
@@ -67,14 +66,13 @@ public class BeanStore
     try
     {
       // Ja, dann laden
-      JAXBContext ctx = JAXBContext.newInstance(BeanContainer.class,type);
-      Unmarshaller u = ctx.createUnmarshaller();
+      JAXBCodec codec = new JAXBCodec(BeanContainer.class,type);
 
       ////////////////
       // Fuer den Fall, dass die Beans Ressourcen enthalten, die injeziert werden koennen,
       // durchlaufen sie den Injector.
       final BeanService beanService = Application.getBootLoader().getBootable(BeanService.class);
-      u.setListener(new Unmarshaller.Listener()
+      codec.setListener(new Unmarshaller.Listener()
       {
         /**
          * @see javax.xml.bind.Unmarshaller.Listener#afterUnmarshal(java.lang.Object, java.lang.Object)
@@ -96,7 +94,7 @@ public class BeanStore
         is2 = this.engine.decrypt(is);
       }
       
-      BeanContainer<T> container = (BeanContainer<T>) u.unmarshal(is2);
+      BeanContainer<T> container = (BeanContainer<T>) codec.decode(is2);
       Logger.info("loaded " + container);
       return container;
     }
@@ -126,16 +124,13 @@ public class BeanStore
 
       // Ja, dann laden
       Logger.info("storing " + container + " to " + file);
-      JAXBContext ctx = JAXBContext.newInstance(BeanContainer.class,container.type);
-      Marshaller m = ctx.createMarshaller();
-      m.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
-      m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
+      JAXBCodec codec = new JAXBCodec(BeanContainer.class,container.type);
       
       OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp));
       if (container.encrypted)
         os = this.engine.encrypt(os);
       
-      m.marshal(container,os);
+      codec.encode(container,os);
       
       // Wir koennen das Flushen und Schliessen nicht im finally() machen,
       // weil wir _nach_ dem Schliessen noch die Datei umbenennen wollen.
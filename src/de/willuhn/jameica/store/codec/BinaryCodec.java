@@ -0,0 +1,790 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.store.codec;
+
+import java.beans.BeanInfo;
+import java.beans.ExceptionListener;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.willuhn.logging.Logger;
+
+/**
+ * Codec, der die Objekte in einem kompakten Binaer-Format speichert.
+ *
+ * <p>Format: Kennung und Versionsnummer, gefolgt vom Objekt. Jeder Wert beginnt
+ * mit einem Typ-Kennzeichen. Strings und Byte-Arrays besitzen eine vorangestellte
+ * Laenge. Die einfachen Typen, Maps und Arrays werden direkt geschrieben.
+ *
+ * <p>Java-Beans (oeffentliche Klasse mit oeffentlichem Default-Konstruktor ausserhalb
+ * von java.* und javax.*) werden als Klassenname gefolgt von den Properties
+ * geschrieben. Jede Property besteht aus ihrem Namen und dem Wert. Gespeichert
+ * werden dieselben Properties wie beim {@link XMLEncoder}: die mit Getter und Setter.
+ * Jede Bean enthaelt ihre Namen selbst, damit sich ein einzelner Wert ohne den
+ * Rest des Streams wieder schreiben laesst (siehe unten). Zyklische Referenzen
+ * zwischen Beans werden nicht unterstuetzt.
+ *
+ * <p>Enums werden als Klassenname und Name der Konstante gespeichert. Alle anderen
+ * Objekte werden einzeln im XML-Format per {@link XMLEncoder} geschrieben.
+ *
+ * <p>Laesst sich ein einzelner Wert in einer Map nicht lesen, enthaelt die Map
+ * stattdessen ein {@link Unreadable} mit den unveraenderten Bytes des Wertes. Beim
+ * naechsten Speichern werden diese Bytes wieder geschrieben, sodass der Wert nicht
+ * verloren geht, nur weil er z.Bsp. gerade nicht geladen werden konnte.
+ *
+ * <p>Beginnen die Daten beim Lesen nicht mit der Kennung, werden sie als XML
+ * gelesen. Damit koennen auch noch Daten im bisherigen Format gelesen werden.
+ */
+public class BinaryCodec implements Codec
+{
+  /**
+   * Kennung des Formats.
+   */
+  private final static byte[] MAGIC = new byte[]{'J','B','I','N'};
+
+  /**
+   * Versionsnummer des Formats.
+   * Version 2 hat Beans und Enums hinzugefuegt und liest auch Version 1.
+   */
+  private final static int VERSION = 2;
+
+  private final static byte TYPE_NULL       = 0;
+  private final static byte TYPE_STRING     = 1;
+  private final static byte TYPE_INTEGER    = 2;
+  private final static byte TYPE_LONG       = 3;
+  private final static byte TYPE_BOOLEAN    = 4;
+  private final static byte TYPE_DOUBLE     = 5;
+  private final static byte TYPE_DATE       = 6;
+  private final static byte TYPE_BYTES      = 7;
+  private final static byte TYPE_ARRAY      = 8;
+  private final static byte TYPE_HASHTABLE  = 9;
+  private final static byte TYPE_HASHMAP    = 10;
+  private final static byte TYPE_XML        = 11;
+  private final static byte TYPE_BEAN       = 12;
+  private final static byte TYPE_ENUM       = 13;
+
+  private XMLCodec xml = new XMLCodec();
+
+  /**
+   * @see de.willuhn.jameica.store.codec.Codec#encode(java.lang.Object, java.io.OutputStream)
+   */
+  public void encode(Object o, OutputStream os) throws Exception
+  {
+    DataOutputStream out = new DataOutputStream(os);
+    out.write(MAGIC);
+    out.writeByte(VERSION);
+    this.write(out,o,new Context());
+    out.flush();
+  }
+
+  /**
+   * @see de.willuhn.jameica.store.codec.Codec#decode(java.io.InputStream)
+   */
+  public Object decode(InputStream is) throws Exception
+  {
+    if (!is.markSupported())
+      is = new BufferedInputStream(is);
+
+    // Checken, ob die Daten im Binaer-Format vorliegen
+    is.mark(MAGIC.length);
+    byte[] magic = new byte[MAGIC.length];
+    DataInputStream in = new DataInputStream(is);
+    int read = 0;
+    while (read < magic.length)
+    {
+      int n = in.read(magic,read,magic.length - read);
+      if (n == -1)
+        break;
+      read += n;
+    }
+    if (read < magic.length || !Arrays.equals(magic,MAGIC))
+    {
+      is.reset();
+      return this.xml.decode(is);
+    }
+
+    int version = in.readUnsignedByte();
+    if (version < 1 || version > VERSION)
+      throw new IOException("unsupported binary format version " + version);
+
+    // Wir lesen die Daten komplett ein, damit wir uns die Bytes
+    // nicht lesbarer Werte merken koennen.
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    byte[] buf = new byte[8192];
+    while ((read = in.read(buf)) != -1)
+    {
+      bos.write(buf,0,read);
+    }
+    Context ctx = new Context();
+    ctx.input = new Input(bos.toByteArray());
+    try
+    {
+      return this.read(new DataInputStream(ctx.input),ctx);
+    }
+    catch (ValueException e)
+    {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Schreibt einen Wert samt Typ-Kennzeichen.
+   * @param out der Stream.
+   * @param o der Wert.
+   * @param ctx der Kontext des Streams.
+   * @throws Exception
+   */
+  private void write(DataOutputStream out, Object o, Context ctx) throws Exception
+  {
+    if (o == null)
+    {
+      out.writeByte(TYPE_NULL);
+      return;
+    }
+
+    // Wir pruefen hier bewusst die exakte Klasse. Abgeleitete Klassen
+    // (z.Bsp. java.sql.Timestamp) wuerden sonst als Basis-Klasse zurueckkommen.
+    Class c = o.getClass();
+    if (c == String.class)
+    {
+      out.writeByte(TYPE_STRING);
+      writeString(out,(String) o);
+    }
+    else if (c == Integer.class)
+    {
+      out.writeByte(TYPE_INTEGER);
+      out.writeInt((Integer) o);
+    }
+    else if (c == Long.class)
+    {
+      out.writeByte(TYPE_LONG);
+      out.writeLong((Long) o);
+    }
+    else if (c == Boolean.class)
+    {
+      out.writeByte(TYPE_BOOLEAN);
+      out.writeBoolean((Boolean) o);
+    }
+    else if (c == Double.class)
+    {
+      out.writeByte(TYPE_DOUBLE);
+      out.writeDouble((Double) o);
+    }
+    else if (c == Date.class)
+    {
+      out.writeByte(TYPE_DATE);
+      out.writeLong(((Date) o).getTime());
+    }
+    else if (c == byte[].class)
+    {
+      out.writeByte(TYPE_BYTES);
+      writeBytes(out,(byte[]) o);
+    }
+    else if (c == Object[].class)
+    {
+      Object[] list = (Object[]) o;
+      out.writeByte(TYPE_ARRAY);
+      out.writeInt(list.length);
+      for (Object value:list)
+      {
+        this.write(out,value,ctx);
+      }
+    }
+    else if (c == Hashtable.class || c == HashMap.class)
+    {
+      Map<?,?> map = (Map<?,?>) o;
+      out.writeByte(c == Hashtable.class ? TYPE_HASHTABLE : TYPE_HASHMAP);
+      out.writeInt(map.size());
+      for (Map.Entry<?,?> e:map.entrySet())
+      {
+        this.write(out,e.getKey(),ctx);
+        this.write(out,e.getValue(),ctx);
+      }
+    }
+    else if (c == Unreadable.class)
+    {
+      // Die Bytes enthalten bereits das Typ-Kennzeichen
+      out.write(((Unreadable) o).data);
+    }
+    else if (o instanceof Enum)
+    {
+      out.writeByte(TYPE_ENUM);
+      writeString(out,((Enum) o).getDeclaringClass().getName());
+      writeString(out,((Enum) o).name());
+    }
+    else if (ctx.getType(c) != null)
+    {
+      this.writeBean(out,o,ctx.getType(c),ctx);
+    }
+    else
+    {
+      out.writeByte(TYPE_XML);
+      writeBytes(out,encodeXml(o));
+    }
+  }
+
+  /**
+   * Schreibt eine Bean mit ihren Properties.
+   * @param out der Stream.
+   * @param o die Bean.
+   * @param type die Properties der Bean.
+   * @param ctx der Kontext des Streams.
+   * @throws Exception
+   */
+  private void writeBean(DataOutputStream out, Object o, BeanType type, Context ctx) throws Exception
+  {
+    if (ctx.active.put(o,o) != null)
+      throw new IOException("cyclic reference in " + type.clazz.getName());
+
+    // Erst die Werte holen, damit wir die Anzahl kennen
+    Map<String,Object> values = new LinkedHashMap<String,Object>();
+    for (PropertyDescriptor p:type.properties.values())
+    {
+      Object value = p.getReadMethod().invoke(o);
+
+      // NULL muessen wir nur speichern, wenn die Bean per Default einen Wert hat
+      if (value == null && type.getDefault(p) == null)
+        continue;
+      values.put(p.getName(),value);
+    }
+
+    out.writeByte(TYPE_BEAN);
+    writeString(out,type.clazz.getName());
+    out.writeInt(values.size());
+    for (Map.Entry<String,Object> e:values.entrySet())
+    {
+      writeString(out,e.getKey());
+      this.write(out,e.getValue(),ctx);
+    }
+    ctx.active.remove(o);
+  }
+
+  /**
+   * Liest einen Wert samt Typ-Kennzeichen.
+   * @param in der Stream.
+   * @param ctx der Kontext des Streams.
+   * @return der Wert.
+   * @throws ValueException wenn sich ein eingebettetes Objekt nicht lesen laesst.
+   * Der Wert wurde dann dennoch komplett aus dem Stream gelesen.
+   * @throws Exception wenn die Daten selbst fehlerhaft sind.
+   */
+  private Object read(DataInputStream in, Context ctx) throws ValueException, Exception
+  {
+    byte type = in.readByte();
+    switch (type)
+    {
+      case TYPE_NULL:
+        return null;
+
+      case TYPE_STRING:
+        return readString(in);
+
+      case TYPE_INTEGER:
+        return in.readInt();
+
+      case TYPE_LONG:
+        return in.readLong();
+
+      case TYPE_BOOLEAN:
+        return in.readBoolean();
+
+      case TYPE_DOUBLE:
+        return in.readDouble();
+
+      case TYPE_DATE:
+        return new Date(in.readLong());
+
+      case TYPE_BYTES:
+        return readBytes(in);
+
+      case TYPE_ARRAY:
+        // Auch bei einem fehlerhaften Element lesen wir das Array komplett,
+        // damit der Stream hinterher an der richtigen Stelle steht.
+        Object[] list = new Object[readSize(in)];
+        ValueException error = null;
+        for (int i=0;i<list.length;++i)
+        {
+          try
+          {
+            list[i] = this.read(in,ctx);
+          }
+          catch (ValueException e)
+          {
+            if (error == null)
+              error = e;
+          }
+        }
+        if (error != null)
+          throw error;
+        return list;
+
+      case TYPE_HASHTABLE:
+      case TYPE_HASHMAP:
+        int size = readSize(in);
+        Map<Object,Object> map = type == TYPE_HASHTABLE ? new Hashtable<Object,Object>() : new HashMap<Object,Object>();
+        for (int i=0;i<size;++i)
+        {
+          Object key   = this.read(in,ctx);
+          Object value = null;
+          int start    = ctx.input.position();
+          try
+          {
+            value = this.read(in,ctx);
+          }
+          catch (ValueException e)
+          {
+            Logger.error("unable to decode value of " + key + ", keeping it unchanged",e.getCause());
+            value = new Unreadable(ctx.input.copy(start));
+          }
+          map.put(key,value);
+        }
+        return map;
+
+      case TYPE_XML:
+        byte[] data = readBytes(in);
+        try
+        {
+          return decodeXml(data);
+        }
+        catch (Exception e)
+        {
+          throw new ValueException(e);
+        }
+
+      case TYPE_ENUM:
+        String enumName = readString(in);
+        String constant = readString(in);
+        try
+        {
+          return Enum.valueOf(ctx.load(enumName),constant);
+        }
+        catch (Exception e)
+        {
+          throw new ValueException(e);
+        }
+
+      case TYPE_BEAN:
+        return this.readBean(in,ctx);
+
+      default:
+        throw new IOException("unknown type " + type);
+    }
+  }
+
+  /**
+   * Liest eine Bean mit ihren Properties.
+   * @param in der Stream.
+   * @param ctx der Kontext des Streams.
+   * @return die Bean.
+   * @throws ValueException wenn sich die Bean oder eine ihrer Properties nicht lesen laesst.
+   * Die Bean wurde dann dennoch komplett aus dem Stream gelesen.
+   * @throws Exception wenn die Daten selbst fehlerhaft sind.
+   */
+  private Object readBean(DataInputStream in, Context ctx) throws ValueException, Exception
+  {
+    String name = readString(in);
+    int size = readSize(in);
+    Map<String,Object> values = new LinkedHashMap<String,Object>();
+    ValueException error = null;
+    for (int i=0;i<size;++i)
+    {
+      String property = readString(in);
+      try
+      {
+        values.put(property,this.read(in,ctx));
+      }
+      catch (ValueException e)
+      {
+        if (error == null)
+          error = e;
+      }
+    }
+    if (error != null)
+      throw error;
+
+    try
+    {
+      BeanType type = ctx.getType(ctx.load(name));
+      if (type == null)
+        throw new IOException("no bean: " + name);
+
+      Object o = type.clazz.newInstance();
+      for (Map.Entry<String,Object> e:values.entrySet())
+      {
+        PropertyDescriptor p = type.properties.get(e.getKey());
+        if (p == null)
+          throw new IOException("unknown property " + e.getKey() + " in " + name);
+        p.getWriteMethod().invoke(o,e.getValue());
+      }
+      return o;
+    }
+    catch (InvocationTargetException e)
+    {
+      Throwable t = e.getTargetException();
+      throw new ValueException(t instanceof Exception ? (Exception) t : e);
+    }
+    catch (Exception e)
+    {
+      throw new ValueException(e);
+    }
+  }
+
+  /**
+   * Speichert das Objekt im XML-Format.
+   * @param o das Objekt.
+   * @return die XML-Daten.
+   * @throws Exception wenn sich das Objekt nicht vollstaendig speichern laesst.
+   */
+  private static byte[] encodeXml(Object o) throws Exception
+  {
+    Listener listener = new Listener();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    XMLEncoder encoder = new XMLEncoder(bos);
+    encoder.setExceptionListener(listener);
+    encoder.writeObject(o);
+    encoder.close();
+    listener.check();
+    return bos.toByteArray();
+  }
+
+  /**
+   * Liest ein im XML-Format gespeichertes Objekt.
+   * @param data die XML-Daten.
+   * @return das Objekt.
+   * @throws Exception wenn sich das Objekt nicht vollstaendig lesen laesst.
+   */
+  private static Object decodeXml(byte[] data) throws Exception
+  {
+    Listener listener = new Listener();
+    XMLDecoder decoder = new XMLDecoder(new ByteArrayInputStream(data),null,listener);
+    try
+    {
+      Object o = decoder.readObject();
+      listener.check();
+      return o;
+    }
+    finally
+    {
+      decoder.close();
+    }
+  }
+
+  /**
+   * Schreibt einen String mit vorangestellter Laenge.
+   * @param out der Stream.
+   * @param s der String.
+   * @throws IOException
+   */
+  private static void writeString(DataOutputStream out, String s) throws IOException
+  {
+    writeBytes(out,s.getBytes("UTF-8"));
+  }
+
+  /**
+   * Liest einen String mit vorangestellter Laenge.
+   * @param in der Stream.
+   * @return der String.
+   * @throws IOException
+   */
+  private static String readString(DataInputStream in) throws IOException
+  {
+    return new String(readBytes(in),"UTF-8");
+  }
+
+  /**
+   * Schreibt ein Byte-Array mit vorangestellter Laenge.
+   * @param out der Stream.
+   * @param data die Daten.
+   * @throws IOException
+   */
+  private static void writeBytes(DataOutputStream out, byte[] data) throws IOException
+  {
+    out.writeInt(data.length);
+    out.write(data);
+  }
+
+  /**
+   * Liest ein Byte-Array mit vorangestellter Laenge.
+   * @param in der Stream.
+   * @return die Daten.
+   * @throws IOException
+   */
+  private static byte[] readBytes(DataInputStream in) throws IOException
+  {
+    byte[] data = new byte[readSize(in)];
+    in.readFully(data);
+    return data;
+  }
+
+  /**
+   * Liest eine Laenge bzw. Anzahl.
+   * @param in der Stream.
+   * @return die Laenge.
+   * @throws IOException
+   */
+  private static int readSize(DataInputStream in) throws IOException
+  {
+    int size = in.readInt();
+    if (size < 0)
+      throw new IOException("invalid size " + size);
+    return size;
+  }
+
+  /**
+   * Ein Wert, der sich beim Lesen nicht wiederherstellen liess.
+   * Enthaelt die unveraenderten Bytes des Wertes samt Typ-Kennzeichen,
+   * die beim Speichern wieder geschrieben werden.
+   */
+  public final static class Unreadable
+  {
+    private final byte[] data;
+
+    /**
+     * ct.
+     * @param data die Bytes des Wertes.
+     */
+    private Unreadable(byte[] data)
+    {
+      this.data = data;
+    }
+  }
+
+  /**
+   * Die Properties einer Bean-Klasse.
+   */
+  private static class BeanType
+  {
+    private Class clazz = null;
+    private Map<String,PropertyDescriptor> properties = new TreeMap<String,PropertyDescriptor>();
+    private Object prototype = null;
+
+    /**
+     * ct.
+     * @param clazz die Klasse.
+     * @param info die Bean-Infos der Klasse.
+     */
+    private BeanType(Class clazz, BeanInfo info)
+    {
+      this.clazz = clazz;
+      for (PropertyDescriptor p:info.getPropertyDescriptors())
+      {
+        // Wie beim XMLEncoder: nur Properties mit Getter und Setter, die nicht transient sind
+        if (p.getReadMethod() == null || p.getWriteMethod() == null || Boolean.TRUE.equals(p.getValue("transient")))
+          continue;
+        this.properties.put(p.getName(),p);
+      }
+    }
+
+    /**
+     * Liefert den Default-Wert der Property in einer neuen Instanz.
+     * @param p die Property.
+     * @return der Default-Wert.
+     * @throws Exception
+     */
+    private Object getDefault(PropertyDescriptor p) throws Exception
+    {
+      if (this.prototype == null)
+        this.prototype = this.clazz.newInstance();
+      return p.getReadMethod().invoke(this.prototype);
+    }
+  }
+
+  /**
+   * Die Daten, die fuer die Dauer eines Lese- bzw. Schreibvorgangs gemerkt werden.
+   * Wir cachen die Klassen bewusst nicht laenger, damit Plugin-Classloader
+   * nicht festgehalten werden.
+   */
+  private static class Context
+  {
+    private Input input = null;
+    private Map<Class,BeanType> types = new HashMap<Class,BeanType>();
+    private Map<String,Class> classes = new HashMap<String,Class>();
+    private Map<Object,Object> active = new IdentityHashMap<Object,Object>();
+
+    /**
+     * Liefert die Properties der Klasse, wenn sie als Bean gespeichert werden kann.
+     * @param c die Klasse.
+     * @return die Properties oder {@code null}, wenn es keine Bean ist.
+     * @throws Exception
+     */
+    private BeanType getType(Class c) throws Exception
+    {
+      if (this.types.containsKey(c))
+        return this.types.get(c);
+
+      BeanType type = null;
+      if (isBean(c))
+      {
+        BeanInfo info = Introspector.getBeanInfo(c);
+
+        // Klassen mit eigenem Persistence-Delegate ueberlassen wir dem XMLEncoder
+        if (info.getBeanDescriptor().getValue("persistenceDelegate") == null)
+          type = new BeanType(c,info);
+      }
+      this.types.put(c,type);
+      return type;
+    }
+
+    /**
+     * Laedt die Klasse. Wie beim {@link XMLDecoder} ueber den Context-Classloader.
+     * @param name Name der Klasse.
+     * @return die Klasse.
+     * @throws ClassNotFoundException
+     */
+    private Class load(String name) throws ClassNotFoundException
+    {
+      Class c = this.classes.get(name);
+      if (c != null)
+        return c;
+
+      ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      if (loader == null)
+        loader = BinaryCodec.class.getClassLoader();
+      c = Class.forName(name,false,loader);
+      this.classes.put(name,c);
+      return c;
+    }
+
+    /**
+     * Prueft, ob die Klasse als Bean gespeichert werden kann.
+     * Klassen aus java.* und javax.* sowie Collections und Maps ueberlassen
+     * wir dem XMLEncoder, da er fuer viele davon eigene Regeln hat.
+     * @param c die Klasse.
+     * @return true, wenn die Klasse als Bean gespeichert werden kann.
+     */
+    private static boolean isBean(Class c)
+    {
+      if (c.isArray() || c.isInterface() || !Modifier.isPublic(c.getModifiers()) || Modifier.isAbstract(c.getModifiers()))
+        return false;
+      if (c.getName().startsWith("java.") || c.getName().startsWith("javax."))
+        return false;
+      if (Collection.class.isAssignableFrom(c) || Map.class.isAssignableFrom(c))
+        return false;
+      try
+      {
+        return Modifier.isPublic(c.getConstructor().getModifiers());
+      }
+      catch (NoSuchMethodException e)
+      {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Stream ueber die gelesenen Daten, der die aktuelle Position liefert.
+   */
+  private static class Input extends ByteArrayInputStream
+  {
+    /**
+     * ct.
+     * @param data die Daten.
+     */
+    private Input(byte[] data)
+    {
+      super(data);
+    }
+
+    /**
+     * Liefert die aktuelle Position.
+     * @return die Position.
+     */
+    private int position()
+    {
+      return this.pos;
+    }
+
+    /**
+     * Liefert die Bytes ab der angegebenen Position bis zur aktuellen Position.
+     * @param start die Start-Position.
+     * @return die Bytes.
+     */
+    private byte[] copy(int start)
+    {
+      return Arrays.copyOfRange(this.buf,start,this.pos);
+    }
+  }
+
+  /**
+   * Merkt sich den ersten Fehler beim Lesen oder Schreiben im XML-Format.
+   * Per Default geben {@link XMLEncoder} und {@link XMLDecoder} die Fehler nur
+   * aus und liefern ein unvollstaendiges Objekt.
+   */
+  private static class Listener implements ExceptionListener
+  {
+    private Exception error = null;
+
+    /**
+     * @see java.beans.ExceptionListener#exceptionThrown(java.lang.Exception)
+     */
+    public void exceptionThrown(Exception e)
+    {
+      if (this.error == null)
+        this.error = e;
+    }
+
+    /**
+     * Wirft den ggf. aufgetretenen Fehler.
+     * @throws Exception
+     */
+    private void check() throws Exception
+    {
+      if (this.error != null)
+        throw this.error;
+    }
+  }
+
+  /**
+   * Wird geworfen, wenn sich ein einzelnes eingebettetes Objekt nicht lesen laesst.
+   */
+  private static class ValueException extends Exception
+  {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * ct.
+     * @param cause der urspruengliche Fehler.
+     */
+    private ValueException(Exception cause)
+    {
+      super(cause);
+    }
+
+    /**
+     * @see java.lang.Throwable#getCause()
+     */
+    public Exception getCause()
+    {
+      return (Exception) super.getCause();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.store.codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Interface fuer einen Codec zum Serialisieren und Deserialisieren von Objekten.
+ */
+public interface Codec
+{
+  /**
+   * Serialisiert das Objekt.
+   * Der Stream muss vom Aufrufer geschlossen werden.
+   * @param o das Objekt.
+   * @param os OutputStream, in den das Objekt geschrieben wird.
+   * @throws Exception
+   */
+  public void encode(Object o, OutputStream os) throws Exception;
+
+  /**
+   * Deserialisiert das Objekt.
+   * Der Stream muss vom Aufrufer geschlossen werden.
+   * @param is InputStream, aus dem das Objekt gelesen wird.
+   * @return das Objekt.
+   * @throws Exception
+   */
+  public Object decode(InputStream is) throws Exception;
+}
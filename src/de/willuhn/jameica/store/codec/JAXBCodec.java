@@ -0,0 +1,189 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.store.codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import de.willuhn.jameica.util.ClassLoaderOwner;
+import de.willuhn.logging.Logger;
+
+/**
+ * Codec, der JAXB-taugliche Beans im XML-Format speichert.
+ *
+ * <p>Der JAXB-Context wird pro Typ nur einmal erzeugt und dann wiederverwendet.
+ * Wurden die Klassen zwischenzeitlich von einem anderen Classloader geladen,
+ * wird der alte Context verworfen. Die Marshaller und Unmarshaller werden
+ * ebenfalls wiederverwendet. Beim Deinstallieren eines Plugins muss
+ * {@link #invalidate(ClassLoader)} aufgerufen werden.
+ */
+public class JAXBCodec implements Codec
+{
+  /**
+   * Maximale Anzahl der vorgehaltenen Marshaller bzw. Unmarshaller pro Typ.
+   */
+  private final static int POOL_SIZE = 4;
+
+  /**
+   * Cache mit den bereits erzeugten JAXB-Contexts. Key sind die Klassennamen.
+   */
+  private final static Map<List<String>,Entry> contexts = new ConcurrentHashMap<List<String>,Entry>();
+
+  private Class[] types = null;
+  private List<String> key = null;
+  private Unmarshaller.Listener listener = null;
+
+  /**
+   * ct.
+   * @param types die Klassen, die der JAXB-Context kennen muss.
+   */
+  public JAXBCodec(Class... types)
+  {
+    this.types = types;
+    this.key   = new ArrayList<String>();
+    for (Class c:types)
+    {
+      this.key.add(c.getName());
+    }
+  }
+
+  /**
+   * Verwirft die JAXB-Contexts aller Klassen, die vom angegebenen Classloader geladen wurden.
+   * Muss aufgerufen werden, wenn der Classloader eines Plugins entladen wird, damit
+   * dessen Klassen nicht weiter referenziert werden.
+   * @param loader der Classloader.
+   */
+  public static void invalidate(ClassLoader loader)
+  {
+    if (loader == null)
+      return;
+
+    ClassLoaderOwner owner = new ClassLoaderOwner(loader);
+    int count = 0;
+    Iterator<Entry> it = contexts.values().iterator();
+    while (it.hasNext())
+    {
+      for (Class c:it.next().types)
+      {
+        if (owner.owns(c))
+        {
+          it.remove();
+          count++;
+          break;
+        }
+      }
+    }
+    if (count > 0)
+      Logger.debug("removed " + count + " JAXB contexts");
+  }
+
+  /**
+   * Legt einen Listener fest, der beim Deserialisieren benachrichtigt wird.
+   * @param listener der Listener.
+   */
+  public void setListener(Unmarshaller.Listener listener)
+  {
+    this.listener = listener;
+  }
+
+  /**
+   * @see de.willuhn.jameica.store.codec.Codec#encode(java.lang.Object, java.io.OutputStream)
+   */
+  public void encode(Object o, OutputStream os) throws Exception
+  {
+    Entry e = this.getEntry();
+    Marshaller m = e.marshallers.poll();
+    if (m == null)
+    {
+      m = e.context.createMarshaller();
+      m.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+      m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
+    }
+
+    m.marshal(o,os);
+
+    // Nur bei Erfolg zurueck in den Pool
+    if (e.marshallers.size() < POOL_SIZE)
+      e.marshallers.offer(m);
+  }
+
+  /**
+   * @see de.willuhn.jameica.store.codec.Codec#decode(java.io.InputStream)
+   */
+  public Object decode(InputStream is) throws Exception
+  {
+    Entry e = this.getEntry();
+    Unmarshaller u = e.unmarshallers.poll();
+    if (u == null)
+      u = e.context.createUnmarshaller();
+
+    u.setListener(this.listener);
+    Object o = u.unmarshal(is);
+
+    // Listener entfernen, damit er nicht am gepoolten Unmarshaller haengen bleibt
+    u.setListener(null);
+    if (e.unmarshallers.size() < POOL_SIZE)
+      e.unmarshallers.offer(u);
+    return o;
+  }
+
+  /**
+   * Liefert den Cache-Eintrag fuer die Klassen.
+   * Existiert noch keiner oder stammen die Klassen inzwischen aus einem
+   * anderen Classloader, wird er neu erzeugt.
+   * @return der Cache-Eintrag.
+   * @throws Exception
+   */
+  private Entry getEntry() throws Exception
+  {
+    Entry e = contexts.get(this.key);
+    if (e == null || !Arrays.equals(e.types,this.types))
+    {
+      e = new Entry(this.types);
+      contexts.put(this.key,e);
+    }
+    return e;
+  }
+
+  /**
+   * Ein JAXB-Context samt der wiederverwendbaren Marshaller und Unmarshaller.
+   */
+  private static class Entry
+  {
+    private final Class[] types;
+    private final JAXBContext context;
+    private final Queue<Marshaller> marshallers     = new ConcurrentLinkedQueue<Marshaller>();
+    private final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<Unmarshaller>();
+
+    /**
+     * ct.
+     * @param types die Klassen, die der JAXB-Context kennen muss.
+     * @throws Exception
+     */
+    private Entry(Class[] types) throws Exception
+    {
+      this.types   = types.clone();
+      this.context = JAXBContext.newInstance(types);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.store.codec;
+
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Codec, der die Objekte mittels {@link XMLEncoder} im lesbaren XML-Format speichert.
+ * Das ist das bisherige Format des Wallet. Es eignet sich fuer Migration und Export.
+ */
+public class XMLCodec implements Codec
+{
+  /**
+   * @see de.willuhn.jameica.store.codec.Codec#encode(java.lang.Object, java.io.OutputStream)
+   */
+  public void encode(Object o, OutputStream os) throws Exception
+  {
+    // Der XMLEncoder schliesst beim close() auch den Stream. Das ist Sache des Aufrufers.
+    XMLEncoder xml = new XMLEncoder(new FilterOutputStream(os)
+    {
+      /**
+       * @see java.io.FilterOutputStream#write(byte[], int, int)
+       */
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+        this.out.write(b,off,len);
+      }
+
+      /**
+       * @see java.io.FilterOutputStream#close()
+       */
+      public void close()
+      {
+      }
+    });
+    xml.writeObject(o);
+    xml.close();
+    os.flush();
+  }
+
+  /**
+   * @see de.willuhn.jameica.store.codec.Codec#decode(java.io.InputStream)
+   */
+  public Object decode(InputStream is) throws Exception
+  {
+    XMLDecoder xml = new XMLDecoder(is);
+    return xml.readObject();
+  }
+}
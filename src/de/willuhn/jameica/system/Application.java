@@ -26,6 +26,7 @@ import de.willuhn.jameica.messaging.SystemMessage;
 import de.willuhn.jameica.plugin.Manifest;
 import de.willuhn.jameica.plugin.PluginLoader;
 import de.willuhn.jameica.security.SSLFactory;
+import de.willuhn.jameica.security.Wallet;
 import de.willuhn.jameica.services.BeanService;
 import de.willuhn.jameica.services.Init5;
 import de.willuhn.jameica.services.MessagingService;
@@ -212,6 +213,9 @@ public final class Application {
       getController().shutDown();
       app.loader.shutdown();
 
+      // Verzoegert gespeicherte Wallets schreiben
+      Wallet.flushAll();
+
       // close splash screen
       getCallback().getStartupMonitor().setStatus(0);
 
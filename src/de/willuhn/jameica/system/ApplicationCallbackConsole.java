@@ -305,7 +305,7 @@ public class ApplicationCallbackConsole extends AbstractApplicationCallback
         if (this.complete > 100) this.complete = 100;
         Logger.debug("completed: " + this.complete + " %");
       }
-			public void addPercentComplete(int percent) {
+			public synchronized void addPercentComplete(int percent) {
         if (percent < 1)
           return;
         setPercentComplete(getPercentComplete() + percent);
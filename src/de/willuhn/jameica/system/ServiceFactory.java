@@ -13,9 +13,9 @@ package de.willuhn.jameica.system;
 import java.io.File;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.willuhn.datasource.Service;
 import de.willuhn.jameica.plugin.Manifest;
@@ -23,6 +23,7 @@ import de.willuhn.jameica.plugin.Plugin;
 import de.willuhn.jameica.plugin.ServiceDescriptor;
 import de.willuhn.jameica.security.SSLRMIClientSocketFactory;
 import de.willuhn.jameica.services.BeanService;
+import de.willuhn.jameica.services.ClassService;
 import de.willuhn.jameica.services.RegistryService;
 import de.willuhn.logging.Logger;
 import de.willuhn.util.ApplicationException;
@@ -38,7 +39,7 @@ public final class ServiceFactory
 {
   private Settings settings = new Settings(ServiceFactory.class);
 
-  private Map<String,ServiceEntry> services = new HashMap<String,ServiceEntry>();
+  private Map<String,ServiceEntry> services = new ConcurrentHashMap<String,ServiceEntry>();
 
   /**
    * Initialisiert die Services eines Plugins.
@@ -189,7 +190,8 @@ public final class ServiceFactory
     try
     {
       // Wir nehmen die erste Implementierung, dir wir finden
-      impl = manifest.getClassLoader().getClassFinder().findImplementors(serviceClass)[0];
+      ClassService classService = Application.getBootLoader().getBootable(ClassService.class);
+      impl = classService.findImplementors(manifest.getClassLoader(),serviceClass)[0];
     }
     catch (ClassNotFoundException e)
     {
@@ -0,0 +1,70 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.util;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.util.HashSet;
+import java.util.Set;
+
+import de.willuhn.util.MultipleClassLoader;
+
+/**
+ * Prueft, ob Klassen von einem bestimmten Classloader stammen.
+ * Der {@link MultipleClassLoader} eines Plugins definiert dessen Klassen nicht selbst,
+ * sondern ueber einen internen {@link URLClassLoader}. Fuer diese Klassen liefert
+ * {@link Class#getClassLoader()} daher nicht den MultipleClassLoader. Sie werden
+ * stattdessen anhand ihrer Herkunft (CodeSource) den URLs des MultipleClassLoader zugeordnet.
+ */
+public final class ClassLoaderOwner
+{
+  private final ClassLoader loader;
+  private final Set<String> urls = new HashSet<String>();
+
+  /**
+   * ct.
+   * @param loader der Classloader.
+   */
+  public ClassLoaderOwner(ClassLoader loader)
+  {
+    this.loader = loader;
+    if (loader instanceof MultipleClassLoader)
+    {
+      for (URL u:((MultipleClassLoader) loader).getURLs())
+      {
+        this.urls.add(u.toExternalForm());
+      }
+    }
+  }
+
+  /**
+   * Prueft, ob die Klasse von dem Classloader stammt.
+   * @param c die Klasse.
+   * @return true, wenn die Klasse von dem Classloader stammt.
+   */
+  public boolean owns(Class c)
+  {
+    ClassLoader cl = c.getClassLoader();
+    if (cl == null || this.loader == null)
+      return false;
+
+    if (cl == this.loader)
+      return true;
+
+    if (this.urls.isEmpty() || !(cl instanceof URLClassLoader))
+      return false;
+
+    CodeSource source = c.getProtectionDomain().getCodeSource();
+    URL url = source != null ? source.getLocation() : null;
+    return url != null && this.urls.contains(url.toExternalForm());
+  }
+}
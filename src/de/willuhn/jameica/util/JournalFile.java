@@ -0,0 +1,229 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import de.willuhn.io.IOUtil;
+import de.willuhn.logging.Logger;
+
+/**
+ * Datei, an die Datensaetze angehaengt werden koennen.
+ * Jeder Datensatz wird sofort auf die Festplatte geschrieben. Ein bei einem Absturz
+ * nur teilweise geschriebener letzter Datensatz wird beim Lesen erkannt und abgeschnitten.
+ *
+ * <p>Format: Versionsnummer, gefolgt von den Datensaetzen. Jeder Datensatz besteht aus
+ * Laenge, CRC32-Pruefsumme und den Daten.
+ */
+public final class JournalFile
+{
+  /**
+   * Laenge der Versionsnummer am Anfang der Datei.
+   */
+  private final static long HEADER = 4L;
+
+  private File file   = null;
+  private int version = 0;
+
+  /**
+   * Callback zum Verarbeiten der gelesenen Datensaetze.
+   */
+  public static interface Reader
+  {
+    /**
+     * Wird fuer jeden vollstaendigen Datensatz aufgerufen.
+     * @param record der Datensatz.
+     * @throws Exception wenn der Datensatz nicht verarbeitet werden kann.
+     * Das Lesen endet dann an diesem Datensatz.
+     */
+    public void read(byte[] record) throws Exception;
+  }
+
+  /**
+   * ct.
+   * @param file die Datei.
+   * @param version die Versionsnummer des Dateiformats.
+   */
+  public JournalFile(File file, int version)
+  {
+    this.file    = file;
+    this.version = version;
+  }
+
+  /**
+   * Liefert die Datei.
+   * @return die Datei.
+   */
+  public File getFile()
+  {
+    return this.file;
+  }
+
+  /**
+   * Haengt einen Datensatz an die Datei an und wartet, bis er auf der Festplatte ist.
+   * @param record der Datensatz.
+   * @throws IOException
+   */
+  public synchronized void append(byte[] record) throws IOException
+  {
+    File dir = this.file.getAbsoluteFile().getParentFile();
+    if (dir != null && !dir.exists() && !dir.mkdirs())
+      throw new IOException("unable to create dir " + dir);
+
+    boolean create = !this.file.exists() || this.file.length() == 0;
+    FileOutputStream fos = null;
+    try
+    {
+      fos = new FileOutputStream(this.file,true);
+      DataOutputStream os = new DataOutputStream(fos);
+      if (create)
+        os.writeInt(this.version);
+      os.writeInt(record.length);
+      os.writeInt(checksum(record));
+      os.write(record);
+      os.flush();
+      fos.getFD().sync();
+    }
+    finally
+    {
+      IOUtil.close(fos);
+    }
+  }
+
+  /**
+   * Liest die Datensaetze der Datei.
+   * Ein unvollstaendiger oder beschaedigter Datensatz am Ende wird abgeschnitten.
+   * Das gilt auch fuer einen Datensatz, den der Reader nicht verarbeiten kann, und
+   * alle folgenden. Sie koennen auf einem fehlerhaften Stand aufsetzen.
+   * @param reader der Callback, an den die Datensaetze uebergeben werden.
+   * @return Anzahl der gelesenen Datensaetze.
+   * @throws Exception
+   */
+  public synchronized int read(Reader reader) throws Exception
+  {
+    if (!this.file.exists())
+      return 0;
+
+    int count = 0;
+    long valid = 0L;
+    DataInputStream is = null;
+    try
+    {
+      is = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+      int v = is.readInt();
+      if (v != this.version)
+        throw new IOException("unsupported version " + v + " in " + this.file);
+      valid = HEADER;
+
+      while (true)
+      {
+        byte[] record = null;
+        try
+        {
+          int length = is.readInt();
+          int crc    = is.readInt();
+          if (length < 0 || length > this.file.length())
+            break;
+          record = new byte[length];
+          is.readFully(record);
+          if (checksum(record) != crc)
+            break;
+        }
+        catch (EOFException e)
+        {
+          break;
+        }
+
+        try
+        {
+          reader.read(record);
+        }
+        catch (Exception e)
+        {
+          Logger.error("unable to read record " + (count + 1) + " of journal " + this.file + ", skipping remaining records",e);
+          break;
+        }
+        valid += 8 + record.length;
+        count++;
+      }
+    }
+    catch (EOFException e)
+    {
+      // Nicht mal der Header ist vollstaendig
+    }
+    finally
+    {
+      IOUtil.close(is);
+    }
+
+    if (valid < this.file.length())
+    {
+      Logger.warn("journal " + this.file + " incomplete, truncating to " + valid + " bytes");
+      this.truncate(valid);
+    }
+    return count;
+  }
+
+  /**
+   * Loescht die Datei.
+   */
+  public synchronized void delete()
+  {
+    if (this.file.exists() && !this.file.delete())
+      Logger.warn("unable to delete journal " + this.file);
+  }
+
+  /**
+   * Kuerzt die Datei auf die angegebene Laenge.
+   * @param length die neue Laenge.
+   * @throws IOException
+   */
+  private void truncate(long length) throws IOException
+  {
+    if (length <= HEADER)
+    {
+      this.delete();
+      return;
+    }
+
+    RandomAccessFile raf = null;
+    try
+    {
+      raf = new RandomAccessFile(this.file,"rw");
+      raf.setLength(length);
+    }
+    finally
+    {
+      IOUtil.close(raf);
+    }
+  }
+
+  /**
+   * Berechnet die Pruefsumme des Datensatzes.
+   * @param record der Datensatz.
+   * @return die Pruefsumme.
+   */
+  private static int checksum(byte[] record)
+  {
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    return (int) crc.getValue();
+  }
+}
@@ -0,0 +1,133 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet den Dispatch-Index der Consumer-Registry.
+ */
+public class ConsumerRegistryTest
+{
+  /**
+   * Consumer mit festen Nachrichtenarten werden ueber den Index gefunden.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    ConsumerRegistry registry = new ConsumerRegistry();
+    TestConsumer text   = new TestConsumer(true,TextMessage.class);
+    TestConsumer system = new TestConsumer(true,QueryMessage.class);
+    TestConsumer all    = new TestConsumer(true,(Class[]) null);
+    registry.add(text);
+    registry.add(system);
+    registry.add(all);
+
+    MessageConsumer[] result = registry.snapshot().lookup(TextMessage.class);
+    Assert.assertArrayEquals(new MessageConsumer[]{text,all},result);
+
+    // Zweiter Aufruf liefert das selbe Ergebnis aus dem Index
+    Assert.assertSame(result,registry.snapshot().lookup(TextMessage.class));
+  }
+
+  /**
+   * Ein Consumer, der seine Nachrichtenarten erst nach dem Registrieren
+   * festlegt, erhaelt die Nachrichten trotzdem.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    ConsumerRegistry registry = new ConsumerRegistry();
+    MessageCollector collector = new MessageCollector();
+    registry.add(collector);
+
+    Assert.assertEquals(0,registry.snapshot().lookup(TextMessage.class).length);
+
+    collector.collect(TextMessage.class);
+    Assert.assertArrayEquals(new MessageConsumer[]{collector},registry.snapshot().lookup(TextMessage.class));
+    Assert.assertEquals(0,registry.snapshot().lookup(QueryMessage.class).length);
+  }
+
+  /**
+   * Gemischte Consumer bleiben in Registrierungsreihenfolge.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    ConsumerRegistry registry = new ConsumerRegistry();
+    TestConsumer fixed  = new TestConsumer(true,TextMessage.class);
+    TestConsumer change = new TestConsumer(false,QueryMessage.class);
+    TestConsumer last   = new TestConsumer(true,Message.class);
+    registry.add(fixed);
+    registry.add(change);
+    registry.add(last);
+
+    Assert.assertArrayEquals(new MessageConsumer[]{fixed,last},registry.snapshot().lookup(TextMessage.class));
+
+    change.types = new Class[]{TextMessage.class};
+    Assert.assertArrayEquals(new MessageConsumer[]{fixed,change,last},registry.snapshot().lookup(TextMessage.class));
+  }
+
+  /**
+   * Consumer fuer den Test.
+   */
+  private static class TestConsumer implements MessageConsumer
+  {
+    private boolean fixed = false;
+    private Class[] types = null;
+
+    /**
+     * ct.
+     * @param fixed true, wenn sich die Nachrichtenarten nicht aendern.
+     * @param types die Nachrichtenarten.
+     */
+    private TestConsumer(boolean fixed, Class... types)
+    {
+      this.fixed = fixed;
+      this.types = types;
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessageConsumer#getExpectedMessageTypes()
+     */
+    public Class[] getExpectedMessageTypes()
+    {
+      return this.types;
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessageConsumer#hasStaticMessageTypes()
+     */
+    public boolean hasStaticMessageTypes()
+    {
+      return this.fixed;
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessageConsumer#handleMessage(de.willuhn.jameica.messaging.Message)
+     */
+    public void handleMessage(Message message) throws Exception
+    {
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessageConsumer#autoRegister()
+     */
+    public boolean autoRegister()
+    {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet das Histogramm fuer die Zeitmessungen.
+ */
+public class HistogramTest
+{
+  /**
+   * Ein leeres Histogramm liefert ueberall 0.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    Histogram h = new Histogram();
+    Assert.assertEquals(0L,h.getCount());
+    Assert.assertEquals(0d,h.getAverage(),0d);
+    Assert.assertEquals(0d,h.getMax(),0d);
+    Assert.assertEquals(0d,h.getPercentile(95d),0d);
+  }
+
+  /**
+   * Durchschnitt, Maximum und Perzentile.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    Histogram h = new Histogram();
+    for (int i=0;i<99;++i)
+      h.record(1000000L); // 1 ms
+    h.record(100000000L); // 100 ms
+
+    Assert.assertEquals(100L,h.getCount());
+    Assert.assertEquals(1.99d,h.getAverage(),0.0001d);
+    Assert.assertEquals(100d,h.getMax(),0d);
+
+    // Obergrenze des Buckets, aber nie mehr als das Maximum
+    Assert.assertEquals(1.024d,h.getPercentile(95d),0.0001d);
+    Assert.assertEquals(100d,h.getPercentile(100d),0d);
+  }
+
+  /**
+   * Negative und sehr grosse Werte landen im ersten bzw. letzten Bucket.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    Histogram h = new Histogram();
+    h.record(-5L);
+    h.record(Long.MAX_VALUE);
+    Assert.assertEquals(2L,h.getCount());
+    Assert.assertEquals(0.001d,h.getPercentile(50d),0d);
+    Assert.assertEquals(h.getMax(),h.getPercentile(100d),0d);
+  }
+}
@@ -0,0 +1,192 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.willuhn.jameica.system.TestApplication;
+import de.willuhn.jameica.util.JournalFile;
+
+/**
+ * Testet das Journal der Message-Queue.
+ */
+public class MessageJournalTest
+{
+  private File dir  = null;
+  private File file = null;
+
+  /**
+   * Erzeugt das temporaere Verzeichnis.
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    TestApplication.init();
+    this.dir = File.createTempFile("jameica","");
+    this.dir.delete();
+    this.dir.mkdirs();
+    this.file = new File(this.dir,"test.journal");
+  }
+
+  /**
+   * Loescht das temporaere Verzeichnis.
+   * @throws Exception
+   */
+  @After
+  public void tearDown() throws Exception
+  {
+    for (File f:this.dir.listFiles())
+    {
+      f.delete();
+    }
+    this.dir.delete();
+  }
+
+  /**
+   * Die Eintraege werden in der Reihenfolge zugestellt, in der sie gespeichert wurden.
+   * Das Journal wird erst geloescht, nachdem alle Eintraege zugestellt wurden.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    MessageJournal journal = new MessageJournal(this.file);
+    journal.append(create("a"));
+    journal.append(create("b"));
+    Assert.assertEquals(2,journal.size());
+
+    Collector c = new Collector();
+    journal.drain(c);
+    Assert.assertEquals(Arrays.asList("a","b"),c.getData());
+    Assert.assertEquals(0,journal.size());
+    Assert.assertEquals(1,this.dir.listFiles().length);
+
+    // Waehrend der Zustellung angehaengte Nachrichten landen in einem neuen Journal
+    journal.append(create("c"));
+    Assert.assertEquals(1,journal.size());
+
+    c.delivered.get(0).run();
+    Assert.assertEquals(2,this.dir.listFiles().length);
+    c.delivered.get(1).run();
+    Assert.assertEquals(1,this.dir.listFiles().length);
+
+    c = new Collector();
+    journal.drain(c);
+    Assert.assertEquals(Arrays.asList("c"),c.getData());
+    c.delivered.get(0).run();
+    Assert.assertEquals(0,this.dir.listFiles().length);
+  }
+
+  /**
+   * Nicht zugestellte Eintraege werden nach einem Neustart erneut zugestellt.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    MessageJournal journal = new MessageJournal(this.file);
+    journal.append(create("a"));
+    journal.append(create("b"));
+    journal.drain(new Collector());
+    journal.append(create("c"));
+
+    MessageJournal restart = new MessageJournal(this.file);
+    Assert.assertEquals(3,restart.size());
+    Collector c = new Collector();
+    restart.drain(c);
+    Assert.assertEquals(Arrays.asList("a","b","c"),c.getData());
+  }
+
+  /**
+   * Nicht lesbare Eintraege bleiben erhalten und werden beim naechsten Start erneut versucht.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    MessageJournal journal = new MessageJournal(this.file);
+    journal.append(create("a"));
+    new JournalFile(this.file,1).append("kaputt".getBytes("UTF-8"));
+    journal.append(create("b"));
+
+    Collector c = new Collector();
+    journal.drain(c);
+    Assert.assertEquals(Arrays.asList("a","b"),c.getData());
+    for (Runnable r:c.delivered)
+      r.run();
+
+    File unreadable = new File(this.dir,"test.journal.unreadable");
+    Assert.assertTrue(unreadable.exists());
+    Assert.assertEquals(1,this.dir.listFiles().length);
+
+    MessageJournal restart = new MessageJournal(this.file);
+    Assert.assertEquals(1,restart.size());
+    Assert.assertFalse(unreadable.exists());
+
+    restart.drain(new Collector());
+    Assert.assertTrue(unreadable.exists());
+    Assert.assertEquals(0,restart.size());
+  }
+
+  /**
+   * Erzeugt einen Eintrag mit einer Nachricht.
+   * @param data die Nutzdaten der Nachricht.
+   * @return der Eintrag.
+   */
+  private static List<Message> create(String data)
+  {
+    List<Message> list = new ArrayList<Message>();
+    list.add(new QueryMessage(data));
+    return list;
+  }
+
+  /**
+   * Sammelt die zugestellten Eintraege.
+   */
+  private static class Collector implements MessageJournal.Receiver
+  {
+    private List<List<Message>> messages = new ArrayList<List<Message>>();
+    private List<Runnable> delivered = new ArrayList<Runnable>();
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessageJournal.Receiver#receive(java.util.List, java.lang.Runnable)
+     */
+    public void receive(List<Message> messages, Runnable delivered)
+    {
+      this.messages.add(messages);
+      this.delivered.add(delivered);
+    }
+
+    /**
+     * Liefert die Nutzdaten der zugestellten Nachrichten.
+     * @return die Nutzdaten.
+     */
+    private List<Object> getData()
+    {
+      List<Object> result = new ArrayList<Object>();
+      for (List<Message> list:this.messages)
+      {
+        for (Message m:list)
+          result.add(((QueryMessage) m).getData());
+      }
+      return result;
+    }
+  }
+}
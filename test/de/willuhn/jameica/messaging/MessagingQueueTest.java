@@ -0,0 +1,137 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet die Default-Implementierungen der Message-Queue.
+ */
+public class MessagingQueueTest
+{
+  /**
+   * Die Antwort des Verbrauchers landet in der Liste, die Anfrage bleibt unveraendert.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    QueryMessage q = new QueryMessage("frage");
+    List<Object> result = new TestQueue(false).requestAll(q,0L).get();
+    Assert.assertEquals(1,result.size());
+    Assert.assertEquals("antwort",result.get(0));
+    Assert.assertEquals("frage",q.getData());
+  }
+
+  /**
+   * Schlaegt die Zustellung fehl, wird das Future mit der Exception abgeschlossen.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    QueryMessage q = new QueryMessage("frage");
+    CompletableFuture<List<Object>> result = new TestQueue(true).requestAll(q,0L);
+    Assert.assertTrue(result.isCompletedExceptionally());
+    try
+    {
+      result.get();
+      Assert.fail();
+    }
+    catch (ExecutionException e)
+    {
+      Assert.assertEquals("kaputt",e.getCause().getMessage());
+    }
+    Assert.assertEquals("frage",q.getData());
+  }
+
+  /**
+   * Queue, die nur die synchrone Zustellung implementiert.
+   */
+  private static class TestQueue implements MessagingQueue
+  {
+    private boolean fail = false;
+
+    /**
+     * ct.
+     * @param fail true, wenn die Zustellung fehlschlagen soll.
+     */
+    private TestQueue(boolean fail)
+    {
+      this.fail = fail;
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessagingQueue#sendSyncMessage(de.willuhn.jameica.messaging.Message)
+     */
+    public void sendSyncMessage(Message message)
+    {
+      ((QueryMessage) message).setData("antwort");
+      if (this.fail)
+        throw new IllegalStateException("kaputt");
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessagingQueue#sendMessage(de.willuhn.jameica.messaging.Message)
+     */
+    public void sendMessage(Message message)
+    {
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessagingQueue#queueMessage(de.willuhn.jameica.messaging.Message)
+     */
+    public void queueMessage(Message message)
+    {
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessagingQueue#getQueueSize()
+     */
+    public int getQueueSize()
+    {
+      return 0;
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessagingQueue#registerMessageConsumer(de.willuhn.jameica.messaging.MessageConsumer)
+     */
+    public void registerMessageConsumer(MessageConsumer consumer)
+    {
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessagingQueue#unRegisterMessageConsumer(de.willuhn.jameica.messaging.MessageConsumer)
+     */
+    public void unRegisterMessageConsumer(MessageConsumer consumer)
+    {
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessagingQueue#close()
+     */
+    public void close()
+    {
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessagingQueue#flush()
+     */
+    public void flush()
+    {
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet das Warten auf die Zustellung in der Message-Queue.
+ */
+public class NamedConcurrentQueueTest
+{
+  /**
+   * flush(long) liefert false, solange die Zustellung noch laeuft.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    QueueOptions options = new QueueOptions();
+    options.setThreads(1);
+    NamedConcurrentQueue queue = new NamedConcurrentQueue("test.flush.001",options);
+    try
+    {
+      TestConsumer consumer = new TestConsumer();
+      queue.registerMessageConsumer(consumer);
+
+      queue.sendMessage(new TextMessage("1"));
+      queue.sendMessage(new TextMessage("2"));
+      consumer.started.await();
+
+      Assert.assertFalse(queue.flush(50L));
+      Assert.assertTrue(queue.getQueueSize() > 0);
+
+      consumer.release.countDown();
+      Assert.assertTrue(queue.flush(5000L));
+      Assert.assertEquals(0,queue.getQueueSize());
+      Assert.assertEquals(2,consumer.count.get());
+    }
+    finally
+    {
+      queue.close();
+    }
+  }
+
+  /**
+   * flush(long) kehrt bei einer leeren Queue sofort zurueck.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    QueueOptions options = new QueueOptions();
+    options.setThreads(1);
+    NamedConcurrentQueue queue = new NamedConcurrentQueue("test.flush.002",options);
+    try
+    {
+      Assert.assertTrue(queue.flush(1L));
+    }
+    finally
+    {
+      queue.close();
+    }
+  }
+
+  /**
+   * Consumer, der bis zur Freigabe blockiert.
+   */
+  private static class TestConsumer implements MessageConsumer
+  {
+    private CountDownLatch started = new CountDownLatch(1);
+    private CountDownLatch release = new CountDownLatch(1);
+    private AtomicInteger count    = new AtomicInteger();
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessageConsumer#getExpectedMessageTypes()
+     */
+    public Class[] getExpectedMessageTypes()
+    {
+      return new Class[]{TextMessage.class};
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessageConsumer#handleMessage(de.willuhn.jameica.messaging.Message)
+     */
+    public void handleMessage(Message message) throws Exception
+    {
+      this.started.countDown();
+      this.release.await();
+      this.count.incrementAndGet();
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.MessageConsumer#autoRegister()
+     */
+    public boolean autoRegister()
+    {
+      return false;
+    }
+  }
+}
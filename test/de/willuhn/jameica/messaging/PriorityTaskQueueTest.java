@@ -0,0 +1,118 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet die Warteschlange fuer die Thread-Pools der Queues.
+ */
+public class PriorityTaskQueueTest
+{
+  /**
+   * Tasks mit hoeherer Prioritaet werden vorgezogen, bei gleicher Prioritaet bleibt die Reihenfolge.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    PriorityTaskQueue queue = new PriorityTaskQueue(10);
+    TestTask t1 = new TestTask(0);
+    TestTask t2 = new TestTask(0);
+    TestTask t3 = new TestTask(1);
+    queue.offer(t1);
+    queue.offer(t2);
+    queue.offer(t3);
+
+    Assert.assertSame(t3,queue.poll());
+    Assert.assertSame(t1,queue.poll());
+    Assert.assertSame(t2,queue.poll());
+    Assert.assertNull(queue.poll());
+  }
+
+  /**
+   * Ist die Kapazitaet erreicht, wird der Task abgelehnt.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    PriorityTaskQueue queue = new PriorityTaskQueue(2);
+    Assert.assertTrue(queue.offer(new TestTask(0)));
+    Assert.assertTrue(queue.offer(new TestTask(0)));
+    Assert.assertFalse(queue.offer(new TestTask(0)));
+    Assert.assertEquals(0,queue.remainingCapacity());
+  }
+
+  /**
+   * pollOldest() entfernt den zuerst eingereihten Task, auch wenn er die hoechste Prioritaet hat.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    PriorityTaskQueue queue = new PriorityTaskQueue(10);
+    TestTask t1 = new TestTask(1);
+    TestTask t2 = new TestTask(0);
+    TestTask t3 = new TestTask(-1);
+    queue.offer(t3);
+    queue.offer(t2);
+    queue.offer(t1);
+
+    // Eingereiht wurde in der Reihenfolge der Erzeugung
+    Assert.assertSame(t1,queue.pollOldest());
+    Assert.assertSame(t2,queue.pollOldest());
+    Assert.assertSame(t3,queue.pollOldest());
+    Assert.assertNull(queue.pollOldest());
+  }
+
+  /**
+   * Task fuer den Test.
+   */
+  private static class TestTask implements PriorityTaskQueue.Task
+  {
+    private long sequence = PriorityTaskQueue.sequence();
+    private long order    = 0L;
+
+    /**
+     * ct.
+     * @param priority die Prioritaet.
+     */
+    private TestTask(int priority)
+    {
+      this.order = PriorityTaskQueue.order(this.sequence,priority);
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.PriorityTaskQueue.Task#getOrder()
+     */
+    public long getOrder()
+    {
+      return this.order;
+    }
+
+    /**
+     * @see de.willuhn.jameica.messaging.PriorityTaskQueue.Task#getSequence()
+     */
+    public long getSequence()
+    {
+      return this.sequence;
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    public void run()
+    {
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.messaging;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet die Statistik der Message-Queue.
+ */
+public class QueueStatisticsTest
+{
+  /**
+   * Jede Consumer-Instanz erhaelt ihre eigene Zeile.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    QueueStatistics stats = new QueueStatistics("test");
+    MessageCollector c1 = new MessageCollector();
+    MessageCollector c2 = new MessageCollector();
+    stats.consumed(c1,1000L,false);
+    stats.consumed(c1,1000L,true);
+    stats.consumed(c2,1000L,false);
+
+    List<ConsumerStatistics> list = stats.getConsumers();
+    Assert.assertEquals(2,list.size());
+
+    long count = 0;
+    long errors = 0;
+    for (ConsumerStatistics s:list)
+    {
+      Assert.assertEquals(MessageCollector.class.getName(),s.getName());
+      count += s.getTime().getCount();
+      errors += s.getErrors();
+    }
+    Assert.assertEquals(3,count);
+    Assert.assertEquals(1,errors);
+  }
+
+  /**
+   * Ueberschreibt der Consumer toString(), wird das als Bezeichnung verwendet.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    QueueStatistics stats = new QueueStatistics("test");
+    stats.consumed(new MessageCollector() {
+      /**
+       * @see java.lang.Object#toString()
+       */
+      public String toString()
+      {
+        return "Bean.receive";
+      }
+    },1000L,false);
+
+    Assert.assertEquals("Bean.receive",stats.getConsumers().get(0).getName());
+  }
+
+  /**
+   * Consumer, die per equals gleich sind, werden trotzdem getrennt erfasst.
+   * Abgemeldete Consumer werden entfernt.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    QueueStatistics stats = new QueueStatistics("test");
+    MessageCollector c1 = new EqualCollector();
+    MessageCollector c2 = new EqualCollector();
+    stats.consumed(c1,1000L,false);
+    stats.consumed(c2,1000L,false);
+    Assert.assertEquals(2,stats.getConsumers().size());
+
+    stats.remove(c1);
+    Assert.assertEquals(1,stats.getConsumers().size());
+    Assert.assertEquals(1,stats.getConsumers().get(0).getTime().getCount());
+  }
+
+  /**
+   * Consumer, bei dem alle Instanzen gleich sind.
+   */
+  private static class EqualCollector extends MessageCollector
+  {
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object o)
+    {
+      return o instanceof EqualCollector;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode()
+    {
+      return 1;
+    }
+  }
+}
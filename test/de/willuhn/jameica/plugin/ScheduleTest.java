@@ -0,0 +1,209 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet die Ausfuehrung der Lade-Schritte der Plugins.
+ */
+public class ScheduleTest
+{
+  /**
+   * Ohne Parallelisierung werden die Plugins in der sortierten Reihenfolge bearbeitet.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    List<Manifest> plugins = diamond();
+    Recorder r = new Recorder(plugins);
+    Map<Manifest,Throwable> errors = PluginLoader.schedule(plugins,false,r);
+    Assert.assertEquals(0,errors.size());
+    Assert.assertEquals(plugins,r.finished);
+  }
+
+  /**
+   * Parallel ist ein Plugin erst an der Reihe, wenn alle Plugins fertig sind, von denen es abhaengt.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    for (int i=0;i<20;++i)
+    {
+      List<Manifest> plugins = diamond();
+      Recorder r = new Recorder(plugins);
+      Map<Manifest,Throwable> errors = PluginLoader.schedule(plugins,true,r);
+      Assert.assertEquals(0,errors.size());
+      Assert.assertEquals(0,r.violations.size());
+      Assert.assertEquals(plugins.size(),r.finished.size());
+      Assert.assertEquals(plugins.get(plugins.size() - 1),r.finished.get(r.finished.size() - 1));
+    }
+  }
+
+  /**
+   * Voneinander unabhaengige Plugins laufen tatsaechlich gleichzeitig.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    if (Runtime.getRuntime().availableProcessors() < 2)
+      return; // Der Pool hat dann nur einen Thread
+
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    List<Manifest> plugins = Arrays.asList(create("a"),create("b"));
+    Map<Manifest,Throwable> errors = PluginLoader.schedule(plugins,true,new PluginLoader.Step() {
+      /**
+       * @see de.willuhn.jameica.plugin.PluginLoader.Step#run(de.willuhn.jameica.plugin.Manifest)
+       */
+      public void run(Manifest mf) throws Exception
+      {
+        barrier.await(10,TimeUnit.SECONDS);
+      }
+    });
+    Assert.assertEquals(0,errors.size());
+  }
+
+  /**
+   * Die Fehler sind in beiden Modi die selben. Ein Fehler haelt die abhaengigen Plugins nicht auf.
+   * @throws Exception
+   */
+  @Test
+  public void test004() throws Exception
+  {
+    for (boolean parallel:new boolean[]{false,true})
+    {
+      for (int i=0;i<20;++i)
+      {
+        List<Manifest> plugins = diamond();
+        Recorder r = new Recorder(plugins);
+        r.fail.add(plugins.get(1));
+        r.fail.add(plugins.get(2));
+        Map<Manifest,Throwable> errors = PluginLoader.schedule(plugins,parallel,r);
+        Assert.assertEquals(2,errors.size());
+        Assert.assertEquals(plugins.get(1).getName(),errors.get(plugins.get(1)).getMessage());
+        Assert.assertEquals(plugins.get(2).getName(),errors.get(plugins.get(2)).getMessage());
+        Assert.assertEquals(plugins.size(),r.finished.size());
+        Assert.assertEquals(0,r.violations.size());
+      }
+    }
+  }
+
+  /**
+   * Bei einer zyklischen Abhaengigkeit werden trotzdem alle Plugins genau einmal bearbeitet.
+   * @throws Exception
+   */
+  @Test(timeout=10000)
+  public void test005() throws Exception
+  {
+    List<Manifest> plugins = Arrays.asList(create("free"),create("a","b"),create("b","a"),create("user","a"));
+    Recorder r = new Recorder(plugins);
+    Map<Manifest,Throwable> errors = PluginLoader.schedule(plugins,true,r);
+    Assert.assertEquals(0,errors.size());
+    Assert.assertEquals(plugins.size(),r.finished.size());
+    Assert.assertEquals(plugins.size(),new HashSet<Manifest>(r.finished).size());
+    Assert.assertTrue(r.finished.indexOf(plugins.get(3)) > r.finished.indexOf(plugins.get(1)));
+  }
+
+  /**
+   * Liefert Plugins in Form einer Raute mit Vorgaenger in sortierter Reihenfolge.
+   * @return die Plugins.
+   * @throws Exception
+   */
+  private static List<Manifest> diamond() throws Exception
+  {
+    Manifest base   = create("base");
+    Manifest left   = create("left","base");
+    Manifest right  = create("right","base");
+    Manifest other  = create("other");
+    Manifest top    = create("top","left","right","other");
+    return Arrays.asList(base,left,right,other,top);
+  }
+
+  /**
+   * Erzeugt ein Manifest mit den angegebenen Abhaengigkeiten.
+   * @param name Name des Plugins.
+   * @param deps Namen der Plugins, von denen es abhaengig ist.
+   * @return das Manifest.
+   * @throws Exception
+   */
+  private static Manifest create(String name, String... deps) throws Exception
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<plugin name=\"" + name + "\" version=\"1.0.0\"><requires jameica=\"2.0.0+\">");
+    for (String d:deps)
+    {
+      sb.append("<import plugin=\"" + d + "\"/>");
+    }
+    sb.append("</requires></plugin>");
+    return new Manifest(new ByteArrayInputStream(sb.toString().getBytes("UTF-8")));
+  }
+
+  /**
+   * Protokolliert die Reihenfolge und prueft die Abhaengigkeiten.
+   */
+  private static class Recorder implements PluginLoader.Step
+  {
+    private List<Manifest> plugins    = null;
+    private List<Manifest> finished   = Collections.synchronizedList(new ArrayList<Manifest>());
+    private List<String> violations   = Collections.synchronizedList(new ArrayList<String>());
+    private Set<Manifest> fail        = Collections.newSetFromMap(new ConcurrentHashMap<Manifest,Boolean>());
+
+    /**
+     * ct.
+     * @param plugins die Plugins.
+     */
+    private Recorder(List<Manifest> plugins)
+    {
+      this.plugins = plugins;
+    }
+
+    /**
+     * @see de.willuhn.jameica.plugin.PluginLoader.Step#run(de.willuhn.jameica.plugin.Manifest)
+     */
+    public void run(Manifest mf) throws Exception
+    {
+      try
+      {
+        for (Dependency d:mf.getDirectDependencies())
+        {
+          for (Manifest m:this.plugins)
+          {
+            if (m != mf && m.getName().equals(d.getName()) && !this.finished.contains(m))
+              this.violations.add(mf.getName() + " started before " + m.getName());
+          }
+        }
+        Thread.sleep(2);
+        if (this.fail.contains(mf))
+          throw new Exception(mf.getName());
+      }
+      finally
+      {
+        this.finished.add(mf);
+      }
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet die Sortierung der Plugins nach ihren Abhaengigkeiten.
+ */
+public class TopologicalSortTest
+{
+  /**
+   * Eine Kette wird von hinten nach vorn sortiert.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    Manifest a = create("a","b");
+    Manifest b = create("b","c");
+    Manifest c = create("c");
+
+    PluginLoader.TopologicalSort sort = new PluginLoader.TopologicalSort(Arrays.asList(a,b,c));
+    Assert.assertEquals(Arrays.asList(c,b,a),sort.getSorted());
+    Assert.assertEquals(0,sort.getCycles().size());
+  }
+
+  /**
+   * Unabhaengige Plugins behalten ihre Reihenfolge.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    Manifest a = create("a");
+    Manifest b = create("b");
+    Manifest c = create("c");
+
+    PluginLoader.TopologicalSort sort = new PluginLoader.TopologicalSort(Arrays.asList(a,b,c));
+    Assert.assertEquals(Arrays.asList(a,b,c),sort.getSorted());
+  }
+
+  /**
+   * Bei einer Raute steht das gemeinsame Plugin vorn und das abhaengige hinten.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    Manifest top    = create("top","left","right");
+    Manifest left   = create("left","bottom");
+    Manifest right  = create("right","bottom");
+    Manifest bottom = create("bottom");
+
+    PluginLoader.TopologicalSort sort = new PluginLoader.TopologicalSort(Arrays.asList(top,left,right,bottom));
+    List<Manifest> sorted = sort.getSorted();
+    Assert.assertEquals(4,sorted.size());
+    Assert.assertSame(bottom,sorted.get(0));
+    Assert.assertSame(top,sorted.get(3));
+    Assert.assertTrue(sorted.indexOf(left) < sorted.indexOf(top));
+    Assert.assertTrue(sorted.indexOf(right) < sorted.indexOf(top));
+    Assert.assertEquals(0,sort.getCycles().size());
+  }
+
+  /**
+   * Abhaengigkeiten zu nicht vorhandenen Plugins werden ignoriert.
+   * @throws Exception
+   */
+  @Test
+  public void test004() throws Exception
+  {
+    Manifest a = create("a","missing");
+    Manifest b = create("b");
+
+    PluginLoader.TopologicalSort sort = new PluginLoader.TopologicalSort(Arrays.asList(a,b));
+    Assert.assertEquals(Arrays.asList(a,b),sort.getSorted());
+    Assert.assertEquals(0,sort.getCycles().size());
+  }
+
+  /**
+   * Plugins in einem Zyklus werden gemeldet. Plugins, die nur vom Zyklus
+   * abhaengen, stehen dahinter und sind nicht Teil des Zyklus.
+   * @throws Exception
+   */
+  @Test
+  public void test005() throws Exception
+  {
+    Manifest free = create("free");
+    Manifest a    = create("a","b");
+    Manifest b    = create("b","a");
+    Manifest user = create("user","a");
+
+    PluginLoader.TopologicalSort sort = new PluginLoader.TopologicalSort(Arrays.asList(user,a,b,free));
+    List<Manifest> sorted = sort.getSorted();
+    Assert.assertEquals(Arrays.asList(free,a,b,user),sorted);
+
+    Map<Manifest,List<String>> cycles = sort.getCycles();
+    Assert.assertEquals(2,cycles.size());
+    Assert.assertEquals(Arrays.asList("b"),cycles.get(a));
+    Assert.assertEquals(Arrays.asList("a"),cycles.get(b));
+    Assert.assertNull(cycles.get(user));
+  }
+
+  /**
+   * Eine Abhaengigkeit auf sich selbst ist kein Zyklus.
+   * @throws Exception
+   */
+  @Test
+  public void test006() throws Exception
+  {
+    Manifest a = create("a","a");
+
+    PluginLoader.TopologicalSort sort = new PluginLoader.TopologicalSort(Arrays.asList(a));
+    Assert.assertEquals(Arrays.asList(a),sort.getSorted());
+    Assert.assertEquals(0,sort.getCycles().size());
+  }
+
+  /**
+   * Erzeugt ein Manifest mit den angegebenen Abhaengigkeiten.
+   * @param name Name des Plugins.
+   * @param deps Namen der Plugins, von denen es abhaengig ist.
+   * @return das Manifest.
+   * @throws Exception
+   */
+  private static Manifest create(String name, String... deps) throws Exception
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<plugin name=\"" + name + "\" version=\"1.0.0\"><requires jameica=\"2.0.0+\">");
+    for (String d:deps)
+    {
+      sb.append("<import plugin=\"" + d + "\"/>");
+    }
+    sb.append("</requires></plugin>");
+    return new Manifest(new ByteArrayInputStream(sb.toString().getBytes("UTF-8")));
+  }
+}
@@ -0,0 +1,341 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.security;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.willuhn.jameica.security.crypto.Engine;
+import de.willuhn.jameica.util.JournalFile;
+
+/**
+ * Testet das Journal des Wallets.
+ */
+public class WalletJournalTest
+{
+  private File dir     = null;
+  private File file    = null;
+  private Engine engine = new TestEngine();
+
+  /**
+   * Erzeugt das temporaere Verzeichnis.
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.dir = File.createTempFile("jameica","");
+    this.dir.delete();
+    this.dir.mkdirs();
+    this.file = new File(this.dir,"test.wallet2.journal");
+  }
+
+  /**
+   * Loescht das temporaere Verzeichnis.
+   * @throws Exception
+   */
+  @After
+  public void tearDown() throws Exception
+  {
+    for (File f:this.dir.listFiles())
+    {
+      f.delete();
+    }
+    this.dir.delete();
+  }
+
+  /**
+   * Alle Arten von Aenderungen werden beim Einlesen wieder angewendet.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    WalletJournal journal = new WalletJournal(this.file);
+    journal.set(this.engine,"a.1","eins");
+    journal.set(this.engine,"a.2","zwei");
+    journal.set(this.engine,"b.1","drei");
+    journal.delete(this.engine,"b.1");
+    journal.deleteAll(this.engine,"a.");
+
+    Map<String,Serializable> changes = new LinkedHashMap<String,Serializable>();
+    changes.put("c.1","vier");
+    changes.put("c.2",null);
+    journal.batch(this.engine,changes);
+    Assert.assertEquals(6,journal.size());
+
+    Hashtable<String,Serializable> data = new Hashtable<String,Serializable>();
+    data.put("c.2","alt");
+    WalletJournal replay = new WalletJournal(this.file);
+    replay.replay(this.engine,data);
+    Assert.assertEquals(6,replay.size());
+    Assert.assertEquals(1,data.size());
+    Assert.assertEquals("vier",data.get("c.1"));
+  }
+
+  /**
+   * Ein unvollstaendiger letzter Datensatz wird verworfen.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    WalletJournal journal = new WalletJournal(this.file);
+    journal.set(this.engine,"a","eins");
+    long length = this.file.length();
+    journal.set(this.engine,"b","zwei");
+
+    RandomAccessFile raf = new RandomAccessFile(this.file,"rw");
+    raf.setLength(this.file.length() - 3);
+    raf.close();
+
+    Hashtable<String,Serializable> data = new Hashtable<String,Serializable>();
+    WalletJournal replay = new WalletJournal(this.file);
+    replay.replay(this.engine,data);
+    Assert.assertEquals(1,replay.size());
+    Assert.assertEquals("eins",data.get("a"));
+    Assert.assertNull(data.get("b"));
+    Assert.assertEquals(length,this.file.length());
+  }
+
+  /**
+   * Ein Datensatz mit falscher Pruefsumme beendet das Einlesen.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    WalletJournal journal = new WalletJournal(this.file);
+    journal.set(this.engine,"a","eins");
+    long length = this.file.length();
+    journal.set(this.engine,"b","zwei");
+    journal.set(this.engine,"c","drei");
+
+    // Ein Byte in den Daten des zweiten Datensatzes aendern
+    RandomAccessFile raf = new RandomAccessFile(this.file,"rw");
+    raf.seek(length + 10);
+    int b = raf.read();
+    raf.seek(length + 10);
+    raf.write(b ^ 0xFF);
+    raf.close();
+
+    Hashtable<String,Serializable> data = new Hashtable<String,Serializable>();
+    WalletJournal replay = new WalletJournal(this.file);
+    replay.replay(this.engine,data);
+    Assert.assertEquals(1,replay.size());
+    Assert.assertEquals(1,data.size());
+    Assert.assertEquals("eins",data.get("a"));
+    Assert.assertEquals(length,this.file.length());
+  }
+
+  /**
+   * Ein Datensatz mit gueltiger Pruefsumme, der sich nicht entschluesseln laesst,
+   * beendet das Einlesen ebenfalls. Danach kann wieder angehaengt werden.
+   * @throws Exception
+   */
+  @Test
+  public void test004() throws Exception
+  {
+    WalletJournal journal = new WalletJournal(this.file);
+    journal.set(this.engine,"a","eins");
+    long length = this.file.length();
+    new JournalFile(this.file,1).append("kaputt".getBytes("UTF-8"));
+    journal.set(this.engine,"b","zwei");
+
+    Hashtable<String,Serializable> data = new Hashtable<String,Serializable>();
+    WalletJournal replay = new WalletJournal(this.file);
+    replay.replay(this.engine,data);
+    Assert.assertEquals(1,replay.size());
+    Assert.assertEquals(1,data.size());
+    Assert.assertEquals("eins",data.get("a"));
+    Assert.assertEquals(length,this.file.length());
+
+    replay.set(this.engine,"c","drei");
+    data.clear();
+    new WalletJournal(this.file).replay(this.engine,data);
+    Assert.assertEquals(2,data.size());
+    Assert.assertEquals("drei",data.get("c"));
+  }
+
+  /**
+   * Ab einer gewissen Groesse wird das Journal in das Wallet uebernommen.
+   * @throws Exception
+   */
+  @Test
+  public void test005() throws Exception
+  {
+    File file = new File(this.dir,"test.wallet2");
+    Wallet wallet = new Wallet(WalletJournalTest.class,this.engine,file);
+    for (int i=0;i<99;++i)
+    {
+      wallet.set("key." + i,"value." + i);
+    }
+    Assert.assertFalse(file.exists());
+    Assert.assertTrue(this.file.exists());
+
+    wallet.set("key.99","value.99");
+    Assert.assertTrue(file.exists());
+    Assert.assertFalse(this.file.exists());
+
+    wallet.delete("key.0");
+    Assert.assertTrue(this.file.exists());
+
+    Wallet read = new Wallet(WalletJournalTest.class,this.engine,file);
+    Assert.assertEquals(99,read.getAll(null).length);
+    Assert.assertNull(read.get("key.0"));
+    Assert.assertEquals("value.99",read.get("key.99"));
+  }
+
+  /**
+   * Beim Leeren des Wallets wird das Loeschen zuerst im Journal vermerkt. Ein Absturz
+   * vor dem Loeschen der Dateien fuehrt daher nicht dazu, dass die Daten wieder auftauchen.
+   * @throws Exception
+   */
+  @Test
+  public void test006() throws Exception
+  {
+    File file = new File(this.dir,"test.wallet2");
+    Wallet wallet = new Wallet(WalletJournalTest.class,this.engine,file);
+    for (int i=0;i<102;++i)
+    {
+      wallet.set("key." + i,"value." + i);
+    }
+    Assert.assertTrue(file.exists());
+    Assert.assertTrue(this.file.exists());
+
+    // Stand nach dem Vermerk im Journal, aber vor dem Loeschen der Dateien
+    new WalletJournal(this.file).deleteAll(this.engine,"");
+    Assert.assertEquals(0,new Wallet(WalletJournalTest.class,this.engine,file).getAll(null).length);
+
+    // Stand nach dem Loeschen des Wallets, aber vor dem Loeschen des Journals
+    file.delete();
+    Assert.assertEquals(0,new Wallet(WalletJournalTest.class,this.engine,file).getAll(null).length);
+
+    wallet.deleteAll(null);
+    Assert.assertFalse(file.exists());
+    Assert.assertFalse(this.file.exists());
+    Assert.assertEquals(0,new Wallet(WalletJournalTest.class,this.engine,file).getAll(null).length);
+  }
+
+  /**
+   * Schlaegt das Speichern fehl, bleibt das Wallet als geaendert vorgemerkt
+   * und wird von flushAll() erneut gespeichert.
+   * @throws Exception
+   */
+  @Test
+  public void test007() throws Exception
+  {
+    File file = new File(this.dir,"test.wallet2");
+    TestEngine engine = new TestEngine();
+    Wallet wallet = new Wallet(WalletJournalTest.class,engine,file);
+    wallet.begin();
+    wallet.set("key","value");
+
+    engine.fail = true;
+    try
+    {
+      wallet.commit();
+      Assert.fail();
+    }
+    catch (IOException e)
+    {
+      // erwartet
+    }
+    Assert.assertFalse(file.exists());
+    Assert.assertFalse(this.file.exists());
+
+    engine.fail = false;
+    Wallet.flushAll();
+    Assert.assertEquals("value",new Wallet(WalletJournalTest.class,engine,file).get("key"));
+  }
+
+  /**
+   * Einfache Engine fuer den Test.
+   * Stellt den Daten eine Kennung voran und lehnt Daten ohne diese Kennung ab.
+   */
+  private static class TestEngine implements Engine
+  {
+    private final static int MARKER = 'E';
+
+    /**
+     * Wenn true, schlaegt das Verschluesseln fehl.
+     */
+    private boolean fail = false;
+
+    /**
+     * @see de.willuhn.jameica.security.crypto.Engine#encrypt(java.io.InputStream, java.io.OutputStream)
+     */
+    public void encrypt(InputStream is, OutputStream os) throws Exception
+    {
+      if (this.fail)
+        throw new IOException("unable to encrypt");
+      os.write(MARKER);
+      copy(is,os);
+    }
+
+    /**
+     * @see de.willuhn.jameica.security.crypto.Engine#decrypt(java.io.InputStream, java.io.OutputStream)
+     */
+    public void decrypt(InputStream is, OutputStream os) throws Exception
+    {
+      if (is.read() != MARKER)
+        throw new IOException("unable to decrypt");
+      copy(is,os);
+    }
+
+    /**
+     * @see de.willuhn.jameica.security.crypto.Engine#encrypt(java.io.OutputStream)
+     */
+    public OutputStream encrypt(OutputStream os) throws Exception
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @see de.willuhn.jameica.security.crypto.Engine#decrypt(java.io.InputStream)
+     */
+    public InputStream decrypt(InputStream is) throws Exception
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Kopiert die Daten.
+     * @param is Quelle.
+     * @param os Ziel.
+     * @throws IOException
+     */
+    private static void copy(InputStream is, OutputStream os) throws IOException
+    {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      byte[] buf = new byte[1024];
+      int read = 0;
+      while ((read = is.read(buf)) != -1)
+      {
+        bos.write(buf,0,read);
+      }
+      os.write(bos.toByteArray());
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.security.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Testet die RSA-Engine.
+ */
+public class RSAEngineTest
+{
+  private static KeyPair keys = null;
+
+  /**
+   * Registriert den Provider und erzeugt das Schluesselpaar.
+   * @throws Exception
+   */
+  @BeforeClass
+  public static void setUp() throws Exception
+  {
+    if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null)
+      Security.addProvider(new BouncyCastleProvider());
+
+    KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+    gen.initialize(2048);
+    keys = gen.generateKeyPair();
+  }
+
+  /**
+   * Verschluesselte Daten lassen sich wieder entschluesseln.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    byte[] data = random(20000);
+    RSAEngine engine = new TestEngine();
+
+    byte[] enc = encrypt(engine,data);
+    Assert.assertArrayEquals("JRSAENV1".getBytes("UTF-8"),Arrays.copyOf(enc,8));
+    Assert.assertArrayEquals(data,decrypt(engine,enc));
+
+    // Leere Daten
+    Assert.assertArrayEquals(new byte[0],decrypt(engine,encrypt(engine,new byte[0])));
+  }
+
+  /**
+   * Die Stream-Varianten sind zueinander kompatibel.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    byte[] data = random(10000);
+    RSAEngine engine = new TestEngine();
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    OutputStream os = engine.encrypt(bos);
+    os.write(data);
+    os.close();
+
+    InputStream is = engine.decrypt(new ByteArrayInputStream(bos.toByteArray()));
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    byte[] buf = new byte[1024];
+    int read = 0;
+    while ((read = is.read(buf)) != -1)
+    {
+      result.write(buf,0,read);
+    }
+    is.close();
+    Assert.assertArrayEquals(data,result.toByteArray());
+  }
+
+  /**
+   * Daten im alten Format mit einzeln verschluesselten Bloecken werden weiterhin gelesen.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    byte[] data = random(1000);
+
+    // So hat die Engine bisher verschluesselt
+    Cipher cipher = Cipher.getInstance("RSA",BouncyCastleProvider.PROVIDER_NAME);
+    cipher.init(Cipher.ENCRYPT_MODE,keys.getPublic());
+    int size = cipher.getBlockSize();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    for (int pos=0;pos<data.length;pos+=size)
+    {
+      bos.write(cipher.doFinal(data,pos,Math.min(size,data.length - pos)));
+    }
+
+    Assert.assertArrayEquals(data,decrypt(new TestEngine(),bos.toByteArray()));
+  }
+
+  /**
+   * Veraenderte Daten werden anhand des GCM-Tags erkannt.
+   * @throws Exception
+   */
+  @Test(expected=AEADBadTagException.class)
+  public void test004() throws Exception
+  {
+    RSAEngine engine = new TestEngine();
+    byte[] enc = encrypt(engine,random(100));
+    enc[enc.length - 1] ^= 0x01;
+    decrypt(engine,enc);
+  }
+
+  /**
+   * Verschluesselt die Daten.
+   * @param engine die Engine.
+   * @param data die Daten.
+   * @return die verschluesselten Daten.
+   * @throws Exception
+   */
+  private static byte[] encrypt(Engine engine, byte[] data) throws Exception
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    engine.encrypt(new ByteArrayInputStream(data),bos);
+    return bos.toByteArray();
+  }
+
+  /**
+   * Entschluesselt die Daten.
+   * @param engine die Engine.
+   * @param data die verschluesselten Daten.
+   * @return die Daten.
+   * @throws Exception
+   */
+  private static byte[] decrypt(Engine engine, byte[] data) throws Exception
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    engine.decrypt(new ByteArrayInputStream(data),bos);
+    return bos.toByteArray();
+  }
+
+  /**
+   * Erzeugt Zufallsdaten.
+   * @param size Anzahl der Bytes.
+   * @return die Daten.
+   */
+  private static byte[] random(int size)
+  {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    return data;
+  }
+
+  /**
+   * Engine mit dem Schluesselpaar des Tests.
+   */
+  private static class TestEngine extends RSAEngine
+  {
+    /**
+     * @see de.willuhn.jameica.security.crypto.RSAEngine#getPublicKey()
+     */
+    PublicKey getPublicKey() throws Exception
+    {
+      return keys.getPublic();
+    }
+
+    /**
+     * @see de.willuhn.jameica.security.crypto.RSAEngine#getPrivateKey()
+     */
+    PrivateKey getPrivateKey() throws Exception
+    {
+      return keys.getPrivate();
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.services;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.willuhn.annotation.Lifecycle;
+import de.willuhn.annotation.Lifecycle.Type;
+import de.willuhn.jameica.system.JameicaException;
+import de.willuhn.jameica.system.TestApplication;
+
+/**
+ * Testet die Erzeugung der Beans im BeanService.
+ */
+public class BeanServiceTest
+{
+  private static BeanService service = null;
+
+  /**
+   * Initialisiert Jameica und den BeanService.
+   * @throws Exception
+   */
+  @BeforeClass
+  public static void setUp() throws Exception
+  {
+    TestApplication.init();
+  }
+
+  /**
+   * Konstruktoren, die sich gegenseitig per BeanService laden, werden als
+   * zirkulaere Abhaengigkeit erkannt.
+   * @throws Exception
+   */
+  @Test(expected=JameicaException.class)
+  public void test001() throws Exception
+  {
+    service = new BeanService();
+    service.get(CycleA.class);
+  }
+
+  /**
+   * Eine Bean im Context-Scope wird auch bei gleichzeitigem Zugriff nur einmal erzeugt.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    service = new BeanService();
+    Slow.created.set(0);
+
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try
+    {
+      Future<Slow>[] results = new Future[4];
+      for (int i=0;i<results.length;++i)
+      {
+        results[i] = pool.submit(new Callable<Slow>() {
+          /**
+           * @see java.util.concurrent.Callable#call()
+           */
+          public Slow call() throws Exception
+          {
+            start.await();
+            return service.get(Slow.class);
+          }
+        });
+      }
+      start.countDown();
+
+      Slow first = results[0].get();
+      Assert.assertNotNull(first);
+      for (Future<Slow> f:results)
+        Assert.assertSame(first,f.get());
+      Assert.assertEquals(1,Slow.created.get());
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Nach einer erkannten zirkulaeren Abhaengigkeit ist der Service weiter benutzbar.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    service = new BeanService();
+    try
+    {
+      service.get(CycleA.class);
+      Assert.fail("circular dependency not detected");
+    }
+    catch (JameicaException e)
+    {
+      // erwartet
+    }
+    Assert.assertNotNull(service.get(Slow.class));
+  }
+
+  /**
+   * Bean, deren Konstruktor {@link CycleB} laedt.
+   */
+  @Lifecycle(Type.CONTEXT)
+  public static class CycleA
+  {
+    /**
+     * ct.
+     */
+    public CycleA()
+    {
+      service.get(CycleB.class);
+    }
+  }
+
+  /**
+   * Bean, deren Konstruktor {@link CycleA} laedt.
+   */
+  @Lifecycle(Type.CONTEXT)
+  public static class CycleB
+  {
+    /**
+     * ct.
+     */
+    public CycleB()
+    {
+      service.get(CycleA.class);
+    }
+  }
+
+  /**
+   * Bean, deren Erzeugung etwas dauert.
+   */
+  @Lifecycle(Type.CONTEXT)
+  public static class Slow
+  {
+    private final static AtomicInteger created = new AtomicInteger();
+
+    /**
+     * ct.
+     * @throws Exception
+     */
+    public Slow() throws Exception
+    {
+      created.incrementAndGet();
+      Thread.sleep(100L);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.reflect.Modifier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet das Lesen der Kopfdaten aus dem Bytecode.
+ */
+public class ClassHeaderTest
+{
+  /**
+   * Name, Basisklasse, Interfaces und Modifier einer Klasse.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    ClassHeader h = read(Sample.class);
+    Assert.assertEquals(Sample.class.getName(),h.getName());
+    Assert.assertEquals(Base.class.getName(),h.getSuperName());
+    Assert.assertArrayEquals(new String[]{Runnable.class.getName(),Serializable.class.getName()},h.getInterfaces());
+    Assert.assertFalse(Modifier.isAbstract(h.getModifiers()));
+    Assert.assertFalse(Modifier.isInterface(h.getModifiers()));
+    Assert.assertFalse(h.isModule());
+  }
+
+  /**
+   * Abstrakte Klassen und Interfaces.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    ClassHeader h = read(Base.class);
+    Assert.assertEquals(Object.class.getName(),h.getSuperName());
+    Assert.assertEquals(0,h.getInterfaces().length);
+    Assert.assertTrue(Modifier.isAbstract(h.getModifiers()));
+
+    h = read(Runnable.class);
+    Assert.assertTrue(Modifier.isInterface(h.getModifiers()));
+  }
+
+  /**
+   * Klassen ohne Basisklasse.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    ClassHeader h = read(Object.class);
+    Assert.assertEquals(Object.class.getName(),h.getName());
+    Assert.assertNull(h.getSuperName());
+  }
+
+  /**
+   * Daten, die kein Bytecode sind, werden abgelehnt.
+   * @throws Exception
+   */
+  @Test(expected=IOException.class)
+  public void test004() throws Exception
+  {
+    ClassHeader.read(new ByteArrayInputStream("no class file".getBytes("UTF-8")));
+  }
+
+  /**
+   * Liest die Kopfdaten der Klasse.
+   * @param c die Klasse.
+   * @return die Kopfdaten.
+   * @throws Exception
+   */
+  private static ClassHeader read(Class c) throws Exception
+  {
+    InputStream is = ClassLoader.getSystemResourceAsStream(c.getName().replace('.','/') + ".class");
+    Assert.assertNotNull(is);
+    try
+    {
+      return ClassHeader.read(is);
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
+  /**
+   * Abstrakte Basisklasse fuer den Test.
+   */
+  private static abstract class Base
+  {
+  }
+
+  /**
+   * Klasse fuer den Test. Die Konstanten landen als Long bzw. Double im Constant-Pool.
+   */
+  private static class Sample extends Base implements Runnable, Serializable
+  {
+    private static final long serialVersionUID = 1234567890123L;
+    private static final double FACTOR = 1.5d;
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    public void run()
+    {
+      System.out.println(FACTOR);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.services;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet den Fingerprint des Klassen-Index.
+ */
+public class ClassIndexTest
+{
+  /**
+   * Der Fingerprint aendert sich mit den Dateien und den zusaetzlichen Angaben.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    File file = File.createTempFile("jameica",".jar");
+    try
+    {
+      File[] files = new File[]{file};
+      String fp = ClassIndex.fingerprint(files,"jameica|2.10.0","hibiscus|abc");
+      Assert.assertEquals(fp,ClassIndex.fingerprint(files,"jameica|2.10.0","hibiscus|abc"));
+
+      // Geaenderte Abhaengigkeit
+      Assert.assertNotEquals(fp,ClassIndex.fingerprint(files,"jameica|2.10.0","hibiscus|def"));
+
+      // Geaenderte Jameica-Version
+      Assert.assertNotEquals(fp,ClassIndex.fingerprint(files,"jameica|2.12.0","hibiscus|abc"));
+
+      // Geaenderte Datei
+      FileOutputStream os = new FileOutputStream(file);
+      os.write(1);
+      os.close();
+      Assert.assertNotEquals(fp,ClassIndex.fingerprint(files,"jameica|2.10.0","hibiscus|abc"));
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.services.inject;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Resource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.willuhn.annotation.Injector;
+import de.willuhn.jameica.system.TestClassLoader;
+import de.willuhn.util.MultipleClassLoader;
+
+/**
+ * Testet den Cache der Injection-Plaene.
+ */
+public class InjectionPlanTest
+{
+  private File dir = null;
+
+  /**
+   * Erzeugt das temporaere Verzeichnis.
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.dir = File.createTempFile("jameica","");
+    this.dir.delete();
+    this.dir.mkdirs();
+  }
+
+  /**
+   * Loescht das temporaere Verzeichnis.
+   * @throws Exception
+   */
+  @After
+  public void tearDown() throws Exception
+  {
+    TestClassLoader.delete(this.dir);
+  }
+
+  /**
+   * Die Plaene der Klassen eines Plugins werden verworfen, wenn dessen Classloader
+   * entladen wird. Die Plaene anderer Klassen bleiben erhalten.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    MultipleClassLoader loader = TestClassLoader.create(this.dir,"test.plugin.Bean","package test.plugin; public class Bean { @javax.annotation.Resource public String name; }");
+    Class type = loader.load("test.plugin.Bean");
+    Assert.assertNotSame(loader,type.getClassLoader());
+
+    Collector c = new Collector();
+    InjectionPlan.inject(type.newInstance(),c,Resource.class);
+    InjectionPlan.inject(new Local(),c,Resource.class);
+    Assert.assertEquals(2,c.members.size());
+    Assert.assertTrue(getPlans().containsKey(type));
+    Assert.assertTrue(getPlans().containsKey(Local.class));
+
+    // Ein fremder Classloader entfernt nichts
+    InjectionPlan.invalidate(new MultipleClassLoader());
+    Assert.assertTrue(getPlans().containsKey(type));
+
+    InjectionPlan.invalidate(loader);
+    Assert.assertFalse(getPlans().containsKey(type));
+    Assert.assertTrue(getPlans().containsKey(Local.class));
+  }
+
+  /**
+   * Liefert die gecachten Plaene.
+   * @return die gecachten Plaene.
+   * @throws Exception
+   */
+  private static Map<Class,?> getPlans() throws Exception
+  {
+    Field f = InjectionPlan.class.getDeclaredField("plans");
+    f.setAccessible(true);
+    return (Map<Class,?>) f.get(null);
+  }
+
+  /**
+   * Bean aus dem Classpath des Tests.
+   */
+  public static class Local
+  {
+    /**
+     * Annotiertes Feld.
+     */
+    @Resource
+    public String name;
+  }
+
+  /**
+   * Sammelt die injizierten Member.
+   */
+  private static class Collector implements Injector
+  {
+    private List<AccessibleObject> members = new ArrayList<AccessibleObject>();
+
+    /**
+     * @see de.willuhn.annotation.Injector#inject(java.lang.Object, java.lang.reflect.AccessibleObject, java.lang.annotation.Annotation)
+     */
+    public void inject(Object bean, AccessibleObject field, Annotation annotation) throws Exception
+    {
+      this.members.add(field);
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.store.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testet das Binaer-Format.
+ */
+public class BinaryCodecTest
+{
+  /**
+   * Setzt die Bean nach dem Test zurueck.
+   * @throws Exception
+   */
+  @After
+  public void tearDown() throws Exception
+  {
+    Bean.broken = false;
+  }
+
+  /**
+   * Alle unterstuetzten Typen werden unveraendert wieder gelesen.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    HashMap<String,Object> map = new HashMap<String,Object>();
+    map.put("int",Integer.valueOf(1));
+    map.put("null",null);
+
+    List<String> list = new ArrayList<String>();
+    list.add("eins");
+    list.add("zwei");
+
+    Hashtable<String,Object> data = new Hashtable<String,Object>();
+    data.put("string","Text mit Umlaut \u00e4");
+    data.put("integer",Integer.valueOf(42));
+    data.put("long",Long.valueOf(Long.MAX_VALUE));
+    data.put("boolean",Boolean.TRUE);
+    data.put("double",Double.valueOf(1.5d));
+    data.put("date",new Date(1234567890L));
+    data.put("bytes",new byte[]{1,2,3});
+    data.put("array",new Object[]{"a",Integer.valueOf(2),null});
+    data.put("map",map);
+    data.put("list",list);
+    data.put("bean",new Bean("test"));
+
+    Hashtable result = (Hashtable) decode(encode(data));
+    Assert.assertEquals(data.size(),result.size());
+    Assert.assertEquals("Text mit Umlaut \u00e4",result.get("string"));
+    Assert.assertEquals(Integer.valueOf(42),result.get("integer"));
+    Assert.assertEquals(Long.valueOf(Long.MAX_VALUE),result.get("long"));
+    Assert.assertEquals(Boolean.TRUE,result.get("boolean"));
+    Assert.assertEquals(Double.valueOf(1.5d),result.get("double"));
+    Assert.assertEquals(new Date(1234567890L),result.get("date"));
+    Assert.assertArrayEquals(new byte[]{1,2,3},(byte[]) result.get("bytes"));
+    Assert.assertArrayEquals(new Object[]{"a",Integer.valueOf(2),null},(Object[]) result.get("array"));
+    Assert.assertEquals(map,result.get("map"));
+    Assert.assertEquals(list,result.get("list"));
+    Assert.assertEquals("test",((Bean) result.get("bean")).getName());
+  }
+
+  /**
+   * Daten im bisherigen XML-Format werden weiterhin gelesen.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    Hashtable<String,Object> data = new Hashtable<String,Object>();
+    data.put("string","Text");
+    data.put("integer",Integer.valueOf(42));
+    data.put("bytes",new byte[]{1,2,3});
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    new XMLCodec().encode(data,bos);
+
+    Hashtable result = (Hashtable) decode(bos.toByteArray());
+    Assert.assertEquals(3,result.size());
+    Assert.assertEquals("Text",result.get("string"));
+    Assert.assertEquals(Integer.valueOf(42),result.get("integer"));
+    Assert.assertArrayEquals(new byte[]{1,2,3},(byte[]) result.get("bytes"));
+  }
+
+  /**
+   * Ein Wert, der sich nicht lesen laesst, bleibt unveraendert erhalten und wird
+   * beim naechsten Speichern wieder geschrieben. Die anderen Eintraege bleiben erhalten.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    Hashtable<String,Object> data = new Hashtable<String,Object>();
+    for (int i=0;i<20;++i)
+    {
+      data.put("key." + i,"value." + i);
+    }
+    data.put("bean",new Bean("test"));
+    data.put("array",new Object[]{new Bean("test"),"nach der Bean"});
+
+    HashMap<String,Object> map = new HashMap<String,Object>();
+    map.put("bean",new Bean("test"));
+    map.put("string","Text");
+    data.put("map",map);
+
+    byte[] encoded = encode(data);
+    Bean.broken = true;
+    Hashtable result = (Hashtable) decode(encoded);
+
+    Assert.assertEquals(23,result.size());
+    for (int i=0;i<20;++i)
+    {
+      Assert.assertEquals("value." + i,result.get("key." + i));
+    }
+    Assert.assertTrue(result.get("bean") instanceof BinaryCodec.Unreadable);
+    Assert.assertTrue(result.get("array") instanceof BinaryCodec.Unreadable);
+
+    HashMap inner = (HashMap) result.get("map");
+    Assert.assertEquals(2,inner.size());
+    Assert.assertEquals("Text",inner.get("string"));
+    Assert.assertTrue(inner.get("bean") instanceof BinaryCodec.Unreadable);
+
+    // Erneut speichern und wieder lesen, wenn die Bean wieder lesbar ist
+    encoded = encode(result);
+    Bean.broken = false;
+    result = (Hashtable) decode(encoded);
+    Assert.assertEquals(23,result.size());
+    Assert.assertEquals("test",((Bean) result.get("bean")).getName());
+    Object[] array = (Object[]) result.get("array");
+    Assert.assertEquals("test",((Bean) array[0]).getName());
+    Assert.assertEquals("nach der Bean",array[1]);
+    Assert.assertEquals("test",((Bean) ((HashMap) result.get("map")).get("bean")).getName());
+  }
+
+  /**
+   * Laesst sich das Objekt selbst nicht lesen, wird der Fehler geworfen.
+   * @throws Exception
+   */
+  @Test(expected=IllegalStateException.class)
+  public void test004() throws Exception
+  {
+    byte[] encoded = encode(new Bean("test"));
+    Bean.broken = true;
+    decode(encoded);
+  }
+
+  /**
+   * Ein Objekt, das sich nicht im XML-Format speichern laesst, wird nicht
+   * stillschweigend unvollstaendig geschrieben.
+   * @throws Exception
+   */
+  @Test(expected=Exception.class)
+  public void test005() throws Exception
+  {
+    encode(Arrays.asList(new Object[]{new NoBean("test")}));
+  }
+
+  /**
+   * Speichert das Objekt.
+   * @param o das Objekt.
+   * @return die Daten.
+   * @throws Exception
+   */
+  private static byte[] encode(Object o) throws Exception
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    new BinaryCodec().encode(o,bos);
+    return bos.toByteArray();
+  }
+
+  /**
+   * Liest das Objekt.
+   * @param data die Daten.
+   * @return das Objekt.
+   * @throws Exception
+   */
+  private static Object decode(byte[] data) throws Exception
+  {
+    return new BinaryCodec().decode(new ByteArrayInputStream(data));
+  }
+
+  /**
+   * Bean fuer den Test.
+   */
+  public static class Bean
+  {
+    /**
+     * Wenn true, schlaegt das Lesen der Bean fehl.
+     */
+    private static boolean broken = false;
+
+    private String name = null;
+
+    /**
+     * ct.
+     */
+    public Bean()
+    {
+    }
+
+    /**
+     * ct.
+     * @param name der Name.
+     */
+    public Bean(String name)
+    {
+      this.name = name;
+    }
+
+    /**
+     * Liefert den Namen.
+     * @return der Name.
+     */
+    public String getName()
+    {
+      return this.name;
+    }
+
+    /**
+     * Speichert den Namen.
+     * @param name der Name.
+     */
+    public void setName(String name)
+    {
+      if (broken)
+        throw new IllegalStateException("broken");
+      this.name = name;
+    }
+  }
+
+  /**
+   * Klasse ohne oeffentlichen Default-Konstruktor.
+   */
+  public static class NoBean
+  {
+    private String name = null;
+
+    /**
+     * ct.
+     * @param name der Name.
+     */
+    public NoBean(String name)
+    {
+      this.name = name;
+    }
+
+    /**
+     * Liefert den Namen.
+     * @return der Name.
+     */
+    public String getName()
+    {
+      return this.name;
+    }
+  }
+}
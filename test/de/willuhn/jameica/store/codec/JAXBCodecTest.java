@@ -0,0 +1,124 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.store.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.willuhn.jameica.system.TestClassLoader;
+import de.willuhn.util.MultipleClassLoader;
+
+/**
+ * Testet den Cache der JAXB-Contexts.
+ */
+public class JAXBCodecTest
+{
+  private File dir = null;
+
+  /**
+   * Erzeugt das temporaere Verzeichnis.
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.dir = File.createTempFile("jameica","");
+    this.dir.delete();
+    this.dir.mkdirs();
+  }
+
+  /**
+   * Loescht das temporaere Verzeichnis.
+   * @throws Exception
+   */
+  @After
+  public void tearDown() throws Exception
+  {
+    TestClassLoader.delete(this.dir);
+  }
+
+  /**
+   * Die Contexts der Klassen eines Plugins werden verworfen, wenn dessen Classloader
+   * entladen wird. Die Contexts anderer Klassen bleiben erhalten.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    MultipleClassLoader loader = TestClassLoader.create(this.dir,"test.plugin.Bean","package test.plugin; @javax.xml.bind.annotation.XmlRootElement public class Bean { public String name; }");
+    Class type = loader.load("test.plugin.Bean");
+    Assert.assertNotSame(loader,type.getClassLoader());
+
+    roundtrip(new JAXBCodec(type),type.newInstance());
+    roundtrip(new JAXBCodec(Local.class),new Local());
+    Assert.assertTrue(getContexts().containsKey(Arrays.asList(type.getName())));
+    Assert.assertTrue(getContexts().containsKey(Arrays.asList(Local.class.getName())));
+
+    // Ein fremder Classloader entfernt nichts
+    JAXBCodec.invalidate(new MultipleClassLoader());
+    Assert.assertTrue(getContexts().containsKey(Arrays.asList(type.getName())));
+
+    JAXBCodec.invalidate(loader);
+    Assert.assertFalse(getContexts().containsKey(Arrays.asList(type.getName())));
+    Assert.assertTrue(getContexts().containsKey(Arrays.asList(Local.class.getName())));
+  }
+
+  /**
+   * Speichert das Objekt und liest es wieder.
+   * @param codec der Codec.
+   * @param o das Objekt.
+   * @return das gelesene Objekt.
+   * @throws Exception
+   */
+  private static Object roundtrip(JAXBCodec codec, Object o) throws Exception
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    codec.encode(o,bos);
+    Object result = codec.decode(new ByteArrayInputStream(bos.toByteArray()));
+    Assert.assertSame(o.getClass(),result.getClass());
+    return result;
+  }
+
+  /**
+   * Liefert die gecachten Contexts.
+   * @return die gecachten Contexts.
+   * @throws Exception
+   */
+  private static Map<?,?> getContexts() throws Exception
+  {
+    Field f = JAXBCodec.class.getDeclaredField("contexts");
+    f.setAccessible(true);
+    return (Map<?,?>) f.get(null);
+  }
+
+  /**
+   * Bean aus dem Classpath des Tests.
+   */
+  @XmlRootElement
+  public static class Local
+  {
+    /**
+     * Name.
+     */
+    public String name;
+  }
+}
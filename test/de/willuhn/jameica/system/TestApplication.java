@@ -0,0 +1,59 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.system;
+
+import java.lang.reflect.Field;
+
+import de.willuhn.util.I18N;
+import de.willuhn.util.MultipleClassLoader;
+
+/**
+ * Stellt fuer die Tests eine minimale Jameica-Instanz bereit.
+ * Sie besitzt lediglich einen Classloader und Dummy-Uebersetzungen, damit Code,
+ * der ueber {@link Application} darauf zugreift, ohne GUI und Boot-Vorgang laeuft.
+ */
+public class TestApplication
+{
+  /**
+   * Initialisiert die Instanz, falls noch keine existiert.
+   * @throws Exception
+   */
+  public static synchronized void init() throws Exception
+  {
+    Field f = Application.class.getDeclaredField("app");
+    f.setAccessible(true);
+    if (f.get(null) != null)
+      return;
+
+    MultipleClassLoader cl = new MultipleClassLoader();
+    cl.setName("loader.jameica");
+    cl.addClassloader(Application.class.getClassLoader());
+
+    Application app = new Application();
+    set(app,"classLoader",cl);
+    set(app,"i18n",new I18N());
+    f.set(null,app);
+  }
+
+  /**
+   * Setzt ein privates Feld der Instanz.
+   * @param app die Instanz.
+   * @param name Name des Feldes.
+   * @param value der Wert.
+   * @throws Exception
+   */
+  private static void set(Application app, String name, Object value) throws Exception
+  {
+    Field f = Application.class.getDeclaredField(name);
+    f.setAccessible(true);
+    f.set(app,value);
+  }
+}
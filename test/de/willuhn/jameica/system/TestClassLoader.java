@@ -0,0 +1,78 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.system;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import de.willuhn.util.MultipleClassLoader;
+
+/**
+ * Erzeugt fuer die Tests einen Classloader wie den eines Plugins.
+ * Die Klasse wird zur Laufzeit in ein temporaeres Verzeichnis kompiliert, damit sie
+ * nicht im Classpath des Tests liegt und tatsaechlich ueber den MultipleClassLoader
+ * geladen wird.
+ */
+public class TestClassLoader
+{
+  /**
+   * Kompiliert die Klasse und liefert einen MultipleClassLoader, der sie laden kann.
+   * @param dir Verzeichnis, in das die Klasse kompiliert wird.
+   * @param className voll qualifizierter Name der Klasse.
+   * @param source Quelltext der Klasse.
+   * @return der Classloader.
+   * @throws Exception
+   */
+  public static MultipleClassLoader create(File dir, String className, String source) throws Exception
+  {
+    File file = new File(dir,className.replace('.',File.separatorChar) + ".java");
+    file.getParentFile().mkdirs();
+    OutputStream os = new FileOutputStream(file);
+    try
+    {
+      os.write(source.getBytes("UTF-8"));
+    }
+    finally
+    {
+      os.close();
+    }
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    int rc = compiler.run(null,null,null,"-nowarn","-cp",System.getProperty("java.class.path"),"-d",dir.getAbsolutePath(),file.getAbsolutePath());
+    if (rc != 0)
+      throw new Exception("unable to compile " + className);
+
+    MultipleClassLoader loader = new MultipleClassLoader();
+    loader.setName("loader.test");
+    loader.addClassloader(TestClassLoader.class.getClassLoader());
+    loader.add(dir);
+    return loader;
+  }
+
+  /**
+   * Loescht das Verzeichnis rekursiv.
+   * @param dir das Verzeichnis.
+   */
+  public static void delete(File dir)
+  {
+    File[] children = dir.listFiles();
+    if (children != null)
+    {
+      for (File f:children)
+        delete(f);
+    }
+    dir.delete();
+  }
+}
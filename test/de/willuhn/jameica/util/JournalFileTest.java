@@ -0,0 +1,152 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * Jameica License.  Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.jameica.util;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testet das Lesen und Schreiben der Journal-Dateien.
+ */
+public class JournalFileTest
+{
+  private File file = null;
+
+  /**
+   * Erzeugt die temporaere Datei.
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.file = File.createTempFile("jameica",".journal");
+    this.file.delete();
+  }
+
+  /**
+   * Loescht die temporaere Datei.
+   * @throws Exception
+   */
+  @After
+  public void tearDown() throws Exception
+  {
+    this.file.delete();
+  }
+
+  /**
+   * Geschriebene Datensaetze werden in der selben Reihenfolge gelesen.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    JournalFile journal = new JournalFile(this.file,1);
+    journal.append("eins".getBytes("UTF-8"));
+    journal.append(new byte[0]);
+    journal.append("drei".getBytes("UTF-8"));
+
+    List<String> list = read(journal);
+    Assert.assertEquals(3,list.size());
+    Assert.assertEquals("eins",list.get(0));
+    Assert.assertEquals("",list.get(1));
+    Assert.assertEquals("drei",list.get(2));
+  }
+
+  /**
+   * Ein unvollstaendiger letzter Datensatz wird abgeschnitten.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    JournalFile journal = new JournalFile(this.file,1);
+    journal.append("eins".getBytes("UTF-8"));
+    long length = this.file.length();
+    journal.append("zwei".getBytes("UTF-8"));
+
+    RandomAccessFile raf = new RandomAccessFile(this.file,"rw");
+    raf.setLength(this.file.length() - 2);
+    raf.close();
+
+    List<String> list = read(journal);
+    Assert.assertEquals(1,list.size());
+    Assert.assertEquals("eins",list.get(0));
+    Assert.assertEquals(length,this.file.length());
+
+    // Danach kann wieder angehaengt werden
+    journal.append("drei".getBytes("UTF-8"));
+    Assert.assertEquals(2,read(journal).size());
+  }
+
+  /**
+   * Ein Datensatz mit falscher Pruefsumme beendet das Lesen und wird abgeschnitten.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    JournalFile journal = new JournalFile(this.file,1);
+    journal.append("eins".getBytes("UTF-8"));
+    long length = this.file.length();
+    journal.append("zwei".getBytes("UTF-8"));
+    journal.append("drei".getBytes("UTF-8"));
+
+    // Ein Byte in den Daten des zweiten Datensatzes aendern
+    RandomAccessFile raf = new RandomAccessFile(this.file,"rw");
+    raf.seek(length + 8);
+    raf.write('Z');
+    raf.close();
+
+    List<String> list = read(journal);
+    Assert.assertEquals(1,list.size());
+    Assert.assertEquals(length,this.file.length());
+  }
+
+  /**
+   * Eine Datei mit fremder Versionsnummer wird nicht gelesen.
+   * @throws Exception
+   */
+  @Test(expected=Exception.class)
+  public void test004() throws Exception
+  {
+    new JournalFile(this.file,1).append("eins".getBytes("UTF-8"));
+    read(new JournalFile(this.file,2));
+  }
+
+  /**
+   * Liest alle Datensaetze als Strings.
+   * @param journal das Journal.
+   * @return die Datensaetze.
+   * @throws Exception
+   */
+  private static List<String> read(JournalFile journal) throws Exception
+  {
+    final List<String> result = new ArrayList<String>();
+    int count = journal.read(new JournalFile.Reader() {
+      /**
+       * @see de.willuhn.jameica.util.JournalFile.Reader#read(byte[])
+       */
+      public void read(byte[] record) throws Exception
+      {
+        result.add(new String(record,"UTF-8"));
+      }
+    });
+    Assert.assertEquals(result.size(),count);
+    return result;
+  }
+}